@@ -16,6 +16,9 @@
     <link href="https://cdn.jsdelivr.net/npm/bootstrap@5.3.3/dist/css/bootstrap.min.css" rel="stylesheet" integrity="sha384-QWTKZyjpPEjISv5WaRU9OFeRpok6YctnYmDr5pNlyT2bRjXh0JMhjY6hW+ALEwIH" crossorigin="anonymous">
     <link rel="stylesheet" href="https://cdn.jsdelivr.net/npm/bootstrap-icons@1.11.3/font/bootstrap-icons.min.css">
     <link rel="stylesheet" href="${root}/static/style.css">
+    <#if sprites!false>
+    <link rel="stylesheet" href="${root}/assets/generated/sprites.css">
+    </#if>
   </head>
   <body>
     <!-- Load theme switcher JavaScript early to avoid flashes of incorrectly-themed content -->
@@ -2,6 +2,8 @@ package io.github.tfgcn.fieldguide;
 
 import freemarker.template.TemplateException;
 import io.github.tfgcn.fieldguide.asset.AssetLoader;
+import io.github.tfgcn.fieldguide.asset.CacheManager;
+import io.github.tfgcn.fieldguide.asset.DependencyTracker;
 import io.github.tfgcn.fieldguide.asset.ItemImageResult;
 import io.github.tfgcn.fieldguide.data.patchouli.Book;
 import io.github.tfgcn.fieldguide.data.patchouli.BookCategory;
@@ -11,23 +13,46 @@ import io.github.tfgcn.fieldguide.exception.InternalException;
 import io.github.tfgcn.fieldguide.localization.Language;
 import io.github.tfgcn.fieldguide.localization.LazyLocalizationManager;
 import io.github.tfgcn.fieldguide.localization.LocalizationManager;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
+import io.github.tfgcn.fieldguide.render.EntryManifest;
 import io.github.tfgcn.fieldguide.render.HtmlRenderer;
+import io.github.tfgcn.fieldguide.render.ItemImageBatch;
+import io.github.tfgcn.fieldguide.render.OutputWriter;
+import io.github.tfgcn.fieldguide.render.PageFragments;
 import io.github.tfgcn.fieldguide.render.PageRenderer;
+import io.github.tfgcn.fieldguide.render.RenderCache;
+import io.github.tfgcn.fieldguide.render.SpriteAtlas;
 import io.github.tfgcn.fieldguide.render.TextFormatter;
 import io.github.tfgcn.fieldguide.render.TextureRenderer;
+import io.github.tfgcn.fieldguide.trace.Trace;
 import lombok.extern.slf4j.Slf4j;
 import picocli.CommandLine;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.tfgcn.fieldguide.Constants.CACHE;
 import static io.github.tfgcn.fieldguide.Constants.FIELD_GUIDE;
 
 @Slf4j
+@CommandLine.Command(name = "field-guide", subcommands = ServeCommand.class)
 public class Main implements Callable<Integer>  {
 
     @CommandLine.Option(
@@ -49,6 +74,140 @@ public class Main implements Callable<Integer>  {
     )
     protected String outputDir;
 
+    @CommandLine.Option(
+            names = {"--parallel-languages"},
+            description = "The number of languages generated at the same time.",
+            defaultValue = "1",
+            showDefaultValue = CommandLine.Help.Visibility.ALWAYS
+    )
+    protected int parallelLanguages;
+
+    @CommandLine.Option(
+            names = {"--parallel-entries"},
+            description = "The number of threads rendering the entries of a book.",
+            defaultValue = "1",
+            showDefaultValue = CommandLine.Help.Visibility.ALWAYS
+    )
+    protected int parallelEntries;
+
+    @CommandLine.Option(
+            names = {"--incremental"},
+            description = "Only render the entries whose files, assets or translations changed since the last run."
+    )
+    protected boolean incremental;
+
+    @CommandLine.Option(
+            names = {"--output-threads"},
+            description = "The number of threads encoding and writing images and pages, 0 to write them while rendering.",
+            defaultValue = "2",
+            showDefaultValue = CommandLine.Help.Visibility.ALWAYS
+    )
+    protected int outputThreads;
+
+    @CommandLine.Option(
+            names = {"--trace"},
+            paramLabel = "<file>",
+            description = "Write a Chrome trace of the build, e.g. \"trace.json\", and log the slowest entries, pages and renders."
+    )
+    protected String trace;
+
+    @CommandLine.Option(
+            names = {"--metrics"},
+            paramLabel = "<file>",
+            description = "Where to write the metrics of the build as JSON.",
+            defaultValue = CACHE + "/metrics.json",
+            showDefaultValue = CommandLine.Help.Visibility.ALWAYS
+    )
+    protected String metrics;
+
+    @CommandLine.Option(
+            names = {"--prometheus"},
+            paramLabel = "<file>",
+            description = "Also write the metrics of the build in the Prometheus text format, e.g. \"metrics.prom\"."
+    )
+    protected String prometheus;
+
+    @CommandLine.Option(
+            names = {"--streaming"},
+            description = "Write every entry page as soon as the entry is rendered, and only keep what the category, home and search pages need."
+    )
+    protected boolean streaming;
+
+    @CommandLine.Option(
+            names = {"--cache-budget-mb"},
+            description = "The memory decoded textures and materials may take before the least recently used are evicted, 0 for no limit.",
+            defaultValue = "512",
+            showDefaultValue = CommandLine.Help.Visibility.ALWAYS
+    )
+    protected long cacheBudgetMb;
+
+    @CommandLine.Option(
+            names = {"--lazy-images"},
+            description = "Render item and fluid images when a page asks for them, instead of collecting and rendering them all first."
+    )
+    protected boolean lazyImages;
+
+    @CommandLine.Option(
+            names = {"--no-render-cache"},
+            description = "Render every image and model, instead of reusing those of earlier builds whose assets are unchanged."
+    )
+    protected boolean noRenderCache;
+
+    @CommandLine.Option(
+            names = {"--render-cache-max-mb"},
+            description = "The disk space the images and models of earlier builds may take before the least recently used are pruned.",
+            defaultValue = "1024",
+            showDefaultValue = CommandLine.Help.Visibility.ALWAYS
+    )
+    protected long renderCacheMaxMb;
+
+    @CommandLine.Option(
+            names = {"--render-cache-max-age-days"},
+            description = "Prune the images and models of earlier builds not used for this many days.",
+            defaultValue = "30",
+            showDefaultValue = CommandLine.Help.Visibility.ALWAYS
+    )
+    protected int renderCacheMaxAgeDays;
+
+    @CommandLine.Option(
+            names = {"--sprite-atlas"},
+            description = "Pack the item icons into a few sprite sheets shown by css classes, instead of one image file per icon. Not used by incremental builds."
+    )
+    protected boolean packSprites;
+
+    /**
+     * renders entries, shared by all languages
+     */
+    ForkJoinPool entryPool;
+
+    /**
+     * the language independent parts of pages, shared by all languages
+     */
+    PageFragments fragments;
+
+    /**
+     * writes the output behind the renderers, shared by all languages
+     */
+    OutputWriter output;
+
+    /**
+     * the images and models of earlier builds, null if disabled
+     */
+    RenderCache renderCache;
+
+    /**
+     * the item icons packed into sprite sheets, null to show them as images
+     */
+    SpriteAtlas spriteAtlas;
+
+    private final AtomicInteger reusedEntries = new AtomicInteger();
+    private final AtomicInteger rebuiltEntries = new AtomicInteger();
+
+    private static final Metrics.Counter ENTRIES_REUSED = Metrics.counter("entries_total", "result", "reused");
+    private static final Metrics.Counter ENTRIES_REBUILT = Metrics.counter("entries_total", "result", "rebuilt");
+    private static final Metrics.Histogram ENTRY_RENDER_SECONDS = Metrics.histogram("entry_render_seconds");
+    private static final Metrics.Histogram LANGUAGE_SECONDS = Metrics.histogram("language_seconds");
+
     public static void main(String[] args) {
         CommandLine cmd = new CommandLine(new Main());
         System.exit(cmd.execute(args));
@@ -57,35 +216,223 @@ public class Main implements Callable<Integer>  {
     @Override
     public Integer call() throws Exception {
         log.info("Start parsing fallback..., tfg: {}, out: {}", inputDir, outputDir);
+        if (trace != null) {
+            Trace.start();
+        }
+        // the metrics only count this build, also when the JVM ran one before
+        Metrics.reset();
 
         // The TerraFirmaGreg modpack directory
         String modpackPath = inputDir.replace("\\", "/");
         String outputRootPath = outputDir.replace("\\", "/");
 
-        AssetLoader assetLoader = new AssetLoader(Paths.get(modpackPath), Paths.get(outputRootPath));
+        AssetLoader assetLoader = new AssetLoader(Paths.get(modpackPath), Paths.get(outputRootPath), newCacheManager());
+        renderCache = newRenderCache(assetLoader);
+        // the render cache needs the inputs of every image
+        DependencyTracker.setEnabled(incremental || renderCache != null);
+        entryPool = new ForkJoinPool(Math.max(1, parallelEntries));
+        output = new OutputWriter(outputThreads);
+        if (packSprites && incremental) {
+            // the pages reused from the last build would not ask for their sprites
+            log.warn("--sprite-atlas is ignored by incremental builds");
+        } else if (packSprites) {
+            spriteAtlas = new SpriteAtlas();
+        }
 
         LocalizationManager localizationManager = new LazyLocalizationManager(assetLoader);
 
-        TextureRenderer textureRenderer = new TextureRenderer(assetLoader, localizationManager);
+        TextureRenderer textureRenderer = new TextureRenderer(assetLoader, localizationManager, output, renderCache, spriteAtlas);
+        fragments = new PageFragments(assetLoader, textureRenderer);
 
-        PageRenderer pageRenderer = new PageRenderer(assetLoader, localizationManager, textureRenderer);
+        PageRenderer pageRenderer = new PageRenderer(assetLoader, localizationManager, textureRenderer, fragments);
 
-        HtmlRenderer htmlRenderer = new HtmlRenderer(localizationManager, outputDir);
-        // Load en_us book as a fallback
-        Book fallback = assetLoader.loadBook(FIELD_GUIDE);
-        prepare(fallback, localizationManager, textureRenderer, pageRenderer);
+        HtmlRenderer htmlRenderer = new HtmlRenderer(localizationManager, outputDir, output);
+        htmlRenderer.copyStaticFiles();
 
-        for (Language lang : Language.values()) {
-            Book book = assetLoader.loadBook(FIELD_GUIDE, lang, fallback);
-            prepare(book, localizationManager, textureRenderer, pageRenderer);
-            generateHtml(book, htmlRenderer);
+        // Load en_us book as a fallback, the images it renders are shared by all languages
+        Book fallback;
+        try (Trace.Span ignored = Trace.span("book", Constants.EN_US)) {
+            fallback = assetLoader.loadBook(FIELD_GUIDE);
+        }
+        if (!incremental) {
+            if (!lazyImages) {
+                // the images of the whole book on all threads, then the pages only look them up
+                ItemImageBatch batch = new ItemImageBatch();
+                batch.discover(fallback, assetLoader, entryPool);
+                batch.render(textureRenderer, entryPool);
+            }
+            prepare(fallback, localizationManager, textureRenderer, pageRenderer, null);
         }
 
-        assetLoader.getAssetStats().print();
+        // Each language has its own localization and renderers, so the output is the same for any parallelism
+        try {
+            forEachLanguage(Language.asList(), lang -> generateLanguage(assetLoader, textureRenderer, lang, fallback));
+            // every image and page is on disk before the snapshot records the build
+            output.flush();
+            if (renderCache != null) {
+                renderCache.save();
+            }
+            if (spriteAtlas != null) {
+                // after the render cache stored the icons it removes
+                spriteAtlas.write(assetLoader.getOutputDir(), output);
+                // the entries an incremental build would reuse show icons that are gone now
+                deleteManifests();
+            }
+        } finally {
+            entryPool.shutdownNow();
+            output.close();
+        }
+
+        if (incremental) {
+            log.info("Incremental build: {} entries reused, {} entries rebuilt", reusedEntries.get(), rebuiltEntries.get());
+        }
+        assetLoader.saveSnapshot();
+        assetLoader.getCaches().logStats();
+        writeMetrics();
+        assetLoader.close();
+        if (trace != null) {
+            Trace.finish(Paths.get(trace));
+        }
         return 0;
     }
 
-    public void prepare(Book book, LocalizationManager localizationManager, TextureRenderer textureRenderer, PageRenderer pageRenderer) {
+    CacheManager newCacheManager() {
+        return cacheBudgetMb <= 0 ? new CacheManager() : new CacheManager(cacheBudgetMb << 20);
+    }
+
+    RenderCache newRenderCache(AssetLoader assetLoader) {
+        if (noRenderCache) {
+            return null;
+        }
+        return RenderCache.load(Paths.get(CACHE, "renders"), assetLoader, renderCacheMaxMb << 20,
+                Duration.ofDays(renderCacheMaxAgeDays));
+    }
+
+    interface LanguageTask {
+        void run(Language lang) throws Exception;
+    }
+
+    /**
+     * Run the task for every language, at most --parallel-languages at the same time.
+     */
+    void forEachLanguage(Collection<Language> languages, LanguageTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelLanguages));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Language lang : languages) {
+                futures.add(executor.submit(() -> {
+                    task.run(lang);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void generateLanguage(AssetLoader assetLoader, TextureRenderer baseRenderer, Language lang, Book fallback) throws Exception {
+        LocalizationManager localizationManager = new LazyLocalizationManager(assetLoader);
+        localizationManager.switchLanguage(lang);
+
+        EntryManifest manifest = incremental ? loadManifest(assetLoader, localizationManager) : null;
+        generateLanguage(assetLoader, baseRenderer, localizationManager, fallback, manifest);
+    }
+
+    /**
+     * Write the metrics counted since the last {@link Metrics#reset()}, as JSON and if asked for in the Prometheus format.
+     */
+    void writeMetrics() throws IOException {
+        Metrics.writeJson(Paths.get(metrics));
+        if (prometheus != null) {
+            Metrics.writePrometheus(Paths.get(prometheus));
+        }
+    }
+
+    /**
+     * Forget the entries of the last incremental builds of all languages, they are all rendered again.
+     */
+    private static void deleteManifests() throws IOException {
+        Path dir = Paths.get(CACHE, "manifest");
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * The entries of the last incremental build of the current language.
+     */
+    EntryManifest loadManifest(AssetLoader assetLoader, LocalizationManager localizationManager) throws IOException {
+        String lang = localizationManager.getCurrentLanguage().getKey();
+        Path manifestPath = Paths.get(CACHE, "manifest", lang + ".json");
+        if (!Files.isDirectory(Paths.get(outputDir, lang))) {
+            // the output was cleaned, the images of the last run are gone too
+            Files.deleteIfExists(manifestPath);
+        }
+        return EntryManifest.load(manifestPath, assetLoader, localizationManager);
+    }
+
+    /**
+     * @param localizationManager the localization of the language, already switched to it
+     * @param manifest the entries of the last build, null to render every entry
+     */
+    void generateLanguage(AssetLoader assetLoader, TextureRenderer baseRenderer, LocalizationManager localizationManager,
+                          Book fallback, EntryManifest manifest) throws Exception {
+        long start = System.nanoTime();
+        Language lang = localizationManager.getCurrentLanguage();
+        TextureRenderer textureRenderer = baseRenderer.forLanguage(localizationManager);
+        PageRenderer pageRenderer = new PageRenderer(assetLoader, localizationManager, textureRenderer, fragments);
+        HtmlRenderer htmlRenderer = new HtmlRenderer(localizationManager, outputDir, output);
+        htmlRenderer.setSprites(spriteAtlas != null);
+
+        Book book;
+        try (Trace.Span ignored = Trace.span("book", lang.getKey())) {
+            book = assetLoader.loadBook(FIELD_GUIDE, lang, fallback);
+        }
+        prepare(book, localizationManager, textureRenderer, pageRenderer, manifest, streaming ? htmlRenderer : null);
+        try (Trace.Span ignored = Trace.span("html", lang.getKey())) {
+            generateHtml(book, htmlRenderer, !streaming);
+        }
+
+        if (manifest != null) {
+            htmlRenderer.awaitPages();
+            manifest.save();
+            reusedEntries.addAndGet(manifest.getReused());
+            rebuiltEntries.addAndGet(manifest.getRebuilt());
+            ENTRIES_REUSED.add(manifest.getReused());
+            ENTRIES_REBUILT.add(manifest.getRebuilt());
+            log.info("{}: {} entries reused, {} rebuilt, {} pages written, {} unchanged", lang.getKey(),
+                    manifest.getReused(), manifest.getRebuilt(), htmlRenderer.getWrittenPages(), htmlRenderer.getUnchangedPages());
+        }
+        LANGUAGE_SECONDS.observeSince(start);
+    }
+
+    /**
+     * @param manifest the entries of the last run, null to render every entry
+     */
+    public void prepare(Book book, LocalizationManager localizationManager, TextureRenderer textureRenderer,
+                        PageRenderer pageRenderer, EntryManifest manifest) throws InterruptedException, ExecutionException {
+        prepare(book, localizationManager, textureRenderer, pageRenderer, manifest, null);
+    }
+
+    /**
+     * @param manifest the entries of the last run, null to render every entry
+     * @param streamTo writes the page of every entry as soon as it is rendered, then drops its html and pages,
+     *                 null to keep them for {@link #generateHtml}
+     */
+    public void prepare(Book book, LocalizationManager localizationManager, TextureRenderer textureRenderer,
+                        PageRenderer pageRenderer, EntryManifest manifest, HtmlRenderer streamTo) throws InterruptedException, ExecutionException {
 
         // prepare
         localizationManager.switchLanguage(book.getLanguage());
@@ -96,29 +443,91 @@ public class Main implements Callable<Integer>  {
         log.info("Start parsing lang: {}, {} {} - {}", book.getLanguage(), name, book.getSubtitle(), landingText);
 
         // render categories
+        List<BookEntry> entries = new ArrayList<>();
+        // entry -> the categories listing it, an entry page is written for each
+        Map<BookEntry, List<BookCategory>> entryCategories = new IdentityHashMap<>();
         for (BookCategory category : book.getCategories()) {
             prepareCategory(category, localizationManager);
 
             for (BookEntry entry : category.getEntries()) {
-
-                if (entry.isRendered()) {
-                    continue;
+                List<BookCategory> categories = entryCategories.computeIfAbsent(entry, k -> new ArrayList<>());
+                if (!entry.isRendered() && categories.isEmpty()) {
+                    entries.add(entry);
                 }
-                prepareEntry(entry, textureRenderer);
+                categories.add(category);
+            }
+        }
 
-                for (BookPage page : entry.getPages()) {
-                    try {
-                        pageRenderer.renderPage(entry, page);
-                    } catch (InternalException e) {
-                        log.error("Failed to parse page: {}", page, e);
+        if (streamTo != null) {
+            // every entry page lists the names of the other entries of its category
+            for (BookEntry entry : entries) {
+                entry.setName(TextFormatter.stripVanillaFormatting(entry.getName()));
+            }
+        }
+
+        // render entries, they only share thread-safe caches
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (BookEntry entry : entries) {
+            tasks.add(() -> {
+                if (manifest == null) {
+                    renderEntry(entry, textureRenderer, pageRenderer);
+                } else {
+                    renderEntry(entry, textureRenderer, pageRenderer, manifest);
+                }
+                if (streamTo != null) {
+                    for (BookCategory category : entryCategories.get(entry)) {
+                        streamTo.buildEntryPage(category, entry, book.getCategories());
                     }
+                    // the category and search pages only need the name, icon and search tree
+                    entry.setInnerHtml(null);
+                    entry.setPages(List.of());
                 }
+                return null;
+            });
+        }
+        for (Future<Void> future : entryPool.invokeAll(tasks)) {
+            future.get();
+        }
+    }
 
-                // render inner html
-                entry.setInnerHtml(String.join("", entry.getBuffer()));
-                entry.setRendered(true);
+    public void renderEntry(BookEntry entry, TextureRenderer textureRenderer, PageRenderer pageRenderer) {
+        long start = System.nanoTime();
+        try (Trace.Span ignored = Trace.span("entry", entry.getId())) {
+            prepareEntry(entry, textureRenderer);
+
+            List<BookPage> pages = entry.getPages();
+            for (int i = 0; i < pages.size(); i++) {
+                BookPage page = pages.get(i);
+                try (Trace.Span span = Trace.span("page", page.getType())) {
+                    pageRenderer.renderPage(entry, page, i);
+                } catch (InternalException e) {
+                    log.error("Failed to parse page: {}", page, e);
+                }
             }
         }
+        ENTRY_RENDER_SECONDS.observeSince(start);
+
+        // render inner html, the fragments are not needed anymore
+        entry.setInnerHtml(String.join("", entry.getBuffer()));
+        entry.setBuffer(new ArrayList<>());
+        entry.setRendered(true);
+    }
+
+    /**
+     * Reuse the entry of the last run if nothing it depends on has changed, otherwise render it and record what it read.
+     */
+    public void renderEntry(BookEntry entry, TextureRenderer textureRenderer, PageRenderer pageRenderer, EntryManifest manifest) {
+        if (manifest.reuse(entry)) {
+            entry.setName(TextFormatter.stripVanillaFormatting(entry.getName()));
+            return;
+        }
+
+        Map<String, Long> dependencies = new HashMap<>();
+        DependencyTracker.track(dependencies, () -> {
+            renderEntry(entry, textureRenderer, pageRenderer);
+            return null;
+        });
+        manifest.put(entry, dependencies);
     }
 
     public void prepareCategory(BookCategory category, LocalizationManager localizationManager) {
@@ -138,6 +547,12 @@ public class Main implements Callable<Integer>  {
             if (itemSrc != null) {
                 entry.setIconPath(itemSrc.getPath());
                 entry.setIconName(itemSrc.getName());
+                String sprite = textureRenderer.sprite(itemSrc.getPath());
+                entry.setIconSprite(sprite == null ? "" : sprite);
+                if (spriteAtlas != null) {
+                    // also the preview image of the entry page
+                    spriteAtlas.keep(itemSrc.getPath());
+                }
             } else {
                 log.error("Item image is null for entry: {}", entry.getId());
             }
@@ -147,8 +562,13 @@ public class Main implements Callable<Integer>  {
     }
 
     public void generateHtml(Book book, HtmlRenderer htmlRenderer) throws IOException, TemplateException {
+        generateHtml(book, htmlRenderer, true);
+    }
 
-        htmlRenderer.copyStaticFiles();
+    /**
+     * @param entryPages false if the entry pages are already written while rendering
+     */
+    public void generateHtml(Book book, HtmlRenderer htmlRenderer, boolean entryPages) throws IOException, TemplateException {
 
         // Home page
         htmlRenderer.buildHomePage(book.getCategories());
@@ -165,7 +585,7 @@ public class Main implements Callable<Integer>  {
 
         // Category pages
         for (BookCategory category : book.getCategories()) {
-            htmlRenderer.buildCategoryPage(category, book.getCategories());
+            htmlRenderer.buildCategoryPage(category, book.getCategories(), entryPages);
         }
 
         System.out.println("Static site generated successfully!");
@@ -0,0 +1,262 @@
+package io.github.tfgcn.fieldguide;
+
+import io.github.tfgcn.fieldguide.asset.AssetLoader;
+import io.github.tfgcn.fieldguide.asset.AssetSource;
+import io.github.tfgcn.fieldguide.asset.DependencyTracker;
+import io.github.tfgcn.fieldguide.asset.FsAssetSource;
+import io.github.tfgcn.fieldguide.data.patchouli.Book;
+import io.github.tfgcn.fieldguide.localization.Language;
+import io.github.tfgcn.fieldguide.localization.LazyLocalizationManager;
+import io.github.tfgcn.fieldguide.localization.LocalizationManager;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
+import io.github.tfgcn.fieldguide.render.EntryManifest;
+import io.github.tfgcn.fieldguide.render.HtmlRenderer;
+import io.github.tfgcn.fieldguide.render.OutputWriter;
+import io.github.tfgcn.fieldguide.render.PageFragments;
+import io.github.tfgcn.fieldguide.render.TextureRenderer;
+import io.github.tfgcn.fieldguide.serve.AssetWatcher;
+import io.github.tfgcn.fieldguide.serve.PreviewServer;
+import lombok.extern.slf4j.Slf4j;
+import picocli.CommandLine;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.tfgcn.fieldguide.Constants.FIELD_GUIDE;
+
+/**
+ * Builds the field guide, then rebuilds it whenever a file of kubejs/ or custom/ changes, and serves
+ * the output with live reload.
+ * <p>
+ * The asset loader, localizations and texture renderer stay in memory between builds. A change only
+ * invalidates what was read from the changed files, and only the entries depending on it are rendered
+ * again, see {@link EntryManifest}.
+ * <p>
+ * It runs until the process is stopped, e.g. with Ctrl+C. A shutdown hook stops the loop and waits for
+ * the snapshot to be saved.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+@CommandLine.Command(name = "serve", description = "Build, then rebuild on every change of kubejs/ and custom/ and serve the output.")
+public class ServeCommand implements Callable<Integer> {
+
+    private static final String BOOK_DIR = "assets/tfc/patchouli_books/" + FIELD_GUIDE + "/";
+    /**
+     * how long the shutdown hook waits for the snapshot
+     */
+    private static final long SHUTDOWN_SECONDS = 30;
+
+    @CommandLine.ParentCommand
+    private Main main;
+
+    @CommandLine.Option(
+            names = {"-p", "--port"},
+            description = "The port of the preview server.",
+            defaultValue = "8000",
+            showDefaultValue = CommandLine.Help.Visibility.ALWAYS
+    )
+    protected int port;
+
+    @CommandLine.Option(
+            names = {"--quiet-millis"},
+            description = "How long to wait for more changes before rebuilding.",
+            defaultValue = "100",
+            showDefaultValue = CommandLine.Help.Visibility.ALWAYS
+    )
+    protected long quietMillis;
+
+    private AssetLoader assetLoader;
+    private TextureRenderer textureRenderer;
+    private Book fallback;
+    private final Map<Language, LocalizationManager> localizations = new ConcurrentHashMap<>();
+    private final Map<Language, EntryManifest> manifests = new ConcurrentHashMap<>();
+
+    private volatile boolean stopping;
+
+    @Override
+    public Integer call() throws Exception {
+        String modpackPath = main.inputDir.replace("\\", "/");
+        String outputRootPath = main.outputDir.replace("\\", "/");
+
+        assetLoader = new AssetLoader(Paths.get(modpackPath), Paths.get(outputRootPath), main.newCacheManager());
+        DependencyTracker.setEnabled(true);
+        main.incremental = true;
+        main.entryPool = new ForkJoinPool(Math.max(1, main.parallelEntries));
+        main.output = new OutputWriter(main.outputThreads);
+
+        LocalizationManager localizationManager = new LazyLocalizationManager(assetLoader);
+        main.renderCache = main.newRenderCache(assetLoader);
+        textureRenderer = new TextureRenderer(assetLoader, localizationManager, main.output, main.renderCache);
+        main.fragments = new PageFragments(assetLoader, textureRenderer);
+        new HtmlRenderer(localizationManager, main.outputDir).copyStaticFiles();
+        fallback = assetLoader.loadBook(FIELD_GUIDE);
+
+        // only filesystem sources are edited, jars and the download cache are not watched
+        List<AssetSource> watched = new ArrayList<>();
+        for (AssetSource source : assetLoader.getSources()) {
+            if (source instanceof FsAssetSource && !"file:cache".equals(source.getSourceId())) {
+                watched.add(source);
+            }
+        }
+
+        // Ctrl+C ends the process without leaving the loop, the hook does
+        Thread serving = Thread.currentThread();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread shutdownHook = new Thread(() -> {
+            stopping = true;
+            serving.interrupt();
+            try {
+                if (!stopped.await(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("Stopped before the snapshot was saved");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "serve-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        try (AssetWatcher watcher = new AssetWatcher(watched);
+             PreviewServer server = new PreviewServer(Paths.get(outputRootPath), port)) {
+            long start = System.nanoTime();
+            build(Language.asList());
+            log.info("Built in {} ms", (System.nanoTime() - start) / 1_000_000);
+            server.start();
+
+            while (!stopping) {
+                Map<AssetSource, Set<String>> changes;
+                try {
+                    changes = watcher.take(quietMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                start = System.nanoTime();
+                try {
+                    if (rebuild(changes)) {
+                        server.reload();
+                        log.info("Rebuilt in {} ms", (System.nanoTime() - start) / 1_000_000);
+                    }
+                } catch (Exception e) {
+                    if (stopping) {
+                        break;
+                    }
+                    // keep serving, the next save may fix it
+                    log.error("Failed to rebuild: {}", changes, e);
+                }
+            }
+            log.info("Stopping");
+        } finally {
+            try {
+                main.entryPool.shutdownNow();
+                main.output.close();
+                assetLoader.saveSnapshot();
+                assetLoader.close();
+            } finally {
+                stopped.countDown();
+                if (!stopping) {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return false if nothing changed
+     */
+    private boolean rebuild(Map<AssetSource, Set<String>> changes) throws Exception {
+        Set<String> paths = new TreeSet<>();
+        Set<String> dependencies = new HashSet<>();
+        for (Map.Entry<AssetSource, Set<String>> entry : changes.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                paths.addAll(entry.getValue());
+                dependencies.addAll(assetLoader.invalidate(entry.getKey(), entry.getValue()));
+            }
+        }
+        if (paths.isEmpty()) {
+            return false;
+        }
+        int images = textureRenderer.invalidate(dependencies);
+        int fragments = main.fragments.invalidate(dependencies);
+        log.info("Changed: {}, {} images and {} page fragments invalidated", paths, images, fragments);
+
+        Set<Language> languages = EnumSet.noneOf(Language.class);
+        for (String path : paths) {
+            Language lang = getLanguage(path);
+            if (lang == null || lang == Language.EN_US) {
+                // en_us is the fallback of every language
+                languages.addAll(Language.asList());
+            } else {
+                languages.add(lang);
+            }
+
+            if (path.contains("/lang/")) {
+                // reloaded with their new translations
+                if (lang == null || lang == Language.EN_US) {
+                    localizations.clear();
+                } else {
+                    localizations.remove(lang);
+                }
+            }
+        }
+
+        if (paths.stream().anyMatch(path -> path.startsWith(BOOK_DIR + Constants.EN_US + "/") || path.equals(Constants.getBookPath()))) {
+            fallback = assetLoader.loadBook(FIELD_GUIDE);
+        }
+
+        build(languages);
+        return true;
+    }
+
+    private void build(Collection<Language> languages) throws Exception {
+        // counted per build, not since serve started
+        Metrics.reset();
+        main.forEachLanguage(languages, lang -> {
+            LocalizationManager localizationManager = localizations.get(lang);
+            if (localizationManager == null) {
+                localizationManager = new LazyLocalizationManager(assetLoader);
+                localizationManager.switchLanguage(lang);
+                localizations.put(lang, localizationManager);
+            }
+
+            EntryManifest manifest = manifests.get(lang);
+            manifest = manifest == null ? main.loadManifest(assetLoader, localizationManager) : manifest.next(localizationManager);
+            manifests.put(lang, manifest);
+
+            main.generateLanguage(assetLoader, textureRenderer, localizationManager, fallback, manifest);
+        });
+        // the pages are reloaded once everything is on disk
+        main.output.flush();
+        if (main.renderCache != null) {
+            main.renderCache.save();
+        }
+        // overwritten by every build, they describe the last one
+        main.writeMetrics();
+    }
+
+    /**
+     * @return the language of a book or lang file, or null if the file is used by every language
+     */
+    private static Language getLanguage(String path) {
+        String code = null;
+        if (path.startsWith(BOOK_DIR)) {
+            int index = path.indexOf('/', BOOK_DIR.length());
+            if (index > 0) {
+                code = path.substring(BOOK_DIR.length(), index);
+            }
+        } else if (path.startsWith("assets/") && path.contains("/lang/") && path.endsWith(".json")) {
+            code = path.substring(path.lastIndexOf('/') + 1, path.length() - ".json".length());
+        }
+        for (Language lang : Language.values()) {
+            if (lang.getKey().equals(code)) {
+                return lang;
+            }
+        }
+        return null;
+    }
+}
@@ -1,21 +1,95 @@
 package io.github.tfgcn.fieldguide.asset;
 
+import io.github.tfgcn.fieldguide.metrics.Metrics;
 import lombok.Getter;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * A lazy handle to a resource in an {@link AssetSource}.
+ * <p>
+ * Nothing is opened until {@link #openStream()} or {@link #readAllBytes()} is called,
+ * so listing or probing assets costs no file handles or inflaters.
+ *
+ * @author yanmaoyuan
+ */
 @Getter
 public class Asset {
+    private static final Metrics.Counter BYTES_READ = Metrics.counter("asset_bytes_read_total");
+
     private final String path;
-    private final InputStream inputStream;
     private final AssetSource source;
 
-    public Asset(String path, InputStream inputStream, AssetSource source) {
+    public Asset(String path, AssetSource source) {
         this.path = path;
-        this.inputStream = inputStream;
         this.source = source;
     }
 
+    /**
+     * Open a new stream to the resource. The caller must close it.
+     */
+    public InputStream openStream() throws IOException {
+        return new CountingInputStream(source.getInputStream(path));
+    }
+
+    public byte[] readAllBytes() throws IOException {
+        try (InputStream in = openStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * @return the uncompressed size in bytes, or -1 if unknown
+     */
+    public long size() throws IOException {
+        return source.size(path);
+    }
+
+    /**
+     * Adds the bytes read to the metrics when closed.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            BYTES_READ.add(count);
+            count = 0;
+            super.close();
+        }
+    }
+
     @Override
     public String toString() {
         return "Asset{source=" + getSource() + ", resourcePath='" + getPath() + "'}";
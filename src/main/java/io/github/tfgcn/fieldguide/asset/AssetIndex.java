@@ -0,0 +1,227 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Immutable index from resource path to the sources that provide it.
+ * <p>
+ * Built once at startup with a single pass over every jar's central directory and every
+ * filesystem source tree, so that lookups no longer probe each source in turn.
+ * Only {@code assets/} and {@code data/} are indexed, which are the only roots resources
+ * are looked up from.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class AssetIndex {
+
+    static final String[] INDEXED_ROOTS = {"assets/", "data/"};
+
+    private final List<AssetSource> sources;
+    /**
+     * resource path -> sources that have it, highest priority first
+     */
+    private final Map<String, List<AssetSource>> index;
+    /**
+     * all indexed paths in natural order, used for directory listing
+     */
+    private final String[] sortedPaths;
+    private final Map<AssetSource, Integer> priorities;
+
+    private AssetIndex(List<AssetSource> sources, Map<String, List<AssetSource>> index) {
+        this.sources = List.copyOf(sources);
+        this.index = Map.copyOf(index);
+        this.sortedPaths = index.keySet().toArray(new String[0]);
+        Arrays.sort(this.sortedPaths);
+
+        this.priorities = new IdentityHashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            priorities.put(sources.get(i), i);
+        }
+    }
+
+    /**
+     * Build the index.
+     *
+     * @param sources the asset sources, highest priority first
+     * @return the index
+     */
+    public static AssetIndex build(List<AssetSource> sources) {
+        return build(sources, JarIndexCache.disabled());
+    }
+
+    /**
+     * Build the index, taking the resource list of unchanged jars from the cache.
+     *
+     * @param sources the asset sources, highest priority first
+     * @param jarIndexCache the jar scans of this run
+     * @return the index
+     */
+    public static AssetIndex build(List<AssetSource> sources, JarIndexCache jarIndexCache) {
+        long start = System.nanoTime();
+
+        // scan sources concurrently, but keep the result in priority order
+        List<List<String>> scanned = sources.parallelStream().map(source -> scan(source, jarIndexCache)).toList();
+
+        Map<String, List<AssetSource>> index = new HashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            AssetSource source = sources.get(i);
+            for (String path : scanned.get(i)) {
+                index.computeIfAbsent(path, k -> new ArrayList<>(1)).add(source);
+            }
+        }
+        index.replaceAll((path, list) -> List.copyOf(list));
+
+        AssetIndex assetIndex = new AssetIndex(sources, index);
+        log.info("Built asset index: {} entries from {} sources in {} ms",
+                assetIndex.size(), sources.size(), (System.nanoTime() - start) / 1_000_000);
+        return assetIndex;
+    }
+
+    private static List<String> scan(AssetSource source, JarIndexCache jarIndexCache) {
+        if (source instanceof JarAssetSource) {
+            JarScan cached = jarIndexCache.get(source.getRootPath());
+            if (cached != null) {
+                return cached.resources();
+            }
+        }
+
+        List<String> paths = new ArrayList<>();
+        try {
+            source.forEachResource(path -> {
+                if (isIndexed(path)) {
+                    paths.add(path);
+                }
+            });
+        } catch (IOException e) {
+            log.error("Error indexing source: {}", source, e);
+        }
+        return paths;
+    }
+
+    static boolean isIndexed(String path) {
+        for (String root : INDEXED_ROOTS) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A copy of this index after files of a source were created or deleted.
+     *
+     * @param source the source that changed
+     * @param paths the changed paths, checked again against the source
+     */
+    public AssetIndex withChanges(AssetSource source, Collection<String> paths) {
+        Map<String, List<AssetSource>> copy = new HashMap<>(index);
+        int priority = priorities.get(source);
+        for (String path : paths) {
+            if (!isIndexed(path)) {
+                continue;
+            }
+            List<AssetSource> list = new ArrayList<>(copy.getOrDefault(path, List.of()));
+            list.remove(source);
+            if (source.exists(path)) {
+                int i = 0;
+                while (i < list.size() && priorities.get(list.get(i)) < priority) {
+                    i++;
+                }
+                list.add(i, source);
+            }
+            if (list.isEmpty()) {
+                copy.remove(path);
+            } else {
+                copy.put(path, List.copyOf(list));
+            }
+        }
+        return new AssetIndex(sources, copy);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public List<AssetSource> getSources() {
+        return sources;
+    }
+
+    public boolean contains(String resourcePath) {
+        return index.containsKey(resourcePath);
+    }
+
+    /**
+     * @return the sources that provide the resource, highest priority first. Never null.
+     */
+    public List<AssetSource> lookup(String resourcePath) {
+        return index.getOrDefault(resourcePath, List.of());
+    }
+
+    /**
+     * @return the highest priority source that provides the resource, or null if none does.
+     */
+    public AssetSource first(String resourcePath) {
+        List<AssetSource> list = index.get(resourcePath);
+        return list == null ? null : list.getFirst();
+    }
+
+    /**
+     * List every (path, source) pair under a directory.
+     * The result is grouped by source in priority order, then sorted by path.
+     *
+     * @param dir the directory, e.g. assets/tfc/patchouli_books/field_guide/en_us/entries
+     */
+    public List<Map.Entry<String, AssetSource>> list(String dir) {
+        String prefix = normalizeDir(dir);
+
+        List<Map.Entry<String, AssetSource>> result = new ArrayList<>();
+        int from = Arrays.binarySearch(sortedPaths, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        for (int i = from; i < sortedPaths.length && sortedPaths[i].startsWith(prefix); i++) {
+            String path = sortedPaths[i];
+            for (AssetSource source : index.get(path)) {
+                result.add(Map.entry(path, source));
+            }
+        }
+
+        // stable sort keeps paths ordered within each source
+        result.sort(Comparator.comparingInt(e -> priorities.get(e.getValue())));
+        return result;
+    }
+
+    /**
+     * List every distinct path under a directory, sorted.
+     *
+     * @param dir the directory, e.g. data
+     */
+    public List<String> listPaths(String dir) {
+        String prefix = normalizeDir(dir);
+
+        int from = Arrays.binarySearch(sortedPaths, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int to = from;
+        while (to < sortedPaths.length && sortedPaths[to].startsWith(prefix)) {
+            to++;
+        }
+        return Collections.unmodifiableList(Arrays.asList(sortedPaths).subList(from, to));
+    }
+
+    private static String normalizeDir(String path) {
+        if (path.isEmpty()) {
+            return "";
+        }
+        String normalized = path.replace("\\", "/");
+        if (!normalized.endsWith("/")) {
+            normalized += "/";
+        }
+        return normalized;
+    }
+}
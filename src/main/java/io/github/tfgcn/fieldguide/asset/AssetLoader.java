@@ -6,11 +6,11 @@ import io.github.tfgcn.fieldguide.data.fml.ModInfo;
 import io.github.tfgcn.fieldguide.data.fml.ModLoader;
 import io.github.tfgcn.fieldguide.localization.Language;
 import io.github.tfgcn.fieldguide.data.gtceu.utils.ResourceHelper;
-import io.github.tfgcn.fieldguide.data.minecraft.tag.TagElement;
 import io.github.tfgcn.fieldguide.data.minecraft.tag.Tags;
 import io.github.tfgcn.fieldguide.data.patchouli.Book;
 import io.github.tfgcn.fieldguide.data.patchouli.BookCategory;
 import io.github.tfgcn.fieldguide.data.patchouli.BookEntry;
+import io.github.tfgcn.fieldguide.data.recipe.Recipe;
 import io.github.tfgcn.fieldguide.data.tfc.TFCWood;
 import io.github.tfgcn.fieldguide.gson.JsonUtils;
 import io.github.tfgcn.fieldguide.exception.AssetNotFoundException;
@@ -20,12 +20,16 @@ import io.github.tfgcn.fieldguide.data.minecraft.blockstate.Variant;
 import io.github.tfgcn.fieldguide.data.minecraft.blockmodel.BlockModel;
 import io.github.tfgcn.fieldguide.Constants;
 import io.github.tfgcn.fieldguide.exception.InternalException;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
+import io.github.tfgcn.fieldguide.render.RasterKernels;
+import io.github.tfgcn.fieldguide.trace.Trace;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -36,9 +40,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static io.github.tfgcn.fieldguide.Constants.CACHE;
@@ -47,38 +51,72 @@ import static io.github.tfgcn.fieldguide.render.TextureRenderer.multiplyImageByC
 @Slf4j
 public class AssetLoader {
 
+    private static final String JAR_INDEX_CACHE = "jar-index.bin";
+    private static final String RESOLVED_SNAPSHOT = "resolved-snapshot.bin";
+    private static final String TAGS_DEPENDENCY = "data/*/tags/";
+    private static final Type RECIPE_ENTRIES = new TypeToken<List<RecipeIndex.Entry>>() {}.getType();
+    private static final Type TAG_VALUES = new TypeToken<Map<String, List<String>>>() {}.getType();
+
     private final Path instanceRoot;
     @Getter
     private final Path outputDir;
 
     private final List<AssetSource> sources;
-    private final Map<String, AssetSource> resourceCache;
-    private final Map<String, BlockModel> blockModelCache;
-    private final Map<String, BlockModel> itemModelCache;
-    private final Map<String, List<Tags>> tagsCache;
-
-    public Map<String, Map<String, Object>> recipeCache = new TreeMap<>();
-
-    private final Map<String, BufferedImage> registeredImage;
+    private AssetIndex assetIndex;
+    private ResolvedSnapshot snapshot;
+    /**
+     * resource path -> signature of the sources providing it, see {@link #getSignature(String)}
+     */
+    private final Map<String, Long> signatures = new ConcurrentHashMap<>();
+    /**
+     * resource paths each resolved model was built from, keyed by block:/item: + resource location
+     */
+    private final Map<String, Set<String>> modelDependencies = new ConcurrentHashMap<>();
+    private final SingleFlightCache<String, BlockModel> blockModelCache;
+    private final SingleFlightCache<String, BlockModel> itemModelCache;
+    private final SingleFlightCache<String, List<BlockState>> blockStateCache;
+    private final SingleFlightCache<String, List<Tags>> tagsCache;
+    private final SingleFlightCache<String, TagGraph> tagGraphs;
+    private volatile RecipeIndex recipeIndex;
+    private final SingleFlightCache<String, BufferedImage> registeredImage;
 
+    /**
+     * the caches of this loader and the renderers using it
+     */
     @Getter
-    private final AssetStats assetStats;
+    private final CacheManager caches;
+
+    private static final Metrics.Histogram TEXTURE_DECODE_SECONDS = Metrics.histogram("texture_decode_seconds");
+    private static final Metrics.Counter PIXELS_DECODED = Metrics.counter("texture_pixels_decoded_total");
+    private static final Metrics.Counter MISSING_TEXTURES = Metrics.counter("assets_missing_total", "kind", "textures");
+    private static final Metrics.Counter MISSING_ASSETS = Metrics.counter("assets_missing_total", "kind", "assets");
+    private static final Metrics.Counter MISSING_RECIPES = Metrics.counter("assets_missing_total", "kind", "recipes");
+    private static final Metrics.Counter RECIPES_LOADED = Metrics.counter("recipes_loaded_total");
+    /**
+     * source id -> lookups served by it
+     */
+    private final Map<String, Metrics.Counter> lookups = new ConcurrentHashMap<>();
 
     public AssetLoader(Path instanceRoot) {
         this(instanceRoot, Paths.get("output"));
     }
 
     public AssetLoader(Path instanceRoot, Path outputDir) {
+        this(instanceRoot, outputDir, new CacheManager());
+    }
+
+    public AssetLoader(Path instanceRoot, Path outputDir, CacheManager caches) {
         this.instanceRoot = instanceRoot;
         this.outputDir = outputDir;
         this.sources = new ArrayList<>();
-        this.resourceCache = new HashMap<>();
-        this.blockModelCache = new TreeMap<>();
-        this.itemModelCache = new TreeMap<>();
-        this.tagsCache = new TreeMap<>();
-        this.registeredImage = new HashMap<>();
-
-        assetStats = new AssetStats();
+        this.caches = caches;
+        this.blockModelCache = caches.cache("block_models");
+        this.itemModelCache = caches.cache("item_models");
+        this.blockStateCache = caches.cache("block_states");
+        this.tagsCache = caches.cache("tags");
+        this.tagGraphs = caches.cache("tag_graphs");
+        // decoded textures are the largest values, kept softly once evicted
+        this.registeredImage = caches.cache("textures", AssetLoader::imageBytes, true);
 
         initializeSources();
 
@@ -158,13 +196,7 @@ public class AssetLoader {
         BufferedImage base = multiplyImageByColor(ingot, color);
         BufferedImage secondaryOverlay = multiplyImageByColor(ingotSecondary, secondary);
 
-        BufferedImage combined = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = combined.createGraphics();
-        g.drawImage(base, 0, 0, null);
-        g.drawImage(ingotOverlay, 0, 0, null);
-        g.drawImage(secondaryOverlay, 0, 0, null);
-        g.dispose();
-        return combined;
+        return RasterKernels.layer(base, ingotOverlay, secondaryOverlay);
     }
 
     private void initializeSources() {
@@ -175,8 +207,12 @@ public class AssetLoader {
         // download minecraft and forge
         MCMeta.loadCache(Constants.MC_VERSION, Constants.FORGE_VERSION, Language.asList());
 
+        JarIndexCache jarIndexCache = JarIndexCache.load(Paths.get(CACHE, JAR_INDEX_CACHE));
+
         addCacheFolder(sources);// 0- Cache
-        addModsJars(sources);// 1- Mod JARs
+        try (Trace.Span ignored = Trace.span("scan", "mods")) {
+            addModsJars(sources, jarIndexCache);// 1- Mod JARs
+        }
         //addResourcePacks(sources);// 2- Resource Packs
         addKubejs(sources);// 3- KubeJS
         addCustomFolder(sources);// 4- Custom
@@ -186,6 +222,13 @@ public class AssetLoader {
             this.sources.add(sources.get(size - i - 1));
         }
         log.info("Total sources: {}", size);
+
+        try (Trace.Span ignored = Trace.span("index", "assets")) {
+            this.assetIndex = AssetIndex.build(this.sources, jarIndexCache);
+        }
+        jarIndexCache.save();
+
+        this.snapshot = ResolvedSnapshot.load(Paths.get(CACHE, RESOLVED_SNAPSHOT), this::getDependencySignature);
     }
 
     private void addCacheFolder(List<AssetSource> sources) {
@@ -204,15 +247,16 @@ public class AssetLoader {
         }
     }
 
-    private void addModsJars(List<AssetSource> sources) {
+    private void addModsJars(List<AssetSource> sources, JarIndexCache jarIndexCache) {
         Path modsPath = instanceRoot.resolve("mods");
         if (Files.exists(modsPath)) {
             log.info("Found Mods directory");
             try {
-                ModLoader modLoader = new ModLoader(modsPath);
+                ModLoader modLoader = new ModLoader(modsPath, jarIndexCache);
                 for (ModInfo mod : modLoader.getLoadedMods()) {
-                    if (hasAssets(mod.getJarPath())) {
-                        JarAssetSource source = new JarAssetSource(mod.getJarPath());
+                    if (modLoader.hasAssets(mod)) {
+                        // answers from the scan until a resource is read
+                        JarAssetSource source = new JarAssetSource(mod.getJarPath(), jarIndexCache.get(mod.getJarPath()));
                         sources.add(source);
                     } else {
                         log.debug("Ignore mod: {} {} @ {}", mod.getModId(), mod.getName(), mod.getJarPath());
@@ -224,19 +268,6 @@ public class AssetLoader {
         }
     }
 
-    private boolean hasAssets(Path jar) throws IOException {
-        JarFile jarFile = new JarFile(jar.toFile());
-        Enumeration<? extends JarEntry> entries = jarFile.entries();
-        while (entries.hasMoreElements()) {
-            JarEntry jarEntry = entries.nextElement();
-            String name = jarEntry.getName();
-            if (name.startsWith("assets") || name.startsWith("data")) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public void addResourcePacks(List<AssetSource> sources) {
         Path resourcePacksPath = instanceRoot.resolve("resourcepacks");
         if (Files.exists(resourcePacksPath)) {
@@ -264,42 +295,165 @@ public class AssetLoader {
         }
     }
 
-    public List<Asset> listAssets(String resourcePath) throws IOException {
+    /**
+     * @return the asset sources, highest priority first
+     */
+    public List<AssetSource> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * Forget everything loaded from files of a source that were modified, created or deleted.
+     * Cached values only know what they read while {@link DependencyTracker} is enabled.
+     *
+     * @param source the source the files belong to
+     * @param paths the changed resource paths
+     * @return the changed dependencies, including the tag registries they belong to
+     */
+    public synchronized Set<String> invalidate(AssetSource source, Collection<String> paths) {
+        List<String> indexChanges = new ArrayList<>();
+        for (String path : paths) {
+            if (assetIndex.lookup(path).contains(source) != source.exists(path)) {
+                indexChanges.add(path);
+            }
+        }
+        if (!indexChanges.isEmpty()) {
+            assetIndex = assetIndex.withChanges(source, indexChanges);
+        }
+
+        Set<String> dependencies = new HashSet<>(paths);
+        boolean recipes = false;
+        for (String path : paths) {
+            // data/<namespace>/tags/<registry>/<path>.json
+            int index = path.startsWith("data/") ? path.indexOf('/', 5) : -1;
+            if (index > 0 && path.startsWith("tags/", index + 1)) {
+                int end = path.indexOf('/', index + 6);
+                if (end > 0) {
+                    String registry = path.substring(index + 6, end);
+                    dependencies.add(TAGS_DEPENDENCY + registry);
+                    tagGraphs.remove(registry);
+                }
+            } else if (index > 0 && path.startsWith("recipes/", index + 1)) {
+                recipes = true;
+            }
+        }
+        if (recipes) {
+            recipeIndex = null;
+        }
+
+        signatures.keySet().removeAll(dependencies);
+        modelDependencies.values().removeIf(set -> !Collections.disjoint(set, dependencies));
+        snapshot.invalidate(dependencies);
+        blockModelCache.invalidate(dependencies);
+        itemModelCache.invalidate(dependencies);
+        blockStateCache.invalidate(dependencies);
+        tagsCache.invalidate(dependencies);
+        registeredImage.invalidate(dependencies);
+        return dependencies;
+    }
+
+    public List<Asset> listAssets(String resourcePath) {
         List<Asset> assets = new ArrayList<>();
-        for (AssetSource source : sources) {
-            assets.addAll(source.listAssets(resourcePath));
+        for (Map.Entry<String, AssetSource> entry : assetIndex.list(resourcePath)) {
+            assets.add(new Asset(entry.getKey(), entry.getValue()));
         }
         return assets;
     }
 
-    public Asset getAsset(AssetKey assetKey) {
-        return getAsset(assetKey.getResourcePath());
+    /**
+     * Check if any source provides the resource, without opening it.
+     */
+    public boolean exists(String resourcePath) {
+        recordDependency(resourcePath);
+        return assetIndex.contains(resourcePath);
     }
 
-    public Asset getAsset(String resourcePath) {
-        // Check cache first
-        if (resourceCache.containsKey(resourcePath)) {
-            AssetSource source = resourceCache.get(resourcePath);
-            try {
-                return new Asset(resourcePath, source.getInputStream(resourcePath), source);
-            } catch (IOException e) {
-                // Cache invalid, remove and continue
-                resourceCache.remove(resourcePath);
+    public boolean exists(AssetKey assetKey) {
+        return exists(assetKey.getResourcePath());
+    }
+
+    /**
+     * Signature of every source that provides the resource, in priority order.
+     * It changes when a source is added, removed or modified for this path.
+     */
+    private long getSignature(String resourcePath) {
+        return signatures.computeIfAbsent(resourcePath, path -> {
+            long signature = 1;
+            for (AssetSource source : assetIndex.lookup(path)) {
+                try {
+                    signature = 31 * signature + source.getSourceId().hashCode();
+                    signature = 31 * signature + source.fingerprint(path);
+                } catch (IOException e) {
+                    log.warn("Failed to fingerprint resource: {} from {}, message: {}", path, source, e.getMessage());
+                    return Long.MIN_VALUE;
+                }
             }
+            return signature;
+        });
+    }
+
+    /**
+     * The current signature of a dependency recorded by {@link DependencyTracker} during this or a previous run.
+     *
+     * @param dependency a resource path, or data/&#42;/tags/&lt;registry&gt; for a whole tag registry
+     */
+    public long getDependencySignature(String dependency) {
+        if (dependency.startsWith(TAGS_DEPENDENCY)) {
+            return signatures.computeIfAbsent(dependency, key -> {
+                String tagDir = "tags/" + key.substring(TAGS_DEPENDENCY.length()) + "/";
+                long signature = 1;
+                for (String path : assetIndex.listPaths("data")) {
+                    int index = path.indexOf('/', 5);
+                    if (index > 0 && path.startsWith(tagDir, index + 1)) {
+                        signature = 31 * signature + path.hashCode();
+                        signature = 31 * signature + getSignature(path);
+                    }
+                }
+                return signature;
+            });
         }
+        return getSignature(dependency);
+    }
+
+    private void recordDependency(String resourcePath) {
+        if (DependencyTracker.isTracking()) {
+            DependencyTracker.record(resourcePath, getSignature(resourcePath));
+        }
+    }
 
+    /**
+     * Persist the models, tag graphs and recipe files loaded in this run for the next one.
+     */
+    public void saveSnapshot() {
+        snapshot.save();
+    }
+
+    /**
+     * Release the mapped jars and the gauges of the caches, the loader can't be used afterward.
+     */
+    public void close() {
         for (AssetSource source : sources) {
-            if (source.exists(resourcePath)) {
+            if (source instanceof Closeable closeable) {
                 try {
-                    InputStream stream = source.getInputStream(resourcePath);
-                    resourceCache.put(resourcePath, source);
-                    return new Asset(resourcePath, stream, source);
+                    closeable.close();
                 } catch (IOException e) {
-                    log.error("Error reading resource: {} from {}", resourcePath, source, e);
+                    log.debug("Failed to close source: {}, message: {}", source, e.getMessage());
                 }
             }
         }
-        return null;
+        caches.close();
+    }
+
+    public Asset getAsset(AssetKey assetKey) {
+        return getAsset(assetKey.getResourcePath());
+    }
+
+    public Asset getAsset(String resourcePath) {
+        recordDependency(resourcePath);
+        AssetSource source = assetIndex.first(resourcePath);
+        lookups.computeIfAbsent(source == null ? "none" : source.getSourceId(),
+                id -> Metrics.counter("asset_lookups_total", "source", id)).increment();
+        return source == null ? null : new Asset(resourcePath, source);
     }
 
     public List<Asset> getAssets(AssetKey assetKey) {
@@ -307,19 +461,12 @@ public class AssetLoader {
     }
 
     public List<Asset> getAssets(String resourcePath) {
+        recordDependency(resourcePath);
         List<Asset> assets = new ArrayList<>();
+        List<AssetSource> list = assetIndex.lookup(resourcePath);
         // 逆序加载，然后者有机会被覆盖
-        for (int i = sources.size() - 1; i >= 0; i--) {
-            AssetSource source = sources.get(i);
-            if (source.exists(resourcePath)) {
-                try {
-                    InputStream stream = source.getInputStream(resourcePath);
-                    resourceCache.put(resourcePath, source);
-                    assets.add( new Asset(resourcePath, stream, source) );
-                } catch (IOException e) {
-                    log.error("Error reading resource: {} from {}", resourcePath, source, e);
-                }
-            }
+        for (int i = list.size() - 1; i >= 0; i--) {
+            assets.add(new Asset(resourcePath, list.get(i)));
         }
         return assets;
     }
@@ -340,7 +487,7 @@ public class AssetLoader {
             throw new AssetNotFoundException("Book not found: " + bookPath);
         }
 
-        Book book = JsonUtils.readFile(bookAsset.getInputStream(), Book.class);
+        Book book = JsonUtils.readFile(bookAsset.openStream(), Book.class);
         book.setLanguage(lang);
         book.setAssetSource(bookAsset);
 
@@ -348,7 +495,7 @@ public class AssetLoader {
         String categoryDir = Constants.getCategoryDir(bookId, lang.getKey());
         List<Asset> assets = listAssets(categoryDir);
         for (Asset asset : assets) {
-            BookCategory category = JsonUtils.readFile(asset.getInputStream(), BookCategory.class);
+            BookCategory category = JsonUtils.readFile(asset.openStream(), BookCategory.class);
             category.setAssetSource(categoryDir, asset);
 
             book.addCategory(category);
@@ -358,7 +505,7 @@ public class AssetLoader {
         String entryDir = Constants.getEntryDir(bookId, lang.getKey());
         assets = listAssets(entryDir);
         for (Asset asset : assets) {
-            BookEntry entry = JsonUtils.readFile(asset.getInputStream(), BookEntry.class);
+            BookEntry entry = JsonUtils.readFile(asset.openStream(), BookEntry.class);
             entry.setAssetSource(entryDir, asset);
 
             if (Constants.EXCLUDES_ENTRIES.contains(entry.getId())) {
@@ -376,7 +523,7 @@ public class AssetLoader {
         String bookPath = Constants.getBookPath(bookId);
         Asset bookAsset = getAsset(bookPath);
 
-        Book book = JsonUtils.readFile(bookAsset.getInputStream(), Book.class);
+        Book book = JsonUtils.readFile(bookAsset.openStream(), Book.class);
         book.setLanguage(lang);
         book.setAssetSource(bookAsset);
 
@@ -386,14 +533,14 @@ public class AssetLoader {
             String path = Constants.getCategoryPath(lang.getKey(), category.getId());
             Asset asset = getAsset(path);
             if (asset != null) {
-                BookCategory localizedCategory = JsonUtils.readFile(asset.getInputStream(), BookCategory.class);
+                BookCategory localizedCategory = JsonUtils.readFile(asset.openStream(), BookCategory.class);
                 localizedCategory.setAssetSource(categoryDir, asset);
                 book.addCategory(localizedCategory);
             } else {
                 // fallback
                 path = Constants.getCategoryPath(category.getId());
                 asset = getAsset(path);
-                BookCategory fallbackCategory = JsonUtils.readFile(asset.getInputStream(), BookCategory.class);
+                BookCategory fallbackCategory = JsonUtils.readFile(asset.openStream(), BookCategory.class);
                 fallbackCategory.setAssetSource(fallbackCategoryDir, asset);
                 book.addCategory(fallbackCategory);
             }
@@ -405,14 +552,14 @@ public class AssetLoader {
             String path = Constants.getEntryPath(lang.getKey(), entry.getId());
             Asset asset = getAsset(path);
             if (asset != null) {
-                BookEntry localizedEntry = JsonUtils.readFile(asset.getInputStream(), BookEntry.class);
+                BookEntry localizedEntry = JsonUtils.readFile(asset.openStream(), BookEntry.class);
                 localizedEntry.setAssetSource(entryDir, asset);
                 book.addEntry(localizedEntry);
             } else {
                 // fallback
                 path = Constants.getEntryPath(entry.getId());
                 asset = getAsset(path);
-                BookEntry fallbackEntry = JsonUtils.readFile(asset.getInputStream(), BookEntry.class);
+                BookEntry fallbackEntry = JsonUtils.readFile(asset.openStream(), BookEntry.class);
                 fallbackEntry.setAssetSource(fallbackEntryDir, asset);
                 book.addEntry(fallbackEntry);
             }
@@ -427,7 +574,7 @@ public class AssetLoader {
         AssetKey assetKey = new AssetKey(namespace + ":" + lang, "lang", "assets", ".json");
         List<Asset> assets = getAssets(assetKey);
         for (Asset asset : assets) {
-            try (JsonReader reader = new JsonReader(new InputStreamReader(asset.getInputStream(), StandardCharsets.UTF_8))) {
+            try (JsonReader reader = new JsonReader(new InputStreamReader(asset.openStream(), StandardCharsets.UTF_8))) {
                 Map<String, String> data = new HashMap<>();
 
                 reader.beginObject();
@@ -464,33 +611,33 @@ public class AssetLoader {
         return assetKey;
     }
 
-    public BufferedImage loadTexture(String path) {
-        if (path != null && registeredImage.containsKey(path)) {
-            return registeredImage.get(path);
-        }
-
-        AssetKey assetKey;
-        if (path.endsWith(".png")) {
-            assetKey = new AssetKey(path, null, "assets", ".png");
-        } else {
-            assetKey = new AssetKey(path, "textures", "assets", ".png");
-        }
+    /**
+     * @return the bytes of the pixels of a decoded image
+     */
+    public static long imageBytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
 
-        BufferedImage image = loadTexture(assetKey);
-        registeredImage.put(path, image);
-        return image;
+    public BufferedImage loadTexture(String path) {
+        return registeredImage.get(path, key -> loadTexture(getTextureKey(key)));
     }
 
     public BufferedImage loadTexture(AssetKey assetKey) {
         Asset asset = getAsset(assetKey);
         if (asset == null) {
             log.error("Texture not found: {}", assetKey);
-            assetStats.addMissingTexture(assetKey.getId());
+            MISSING_TEXTURES.increment();
             throw new AssetNotFoundException("Texture not found: " + assetKey.getResourcePath());
         }
 
-        try {
-            return ImageIO.read(asset.getInputStream());
+        long start = System.nanoTime();
+        try (InputStream in = asset.openStream()) {
+            BufferedImage image = ImageIO.read(in);
+            if (image != null) {
+                TEXTURE_DECODE_SECONDS.observeSince(start);
+                PIXELS_DECODED.add((long) image.getWidth() * image.getHeight());
+            }
+            return image;
         } catch (IOException e) {
             log.error("Error loading texture: {}", assetKey, e);
             throw new InternalException("Error loading texture: " + assetKey);
@@ -502,7 +649,7 @@ public class AssetLoader {
 
         Asset asset = getAsset(assetKey.getResourcePath());
         if (asset == null) {
-            assetStats.addMissingAsset(resourceLocation);
+            MISSING_ASSETS.increment();
             throw new AssetNotFoundException("Resource not found: " + resourceLocation + " in " + assetKey.getResourcePath());
         }
         return asset;
@@ -521,10 +668,10 @@ public class AssetLoader {
             }
         }
 
-        if (blockModelCache.containsKey(modelId)) {
-            return blockModelCache.get(modelId);
-        }
+        return blockModelCache.get(modelId, key -> resolveBlockModelWithState(key, blockVariant));
+    }
 
+    private BlockModel resolveBlockModelWithState(String modelId, BlockVariant blockVariant) {
         String blockStateId = blockVariant.getBlock();
         Map<String, String> state = blockVariant.getProperties();
         List<BlockState> list = loadBlockStates(blockVariant.getBlock());
@@ -540,7 +687,7 @@ public class AssetLoader {
                     log.info("BlockState: No matching variant found for '{}'", blockStateId);
                 } else {
                     blockVariant.setVariants(variants);
-                    Variant variant = BlockState.selectByWeight(variants);
+                    Variant variant = BlockState.selectByWeight(variants, modelId);
                     blockVariant.setVariant(variant);
                     break;
                 }
@@ -567,7 +714,7 @@ public class AssetLoader {
             Variant variant;
             if (variants.size() > 1) {
                 log.debug("multi variants found, {} -> {}", modelId, variants);
-                variant = BlockState.selectByWeight(variants);
+                variant = BlockState.selectByWeight(variants, modelId);
             } else {
                 variant = variants.getFirst();
             }
@@ -579,7 +726,7 @@ public class AssetLoader {
                 if (defaultVariant != null && !defaultVariant.isEmpty()) {
                     log.info("Use default variant for {}, {}", modelId, defaultVariant);
 
-                    Variant defaultVar = BlockState.selectByWeight(defaultVariant);
+                    Variant defaultVar = BlockState.selectByWeight(defaultVariant, modelId);
                     model = loadModel(defaultVar.getModel());
                     break;
                 }
@@ -590,7 +737,6 @@ public class AssetLoader {
             }
         }
 
-        blockModelCache.put(modelId, model);
         return model;
     }
 
@@ -613,42 +759,43 @@ public class AssetLoader {
     }
 
     public static Map<String, String> parseBlockProperties(String properties) {
-        Map<String, String> state = new HashMap<>();
-        if (properties.contains("=")) {
-            String[] pairs = properties.split(",");
-            for (String pair : pairs) {
-                String[] keyValue = pair.split("=");
-                state.put(keyValue[0], keyValue[1]);
-            }
-        }
-        return state;
+        return BlockState.parseBlockProperties(properties);
     }
 
     public BlockState loadBlockState(String id) {
         Asset asset = loadResource(id, "blockstates", "assets", ".json");
         try {
-            return JsonUtils.readFile(asset.getInputStream(), BlockState.class);
+            BlockState blockState = JsonUtils.readFile(asset.openStream(), BlockState.class);
+            blockState.getMatcher();
+            return blockState;
         } catch (IOException e) {
             log.error("Failed to read blockstate:{}, message: {}", id, e.getMessage());
             throw new InternalException("Failed to read id: " + id);
         }
     }
 
+    /**
+     * Load the block state from every source, lowest priority first. Each one is compiled for matching once.
+     */
     public List<BlockState> loadBlockStates(String id) {
-        List<BlockState> list = new ArrayList<>();
         AssetKey assetKey = new AssetKey(id, "blockstates", "assets", ".json");
+        return blockStateCache.get(assetKey.getResourcePath(), path -> readBlockStates(assetKey));
+    }
 
+    private List<BlockState> readBlockStates(AssetKey assetKey) {
+        List<BlockState> list = new ArrayList<>();
         List<Asset> assets = getAssets(assetKey);
         for (Asset asset : assets) {
             try {
-                BlockState blockState = JsonUtils.readFile(asset.getInputStream(), BlockState.class);
+                BlockState blockState = JsonUtils.readFile(asset.openStream(), BlockState.class);
+                blockState.getMatcher();
                 list.add(blockState);
             } catch (IOException e) {
                 log.error("Failed to read blockstate:{}, message: {}", asset.getPath(), e.getMessage());
             }
         }
 
-        return list;
+        return List.copyOf(list);
     }
 
     public BlockVariant loadBlockVariant(String blockStateId) {
@@ -671,7 +818,7 @@ public class AssetLoader {
                 throw new RuntimeException("BlockState: No matching variant found for '" + blockStateId + "'");
             }
 
-            Variant variant = blockState.selectByWeight(variants);
+            Variant variant = BlockState.selectByWeight(variants, blockStateId);
             blockVariant.setVariant(variant);
             return blockVariant;
         } else if (blockState.hasMultipart()) {
@@ -690,20 +837,18 @@ public class AssetLoader {
     }
 
     public BlockModel loadModel(String modelId) {
-        String resourceLocation;
-        if (modelId.indexOf(':') < 0) {
-            resourceLocation = "minecraft:" + modelId;
-        } else {
-            resourceLocation = modelId;
-        }
-        if (blockModelCache.containsKey(resourceLocation)) {
-            log.debug("Hitting block model cache: {}", resourceLocation);
-            return blockModelCache.get(resourceLocation);
+        return blockModelCache.get(toResourceLocation(modelId), this::resolveModel);
+    }
+
+    private BlockModel resolveModel(String resourceLocation) {
+        BlockModel resolved = getSnapshotModel("model:" + resourceLocation, "block:" + resourceLocation);
+        if (resolved != null) {
+            return resolved;
         }
 
         Asset asset = loadResource(resourceLocation, "models", "assets", ".json");
         try {
-            BlockModel model = JsonUtils.readFile(asset.getInputStream(), BlockModel.class);
+            BlockModel model = JsonUtils.readFile(asset.openStream(), BlockModel.class);
             model.getInherits().add(resourceLocation);
 
             String parent = model.getParent();
@@ -714,7 +859,7 @@ public class AssetLoader {
 
             model.mergeWithParent();// important
 
-            blockModelCache.put(resourceLocation, model);
+            putSnapshotModel("model:" + resourceLocation, "block:" + resourceLocation, model, asset);
             return model;
         } catch (Exception e) {
             log.error("Load model failed, {}, message: {}", resourceLocation, e.getMessage());
@@ -723,22 +868,20 @@ public class AssetLoader {
     }
 
     public BlockModel loadBlockModel(String blockId) {
-        String resourceLocation;
-        if (blockId.indexOf(':') < 0) {
-            resourceLocation = "minecraft:" + blockId;
-        } else {
-            resourceLocation = blockId;
-        }
-        if (blockModelCache.containsKey(resourceLocation)) {
-            log.debug("Hitting block model cache: {}", resourceLocation);
-            return blockModelCache.get(resourceLocation);
+        return blockModelCache.get(toResourceLocation(blockId), resourceLocation -> resolveBlockModel(blockId, resourceLocation));
+    }
+
+    private BlockModel resolveBlockModel(String blockId, String resourceLocation) {
+        BlockModel resolved = getSnapshotModel("block_model:" + resourceLocation, "block:" + resourceLocation);
+        if (resolved != null) {
+            return resolved;
         }
 
         // TODO 支持blockstate，例如 // tfc:charcoal_forge[heat_level=7]
 
         Asset asset = loadResource(blockId, "models/block", "assets", ".json");
         try {
-            BlockModel model = JsonUtils.readFile(asset.getInputStream(), BlockModel.class);
+            BlockModel model = JsonUtils.readFile(asset.openStream(), BlockModel.class);
             model.getInherits().add(resourceLocation);
 
             String parent = model.getParent();
@@ -748,7 +891,7 @@ public class AssetLoader {
             }
 
             model.mergeWithParent();// important
-            blockModelCache.put(resourceLocation, model);
+            putSnapshotModel("block_model:" + resourceLocation, "block:" + resourceLocation, model, asset);
             return model;
         } catch (Exception e) {
             log.warn("Failed to load block model: {}", blockId, e);
@@ -757,20 +900,18 @@ public class AssetLoader {
     }
 
     public BlockModel loadItemModel(String itemId) {
-        String resourceLocation;
-        if (itemId.indexOf(':') < 0) {
-            resourceLocation = "minecraft:" + itemId;
-        } else {
-            resourceLocation = itemId;
-        }
-        if (itemModelCache.containsKey(resourceLocation)) {
-            log.debug("Hitting item model cache: {}", resourceLocation);
-            return itemModelCache.get(resourceLocation);
+        return itemModelCache.get(toResourceLocation(itemId), resourceLocation -> resolveItemModel(itemId, resourceLocation));
+    }
+
+    private BlockModel resolveItemModel(String itemId, String resourceLocation) {
+        BlockModel resolved = getSnapshotModel("item_model:" + resourceLocation, "item:" + resourceLocation);
+        if (resolved != null) {
+            return resolved;
         }
 
         Asset asset = loadResource(itemId, "models/item", "assets", ".json");
         try {
-            BlockModel model = JsonUtils.readFile(asset.getInputStream(), BlockModel.class);
+            BlockModel model = JsonUtils.readFile(asset.openStream(), BlockModel.class);
             model.getInherits().add(resourceLocation);
 
             String parent = model.getParent();
@@ -780,7 +921,7 @@ public class AssetLoader {
             }
 
             model.mergeWithParent();// important
-            itemModelCache.put(resourceLocation, model);
+            putSnapshotModel("item_model:" + resourceLocation, "item:" + resourceLocation, model, asset);
             return model;
         } catch (Exception e) {
             log.warn("Failed to load item model: {}", itemId, e);
@@ -788,28 +929,113 @@ public class AssetLoader {
         }
     }
 
-    public Map<String, Object> loadRecipe(String recipeId) {
-        assetStats.getLoadRecipes().add(recipeId);
-        if (recipeCache.containsKey(recipeId)) {
-            return recipeCache.get(recipeId);
+    private static String toResourceLocation(String id) {
+        return id.indexOf(':') < 0 ? "minecraft:" + id : id;
+    }
+
+    private BlockModel getSnapshotModel(String snapshotKey, String cacheKey) {
+        ResolvedSnapshot.Resolved<ResolvedModel> resolved = snapshot.get(snapshotKey, ResolvedModel.class);
+        if (resolved == null) {
+            return null;
         }
-        AssetKey assetKey = new AssetKey(recipeId, "recipes", "data", ".json");
-        Asset asset = getAsset(assetKey.getResourcePath());
-        if (asset == null) {
-            assetStats.getMissingRecipes().add(recipeId);
+        BlockModel model = resolved.value().model();
+        model.getInherits().addAll(resolved.value().inherits());
+        modelDependencies.put(cacheKey, resolved.dependencies());
+        resolved.dependencies().forEach(this::recordDependency);
+        return model;
+    }
+
+    private void putSnapshotModel(String snapshotKey, String cacheKey, BlockModel model, Asset asset) {
+        Set<String> dependencies = new TreeSet<>();
+        dependencies.add(asset.getPath());
+        String parent = model.getParent();
+        if (parent != null && !parent.isEmpty()) {
+            // builtin parents have no dependencies
+            dependencies.addAll(modelDependencies.getOrDefault("block:" + toResourceLocation(parent), Set.of()));
+        }
+        modelDependencies.put(cacheKey, dependencies);
+        snapshot.put(snapshotKey, new ResolvedModel(model, model.getInherits()), dependencies);
+    }
+
+    /**
+     * inherits is transient in BlockModel, so it is stored next to it
+     */
+    private record ResolvedModel(BlockModel model, Set<String> inherits) {
+    }
+
+    /**
+     * @return the typed recipe
+     * @throws AssetNotFoundException if there is no such recipe
+     */
+    public Recipe getRecipe(String recipeId) {
+        String id = toResourceLocation(recipeId);
+        int index = id.indexOf(':');
+        recordDependency("data/" + id.substring(0, index) + "/recipes/" + id.substring(index + 1) + ".json");
+        RECIPES_LOADED.increment();
+        Recipe recipe = getRecipeIndex().get(id);
+        if (recipe == null) {
+            MISSING_RECIPES.increment();
             log.error("Recipe not found: {}", recipeId);
             throw new AssetNotFoundException("Recipe not found: " + recipeId);
         }
+        return recipe;
+    }
 
-        Type mapType = new TypeToken<Map<String, Object>>() {}.getType();
-        try {
-            Map<String, Object> data = JsonUtils.readFile(asset.getInputStream(), mapType);
-            recipeCache.put(recipeId, data);
-            return data;
-        } catch (IOException e) {
-            log.error("Error loading recipe: {}", recipeId, e);
-            throw new InternalException("Error loading recipe: " + recipeId);
+    /**
+     * The index of every recipe, built on first use.
+     */
+    public RecipeIndex getRecipeIndex() {
+        RecipeIndex index = recipeIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = recipeIndex;
+                if (index == null) {
+                    // recipes record their own file when looked up
+                    index = DependencyTracker.untracked(this::buildRecipeIndex);
+                    recipeIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * The recipe files are kept in the snapshot per source providing them, only the sources
+     * whose recipe files changed are read again.
+     */
+    private RecipeIndex buildRecipeIndex() {
+        // source -> the recipe files it provides first
+        Map<AssetSource, List<String>> paths = new LinkedHashMap<>();
+        // data/<namespace>/recipes/<path>.json
+        for (String path : assetIndex.listPaths("data")) {
+            int index = path.indexOf('/', 5);
+            if (index > 0 && path.startsWith("recipes/", index + 1) && path.endsWith(".json")) {
+                paths.computeIfAbsent(assetIndex.first(path), k -> new ArrayList<>()).add(path);
+            }
+        }
+
+        List<RecipeIndex.Entry> entries = new ArrayList<>();
+        int reused = 0;
+        for (Map.Entry<AssetSource, List<String>> group : paths.entrySet()) {
+            AssetSource source = group.getKey();
+            Set<String> dependencies = new HashSet<>(group.getValue());
+            String key = "recipes:" + source.getSourceId();
+            ResolvedSnapshot.Resolved<List<RecipeIndex.Entry>> resolved = snapshot.get(key, RECIPE_ENTRIES);
+            // a recipe file added to the source is not one of the dependencies
+            if (resolved != null && resolved.dependencies().equals(dependencies)) {
+                entries.addAll(resolved.value());
+                reused++;
+                continue;
+            }
+            List<RecipeIndex.Entry> read = group.getValue().parallelStream()
+                    .map(path -> RecipeIndex.read(new Asset(path, source)))
+                    .filter(Objects::nonNull)
+                    .toList();
+            snapshot.put(key, read, dependencies);
+            entries.addAll(read);
         }
+        log.info("Recipe files: {} sources read, {} from the snapshot", paths.size() - reused, reused);
+        return RecipeIndex.index(entries);
     }
 
     //////////// tags
@@ -818,66 +1044,114 @@ public class AssetLoader {
      * 加载流体标签
      */
     public List<String> loadFluidTag(String identifier) {
-        return sortTagElements(identifier, this::loadFluidTagData);
+        return getTagGraph("fluids").getMembers(identifier);
     }
 
     /**
      * 加载物品标签
      */
     public List<String> loadItemTag(String identifier) {
-        return sortTagElements(identifier, this::loadItemTagData);
+        return getTagGraph("items").getMembers(identifier);
     }
 
     /**
      * 加载方块标签
      */
     public List<String> loadBlockTag(String identifier) {
-        return sortTagElements(identifier, this::loadBlockTagData);
+        return getTagGraph("blocks").getMembers(identifier);
     }
 
     /**
-     * 排序并去重标签元素
+     * The tag graph of a registry, built on first use.
+     *
+     * @param registry items, blocks or fluids
      */
-    private List<String> sortTagElements(String identifier,
-                                         Function<String, List<Tags>> loadFunc) {
-        Set<String> tagSet = new LinkedHashSet<>(); // 保持插入顺序但去重
-        loadTagElementsRecursive(identifier, loadFunc, tagSet, new HashSet<>());
-        return new ArrayList<>(tagSet);
+    public TagGraph getTagGraph(String registry) {
+        if (DependencyTracker.isTracking()) {
+            String dependency = TAGS_DEPENDENCY + registry;
+            DependencyTracker.record(dependency, getDependencySignature(dependency));
+        }
+        // every tag file of the registry is covered by the dependency above
+        return DependencyTracker.untracked(() -> tagGraphs.get(registry, this::buildTagGraph));
     }
 
     /**
-     * 递归加载标签元素
+     * The flattened graph is kept in the snapshot until a tag file of the registry changes.
+     * The values of the tag files are kept per source, only the sources whose tag files changed are read again.
      */
-    private void loadTagElementsRecursive(String identifier,
-                                          Function<String, List<Tags>> loadFunc,
-                                          Set<String> result,
-                                          Set<String> visited) {
-        // 防止循环引用
-        if (visited.contains(identifier)) {
-            return;
+    private TagGraph buildTagGraph(String registry) {
+        String graphKey = "tag_graph:" + registry;
+        ResolvedSnapshot.Resolved<StoredTagGraph> stored = snapshot.get(graphKey, StoredTagGraph.class);
+        if (stored != null) {
+            StoredTagGraph value = stored.value();
+            return TagGraph.restore(registry, value.members(), value.edgeCount(), value.cycleCount());
         }
-        visited.add(identifier);
 
-        try {
-            List<Tags> tagsList = loadFunc.apply(identifier);
-
-            for (Tags json : tagsList) {
-                List<TagElement> values = json.getValues();
-                for (TagElement element : values) {
-                    String id = element.getId();
-                    if (id.startsWith("#")) {
-                        String nestedTag = id.substring(1);
-                        loadTagElementsRecursive(nestedTag, loadFunc, result, visited);
-                    } else {
-                        result.add(id);
-                    }
+        String tagDir = "tags/" + registry + "/";
+        List<String> tagIds = new ArrayList<>();
+        // source -> the tag files it provides
+        Map<AssetSource, List<String>> paths = new LinkedHashMap<>();
+        // data/<namespace>/tags/<registry>/<path>.json
+        for (String path : assetIndex.listPaths("data")) {
+            int index = path.indexOf('/', 5);
+            if (index > 0 && path.startsWith(tagDir, index + 1) && path.endsWith(".json")) {
+                String namespace = path.substring(5, index);
+                String tag = path.substring(index + 1 + tagDir.length(), path.length() - 5);
+                tagIds.add(namespace + ":" + tag);
+                for (AssetSource source : assetIndex.lookup(path)) {
+                    paths.computeIfAbsent(source, k -> new ArrayList<>()).add(path);
                 }
             }
+        }
+
+        // source -> tag file -> its values
+        Map<AssetSource, Map<String, List<String>>> values = new HashMap<>();
+        for (Map.Entry<AssetSource, List<String>> group : paths.entrySet()) {
+            AssetSource source = group.getKey();
+            Set<String> dependencies = new HashSet<>(group.getValue());
+            String key = "tags:" + registry + ":" + source.getSourceId();
+            ResolvedSnapshot.Resolved<Map<String, List<String>>> resolved = snapshot.get(key, TAG_VALUES);
+            if (resolved != null && resolved.dependencies().equals(dependencies)) {
+                values.put(source, resolved.value());
+                continue;
+            }
+            Map<String, List<String>> read = group.getValue().parallelStream()
+                    .collect(Collectors.toMap(path -> path, path -> readTagValues(new Asset(path, source))));
+            snapshot.put(key, read, dependencies);
+            values.put(source, read);
+        }
+
+        String resourceType = "tags/" + registry;
+        TagGraph graph = TagGraph.buildFromValues(registry, tagIds, tag -> {
+            String path = new AssetKey(tag, resourceType, "data", ".json").getResourcePath();
+            List<String> result = new ArrayList<>();
+            List<AssetSource> list = assetIndex.lookup(path);
+            // lowest priority first
+            for (int i = list.size() - 1; i >= 0; i--) {
+                result.addAll(values.getOrDefault(list.get(i), Map.of()).getOrDefault(path, List.of()));
+            }
+            return result;
+        });
+        snapshot.put(graphKey, new StoredTagGraph(graph.getAllMembers(), graph.getEdgeCount(), graph.getCycleCount()),
+                Set.of(TAGS_DEPENDENCY + registry));
+        return graph;
+    }
+
+    private List<String> readTagValues(Asset asset) {
+        try {
+            return TagGraph.values(JsonUtils.readFile(asset.openStream(), Tags.class));
         } catch (Exception e) {
-            log.error("Failed to load tag: {}", identifier, e);
+            log.error("Failed to parse tag asset: {}", asset.getPath(), e);
+            return List.of();
         }
     }
 
+    /**
+     * the members of a tag graph as kept in the snapshot
+     */
+    private record StoredTagGraph(Map<String, String[]> members, int edgeCount, int cycleCount) {
+    }
+
     /// `data/<namespace>/tags/<数据包路径>` for datapack
     /// `data/<namespace>/tags/blocks` for blocks
     /// `data/<namespace>/tags/entity_types` for entity_types
@@ -899,21 +1173,21 @@ public class AssetLoader {
     }
 
     private List<Tags> parseTagAsset(AssetKey assetKey) {
-        if (tagsCache.containsKey(assetKey.getId())) {
-            return tagsCache.get(assetKey.getId());
-        }
+        return tagsCache.get(assetKey.getResourcePath(), path -> readTagAssets(assetKey));
+    }
+
+    private List<Tags> readTagAssets(AssetKey assetKey) {
         List<Tags> tagsList = new ArrayList<>();
         List<Asset> assets = getAssets(assetKey);
         for (Asset asset : assets) {
             try {
-                Tags tags = JsonUtils.readFile(asset.getInputStream(), Tags.class);
+                Tags tags = JsonUtils.readFile(asset.openStream(), Tags.class);
                 tagsList.add(tags);
             } catch (Exception e) {
                 log.error("Failed to parse tag asset: {}", asset.getPath(), e);
             }
         }
 
-        tagsCache.put(assetKey.getId(), tagsList);
         return tagsList;
     }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Getter
 public abstract class AssetSource {
@@ -23,10 +24,25 @@ public abstract class AssetSource {
 
     public abstract InputStream getInputStream(String resourcePath) throws IOException;
 
+    /**
+     * @return the uncompressed size of the resource in bytes, or -1 if unknown
+     */
+    public abstract long size(String resourcePath) throws IOException;
+
+    /**
+     * @return a value that changes whenever the content of the resource may have changed
+     */
+    public abstract long fingerprint(String resourcePath) throws IOException;
+
     public abstract List<Asset> listAssets(String resourcePath) throws IOException;
 
     public abstract boolean isDirectory(String resourcePath);
 
+    /**
+     * Visit the path of every file in this source, relative to its root and separated by '/'.
+     */
+    public abstract void forEachResource(Consumer<String> action) throws IOException;
+
     @Override
     public String toString() {
         return sourceId;
@@ -0,0 +1,218 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import io.github.tfgcn.fieldguide.metrics.Metrics;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * The caches of a build, with one memory budget.
+ * <p>
+ * Caches of decoded images and materials are weighed by the bytes of their values. When the weight of
+ * all of them exceeds the budget, the least recently used values are evicted until it is a tenth below,
+ * and loaded again on next use. The other caches only report their size.
+ * <p>
+ * Every cache belongs to the manager of its {@link AssetLoader}, none is static, so a second build in
+ * the same JVM starts with empty caches and the first one can be collected once it is {@link #close closed}.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class CacheManager {
+
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    /**
+     * A value that can be evicted, see {@link SingleFlightCache#collectEvictable}.
+     */
+    record Evictable(long lastUsed, long weight, Runnable evict) {}
+
+    /**
+     * A map registered for its size, see {@link #map}.
+     */
+    private record NamedMap(String name, WeakReference<Map<?, ?>> map) {}
+
+    @Getter
+    private final long budget;
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final Map<String, SingleFlightCache<?, ?>> shared = new ConcurrentHashMap<>();
+    /**
+     * every cache and map of this manager, held weakly, the caches of a thread go with its renderer
+     */
+    private final List<WeakReference<SingleFlightCache<?, ?>>> caches = new CopyOnWriteArrayList<>();
+    private final List<NamedMap> maps = new CopyOnWriteArrayList<>();
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+    /**
+     * the gauges reading this manager, removed by {@link #close}
+     */
+    private final List<Metrics.Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    public CacheManager() {
+        this(UNBOUNDED);
+    }
+
+    /**
+     * @param budget the bytes the weighed caches may hold together
+     */
+    public CacheManager(long budget) {
+        this.budget = budget;
+        gauges.add(Metrics.gauge("cache_budget_bytes", () -> budget == UNBOUNDED ? -1 : budget));
+        gauges.add(Metrics.gauge("cache_weight_bytes_total", weight::get));
+    }
+
+    /**
+     * The cache of this name, created on first use.
+     */
+    public <K, V> SingleFlightCache<K, V> cache(String name) {
+        return cache(name, null, false);
+    }
+
+    /**
+     * The cache of this name, created on first use.
+     *
+     * @param weigher the bytes a value holds, counted against the budget
+     * @param spill   keep evicted values as soft references, for large values that are expensive to load
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> SingleFlightCache<K, V> cache(String name, ToLongFunction<? super V> weigher, boolean spill) {
+        return (SingleFlightCache<K, V>) shared.computeIfAbsent(name, k -> newCache(name, weigher, spill));
+    }
+
+    /**
+     * A cache of its own, e.g. for a renderer of one thread, reported together with the other caches of this name.
+     *
+     * @param weigher the bytes a value holds, counted against the budget
+     */
+    public <K, V> SingleFlightCache<K, V> newCache(String name, ToLongFunction<? super V> weigher) {
+        return newCache(name, weigher, false);
+    }
+
+    private <K, V> SingleFlightCache<K, V> newCache(String name, ToLongFunction<? super V> weigher, boolean spill) {
+        if (spill && weigher == null) {
+            throw new IllegalArgumentException("A cache without a weigher can't spill: " + name);
+        }
+        SingleFlightCache<K, V> cache = new SingleFlightCache<>(name, this, weigher, spill);
+        caches.add(new WeakReference<>(cache));
+        registerGauges(name);
+        return cache;
+    }
+
+    /**
+     * A concurrent map of its own for small values, which are never evicted, only reported with the caches.
+     */
+    public <K, V> Map<K, V> map(String name) {
+        Map<K, V> map = new ConcurrentHashMap<>();
+        maps.add(new NamedMap(name, new WeakReference<>(map)));
+        registerGauges(name);
+        return map;
+    }
+
+    private void registerGauges(String name) {
+        if (names.add(name)) {
+            gauges.add(Metrics.gauge("cache_size", () -> stats().getOrDefault(name, new Stats()).size, "cache", name));
+            gauges.add(Metrics.gauge("cache_weight_bytes", () -> stats().getOrDefault(name, new Stats()).weight, "cache", name));
+        }
+    }
+
+    /**
+     * @return the bytes held by the weighed caches
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+
+    void add(long bytes) {
+        weight.addAndGet(bytes);
+    }
+
+    /**
+     * Evict the least recently used values of all caches until the weight is a tenth below the budget.
+     * Only one thread evicts at a time, the others go on.
+     */
+    void evictIfOverBudget() {
+        if (weight.get() <= budget || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Evictable> candidates = new ArrayList<>();
+            for (WeakReference<SingleFlightCache<?, ?>> ref : caches) {
+                SingleFlightCache<?, ?> cache = ref.get();
+                if (cache == null) {
+                    caches.remove(ref);
+                } else if (cache.isWeighted()) {
+                    cache.collectEvictable(candidates);
+                }
+            }
+            candidates.sort(Comparator.comparingLong(Evictable::lastUsed));
+
+            long target = budget - budget / 10;
+            int evicted = 0;
+            for (Evictable candidate : candidates) {
+                if (weight.get() <= target) {
+                    break;
+                }
+                candidate.evict().run();
+                evicted++;
+            }
+            log.debug("Evicted {} of {} cached values, {} MB left", evicted, candidates.size(), weight.get() >> 20);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Stats {
+        private long size;
+        private long weight;
+    }
+
+    /**
+     * @return cache name -> entries and bytes, summed over the caches of that name
+     */
+    private Map<String, Stats> stats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        for (WeakReference<SingleFlightCache<?, ?>> ref : caches) {
+            SingleFlightCache<?, ?> cache = ref.get();
+            if (cache != null) {
+                Stats s = stats.computeIfAbsent(cache.getName(), k -> new Stats());
+                s.size += cache.size();
+                s.weight += cache.getWeight();
+            }
+        }
+        for (NamedMap named : maps) {
+            Map<?, ?> map = named.map().get();
+            if (map != null) {
+                stats.computeIfAbsent(named.name(), k -> new Stats()).size += map.size();
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Remove the gauges of this manager from the metrics, they would keep it and its caches alive.
+     * The caches still work, they are only not reported any more.
+     */
+    public void close() {
+        for (Metrics.Gauge gauge : gauges) {
+            Metrics.remove(gauge);
+        }
+        gauges.clear();
+    }
+
+    public void logStats() {
+        log.info("=== Caches ({} MB of {})", weight.get() >> 20, budget == UNBOUNDED ? "unbounded" : (budget >> 20) + " MB");
+        stats().forEach((name, s) -> log.info("{}: {} entries, {} KB, {} hits, {} misses, {} evictions",
+                String.format("%-20s", name), s.size, s.weight >> 10,
+                Metrics.counter("cache_hits_total", "cache", name).get(),
+                Metrics.counter("cache_misses_total", "cache", name).get(),
+                Metrics.counter("cache_evictions_total", "cache", name).get()));
+    }
+}
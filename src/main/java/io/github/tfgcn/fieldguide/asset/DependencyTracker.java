@@ -0,0 +1,116 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Records what a piece of work reads, for incremental builds.
+ * <p>
+ * A dependency is a resource path, or a pseudo path such as a translation key, with the signature
+ * it had when it was read. Tracking is per thread and nests: what an inner scope records is also
+ * recorded by the scopes around it. {@link SingleFlightCache} keeps the dependencies of every value
+ * it loads, and records them again on each hit, so cached values do not hide what they were built from.
+ * <p>
+ * Tracking is disabled unless {@link #setEnabled(boolean)} is called, then every method is a no-op.
+ *
+ * @author yanmaoyuan
+ */
+public final class DependencyTracker {
+
+    private static final class Scope {
+        private final Map<String, Long> dependencies;
+        private final Scope parent;
+
+        private Scope(Map<String, Long> dependencies, Scope parent) {
+            this.dependencies = dependencies;
+            this.parent = parent;
+        }
+    }
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+    private static volatile boolean enabled;
+
+    private DependencyTracker() {}
+
+    public static void setEnabled(boolean enabled) {
+        DependencyTracker.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if the current thread is recording
+     */
+    public static boolean isTracking() {
+        return enabled && CURRENT.get() != null;
+    }
+
+    /**
+     * Run the action, recording its dependencies into the map.
+     */
+    public static <T> T track(Map<String, Long> into, Supplier<T> action) {
+        if (!enabled) {
+            return action.get();
+        }
+        Scope parent = CURRENT.get();
+        CURRENT.set(new Scope(into, parent));
+        try {
+            return action.get();
+        } finally {
+            if (parent == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(parent);
+                parent.dependencies.putAll(into);
+            }
+        }
+    }
+
+    /**
+     * Run the action without recording anything, for data built from a whole directory
+     * that is recorded with a single signature instead.
+     */
+    public static <T> T untracked(Supplier<T> action) {
+        Scope scope = CURRENT.get();
+        if (scope == null) {
+            return action.get();
+        }
+        CURRENT.remove();
+        try {
+            return action.get();
+        } finally {
+            CURRENT.set(scope);
+        }
+    }
+
+    public static void record(String dependency, long signature) {
+        Scope scope = enabled ? CURRENT.get() : null;
+        if (scope != null) {
+            scope.dependencies.put(dependency, signature);
+        }
+    }
+
+    public static void recordAll(Map<String, Long> dependencies) {
+        Scope scope = enabled ? CURRENT.get() : null;
+        if (scope != null && dependencies != null) {
+            scope.dependencies.putAll(dependencies);
+        }
+    }
+
+    /**
+     * Record in the outermost scope only. Used for what depends on the caller rather than on the
+     * cached value, e.g. a translation, which differs between languages sharing the same cache.
+     */
+    public static void recordInRoot(String dependency, long signature) {
+        Scope scope = enabled ? CURRENT.get() : null;
+        if (scope == null) {
+            return;
+        }
+        while (scope.parent != null) {
+            scope = scope.parent;
+        }
+        scope.dependencies.put(dependency, signature);
+    }
+}
@@ -8,9 +8,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Asset source that reads from the filesystem.
@@ -19,6 +22,8 @@ import java.util.List;
  */
 public class FsAssetSource extends AssetSource {
 
+    private static final int MTIME_BITS = 42;
+
     public FsAssetSource(Path rootPath, String sourceId) {
         super(rootPath, sourceId);
     }
@@ -34,7 +39,24 @@ public class FsAssetSource extends AssetSource {
         Path fullPath = rootPath.resolve(resourcePath);
         return Files.newInputStream(fullPath);
     }
+
+    @Override
+    public long size(String resourcePath) throws IOException {
+        Path fullPath = rootPath.resolve(resourcePath);
+        return Files.size(fullPath);
+    }
     
+    /**
+     * The modification time in the low 42 bits, millis until the year 2109, and the size in the high 22 bits.
+     * Two versions of a file only share a fingerprint if they were written in the same millisecond and their
+     * sizes differ by a multiple of 4 MB.
+     */
+    @Override
+    public long fingerprint(String resourcePath) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(rootPath.resolve(resourcePath), BasicFileAttributes.class);
+        return (attrs.size() << MTIME_BITS) | (attrs.lastModifiedTime().toMillis() & ((1L << MTIME_BITS) - 1));
+    }
+
     @Override
     public List<Asset> listAssets(String resourcePath) throws IOException {
         List<Asset> assets = new ArrayList<>();
@@ -48,7 +70,7 @@ public class FsAssetSource extends AssetSource {
         for (File file : files) {
             String relativePath = file.toPath().subpath(rootPath.getNameCount(), file.toPath().getNameCount()).toString();
             relativePath = relativePath.replace("\\", "/");
-            assets.add(new Asset(relativePath, Files.newInputStream(file.toPath()), this));
+            assets.add(new Asset(relativePath, this));
         }
 
         return assets;
@@ -59,4 +81,22 @@ public class FsAssetSource extends AssetSource {
         Path fullPath = rootPath.resolve(resourcePath);
         return Files.exists(fullPath) && Files.isDirectory(fullPath);
     }
+
+    /**
+     * Only visits assets/ and data/, the root may also hold the output, the caches and the libraries.
+     */
+    @Override
+    public void forEachResource(Consumer<String> action) throws IOException {
+        for (String root : AssetIndex.INDEXED_ROOTS) {
+            Path dir = rootPath.resolve(root);
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.filter(Files::isRegularFile)
+                        .map(file -> rootPath.relativize(file).toString().replace("\\", "/"))
+                        .forEach(action);
+            }
+        }
+    }
 }
\ No newline at end of file
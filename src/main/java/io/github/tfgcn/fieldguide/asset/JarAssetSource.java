@@ -1,71 +1,182 @@
 package io.github.tfgcn.fieldguide.asset;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Arrays;
 import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.zip.ZipEntry;
+import java.util.function.Consumer;
 
 /**
  * Asset source for a JAR file
+ * <p>
+ * The jar is only mapped when a resource is read. Until then the paths under assets/ and data/ are answered
+ * from the scan of the jar, which is taken from the jar index cache on a warm start.
  *
  * @author yanmaoyuan
  */
-public class JarAssetSource extends AssetSource {
+public class JarAssetSource extends AssetSource implements Closeable {
 
-    private final JarFile jarFile;
-    
-    public JarAssetSource(Path jarPath) throws IOException {
+    /**
+     * the scan of the jar, null to ask the jar for every path
+     */
+    private final JarScan scan;
+    /**
+     * the resources of the scan, sorted on first use
+     */
+    private volatile String[] sortedResources;
+    private volatile MappedZipFile zipFile;
+    private boolean closed;
+
+    private volatile JarIndexCache.Fingerprint fingerprint;
+
+    /**
+     * @param scan the scan of the jar, or null
+     */
+    public JarAssetSource(Path jarPath, JarScan scan) {
         super(jarPath, "mod:" + jarPath.getFileName().toString());
-        this.jarFile = new JarFile(jarPath.toFile());
+        this.scan = scan;
+        this.fingerprint = scan == null ? null : scan.fingerprint();
+    }
+
+    private MappedZipFile zipFile() throws IOException {
+        MappedZipFile zip = zipFile;
+        if (zip == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("Jar closed: " + rootPath);
+                }
+                zip = zipFile;
+                if (zip == null) {
+                    zip = new MappedZipFile(rootPath);
+                    zipFile = zip;
+                }
+            }
+        }
+        return zip;
+    }
+
+    /**
+     * @return the sorted resources of the scan, or null if the path is not in it
+     */
+    private String[] scanned(String resourcePath) {
+        if (scan == null || !AssetIndex.isIndexed(resourcePath)) {
+            return null;
+        }
+        String[] sorted = sortedResources;
+        if (sorted == null) {
+            sorted = scan.resources().toArray(new String[0]);
+            Arrays.sort(sorted);
+            sortedResources = sorted;
+        }
+        return sorted;
     }
 
     @Override
     public boolean exists(String resourcePath) {
-        return jarFile.getJarEntry(resourcePath) != null;
+        String[] sorted = scanned(resourcePath);
+        if (sorted != null) {
+            return Arrays.binarySearch(sorted, resourcePath) >= 0;
+        }
+        try {
+            return zipFile().contains(resourcePath);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @Override
     public InputStream getInputStream(String resourcePath) throws IOException {
-        JarEntry entry = jarFile.getJarEntry(resourcePath);
-        if (entry != null) {
-            return jarFile.getInputStream(entry);
+        InputStream in = zipFile().getInputStream(resourcePath);
+        if (in != null) {
+            return in;
+        }
+        throw new IOException("Resource not found in JAR: " + resourcePath);
+    }
+
+    @Override
+    public long size(String resourcePath) throws IOException {
+        long size = zipFile().size(resourcePath);
+        if (size >= 0) {
+            return size;
         }
         throw new IOException("Resource not found in JAR: " + resourcePath);
     }
 
+    /**
+     * The whole archive shares one fingerprint, taken from its central directory.
+     */
+    @Override
+    public long fingerprint(String resourcePath) throws IOException {
+        JarIndexCache.Fingerprint value = fingerprint;
+        if (value == null) {
+            value = JarIndexCache.Fingerprint.of(rootPath);
+            fingerprint = value;
+        }
+        return value.hash();
+    }
+
     @Override
     public List<Asset> listAssets(String resourcePath) throws IOException {
         List<Asset> assets = new ArrayList<>();
         String normalizedDir = normalizePath(resourcePath);
 
-        Enumeration<? extends JarEntry> entries = jarFile.entries();
-        while (entries.hasMoreElements()) {
-            JarEntry entry = entries.nextElement();
-            String entryName = entry.getName();
-            if (entryName.startsWith(normalizedDir)) {
-                if (!entry.isDirectory()) {
-                    assets.add(new Asset(entryName, jarFile.getInputStream(entry), this));
+        if (scanned(normalizedDir) != null) {
+            // in the order of the jar, as read from it
+            for (String entryName : scan.resources()) {
+                if (entryName.startsWith(normalizedDir)) {
+                    assets.add(new Asset(entryName, this));
                 }
             }
+            return assets;
         }
+        zipFile().forEachEntry(entryName -> {
+            if (entryName.startsWith(normalizedDir)) {
+                assets.add(new Asset(entryName, this));
+            }
+        });
 
         return assets;
     }
 
+    /**
+     * A directory of the scan exists if it has a file, the jar may have no entry for it.
+     */
     @Override
     public boolean isDirectory(String resourcePath) {
-        String normalizedPath = normalizePath(resourcePath);
-        if (!normalizedPath.endsWith("/")) {
-            normalizedPath += "/";
+        String dir = normalizePath(resourcePath);
+        String[] sorted = scanned(dir);
+        if (sorted != null) {
+            int i = Arrays.binarySearch(sorted, dir);
+            int next = i < 0 ? -i - 1 : i;
+            return next < sorted.length && sorted[next].startsWith(dir);
         }
+        try {
+            return zipFile().isDirectory(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void forEachResource(Consumer<String> action) throws IOException {
+        zipFile().forEachEntry(action);
+    }
 
-        ZipEntry entry = jarFile.getEntry(normalizedPath);
-        return entry != null && entry.isDirectory();
+    @Override
+    public void close() {
+        MappedZipFile zip;
+        synchronized (this) {
+            closed = true;
+            zip = zipFile;
+            zipFile = null;
+        }
+        if (zip != null) {
+            zip.close();
+        }
     }
 
     private String normalizePath(String path) {
@@ -0,0 +1,313 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import io.github.tfgcn.fieldguide.data.fml.Dependency;
+import io.github.tfgcn.fieldguide.data.fml.DependencyOrdering;
+import io.github.tfgcn.fieldguide.data.fml.ModInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of every jar scan, persisted in .cache between runs.
+ * <p>
+ * Each entry is keyed by the jar path and validated against its size, mtime and a hash of the
+ * last 64 KiB of the file, which holds the central directory and so the CRC of every entry.
+ * Only jars whose fingerprint changed are scanned again. The file is kept as a {@link VersionedFile},
+ * a save never replaces the file mapped by the load.
+ * <p>
+ * The load only reads the jar paths and where their entries start, an entry is decoded from the mapping when
+ * its jar is asked for, so a run touches the scans of the jars it uses and no others.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class JarIndexCache {
+
+    private static final int MAGIC = 0x46474a49;// FGJI
+    private static final int VERSION = 1;
+    private static final int TAIL_SIZE = 64 * 1024;
+
+    public record Fingerprint(long size, long lastModified, long hash) {
+
+        public static Fingerprint of(Path jar) throws IOException {
+            BasicFileAttributes attrs = Files.readAttributes(jar, BasicFileAttributes.class);
+            long size = attrs.size();
+            int length = (int) Math.min(size, TAIL_SIZE);
+
+            ByteBuffer tail = ByteBuffer.allocate(length);
+            try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+                while (tail.hasRemaining()) {
+                    if (channel.read(tail, size - length + tail.position()) < 0) {
+                        break;
+                    }
+                }
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(tail.flip());
+
+            return new Fingerprint(size, attrs.lastModifiedTime().toMillis(), crc.getValue());
+        }
+    }
+
+    private final VersionedFile file;
+    /**
+     * the mapped file of the last run, null if there is none
+     */
+    private final ByteBuffer buf;
+    /**
+     * jar path -> offset of its entry in the mapped file, not validated yet
+     */
+    private final Map<String, Integer> stored;
+    /**
+     * entries validated or scanned in this run, the only ones written back
+     */
+    private final Map<String, JarScan> current = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private JarIndexCache(VersionedFile file, ByteBuffer buf, Map<String, Integer> stored) {
+        this.file = file;
+        this.buf = buf;
+        this.stored = stored;
+    }
+
+    /**
+     * A cache that remembers nothing between runs.
+     */
+    public static JarIndexCache disabled() {
+        return new JarIndexCache(null, null, Map.of());
+    }
+
+    public static JarIndexCache load(Path path) {
+        VersionedFile file = new VersionedFile(path);
+        long start = System.nanoTime();
+        Path latest = null;
+        try {
+            latest = file.latest();
+            if (latest == null) {
+                return new JarIndexCache(file, null, Map.of());
+            }
+            try (FileChannel channel = FileChannel.open(latest, StandardOpenOption.READ)) {
+                ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                Map<String, Integer> stored = index(buf.duplicate());
+                log.info("Loaded jar index cache: {} jars in {} ms", stored.size(), (System.nanoTime() - start) / 1_000_000);
+                return new JarIndexCache(file, buf, stored);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignore invalid jar index cache: {}, message: {}", latest, e.getMessage());
+            return new JarIndexCache(file, null, Map.of());
+        }
+    }
+
+    /**
+     * @return the cached scan of the jar if it has not changed since, or null
+     */
+    public JarScan get(Path jar) {
+        String key = jar.toString();
+        JarScan scan = current.get(key);
+        if (scan != null) {
+            return scan;
+        }
+
+        Integer offset = stored.get(key);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            ByteBuffer entry = buf.duplicate().position(offset);
+            Fingerprint fingerprint = new Fingerprint(entry.getLong(), entry.getLong(), entry.getLong());
+            if (fingerprint.equals(Fingerprint.of(jar))) {
+                JarScan cached = readScan(entry, fingerprint);
+                current.put(key, cached);
+                return cached;
+            }
+        } catch (IOException e) {
+            log.debug("Failed to fingerprint jar: {}, message: {}", jar, e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Ignore invalid jar index cache entry: {}, message: {}", jar, e.getMessage());
+        }
+        log.debug("Jar changed since last run: {}", jar);
+        dirty = true;
+        return null;
+    }
+
+    public void put(Path jar, JarScan scan) {
+        current.put(jar.toString(), scan);
+        dirty = true;
+    }
+
+    /**
+     * Write the entries used in this run back to disk, if anything changed.
+     */
+    public void save() {
+        if (file == null || (!dirty && current.size() == stored.size())) {
+            return;
+        }
+
+        try {
+            Path saved = file.write(out -> write(out, new TreeMap<>(current)));
+            log.info("Saved jar index cache: {} jars to {}", current.size(), saved.getFileName());
+        } catch (IOException e) {
+            log.error("Failed to save jar index cache", e);
+        }
+    }
+
+    //////////// serialization
+
+    private static void write(DataOutputStream out, Map<String, JarScan> entries) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, JarScan> entry : entries.entrySet()) {
+            JarScan scan = entry.getValue();
+            writeString(out, entry.getKey());
+
+            Fingerprint fingerprint = scan.fingerprint();
+            out.writeLong(fingerprint.size());
+            out.writeLong(fingerprint.lastModified());
+            out.writeLong(fingerprint.hash());
+
+            ModInfo mod = scan.mod();
+            out.writeBoolean(mod != null);
+            if (mod != null) {
+                writeString(out, mod.getModId());
+                writeString(out, mod.getName());
+                writeString(out, mod.getVersion());
+                writeString(out, mod.getJarPath().toString());
+                out.writeInt(mod.getLoadOrder());
+                out.writeInt(mod.getDependencies().size());
+                for (Dependency dep : mod.getDependencies()) {
+                    writeString(out, dep.getModId());
+                    out.writeBoolean(dep.isMandatory());
+                    out.writeByte(dep.getOrdering().ordinal());
+                }
+            }
+
+            writeStrings(out, scan.nestedJars());
+            writeStrings(out, scan.resources());
+        }
+    }
+
+    /**
+     * @return jar path -> offset of its fingerprint, the rest of each entry is skipped
+     */
+    private static Map<String, Integer> index(ByteBuffer buf) throws IOException {
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+
+            int count = buf.getInt();
+            Map<String, Integer> entries = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = readString(buf);
+                entries.put(key, buf.position());
+                buf.position(buf.position() + 3 * Long.BYTES);
+
+                if (buf.get() != 0) {
+                    for (int j = 0; j < 4; j++) {
+                        skipString(buf);
+                    }
+                    buf.getInt();
+                    int depCount = buf.getInt();
+                    for (int j = 0; j < depCount; j++) {
+                        skipString(buf);
+                        buf.position(buf.position() + 2);
+                    }
+                }
+                skipStrings(buf);
+                skipStrings(buf);
+            }
+            return entries;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Truncated cache file", e);
+        }
+    }
+
+    /**
+     * Decode the rest of an entry, after its fingerprint.
+     */
+    private static JarScan readScan(ByteBuffer buf, Fingerprint fingerprint) {
+        ModInfo mod = null;
+        if (buf.get() != 0) {
+            String modId = readString(buf);
+            String name = readString(buf);
+            String version = readString(buf);
+            Path jarPath = Paths.get(readString(buf));
+            int loadOrder = buf.getInt();
+            int depCount = buf.getInt();
+            List<Dependency> dependencies = new ArrayList<>(depCount);
+            DependencyOrdering[] orderings = DependencyOrdering.values();
+            for (int j = 0; j < depCount; j++) {
+                dependencies.add(new Dependency(readString(buf), buf.get() != 0, orderings[buf.get()]));
+            }
+            mod = new ModInfo(modId, name, version, dependencies, jarPath, loadOrder);
+        }
+
+        List<String> nestedJars = readStrings(buf);
+        List<String> resources = readStrings(buf);
+        return new JarScan(fingerprint, mod, nestedJars, resources);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length > 0) {
+            buf.position(buf.position() + length);
+        }
+    }
+
+    private static void skipStrings(ByteBuffer buf) {
+        int size = buf.getInt();
+        for (int i = 0; i < size; i++) {
+            skipString(buf);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(ByteBuffer buf) {
+        int size = buf.getInt();
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = readString(buf);
+        }
+        return List.of(values);
+    }
+}
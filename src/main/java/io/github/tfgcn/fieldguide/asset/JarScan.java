@@ -0,0 +1,21 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import io.github.tfgcn.fieldguide.data.fml.ModInfo;
+
+import java.util.List;
+
+/**
+ * What a single pass over a jar found.
+ *
+ * @param fingerprint the fingerprint of the jar when it was scanned
+ * @param mod the mod declared in META-INF/mods.toml, or null
+ * @param nestedJars file names of the nested jars, extracted to .cache/lib
+ * @param resources every file under assets/ or data/
+ * @author yanmaoyuan
+ */
+public record JarScan(JarIndexCache.Fingerprint fingerprint, ModInfo mod, List<String> nestedJars, List<String> resources) {
+
+    public boolean hasAssets() {
+        return !resources.isEmpty();
+    }
+}
@@ -0,0 +1,471 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only zip reader backed by a memory-mapped file.
+ * <p>
+ * The central directory is parsed once into a compact off-heap table, and the names are looked up through an
+ * off-heap open addressing hash table that points back at the names in the mapping. The heap only holds the
+ * buffers, not an object per entry, which matters with hundreds of mod jars of thousands of entries each.
+ * STORED entries are returned
+ * as zero-copy slices of the mapping, DEFLATED entries are inflated with pooled {@link Inflater}s.
+ * Unlike {@link java.util.jar.JarFile} there is no signature verification and no lock on the file,
+ * so every read method is safe to call from many threads at once.
+ * <p>
+ * The file channel is closed as soon as the file is mapped, so an open instance holds no file descriptor.
+ * {@link #close} drops the mapping and the tables, they are released once garbage collected. It must not be
+ * called while another thread is still reading.
+ * <p>
+ * Every offset and size read from the file is checked against the mapping, a truncated or corrupt file fails
+ * with a {@link ZipException}.
+ *
+ * @author yanmaoyuan
+ */
+public final class MappedZipFile implements Closeable {
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+
+    private static final int LOC_SIZE = 30;
+    private static final int CEN_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    // entry table record: local header offset, compressed size, size, method, name offset and length in the
+    // mapping, name hash, and whether an earlier entry has the same name
+    private static final int REC_LOC = 0;
+    private static final int REC_CSIZE = 8;
+    private static final int REC_SIZE = 16;
+    private static final int REC_METHOD = 24;
+    private static final int REC_NAME = 28;
+    private static final int REC_NAME_LEN = 32;
+    private static final int REC_HASH = 36;
+    private static final int REC_DUPLICATE = 40;
+    private static final int REC_BYTES = 48;
+
+    private static final int MAX_POOLED_INFLATERS = 16;
+
+    private final Path path;
+    private ByteBuffer mapped;
+    private ByteBuffer table;
+    private final int count;
+    /**
+     * open addressing hash table of names, record index + 1 per slot, 0 if empty
+     */
+    private ByteBuffer slots;
+    private final int mask;
+    private final int entryCount;
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(MAX_POOLED_INFLATERS);
+    private volatile boolean closed;
+
+    public MappedZipFile(Path path) throws IOException {
+        this.path = path;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new ZipException("Zip file too large to map: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            this.mapped = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int end = findEnd();
+        long count = u16(end + 10);
+        long cenOffset = u32(end + 16);
+        if (count == 0xFFFF || cenOffset == ZIP64_MAGIC) {
+            int locator = end - ZIP64_LOCATOR_SIZE;
+            if (locator >= 0 && mapped.getInt(locator) == ZIP64_LOCATOR_SIG) {
+                int zip64End = checkedOffset(mapped.getLong(locator + 8));
+                if (zip64End + 56 > mapped.limit() || mapped.getInt(zip64End) != ZIP64_END_SIG) {
+                    throw new ZipException("Invalid zip64 end of central directory: " + path);
+                }
+                count = mapped.getLong(zip64End + 32);
+                cenOffset = mapped.getLong(zip64End + 48);
+            }
+        }
+        if (count > Integer.MAX_VALUE / REC_BYTES) {
+            throw new ZipException("Too many entries: " + path);
+        }
+
+        this.count = (int) count;
+        this.table = ByteBuffer.allocateDirect(this.count * REC_BYTES).order(ByteOrder.nativeOrder());
+        // at most half full
+        int capacity = Integer.highestOneBit(Math.max(1, this.count) * 2 - 1) << 1;
+        this.slots = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder());
+        this.mask = capacity - 1;
+        this.entryCount = readCentralDirectory(checkedOffset(cenOffset), this.count);
+    }
+
+    private int findEnd() throws ZipException {
+        int last = mapped.limit() - END_SIZE;
+        int first = Math.max(0, last - 0xFFFF);
+        for (int i = last; i >= first; i--) {
+            if (mapped.getInt(i) == END_SIG && i + END_SIZE + u16(i + 20) <= mapped.limit()) {
+                return i;
+            }
+        }
+        throw new ZipException("End of central directory not found: " + path);
+    }
+
+    /**
+     * @return the number of distinct names
+     */
+    private int readCentralDirectory(int pos, int count) throws ZipException {
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CEN_SIZE > mapped.limit() || mapped.getInt(pos) != CEN_SIG) {
+                throw new ZipException("Invalid central directory header at " + pos + ": " + path);
+            }
+            int method = u16(pos + 10);
+            long csize = u32(pos + 20);
+            long size = u32(pos + 24);
+            int nameLen = u16(pos + 28);
+            int extraLen = u16(pos + 30);
+            int commentLen = u16(pos + 32);
+            long loc = u32(pos + 42);
+
+            int name = pos + CEN_SIZE;
+            if (name + nameLen + extraLen > mapped.limit()) {
+                throw new ZipException("Invalid central directory header at " + pos + ": " + path);
+            }
+
+            if (size == ZIP64_MAGIC || csize == ZIP64_MAGIC || loc == ZIP64_MAGIC) {
+                int extra = pos + CEN_SIZE + nameLen;
+                int extraEnd = extra + extraLen;
+                while (extra + 4 <= extraEnd) {
+                    int id = u16(extra);
+                    int len = u16(extra + 2);
+                    if (id == ZIP64_EXTRA_ID) {
+                        if (extra + 4 + len > extraEnd) {
+                            throw new ZipException("Invalid zip64 extra field at " + pos + ": " + path);
+                        }
+                        int p = extra + 4;
+                        if (size == ZIP64_MAGIC) {
+                            size = mapped.getLong(p);
+                            p += 8;
+                        }
+                        if (csize == ZIP64_MAGIC) {
+                            csize = mapped.getLong(p);
+                            p += 8;
+                        }
+                        if (loc == ZIP64_MAGIC) {
+                            loc = mapped.getLong(p);
+                        }
+                        break;
+                    }
+                    extra += 4 + len;
+                }
+            }
+
+            int rec = i * REC_BYTES;
+            table.putLong(rec + REC_LOC, loc);
+            table.putLong(rec + REC_CSIZE, csize);
+            table.putLong(rec + REC_SIZE, size);
+            table.putInt(rec + REC_METHOD, method);
+            table.putInt(rec + REC_NAME, name);
+            table.putInt(rec + REC_NAME_LEN, nameLen);
+            int hash = hash(name, nameLen);
+            table.putInt(rec + REC_HASH, hash);
+
+            // keep the first one on duplicated names
+            int slot = hash & mask;
+            boolean duplicate = false;
+            for (int other; (other = slots.getInt(slot * 4)) != 0; slot = (slot + 1) & mask) {
+                int otherRec = (other - 1) * REC_BYTES;
+                if (table.getInt(otherRec + REC_HASH) == hash && table.getInt(otherRec + REC_NAME_LEN) == nameLen
+                        && mapped.slice(table.getInt(otherRec + REC_NAME), nameLen).equals(mapped.slice(name, nameLen))) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            table.putInt(rec + REC_DUPLICATE, duplicate ? 1 : 0);
+            if (!duplicate) {
+                slots.putInt(slot * 4, i + 1);
+                distinct++;
+            }
+
+            pos += CEN_SIZE + nameLen + extraLen + commentLen;
+        }
+        return distinct;
+    }
+
+    private int hash(int pos, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + (mapped.get(pos + i) & 0xFF);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(byte[] name) {
+        int h = 0;
+        for (byte b : name) {
+            h = 31 * h + (b & 0xFF);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the record of an entry, or -1 if it does not exist
+     */
+    private int find(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        for (int slot = hash & mask, index; (index = slots.getInt(slot * 4)) != 0; slot = (slot + 1) & mask) {
+            int rec = (index - 1) * REC_BYTES;
+            if (table.getInt(rec + REC_HASH) == hash && table.getInt(rec + REC_NAME_LEN) == bytes.length
+                    && nameEquals(table.getInt(rec + REC_NAME), bytes)) {
+                return rec;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int pos, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (mapped.get(pos + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public boolean contains(String name) {
+        checkOpen();
+        return find(name) >= 0;
+    }
+
+    /**
+     * A directory only exists if the zip has an explicit entry for it, same as {@link java.util.zip.ZipFile}.
+     */
+    public boolean isDirectory(String name) {
+        checkOpen();
+        String dir = name.endsWith("/") ? name : name + "/";
+        return find(dir) >= 0;
+    }
+
+    /**
+     * @return the uncompressed size of the entry, or -1 if it does not exist
+     */
+    public long size(String name) {
+        checkOpen();
+        int rec = find(name);
+        return rec < 0 ? -1 : table.getLong(rec + REC_SIZE);
+    }
+
+    /**
+     * Visit the name of every file entry in the order of the central directory, skipping directories.
+     */
+    public void forEachEntry(Consumer<String> action) {
+        checkOpen();
+        byte[] buffer = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int rec = i * REC_BYTES;
+            int length = table.getInt(rec + REC_NAME_LEN);
+            if (table.getInt(rec + REC_DUPLICATE) != 0 || length == 0) {
+                continue;
+            }
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+            mapped.get(table.getInt(rec + REC_NAME), buffer, 0, length);
+            if (buffer[length - 1] != '/') {
+                action.accept(new String(buffer, 0, length, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Read the content of an entry. STORED entries are read-only slices of the mapping.
+     *
+     * @return the content, or null if the entry does not exist
+     */
+    public ByteBuffer read(String name) throws IOException {
+        ensureOpen();
+        int rec = find(name);
+        if (rec < 0) {
+            return null;
+        }
+
+        int method = table.getInt(rec + REC_METHOD);
+        int csize = checkedOffset(table.getLong(rec + REC_CSIZE));
+        int size = checkedSize(table.getLong(rec + REC_SIZE), name);
+
+        int loc = checkedOffset(table.getLong(rec + REC_LOC));
+        if (loc + LOC_SIZE > mapped.limit() || mapped.getInt(loc) != LOC_SIG) {
+            throw new ZipException("Invalid local header for " + name + ": " + path);
+        }
+        long data = (long) loc + LOC_SIZE + u16(loc + 26) + u16(loc + 28);
+        if (data + csize > mapped.limit()) {
+            throw new ZipException("Truncated entry " + name + ": " + path);
+        }
+        ByteBuffer compressed = mapped.slice((int) data, csize);
+
+        return switch (method) {
+            case STORED -> compressed;
+            case DEFLATED -> inflate(compressed, size, name);
+            default -> throw new ZipException("Unsupported compression method " + method + " for " + name + ": " + path);
+        };
+    }
+
+    /**
+     * @return a stream over the content of an entry, or null if the entry does not exist
+     */
+    public InputStream getInputStream(String name) throws IOException {
+        ByteBuffer content = read(name);
+        return content == null ? null : new ByteBufferInputStream(content);
+    }
+
+    private ByteBuffer inflate(ByteBuffer input, int size, String name) throws IOException {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+
+        try {
+            inflater.setInput(input);
+            byte[] out = new byte[size];
+            int n = 0;
+            while (n < size) {
+                int count = inflater.inflate(out, n, size - n);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += count;
+            }
+            if (n != size) {
+                throw new ZipException("Invalid entry size for " + name + " (expected " + size + " but got " + n + " bytes): " + path);
+            }
+            return ByteBuffer.wrap(out);
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflate data for " + name + ": " + path);
+        } finally {
+            inflater.reset();
+            if (closed || !inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Zip file closed: " + path);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Zip file closed: " + path);
+        }
+    }
+
+    private int checkedOffset(long value) throws ZipException {
+        if (value < 0 || value > mapped.limit()) {
+            throw new ZipException("Invalid offset or size " + value + ": " + path);
+        }
+        return (int) value;
+    }
+
+    private int checkedSize(long value, String name) throws ZipException {
+        if (value < 0 || value > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry too large: " + name + ": " + path);
+        }
+        return (int) value;
+    }
+
+    private int u16(int pos) {
+        return Short.toUnsignedInt(mapped.getShort(pos));
+    }
+
+    private long u32(int pos) {
+        return Integer.toUnsignedLong(mapped.getInt(pos));
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        mapped = null;
+        table = null;
+        slots = null;
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import io.github.tfgcn.fieldguide.data.recipe.BaseRecipe;
+import io.github.tfgcn.fieldguide.data.recipe.Recipe;
+import io.github.tfgcn.fieldguide.data.recipe.misc.UnknownRecipe;
+import io.github.tfgcn.fieldguide.gson.JsonUtils;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Every recipe of the pack, deserialized into the typed {@link Recipe} hierarchy.
+ * <p>
+ * Built once from all {@code data/<namespace>/recipes/**.json} files, parsed in parallel.
+ * The files can be read ahead of time as {@link Entry}, so they are kept between runs without their jars.
+ * Recipes are indexed by id, type and output item. A recipe whose type is unknown,
+ * or that does not fit its typed class, is kept as an {@link UnknownRecipe}.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class RecipeIndex {
+
+    private static final Type MAP_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+    private static final String[] OUTPUT_KEYS = {"result", "result_item", "output_item", "output", "results"};
+
+    private final Map<String, Recipe> byId;
+    private final Map<String, List<Recipe>> byType;
+    private final Map<String, List<Recipe>> byOutput;
+    @Getter
+    private final long buildMillis;
+
+    private RecipeIndex(Map<String, Recipe> byId, Map<String, List<Recipe>> byType,
+                        Map<String, List<Recipe>> byOutput, long buildMillis) {
+        this.byId = byId;
+        this.byType = byType;
+        this.byOutput = byOutput;
+        this.buildMillis = buildMillis;
+    }
+
+    /**
+     * Build the index.
+     *
+     * @param assets the recipe files, one per path, e.g. data/tfc/recipes/quern/flux.json
+     */
+    public static RecipeIndex build(List<Asset> assets) {
+        return index(assets.parallelStream().map(RecipeIndex::read).filter(Objects::nonNull).toList());
+    }
+
+    /**
+     * Build the index from recipe files already read, see {@link #read(Asset)}.
+     */
+    public static RecipeIndex index(List<Entry> entries) {
+        long start = System.nanoTime();
+
+        List<Parsed> recipes = entries.parallelStream()
+                .map(RecipeIndex::parse)
+                .sorted(Comparator.comparing(parsed -> parsed.recipe().getId()))
+                .toList();
+
+        Map<String, Recipe> byId = new HashMap<>();
+        Map<String, List<Recipe>> byType = new HashMap<>();
+        Map<String, List<Recipe>> byOutput = new HashMap<>();
+        int unknown = 0;
+        for (Parsed parsed : recipes) {
+            Recipe recipe = parsed.recipe();
+            byId.put(recipe.getId(), recipe);
+            if (recipe.getType() != null) {
+                byType.computeIfAbsent(recipe.getType(), k -> new ArrayList<>()).add(recipe);
+            }
+            for (String output : parsed.outputs()) {
+                byOutput.computeIfAbsent(output, k -> new ArrayList<>()).add(recipe);
+            }
+            if (recipe instanceof UnknownRecipe) {
+                unknown++;
+            }
+        }
+        byType.replaceAll((type, list) -> List.copyOf(list));
+        byOutput.replaceAll((item, list) -> List.copyOf(list));
+
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Built recipe index: {} recipes, {} types, {} outputs, {} untyped in {} ms",
+                byId.size(), byType.size(), byOutput.size(), unknown, buildMillis);
+        return new RecipeIndex(Map.copyOf(byId), Map.copyOf(byType), Map.copyOf(byOutput), buildMillis);
+    }
+
+    /**
+     * A recipe file as read, before it is typed.
+     *
+     * @param id the recipe id, e.g. tfc:quern/flux
+     * @param type the recipe type, or null if it has none
+     * @param json the recipe file, without whitespace
+     */
+    public record Entry(String id, String type, String json) {
+    }
+
+    /**
+     * A typed recipe and the items it makes, read from its JSON, which is not kept.
+     */
+    private record Parsed(Recipe recipe, List<String> outputs) {
+    }
+
+    /**
+     * @return the recipe file, or null if it is not a JSON object
+     */
+    public static Entry read(Asset asset) {
+        try (Reader reader = new InputStreamReader(asset.openStream(), StandardCharsets.UTF_8)) {
+            JsonElement element = JsonParser.parseReader(reader);
+            if (!element.isJsonObject()) {
+                return null;
+            }
+            JsonElement type = element.getAsJsonObject().get("type");
+            String typeId = type != null && type.isJsonPrimitive() ? type.getAsString() : null;
+            return new Entry(toRecipeId(asset.getPath()), typeId, element.toString());
+        } catch (Exception e) {
+            log.warn("Failed to parse recipe: {}, message: {}", asset.getPath(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static Parsed parse(Entry entry) {
+        JsonObject json = JsonParser.parseString(entry.json()).getAsJsonObject();
+
+        BaseRecipe recipe;
+        try {
+            recipe = (BaseRecipe) JsonUtils.GSON.fromJson(json, Recipe.class);
+        } catch (RuntimeException e) {
+            log.debug("Untyped recipe: {}, message: {}", entry.id(), e.getMessage());
+            recipe = null;
+        }
+        if (recipe == null || recipe instanceof UnknownRecipe) {
+            UnknownRecipe unknownRecipe = new UnknownRecipe();
+            unknownRecipe.setData(JsonUtils.GSON.fromJson(json, MAP_TYPE));
+            recipe = unknownRecipe;
+        }
+
+        recipe.setId(entry.id());
+        if (entry.type() != null) {
+            recipe.setType(entry.type());
+        }
+        return new Parsed(recipe, getOutputs(json));
+    }
+
+    /**
+     * data/tfc/recipes/quern/flux.json -> tfc:quern/flux
+     */
+    private static String toRecipeId(String path) {
+        int index = path.indexOf('/', 5);
+        String namespace = path.substring(5, index);
+        String name = path.substring(index + 1 + "recipes/".length(), path.length() - ".json".length());
+        return namespace + ":" + name;
+    }
+
+    /**
+     * The items a recipe makes, read from the usual result keys. Tags are returned as #tag.
+     */
+    private static List<String> getOutputs(JsonObject json) {
+        List<String> outputs = new ArrayList<>();
+        for (String key : OUTPUT_KEYS) {
+            if (json.has(key)) {
+                addOutputs(json.get(key), outputs);
+            }
+        }
+        return outputs;
+    }
+
+    private static void addOutputs(JsonElement element, List<String> outputs) {
+        if (element.isJsonPrimitive()) {
+            outputs.add(element.getAsString());
+        } else if (element.isJsonArray()) {
+            for (JsonElement child : (JsonArray) element) {
+                addOutputs(child, outputs);
+            }
+        } else if (element.isJsonObject()) {
+            JsonObject obj = element.getAsJsonObject();
+            if (obj.has("stack")) {
+                addOutputs(obj.get("stack"), outputs);
+            } else if (obj.has("item") && obj.get("item").isJsonPrimitive()) {
+                outputs.add(obj.get("item").getAsString());
+            } else if (obj.has("id") && obj.get("id").isJsonPrimitive()) {
+                outputs.add(obj.get("id").getAsString());
+            } else if (obj.has("tag") && obj.get("tag").isJsonPrimitive()) {
+                outputs.add("#" + obj.get("tag").getAsString());
+            }
+        }
+    }
+
+    /**
+     * @return the recipe, or null if there is none
+     */
+    public Recipe get(String recipeId) {
+        return byId.get(recipeId);
+    }
+
+    public boolean contains(String recipeId) {
+        return byId.containsKey(recipeId);
+    }
+
+    /**
+     * @return every recipe of a type, e.g. tfc:heating, sorted by id
+     */
+    public List<Recipe> getByType(String type) {
+        return byType.getOrDefault(type, List.of());
+    }
+
+    /**
+     * @return every recipe that makes the item, sorted by id
+     */
+    public List<Recipe> getByOutput(String itemId) {
+        return byOutput.getOrDefault(itemId, List.of());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+}
@@ -0,0 +1,227 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import io.github.tfgcn.fieldguide.gson.JsonUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Snapshot of derived data (resolved block and item models, tag graphs and recipe files) kept in .cache between runs.
+ * <p>
+ * Every object records the resource paths it was resolved from, with a signature of the sources
+ * that provided each path. A dependency can also be a whole tag registry, see {@link AssetLoader#getDependencySignature}. An object is only reused when all of its signatures still match, so
+ * changing one jar (or one file of a filesystem source) invalidates only what it contributed.
+ * The file is memory-mapped and objects are decoded lazily on first lookup. It is kept as a {@link VersionedFile},
+ * a save never replaces the mapped file.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class ResolvedSnapshot {
+
+    private static final int MAGIC = 0x46475253;// FGRS
+    private static final int VERSION = 2;
+
+    /**
+     * A resolved object and the resource paths it depends on.
+     */
+    public record Resolved<T>(T value, Set<String> dependencies) {
+    }
+
+    private record Pending(String json, Map<String, Long> dependencies) {
+    }
+
+    private final VersionedFile file;
+    private final ToLongFunction<String> signatureOf;
+    private final ByteBuffer mapped;
+    /**
+     * key -> offset of the record in the mapped file, not decoded nor validated yet
+     */
+    private final Map<String, Integer> stored;
+    /**
+     * records validated or added in this run
+     */
+    private final Map<String, Pending> current = new ConcurrentHashMap<>();
+    private final Set<String> stale = ConcurrentHashMap.newKeySet();
+
+    private ResolvedSnapshot(VersionedFile file, ToLongFunction<String> signatureOf, ByteBuffer mapped, Map<String, Integer> stored) {
+        this.file = file;
+        this.signatureOf = signatureOf;
+        this.mapped = mapped;
+        this.stored = stored;
+    }
+
+    /**
+     * @param signatureOf the signature of the sources that currently provide a resource path
+     */
+    public static ResolvedSnapshot load(Path path, ToLongFunction<String> signatureOf) {
+        VersionedFile file = new VersionedFile(path);
+        long start = System.nanoTime();
+        Path latest = null;
+        try {
+            latest = file.latest();
+            if (latest == null) {
+                return new ResolvedSnapshot(file, signatureOf, null, Map.of());
+            }
+            try (FileChannel channel = FileChannel.open(latest, StandardOpenOption.READ)) {
+                ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                Map<String, Integer> stored = readIndex(buf);
+                log.info("Loaded resolved snapshot: {} objects in {} ms", stored.size(), (System.nanoTime() - start) / 1_000_000);
+                return new ResolvedSnapshot(file, signatureOf, buf, stored);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignore invalid resolved snapshot: {}, message: {}", latest, e.getMessage());
+            return new ResolvedSnapshot(file, signatureOf, null, Map.of());
+        }
+    }
+
+    /**
+     * @return the object if it is in the snapshot and none of its sources changed, or null
+     */
+    public <T> Resolved<T> get(String key, Type type) {
+        Pending pending = current.get(key);
+        if (pending == null) {
+            Integer offset = stored.get(key);
+            if (offset == null || stale.contains(key)) {
+                return null;
+            }
+            pending = readRecord(offset);
+            for (Map.Entry<String, Long> dep : pending.dependencies().entrySet()) {
+                if (signatureOf.applyAsLong(dep.getKey()) != dep.getValue()) {
+                    log.debug("Snapshot object changed: {}, dependency: {}", key, dep.getKey());
+                    stale.add(key);
+                    return null;
+                }
+            }
+            current.put(key, pending);
+        }
+
+        try {
+            T value = JsonUtils.fromJson(pending.json(), type);
+            return new Resolved<>(value, pending.dependencies().keySet());
+        } catch (RuntimeException e) {
+            log.warn("Failed to decode snapshot object: {}, message: {}", key, e.getMessage());
+            current.remove(key);
+            stale.add(key);
+            return null;
+        }
+    }
+
+    /**
+     * Forget the objects of this run resolved from one of the paths, they are validated again on next lookup.
+     */
+    public void invalidate(Set<String> paths) {
+        current.values().removeIf(pending -> !Collections.disjoint(pending.dependencies().keySet(), paths));
+    }
+
+    public void put(String key, Object value, Set<String> dependencies) {
+        Map<String, Long> signatures = new TreeMap<>();
+        for (String path : dependencies) {
+            signatures.put(path, signatureOf.applyAsLong(path));
+        }
+        current.put(key, new Pending(JsonUtils.toJson(value), signatures));
+    }
+
+    /**
+     * Write the snapshot back to disk. Objects not looked up in this run are kept as they were.
+     */
+    public void save() {
+        Map<String, Pending> entries = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : stored.entrySet()) {
+            if (!stale.contains(entry.getKey()) && !current.containsKey(entry.getKey())) {
+                entries.put(entry.getKey(), readRecord(entry.getValue()));
+            }
+        }
+        entries.putAll(current);
+
+        try {
+            Path saved = file.write(out -> write(out, entries));
+            log.info("Saved resolved snapshot: {} objects, {} invalidated, to {}", entries.size(), stale.size(), saved.getFileName());
+        } catch (IOException e) {
+            log.error("Failed to save resolved snapshot", e);
+        }
+    }
+
+    //////////// serialization
+
+    private static void write(DataOutputStream out, Map<String, Pending> entries) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Pending> entry : entries.entrySet()) {
+            Pending pending = entry.getValue();
+            writeString(out, entry.getKey());
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            bodyOut.writeInt(pending.dependencies().size());
+            for (Map.Entry<String, Long> dep : pending.dependencies().entrySet()) {
+                writeString(bodyOut, dep.getKey());
+                bodyOut.writeLong(dep.getValue());
+            }
+            writeString(bodyOut, pending.json());
+            bodyOut.flush();
+
+            out.writeInt(body.size());
+            body.writeTo(out);
+        }
+    }
+
+    /**
+     * Read only the keys, the records are decoded on demand.
+     */
+    private static Map<String, Integer> readIndex(ByteBuffer buf) throws IOException {
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+
+            int count = buf.getInt();
+            Map<String, Integer> entries = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = readString(buf);
+                int length = buf.getInt();
+                entries.put(key, buf.position());
+                buf.position(buf.position() + length);
+            }
+            return entries;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated snapshot file", e);
+        }
+    }
+
+    private Pending readRecord(int offset) {
+        // a private cursor, so records can be decoded from many threads
+        ByteBuffer buf = mapped.duplicate().position(offset);
+        int depCount = buf.getInt();
+        Map<String, Long> dependencies = new TreeMap<>();
+        for (int i = 0; i < depCount; i++) {
+            dependencies.put(readString(buf), buf.getLong());
+        }
+        return new Pending(readString(buf), dependencies);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,345 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import io.github.tfgcn.fieldguide.exception.InternalException;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
+
+import lombok.Getter;
+
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A concurrent cache that loads each key at most once at a time.
+ * <p>
+ * The first thread asking for a key runs the loader, other threads asking for the same key
+ * wait for its result instead of loading it again. Unlike {@link ConcurrentHashMap#computeIfAbsent},
+ * the loader runs outside the map, so it may load other keys of the same cache (e.g. a model
+ * loading its parent). A failed load is not cached, the next call tries again.
+ * <p>
+ * A load that waits, directly or through other threads, for a key it is loading itself fails with
+ * "Circular loading" instead of waiting forever, e.g. a thread loading X then Y while another loads Y then X.
+ * <p>
+ * What a loader reads is kept with its value and recorded again by every {@link #get}, see
+ * {@link DependencyTracker}.
+ * <p>
+ * A named cache reports its hits, misses and evictions to {@link Metrics}, its size is reported by its
+ * {@link CacheManager}. A cache with a weigher counts the bytes of its values against the budget of the
+ * manager, which evicts the least recently used values of all its caches when the budget is exceeded. Values
+ * added with {@link #put} are never evicted, they can't be loaded again.
+ *
+ * @author yanmaoyuan
+ */
+public final class SingleFlightCache<K, V> {
+
+    private static final class Flight<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final Thread owner = Thread.currentThread();
+        private Map<String, Long> dependencies = Map.of();
+        /**
+         * bytes counted against the budget of the manager, see {@link #release}
+         */
+        private long weight;
+        private boolean pinned;
+        private volatile long lastUsed = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+    }
+
+    /**
+     * thread -> the flight it waits for, of any cache, to find the loads waiting for each other
+     */
+    private static final Map<Thread, Flight<?>> WAITING = new ConcurrentHashMap<>();
+
+    /**
+     * an evicted value the garbage collector has not taken yet
+     */
+    private record Spilled<V>(SoftReference<V> value, Map<String, Long> dependencies) {}
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    @Getter
+    private final String name;
+    private final CacheManager manager;
+    private final ToLongFunction<? super V> weigher;
+    private final Map<K, Spilled<V>> spilled;
+
+    private final Metrics.Counter hits;
+    private final Metrics.Counter misses;
+    private final Metrics.Counter evictions;
+    private final Metrics.Counter spillHits;
+
+    public SingleFlightCache() {
+        this.name = null;
+        this.manager = null;
+        this.weigher = null;
+        this.spilled = null;
+        this.hits = null;
+        this.misses = null;
+        this.evictions = null;
+        this.spillHits = null;
+    }
+
+    /**
+     * @param manager  counts the weight of the values against its budget, the size is reported by the manager
+     * @param weigher  the bytes a value holds, null if the values are too small to count
+     * @param spill    keep evicted values as soft references, loaded again only after the garbage collector took them
+     */
+    SingleFlightCache(String name, CacheManager manager, ToLongFunction<? super V> weigher, boolean spill) {
+        this.name = name;
+        this.manager = manager;
+        this.weigher = weigher;
+        this.spilled = spill ? new ConcurrentHashMap<>() : null;
+        this.hits = Metrics.counter("cache_hits_total", "cache", name);
+        this.misses = Metrics.counter("cache_misses_total", "cache", name);
+        this.evictions = Metrics.counter("cache_evictions_total", "cache", name);
+        this.spillHits = spill ? Metrics.counter("cache_spill_hits_total", "cache", name) : null;
+    }
+
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Flight<V> flight = flights.get(key);
+        if (flight == null) {
+            Flight<V> restored = restore(key);
+            if (restored != null) {
+                flight = restored;
+            } else {
+                Flight<V> mine = new Flight<>();
+                flight = flights.putIfAbsent(key, mine);
+                if (flight == null) {
+                    if (misses != null) {
+                        misses.increment();
+                    }
+                    return load(key, mine, loader);
+                }
+            }
+        }
+        if (hits != null) {
+            hits.increment();
+        }
+        flight.lastUsed = System.nanoTime();
+
+        try {
+            V value = flight.future.isDone() ? flight.future.join() : await(key, flight);
+            DependencyTracker.recordAll(flight.dependencies);
+            return value;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for a flight of another thread, unless that thread waits for the current one.
+     */
+    private V await(K key, Flight<V> flight) {
+        Thread current = Thread.currentThread();
+        // registered before the check, so of two threads waiting for each other at least one sees the cycle
+        WAITING.put(current, flight);
+        try {
+            Set<Thread> visited = new HashSet<>();
+            for (Thread owner = flight.owner; owner != null && visited.add(owner); ) {
+                if (owner == current) {
+                    throw new InternalException("Circular loading: " + key);
+                }
+                Flight<?> waiting = WAITING.get(owner);
+                owner = waiting == null || waiting.future.isDone() ? null : waiting.owner;
+            }
+            return flight.future.join();
+        } finally {
+            WAITING.remove(current);
+        }
+    }
+
+    private V load(K key, Flight<V> flight, Function<? super K, ? extends V> loader) {
+        try {
+            Map<String, Long> dependencies = new HashMap<>();
+            V value = DependencyTracker.track(dependencies, () -> loader.apply(key));
+            // published to other threads by completing the future
+            flight.dependencies = dependencies;
+            if (weigher != null && value != null) {
+                flight.weight = weigher.applyAsLong(value);
+                manager.add(flight.weight);
+            }
+            flight.future.complete(value);
+            if (flights.get(key) != flight) {
+                // removed while loading
+                release(flight);
+            }
+            if (flight.weight > 0) {
+                manager.evictIfOverBudget();
+            }
+            return value;
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public void put(K key, V value) {
+        Flight<V> flight = new Flight<>();
+        flight.pinned = true;
+        if (weigher != null && value != null) {
+            flight.weight = weigher.applyAsLong(value);
+            manager.add(flight.weight);
+        }
+        flight.future.complete(value);
+        Flight<V> previous = flights.put(key, flight);
+        if (previous != null && previous.future.isDone()) {
+            release(previous);
+        }
+    }
+
+    /**
+     * Take back a spilled value the garbage collector has not taken yet.
+     */
+    private Flight<V> restore(K key) {
+        if (spilled == null) {
+            return null;
+        }
+        Spilled<V> spill = spilled.remove(key);
+        V value = spill == null ? null : spill.value().get();
+        if (value == null) {
+            return null;
+        }
+        Flight<V> flight = new Flight<>();
+        flight.dependencies = spill.dependencies();
+        flight.weight = weigher.applyAsLong(value);
+        flight.future.complete(value);
+        if (flights.putIfAbsent(key, flight) != null) {
+            return null;
+        }
+        manager.add(flight.weight);
+        spillHits.increment();
+        manager.evictIfOverBudget();
+        return flight;
+    }
+
+    /**
+     * Stop counting the weight of a value that is not in the cache anymore, once.
+     */
+    private void release(Flight<V> flight) {
+        if (flight.weight > 0 && flight.released.compareAndSet(false, true)) {
+            manager.add(-flight.weight);
+        }
+    }
+
+    /**
+     * @return the loaded value, or null if the key is absent or still loading
+     */
+    public V getIfPresent(K key) {
+        Flight<V> flight = flights.get(key);
+        if (flight == null || !flight.future.isDone() || flight.future.isCompletedExceptionally()) {
+            return null;
+        }
+        return flight.future.join();
+    }
+
+    /**
+     * Remove every loaded value that read one of the dependencies, so it is loaded again on next use.
+     * Only values loaded while {@link DependencyTracker} was enabled know what they read.
+     *
+     * @return the removed keys
+     */
+    public List<K> invalidate(Set<String> dependencies) {
+        List<K> removed = new ArrayList<>();
+        flights.forEach((key, flight) -> {
+            if (flight.future.isDone() && !Collections.disjoint(flight.dependencies.keySet(), dependencies)
+                    && flights.remove(key, flight)) {
+                release(flight);
+                removed.add(key);
+            }
+        });
+        if (spilled != null) {
+            spilled.values().removeIf(spill -> !Collections.disjoint(spill.dependencies().keySet(), dependencies));
+        }
+        if (evictions != null) {
+            evictions.add(removed.size());
+        }
+        return removed;
+    }
+
+    public void remove(K key) {
+        if (spilled != null) {
+            spilled.remove(key);
+        }
+        Flight<V> flight = flights.remove(key);
+        if (flight != null) {
+            if (flight.future.isDone()) {
+                release(flight);
+            }
+            if (evictions != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * @return the bytes of the values in the cache, 0 without a weigher
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Flight<V> flight : flights.values()) {
+            if (flight.future.isDone()) {
+                weight += flight.weight;
+            }
+        }
+        return weight;
+    }
+
+    boolean isWeighted() {
+        return weigher != null;
+    }
+
+    /**
+     * Add the values that can be evicted to the candidates of the manager.
+     */
+    void collectEvictable(List<CacheManager.Evictable> candidates) {
+        flights.forEach((key, flight) -> {
+            if (!flight.pinned && flight.weight > 0 && flight.future.isDone()) {
+                candidates.add(new CacheManager.Evictable(flight.lastUsed, flight.weight, () -> evict(key, flight)));
+            }
+        });
+    }
+
+    private void evict(K key, Flight<V> flight) {
+        if (!flights.remove(key, flight)) {
+            return;
+        }
+        release(flight);
+        evictions.increment();
+        if (spilled != null && !flight.future.isCompletedExceptionally()) {
+            spilled.put(key, new Spilled<>(new SoftReference<>(flight.future.join()), flight.dependencies));
+        }
+    }
+
+    public boolean containsKey(K key) {
+        return getIfPresent(key) != null;
+    }
+
+    public int size() {
+        return flights.size();
+    }
+
+    /**
+     * @return a sorted copy of every loaded value
+     */
+    public Map<K, V> asMap() {
+        Map<K, V> map = new TreeMap<>();
+        flights.forEach((key, flight) -> {
+            if (flight.future.isDone() && !flight.future.isCompletedExceptionally()) {
+                V value = flight.future.join();
+                if (value != null) {
+                    map.put(key, value);
+                }
+            }
+        });
+        return map;
+    }
+}
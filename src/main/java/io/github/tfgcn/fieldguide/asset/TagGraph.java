@@ -0,0 +1,300 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import io.github.tfgcn.fieldguide.data.minecraft.tag.TagElement;
+import io.github.tfgcn.fieldguide.data.minecraft.tag.Tags;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Flattened membership of every tag in one registry (items, blocks or fluids).
+ * <p>
+ * Built once from all tag files of the registry. Nested {@code #tag} references are resolved
+ * ahead of time, so a lookup is a map access. Members keep the order of a depth-first walk
+ * of the tag file, without duplicates. Cycles are reported and broken at the first tag seen twice.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class TagGraph {
+
+    private static final String[] EMPTY = new String[0];
+
+    @Getter
+    private final String registry;
+    /**
+     * tag -> flattened members
+     */
+    private final Map<String, String[]> members;
+    /**
+     * member -> tags containing it, directly or through nested tags, sorted
+     */
+    private final Map<String, String[]> tagsOf;
+    @Getter
+    private final int edgeCount;
+    @Getter
+    private final int cycleCount;
+    @Getter
+    private final long buildMillis;
+
+    private TagGraph(String registry, Map<String, String[]> members, Map<String, String[]> tagsOf,
+                     int edgeCount, int cycleCount, long buildMillis) {
+        this.registry = registry;
+        this.members = members;
+        this.tagsOf = tagsOf;
+        this.edgeCount = edgeCount;
+        this.cycleCount = cycleCount;
+        this.buildMillis = buildMillis;
+    }
+
+    /**
+     * Build the graph.
+     *
+     * @param registry the registry name, e.g. items
+     * @param tagIds every tag declared in the registry
+     * @param loader loads the tag files of a tag from every source, lowest priority first
+     */
+    public static TagGraph build(String registry, Collection<String> tagIds, Function<String, List<Tags>> loader) {
+        return buildFromValues(registry, tagIds, tag -> readValues(tag, loader));
+    }
+
+    /**
+     * Build the graph from values already read, see {@link #values(Tags)}.
+     *
+     * @param registry the registry name, e.g. items
+     * @param tagIds every tag declared in the registry
+     * @param loader the values of a tag from every source, lowest priority first
+     */
+    public static TagGraph buildFromValues(String registry, Collection<String> tagIds, Function<String, List<String>> loader) {
+        long start = System.nanoTime();
+
+        // tag files are parsed concurrently, then nested tags that were not declared are looked up too
+        Map<String, List<String>> values = new HashMap<>();
+        List<String> pending = tagIds.stream().map(TagGraph::toTagId).distinct().toList();
+        while (!pending.isEmpty()) {
+            List<List<String>> parsed = pending.parallelStream().map(loader).toList();
+            Set<String> referenced = new TreeSet<>();
+            for (int i = 0; i < pending.size(); i++) {
+                values.put(pending.get(i), parsed.get(i));
+                for (String value : parsed.get(i)) {
+                    if (value.startsWith("#")) {
+                        referenced.add(value.substring(1));
+                    }
+                }
+            }
+            referenced.removeAll(values.keySet());
+            pending = List.copyOf(referenced);
+        }
+
+        int edgeCount = 0;
+        for (List<String> list : values.values()) {
+            edgeCount += list.size();
+        }
+
+        Set<String> cyclic = findCycles(values);
+        Flattener flattener = new Flattener(values, cyclic);
+        Map<String, String[]> members = new HashMap<>();
+        for (String tag : values.keySet()) {
+            members.put(tag, flattener.resolve(tag));
+        }
+
+        TagGraph graph = create(registry, members, edgeCount, cyclic.size(), start);
+        log.info("Built {} tag graph: {} tags, {} edges, {} members, {} tags in cycles in {} ms",
+                registry, graph.size(), edgeCount, graph.tagsOf.size(), cyclic.size(), graph.buildMillis);
+        return graph;
+    }
+
+    /**
+     * Restore a graph from the members of a graph built before, see {@link #getAllMembers()}.
+     */
+    static TagGraph restore(String registry, Map<String, String[]> members, int edgeCount, int cycleCount) {
+        TagGraph graph = create(registry, members, edgeCount, cycleCount, System.nanoTime());
+        log.info("Restored {} tag graph: {} tags, {} members in {} ms",
+                registry, graph.size(), graph.tagsOf.size(), graph.buildMillis);
+        return graph;
+    }
+
+    private static TagGraph create(String registry, Map<String, String[]> members, int edgeCount, int cycleCount, long start) {
+        Map<String, List<String>> reverse = new HashMap<>();
+        for (String tag : new TreeSet<>(members.keySet())) {
+            for (String member : members.get(tag)) {
+                reverse.computeIfAbsent(member, k -> new ArrayList<>()).add(tag);
+            }
+        }
+        Map<String, String[]> tagsOf = new HashMap<>();
+        reverse.forEach((member, tags) -> tagsOf.put(member, tags.toArray(EMPTY)));
+
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        return new TagGraph(registry, Map.copyOf(members), Map.copyOf(tagsOf), edgeCount, cycleCount, buildMillis);
+    }
+
+    private static List<String> readValues(String tag, Function<String, List<Tags>> loader) {
+        List<String> values = new ArrayList<>();
+        try {
+            for (Tags tags : loader.apply(tag)) {
+                values.addAll(values(tags));
+            }
+        } catch (Exception e) {
+            log.error("Failed to load tag: {}", tag, e);
+        }
+        return values;
+    }
+
+    /**
+     * @return the values of one tag file, nested tags as #tag with their namespace
+     */
+    public static List<String> values(Tags tags) {
+        List<String> values = new ArrayList<>();
+        if (tags.getValues() == null) {
+            return values;
+        }
+        for (TagElement element : tags.getValues()) {
+            String id = element.getId();
+            if (id == null) {
+                continue;
+            }
+            values.add(id.startsWith("#") ? "#" + toTagId(id.substring(1)) : id);
+        }
+        return values;
+    }
+
+    /**
+     * Tarjan's algorithm, returns every tag that is part of a cycle.
+     */
+    private static Set<String> findCycles(Map<String, List<String>> values) {
+        Map<String, Integer> indexes = new HashMap<>();
+        Map<String, Integer> lowLinks = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> onStack = new HashSet<>();
+        Set<String> cyclic = new HashSet<>();
+
+        for (String tag : new TreeSet<>(values.keySet())) {
+            if (!indexes.containsKey(tag)) {
+                strongConnect(tag, values, indexes, lowLinks, stack, onStack, cyclic);
+            }
+        }
+        return cyclic;
+    }
+
+    private static void strongConnect(String tag, Map<String, List<String>> values,
+                                      Map<String, Integer> indexes, Map<String, Integer> lowLinks,
+                                      Deque<String> stack, Set<String> onStack, Set<String> cyclic) {
+        int index = indexes.size();
+        indexes.put(tag, index);
+        lowLinks.put(tag, index);
+        stack.push(tag);
+        onStack.add(tag);
+
+        boolean selfLoop = false;
+        for (String value : values.get(tag)) {
+            if (!value.startsWith("#")) {
+                continue;
+            }
+            String child = value.substring(1);
+            if (child.equals(tag)) {
+                selfLoop = true;
+            } else if (!indexes.containsKey(child)) {
+                strongConnect(child, values, indexes, lowLinks, stack, onStack, cyclic);
+                lowLinks.put(tag, Math.min(lowLinks.get(tag), lowLinks.get(child)));
+            } else if (onStack.contains(child)) {
+                lowLinks.put(tag, Math.min(lowLinks.get(tag), indexes.get(child)));
+            }
+        }
+
+        if (lowLinks.get(tag) == index) {
+            List<String> component = new ArrayList<>();
+            String member;
+            do {
+                member = stack.pop();
+                onStack.remove(member);
+                component.add(member);
+            } while (!member.equals(tag));
+
+            if (component.size() > 1 || selfLoop) {
+                log.warn("Circular tag reference: {}", component);
+                cyclic.addAll(component);
+            }
+        }
+    }
+
+    /**
+     * Resolves members, reusing the members of tags outside of cycles.
+     */
+    private static final class Flattener {
+        private final Map<String, List<String>> values;
+        private final Set<String> cyclic;
+        private final Map<String, String[]> resolved = new HashMap<>();
+
+        Flattener(Map<String, List<String>> values, Set<String> cyclic) {
+            this.values = values;
+            this.cyclic = cyclic;
+        }
+
+        String[] resolve(String tag) {
+            String[] members = resolved.get(tag);
+            if (members == null) {
+                Set<String> result = new LinkedHashSet<>();// 保持插入顺序但去重
+                walk(tag, result, new HashSet<>());
+                members = result.toArray(EMPTY);
+                resolved.put(tag, members);
+            }
+            return members;
+        }
+
+        private void walk(String tag, Set<String> result, Set<String> visited) {
+            if (!visited.add(tag)) {
+                return;
+            }
+            for (String value : values.getOrDefault(tag, List.of())) {
+                if (!value.startsWith("#")) {
+                    result.add(value);
+                    continue;
+                }
+                String child = value.substring(1);
+                if (cyclic.contains(child)) {
+                    walk(child, result, visited);
+                } else {
+                    // a tag outside of cycles can not lead back here
+                    Collections.addAll(result, resolve(child));
+                }
+            }
+        }
+    }
+
+    private static String toTagId(String tag) {
+        return tag.indexOf(':') < 0 ? "minecraft:" + tag : tag;
+    }
+
+    /**
+     * @return the members of the tag, nested tags included. Empty if the tag does not exist.
+     */
+    public List<String> getMembers(String tag) {
+        String[] array = members.get(toTagId(tag));
+        return array == null ? List.of() : Collections.unmodifiableList(Arrays.asList(array));
+    }
+
+    /**
+     * @return every tag containing the id, directly or through nested tags, sorted
+     */
+    public List<String> getTags(String id) {
+        String[] array = tagsOf.get(id);
+        return array == null ? List.of() : Collections.unmodifiableList(Arrays.asList(array));
+    }
+
+    /**
+     * @return tag -> flattened members of every tag, to be restored with {@link #restore}
+     */
+    Map<String, String[]> getAllMembers() {
+        return members;
+    }
+
+    public boolean contains(String tag) {
+        return members.containsKey(toTagId(tag));
+    }
+
+    public int size() {
+        return members.size();
+    }
+}
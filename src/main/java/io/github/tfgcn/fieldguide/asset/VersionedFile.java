@@ -0,0 +1,110 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A cache file kept as numbered generations, {@code jar-index.bin} is written as {@code jar-index.1.bin},
+ * {@code jar-index.2.bin} and so on.
+ * <p>
+ * The caches memory-map the file they read, and Windows refuses to replace a mapped file until the mapping
+ * is garbage collected. So a save never replaces a file, it writes the next generation and removes the older
+ * ones it can, a generation still mapped is removed by a later save.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+final class VersionedFile {
+
+    @FunctionalInterface
+    interface Content {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final Path dir;
+    private final String prefix;
+    private final String suffix;
+
+    VersionedFile(Path file) {
+        Path absolute = file.toAbsolutePath();
+        String name = absolute.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        this.dir = absolute.getParent();
+        this.prefix = (dot < 0 ? name : name.substring(0, dot)) + ".";
+        this.suffix = dot < 0 ? "" : name.substring(dot);
+    }
+
+    /**
+     * @return the newest generation, or null if there is none
+     */
+    Path latest() throws IOException {
+        Map.Entry<Long, Path> latest = generations().lastEntry();
+        return latest == null ? null : latest.getValue();
+    }
+
+    /**
+     * Write the next generation, then remove the older ones.
+     *
+     * @return the written file
+     */
+    Path write(Content content) throws IOException {
+        Files.createDirectories(dir);
+        TreeMap<Long, Path> older = generations();
+        long generation = older.isEmpty() ? 1 : older.lastKey() + 1;
+
+        Path tempFile = Files.createTempFile(dir, prefix, ".tmp");
+        Path file;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                content.write(out);
+            }
+            while (true) {
+                file = dir.resolve(prefix + generation + suffix);
+                try {
+                    Files.move(tempFile, file);
+                    break;
+                } catch (FileAlreadyExistsException e) {
+                    // written by another process meanwhile
+                    generation++;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        for (Path old : older.values()) {
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException e) {
+                log.debug("Keep old cache file: {}, message: {}", old, e.getMessage());
+            }
+        }
+        return file;
+    }
+
+    private TreeMap<Long, Path> generations() throws IOException {
+        TreeMap<Long, Path> generations = new TreeMap<>();
+        if (!Files.isDirectory(dir)) {
+            return generations;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                String generation = name.substring(prefix.length(), name.length() - suffix.length());
+                if (!generation.isEmpty() && generation.chars().allMatch(Character::isDigit)) {
+                    generations.put(Long.parseLong(generation), file);
+                }
+            }
+        }
+        return generations;
+    }
+}
@@ -1,11 +1,13 @@
 package io.github.tfgcn.fieldguide.asset;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -14,10 +16,12 @@ import java.util.zip.ZipFile;
  *
  * @author yanmaoyuan
  */
-public class ZipAssetSource extends AssetSource {
+public class ZipAssetSource extends AssetSource implements Closeable {
 
     private final ZipFile zipFile;
 
+    private volatile JarIndexCache.Fingerprint fingerprint;
+
     public ZipAssetSource(Path zipPath) throws IOException {
         super(zipPath, "zip:" + zipPath.getFileName().toString());
         this.zipFile = new ZipFile(zipPath.toFile());
@@ -37,6 +41,28 @@ public class ZipAssetSource extends AssetSource {
         throw new IOException("Resource not found in ZIP: " + resourcePath);
     }
 
+    @Override
+    public long size(String resourcePath) throws IOException {
+        ZipEntry entry = zipFile.getEntry(resourcePath);
+        if (entry != null) {
+            return entry.getSize();
+        }
+        throw new IOException("Resource not found in ZIP: " + resourcePath);
+    }
+
+    /**
+     * The whole archive shares one fingerprint, taken from its central directory.
+     */
+    @Override
+    public long fingerprint(String resourcePath) throws IOException {
+        JarIndexCache.Fingerprint value = fingerprint;
+        if (value == null) {
+            value = JarIndexCache.Fingerprint.of(rootPath);
+            fingerprint = value;
+        }
+        return value.hash();
+    }
+
     @Override
     public List<Asset> listAssets(String resourcePath) throws IOException {
         List<Asset> assets = new ArrayList<>();
@@ -48,7 +74,7 @@ public class ZipAssetSource extends AssetSource {
             String entryName = entry.getName();
             if (entryName.startsWith(normalizedDir)) {
                 if (!entry.isDirectory()) {
-                    assets.add(new Asset(entryName, zipFile.getInputStream(entry), this));
+                    assets.add(new Asset(entryName, this));
                 }
             }
         }
@@ -67,6 +93,17 @@ public class ZipAssetSource extends AssetSource {
         return entry != null && entry.isDirectory();
     }
 
+    @Override
+    public void forEachResource(Consumer<String> action) {
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory()) {
+                action.accept(entry.getName());
+            }
+        }
+    }
+
     private String normalizePath(String path) {
         if (path.isEmpty()) {
             return "";
@@ -79,4 +116,9 @@ public class ZipAssetSource extends AssetSource {
 
         return normalized;
     }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package io.github.tfgcn.fieldguide.data.fml;
 
 import io.github.tfgcn.fieldguide.Constants;
+import io.github.tfgcn.fieldguide.asset.JarIndexCache;
+import io.github.tfgcn.fieldguide.asset.JarScan;
 import io.github.tfgcn.fieldguide.asset.MCMeta;
+import io.github.tfgcn.fieldguide.asset.SingleFlightCache;
 import lombok.extern.slf4j.Slf4j;
 import net.vieiro.toml.TOML;
 import net.vieiro.toml.TOMLParser;
@@ -13,7 +16,13 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.*;
 import java.util.stream.Stream;
 
@@ -21,11 +30,25 @@ import static io.github.tfgcn.fieldguide.Constants.CACHE;
 
 @Slf4j
 public class ModLoader {
+    private static final String MODS_TOML = "META-INF/mods.toml";
+
     private final List<ModInfo> loadedMods = new ArrayList<>();
     private final List<ModInfo> mods = new ArrayList<>();
     private final Map<String, ModInfo> modIdMap = new HashMap<>();
-    
+    private final Set<Path> assetJars = ConcurrentHashMap.newKeySet();
+    /**
+     * written outside the map lock, other jars shipping the same nested jar wait for the first one
+     */
+    private final SingleFlightCache<String, Path> extractedJars = new SingleFlightCache<>();
+    private final Set<String> scannedJars = ConcurrentHashMap.newKeySet();
+    private final JarIndexCache jarIndexCache;
+
     public ModLoader(Path modsDir) throws IOException {
+        this(modsDir, JarIndexCache.disabled());
+    }
+
+    public ModLoader(Path modsDir, JarIndexCache jarIndexCache) throws IOException {
+        this.jarIndexCache = jarIndexCache;
         if (!Files.exists(modsDir)) {
             log.info("Mods directory not found: {}", modsDir);
             return;
@@ -71,99 +94,205 @@ public class ModLoader {
         mods.add(forge);
         modIdMap.put("forge", forge);
 
+        List<Path> jarList;
         try (Stream<Path> jars = Files.list(modsDir)) {
-            List<Path> jarList = jars
+            jarList = jars
                 .filter(p -> p.toString().endsWith(".jar"))
+                .sorted()
                 .toList();
-            
+        }
+
+        Path cacheDir = Paths.get(CACHE, "lib");
+        Files.createDirectories(cacheDir);
+
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), jarList.size()));
+        try (ExecutorService pool = Executors.newFixedThreadPool(threads)) {
+            pool.submit(() -> scanAssets(mc.getJarPath()));
+            pool.submit(() -> scanAssets(forge.getJarPath()));
+
+            List<ModInfo> found = new ArrayList<>();
+            List<Future<List<ModInfo>>> futures = new ArrayList<>(jarList.size());
             for (Path jar : jarList) {
+                futures.add(pool.submit(() -> scanJar(jar, cacheDir)));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
                 try {
-                    extractJarJar(jar);
-                    parseModInfo(jar);
-                } catch (Exception e) {
-                    log.error("Failed to parse mod info from: {}", jar.getFileName(), e);
+                    found.addAll(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    log.error("Failed to parse mod info from: {}", jarList.get(i).getFileName(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while scanning mods");
                 }
             }
+
+            // nested jars may be claimed by any of their parents, so add in path order
+            // to resolve duplicated mods the same way on every run
+            found.sort(Comparator.comparing(ModInfo::getJarPath));
+            found.forEach(this::add);
         }
     }
 
-    private void extractJarJar(Path jarPath) throws IOException {
-        Path cacheDir = Paths.get(CACHE, "lib");
-        Files.createDirectories(cacheDir);
+    /**
+     * Scan a jar and its nested jars, reusing the cached scan when the jar has not changed.
+     *
+     * @return the mods found in the jar and its nested jars
+     */
+    private List<ModInfo> scanJar(Path jarPath, Path cacheDir) throws IOException {
+        JarScan scan = jarIndexCache.get(jarPath);
+        if (scan == null || !nestedJarsExist(scan, cacheDir)) {
+            scan = readJar(jarPath, cacheDir, true);
+            jarIndexCache.put(jarPath, scan);
+        }
 
-        try (JarFile jar = new JarFile(jarPath.toFile())) {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String entryName = entry.getName();
+        if (scan.hasAssets()) {
+            assetJars.add(jarPath);
+        }
 
-                if (entryName.endsWith(".jar")) {
-                    String nestedJarName = Paths.get(entryName).getFileName().toString();
-                    Path outputPath = cacheDir.resolve(nestedJarName);
+        List<ModInfo> result = new ArrayList<>();
+        if (scan.mod() != null) {
+            result.add(scan.mod());
+        }
 
-                    if (Files.exists(outputPath)) {
-                        log.debug("Nested JAR already exists: {}", nestedJarName);
-                        parseModInfo(outputPath);
-                        continue;
-                    }
+        for (String nestedJarName : scan.nestedJars()) {
+            // the same nested jar may ship in several mods, scan it only once
+            if (!scannedJars.add(nestedJarName)) {
+                continue;
+            }
+            Path nestedJar = cacheDir.resolve(nestedJarName);
+            try {
+                result.addAll(scanJar(nestedJar, cacheDir));
+            } catch (Exception e) {
+                log.error("Failed to parse mod info from: {}", nestedJar.getFileName(), e);
+            }
+        }
+        return result;
+    }
 
-                    byte[] jarData;
-                    try (InputStream is = jar.getInputStream(entry)) {
-                        jarData = is.readAllBytes();
-                    }
+    private boolean nestedJarsExist(JarScan scan, Path cacheDir) {
+        for (String nestedJarName : scan.nestedJars()) {
+            if (!Files.exists(cacheDir.resolve(nestedJarName))) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                    if (!hasModsToml(jarData)) {
-                        log.debug("Skipping nested JAR without mods.toml: {}", nestedJarName);
-                        //continue;
-                    }
+    /**
+     * Read a jar in a single pass over its entries: collect mods.toml, the assets/data files
+     * and the nested jars.
+     *
+     * @param modJar false for minecraft and forge, which are only scanned for assets
+     */
+    private JarScan readJar(Path jarPath, Path cacheDir, boolean modJar) throws IOException {
+        JarIndexCache.Fingerprint fingerprint = JarIndexCache.Fingerprint.of(jarPath);
+        List<String> nestedJars = new ArrayList<>();
+        List<String> resources = new ArrayList<>();
+        ModInfo modInfo = null;
+
+        try (JarFile jar = new JarFile(jarPath.toFile(), false)) {
+            JarEntry modsTomlEntry = null;
 
-                    // save jar in jar
-                    Files.write(outputPath, jarData);
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (entry.isDirectory()) {
+                    continue;
+                }
 
-                    parseModInfo(outputPath);
-                    log.debug("Extracted nested JAR: {}", nestedJarName);
+                if (isAssetEntry(entryName)) {
+                    resources.add(entryName);
+                } else if (modJar && MODS_TOML.equals(entryName)) {
+                    modsTomlEntry = entry;
+                } else if (modJar && entryName.endsWith(".jar")) {
+                    nestedJars.add(extractNestedJar(jar, entry, cacheDir));
+                }
+            }
 
-                    extractJarJar(outputPath);
+            if (modJar) {
+                if (modsTomlEntry == null) {
+                    log.debug("No mods.toml found in: {}", jarPath.getFileName());
+                } else {
+                    modInfo = parseModInfo(jar, modsTomlEntry, jarPath);
                 }
             }
         }
-    }
 
-    private boolean hasModsToml(byte[] jarData) {
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(jarData);
-             JarInputStream jarStream = new JarInputStream(bis)) {
+        return new JarScan(fingerprint, modInfo, List.copyOf(nestedJars), List.copyOf(resources));
+    }
 
-            JarEntry entry;
-            while ((entry = jarStream.getNextJarEntry()) != null) {
-                if ("META-INF/mods.toml".equals(entry.getName())) {
-                    return true;
-                }
+    private void scanAssets(Path jarPath) {
+        try {
+            JarScan scan = jarIndexCache.get(jarPath);
+            if (scan == null) {
+                scan = readJar(jarPath, null, false);
+                jarIndexCache.put(jarPath, scan);
+            }
+            if (scan.hasAssets()) {
+                assetJars.add(jarPath);
             }
         } catch (IOException e) {
-            log.warn("Failed to check mods.toml in nested JAR data", e);
+            log.error("Failed to scan jar: {}", jarPath, e);
         }
-        return false;
     }
 
-    private void parseModInfo(Path jarPath) throws IOException {
-        try (JarFile jar = new JarFile(jarPath.toFile())) {
-            JarEntry modsTomlEntry = jar.getJarEntry("META-INF/mods.toml");
-            if (modsTomlEntry == null) {
-                log.debug("No mods.toml found in: {}", jarPath.getFileName());
-                return;
-            }
+    private static boolean isAssetEntry(String entryName) {
+        return entryName.startsWith("assets/") || entryName.startsWith("data/");
+    }
 
-            try (InputStream is = jar.getInputStream(modsTomlEntry)) {
-                ModInfo modInfo = parseModsToml(is, jarPath);
-                if (modInfo != null) {
-                    if ("${file.jarVersion}".equals(modInfo.getVersion())) {
-                        Manifest manifest = jar.getManifest();
-                        String jarVersion = manifest.getMainAttributes().getValue("Implementation-Version");
-                        modInfo.setVersion(jarVersion);
-                    }
-                    add(modInfo);
+    /**
+     * Stream a nested jar to the cache directory, unless it is already there.
+     *
+     * @return the file name of the nested jar
+     */
+    private String extractNestedJar(JarFile jar, JarEntry entry, Path cacheDir) throws IOException {
+        String nestedJarName = Paths.get(entry.getName()).getFileName().toString();
+        Path outputPath = cacheDir.resolve(nestedJarName);
+        try {
+            // other jars shipping the same nested jar wait here until it is fully written
+            extractedJars.get(nestedJarName, name -> {
+                try {
+                    writeNestedJar(jar, entry, outputPath);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return outputPath;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return nestedJarName;
+    }
+
+    private void writeNestedJar(JarFile jar, JarEntry entry, Path outputPath) throws IOException {
+        if (Files.exists(outputPath)) {
+            log.debug("Nested JAR already exists: {}", outputPath.getFileName());
+            return;
+        }
+
+        // write to a temp file first, so an interrupted run never leaves a truncated jar behind
+        Path tempPath = Files.createTempFile(outputPath.getParent(), outputPath.getFileName().toString(), ".tmp");
+        try (InputStream is = jar.getInputStream(entry)) {
+            Files.copy(is, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        log.debug("Extracted nested JAR: {}", outputPath.getFileName());
+    }
+
+    private ModInfo parseModInfo(JarFile jar, JarEntry modsTomlEntry, Path jarPath) throws IOException {
+        try (InputStream is = jar.getInputStream(modsTomlEntry)) {
+            ModInfo modInfo = parseModsToml(is, jarPath);
+            if (modInfo != null && "${file.jarVersion}".equals(modInfo.getVersion())) {
+                Manifest manifest = jar.getManifest();
+                if (manifest != null) {
+                    modInfo.setVersion(manifest.getMainAttributes().getValue("Implementation-Version"));
                 }
             }
+            return modInfo;
         }
     }
 
@@ -252,11 +381,13 @@ public class ModLoader {
     private List<ModInfo> sortModsByDependencies() {
         DirectedAcyclicGraph<ModInfo, DefaultEdge> graph = new DirectedAcyclicGraph<>(DefaultEdge.class);
 
-        for (ModInfo mod : mods) {
+        // edges are added in a fixed order, so the same edge is dropped on a cycle every time
+        List<ModInfo> ordered = mods.stream().sorted(Comparator.comparing(ModInfo::getModId)).toList();
+        for (ModInfo mod : ordered) {
             graph.addVertex(mod);
         }
         
-        for (ModInfo mod : mods) {
+        for (ModInfo mod : ordered) {
             for (Dependency dep : mod.getDependencies()) {
                 ModInfo targetMod = modIdMap.get(dep.getModId());
                 if (targetMod != null) {
@@ -306,4 +437,11 @@ public class ModLoader {
     public ModInfo getMod(String modId) {
         return modIdMap.get(modId);
     }
+
+    /**
+     * @return true if the mod jar has any assets/ or data/ entries
+     */
+    public boolean hasAssets(ModInfo mod) {
+        return assetJars.contains(mod.getJarPath());
+    }
 }
\ No newline at end of file
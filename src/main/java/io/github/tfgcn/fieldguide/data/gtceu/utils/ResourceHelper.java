@@ -8,6 +8,6 @@ public class ResourceHelper {
     public static AssetLoader assetLoader;
 
     public static boolean isResourceExist(ResourceLocation rs) {
-        return assetLoader.getAsset(String.format("assets/%s/%s", rs.getNamespace(), rs.getPath())) != null;
+        return assetLoader.exists(String.format("assets/%s/%s", rs.getNamespace(), rs.getPath()));
     }
 }
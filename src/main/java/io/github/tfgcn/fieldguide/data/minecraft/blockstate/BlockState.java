@@ -2,7 +2,11 @@ package io.github.tfgcn.fieldguide.data.minecraft.blockstate;
 
 import com.google.gson.annotations.JsonAdapter;
 import io.github.tfgcn.fieldguide.gson.BlockStateVariantMapAdapter;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
@@ -15,6 +19,11 @@ public class BlockState {
     private LinkedHashMap<String, List<Variant>> variants;
     private List<MultiPartCase> multipart;
 
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient volatile BlockStateMatcher matcher;
+
     public boolean hasVariants() {
         return variants != null && !variants.isEmpty();
     }
@@ -23,29 +32,43 @@ public class BlockState {
         return multipart != null && !multipart.isEmpty();
     }
 
+    /**
+     * Compile the variant keys and multipart conditions, done once when the block state is loaded.
+     */
+    public BlockStateMatcher getMatcher() {
+        BlockStateMatcher result = matcher;
+        if (result == null) {
+            result = new BlockStateMatcher(this);
+            matcher = result;
+        }
+        return result;
+    }
+
+    /**
+     * Parse "facing=north,lit=true". A key without "=", e.g. "" or "normal", has no properties.
+     */
     public static Map<String, String> parseBlockProperties(String properties) {
         Map<String, String> state = new HashMap<>();
-        if (properties.contains("=")) {
-            String[] pairs = properties.split(",");
-            for (String pair : pairs) {
-                String[] keyValue = pair.split("=");
-                state.put(keyValue[0], keyValue[1]);
+        int start = 0;
+        while (start < properties.length()) {
+            int end = properties.indexOf(',', start);
+            if (end < 0) {
+                end = properties.length();
+            }
+            int eq = properties.indexOf('=', start);
+            if (eq > start && eq < end) {
+                state.put(properties.substring(start, eq), properties.substring(eq + 1, end));
             }
+            start = end + 1;
         }
         return state;
     }
 
     public List<Variant> selectByVariants(Map<String, String> state) {
-        List<Variant> defaultVariants = variants.values().stream().filter(Objects::nonNull).findFirst().orElse(null);
-
-        for (Map.Entry<String, List<Variant>> entry : variants.entrySet()) {
-            String key = entry.getKey();
-            List<Variant> value = entry.getValue();
-
-            Map<String, String> properties = parseBlockProperties(key);
-            if (state.entrySet().containsAll(properties.entrySet())) {
-                return value;
-            }
+        BlockStateMatcher compiled = getMatcher();
+        List<Variant> value = compiled.selectVariants(compiled.state(state));
+        if (value != null) {
+            return value;
         }
 
         // FIXME 改为扫描多个blockState文件
@@ -62,13 +85,8 @@ public class BlockState {
     }
 
     public List<Variant> selectByMultipart(Map<String, String> state) {
-        List<Variant> list = new ArrayList<>();
-
-        for (MultiPartCase multiPartCase : multipart) {
-            if (multiPartCase.check(state)) {
-                list.addAll(multiPartCase.getApply());
-            }
-        }
+        BlockStateMatcher compiled = getMatcher();
+        List<Variant> list = compiled.selectMultipart(compiled.state(state));
 
         if (list.isEmpty()) {
             log.warn("No variants found by multipart, state: {}", state);
@@ -79,18 +97,22 @@ public class BlockState {
 
     /**
      * 根据权重选择变体
+     *
+     * @param seed the same seed always selects the same variant, e.g. the block state id
      */
-    public static Variant selectByWeight(List<Variant> variants) {
+    public static Variant selectByWeight(List<Variant> variants, String seed) {
         if (variants.size() == 1) {
             return variants.getFirst();
         }
 
         // 计算总权重
         int totalWeight = variants.stream().mapToInt(Variant::getWeight).sum();
+        if (totalWeight <= 0) {
+            return variants.getFirst();
+        }
 
-        // 随机选择
-        Random random = new Random();
-        int randomValue = random.nextInt(totalWeight);
+        // 可复现的随机选择，保证每次渲染结果一致
+        int randomValue = new SplittableRandom(seed.hashCode()).nextInt(totalWeight);
         int currentWeight = 0;
 
         for (Variant variant : variants) {
@@ -0,0 +1,247 @@
+package io.github.tfgcn.fieldguide.data.minecraft.blockstate;
+
+import java.util.*;
+
+/**
+ * A {@link BlockState} compiled for matching.
+ * <p>
+ * Every (property, value) pair used by the block state gets a bit. Variant keys become masks
+ * and multipart conditions become mask tests, so selecting a state is a few long comparisons
+ * instead of parsing every variant key again.
+ *
+ * @author yanmaoyuan
+ */
+public final class BlockStateMatcher {
+
+    private interface Test {
+        boolean test(long[] state);
+    }
+
+    private static final Test ALWAYS = state -> true;
+    private static final Test NEVER = state -> false;
+
+    /**
+     * property -> value -> bit
+     */
+    private final Map<String, Map<String, Integer>> bits = new HashMap<>();
+    private int bitCount;
+    private final int words;
+
+    private final long[][] variantMasks;
+    private final List<List<Variant>> variantValues;
+    private final Test[] partTests;
+    private final List<List<Variant>> partValues;
+
+    BlockStateMatcher(BlockState blockState) {
+        // intern every pair first, so all masks have the same length
+        List<Map<String, String>> keys = new ArrayList<>();
+        variantValues = new ArrayList<>();
+        if (blockState.hasVariants()) {
+            for (Map.Entry<String, List<Variant>> entry : blockState.getVariants().entrySet()) {
+                Map<String, String> properties = BlockState.parseBlockProperties(entry.getKey());
+                properties.forEach(this::intern);
+                keys.add(properties);
+                variantValues.add(entry.getValue());
+            }
+        }
+        List<MultiPartCase> parts = blockState.hasMultipart() ? blockState.getMultipart() : List.of();
+        for (MultiPartCase part : parts) {
+            internCondition(part.getWhen());
+        }
+        words = Math.max(1, (bitCount + 63) / 64);
+
+        variantMasks = new long[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            long[] mask = new long[words];
+            keys.get(i).forEach((property, value) -> set(mask, bits.get(property).get(value)));
+            variantMasks[i] = mask;
+        }
+
+        partTests = new Test[parts.size()];
+        partValues = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            MultiPartCase part = parts.get(i);
+            // 如果没有 when 条件，表示在所有方块状态中都适用
+            partTests[i] = part.getWhen() == null ? ALWAYS : compile(part.getWhen());
+            partValues.add(part.getApply() == null ? List.of() : part.getApply());
+        }
+    }
+
+    /**
+     * Encode block properties, values never used by this block state are ignored.
+     */
+    public long[] state(Map<String, String> properties) {
+        long[] state = new long[words];
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            Map<String, Integer> values = bits.get(entry.getKey());
+            if (values != null) {
+                Integer bit = values.get(entry.getValue());
+                if (bit != null) {
+                    set(state, bit);
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return the variants of the first key contained in the state, or null
+     */
+    public List<Variant> selectVariants(long[] state) {
+        for (int i = 0; i < variantMasks.length; i++) {
+            if (containsAll(state, variantMasks[i])) {
+                return variantValues.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the variants of every multipart case the state satisfies
+     */
+    public List<Variant> selectMultipart(long[] state) {
+        List<Variant> list = new ArrayList<>();
+        for (int i = 0; i < partTests.length; i++) {
+            if (partTests[i].test(state)) {
+                list.addAll(partValues.get(i));
+            }
+        }
+        return list;
+    }
+
+    //////////// compile
+
+    private void intern(String property, String value) {
+        Map<String, Integer> values = bits.computeIfAbsent(property, k -> new HashMap<>());
+        if (!values.containsKey(value)) {
+            values.put(value, bitCount++);
+        }
+    }
+
+    private void internCondition(Condition condition) {
+        switch (condition) {
+            case AndCondition and -> {
+                if (and.getAdd() != null) {
+                    and.getAdd().forEach(this::internCondition);
+                }
+            }
+            case OrCondition or -> {
+                if (or.getOr() != null) {
+                    or.getOr().forEach(this::internCondition);
+                }
+            }
+            case PropertyCondition property -> {
+                if (property.getConditions() != null) {
+                    property.getConditions().forEach((name, expected) -> {
+                        for (String value : parseValueList(expected)) {
+                            intern(name, value);
+                        }
+                    });
+                }
+            }
+            case null, default -> {
+            }
+        }
+    }
+
+    private Test compile(Condition condition) {
+        switch (condition) {
+            case AndCondition and -> {
+                if (and.getAdd() == null || and.getAdd().isEmpty()) {
+                    return NEVER;
+                }
+                Test[] tests = and.getAdd().stream().map(this::compile).toArray(Test[]::new);
+                return state -> {
+                    for (Test test : tests) {
+                        if (!test.test(state)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+            }
+            case OrCondition or -> {
+                if (or.getOr() == null || or.getOr().isEmpty()) {
+                    return NEVER;
+                }
+                Test[] tests = or.getOr().stream().map(this::compile).toArray(Test[]::new);
+                return state -> {
+                    for (Test test : tests) {
+                        if (test.test(state)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+            }
+            case PropertyCondition property -> {
+                if (property.getConditions() == null) {
+                    return NEVER;
+                }
+                int size = property.getConditions().size();
+                long[][] masks = new long[size][];
+                boolean[] negated = new boolean[size];
+                int i = 0;
+                for (Map.Entry<String, String> entry : property.getConditions().entrySet()) {
+                    long[] mask = new long[words];
+                    for (String value : parseValueList(entry.getValue())) {
+                        set(mask, bits.get(entry.getKey()).get(value));
+                    }
+                    masks[i] = mask;
+                    // 反转条件：实际值不能在列表中
+                    negated[i] = entry.getValue().startsWith("!");
+                    i++;
+                }
+                return state -> {
+                    for (int j = 0; j < masks.length; j++) {
+                        if (intersects(state, masks[j]) == negated[j]) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+            }
+            default -> {
+                return NEVER;
+            }
+        }
+    }
+
+    /**
+     * "1|2|3|4" or "!none"
+     */
+    private static Set<String> parseValueList(String expected) {
+        String valueList = expected.startsWith("!") ? expected.substring(1) : expected;
+        Set<String> values = new HashSet<>();
+        for (String part : valueList.split("\\|")) {
+            if (!part.trim().isEmpty()) {
+                values.add(part.trim());
+            }
+        }
+        return values;
+    }
+
+    //////////// bit operations
+
+    private static void set(long[] mask, int bit) {
+        mask[bit >>> 6] |= 1L << bit;
+    }
+
+    private static boolean containsAll(long[] state, long[] mask) {
+        for (int i = 0; i < mask.length; i++) {
+            if ((state[i] & mask[i]) != mask[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean intersects(long[] state, long[] mask) {
+        for (int i = 0; i < mask.length; i++) {
+            if ((state[i] & mask[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
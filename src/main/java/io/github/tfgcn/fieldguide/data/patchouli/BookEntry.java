@@ -112,8 +112,13 @@ public class BookEntry implements Comparable<BookEntry> {
 
     private transient String iconPath = "";
     private transient String iconName = "";
+    /**
+     * the css class of the icon in the sprite sheets, empty to show it by its path
+     */
+    private transient String iconSprite = "";
 
     private transient AssetSource assetSource;
+    private transient String assetPath;
 
     // render inner html
     private transient List<String> buffer = new ArrayList<>();
@@ -136,6 +141,7 @@ public class BookEntry implements Comparable<BookEntry> {
 
     public void setAssetSource(String entryPath, Asset asset) {
         this.assetSource = asset.getSource();
+        this.assetPath = asset.getPath();
 
         String relativePath = asset.getPath().substring(entryPath.length() + 1);
         String entryId = relativePath.substring(0, relativePath.lastIndexOf('.'));
@@ -1,13 +1,11 @@
 package io.github.tfgcn.fieldguide.data.recipe;
 
-import com.google.gson.JsonObject;
 import lombok.Data;
 
 @Data
 public abstract class BaseRecipe implements Recipe {
     protected String type;
     protected String id;
-    protected JsonObject json;
     
     @Override
     public String getType() {
@@ -1,8 +1,8 @@
 package io.github.tfgcn.fieldguide.data.recipe;
 
-import io.github.tfgcn.fieldguide.asset.ItemImageResult;
-import io.github.tfgcn.fieldguide.render.TextureRenderer;
-
 public interface Ingredient {
-    ItemImageResult toItemImage(TextureRenderer renderer);
+    /**
+     * @return the item the image of this ingredient shows: an item id, #tag, or comma separated item ids
+     */
+    String getItemId();
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package io.github.tfgcn.fieldguide.data.recipe.adapter;
+
+import com.google.gson.*;
+
+import java.lang.reflect.Type;
+
+/**
+ * 流体成分，如 "tfc:vinegar"、{"fluid": "tfc:vinegar"} 或 {"tag": "tfc:alcohols"}，解析为流体 id 或 #tag
+ */
+public class FluidDeserializer implements JsonDeserializer<String> {
+
+    @Override
+    public String deserialize(JsonElement json, Type typeOfT,
+                              JsonDeserializationContext context) throws JsonParseException {
+        if (json.isJsonPrimitive()) {
+            return json.getAsString();
+        }
+        if (json.isJsonObject()) {
+            JsonObject obj = json.getAsJsonObject();
+            if (obj.has("fluid") && obj.get("fluid").isJsonPrimitive()) {
+                return obj.get("fluid").getAsString();
+            }
+            if (obj.has("tag") && obj.get("tag").isJsonPrimitive()) {
+                return "#" + obj.get("tag").getAsString();
+            }
+        }
+        throw new JsonParseException("Could not decode fluid ingredient: " + json);
+    }
+}
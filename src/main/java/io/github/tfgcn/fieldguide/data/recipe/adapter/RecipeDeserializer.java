@@ -30,6 +30,10 @@ public class RecipeDeserializer implements JsonDeserializer<Recipe> {
             // TFC 特殊合成配方
             case "tfc:damage_inputs_shaped_crafting" -> DamageInputsShapedCraftingRecipe.class;
             case "tfc:damage_inputs_shapeless_crafting" -> DamageInputsShapelessCraftingRecipe.class;
+            case "tfc:extra_products_shapeless_crafting" -> ExtraProductsShapelessCraftingRecipe.class;
+            case "tfc:no_remainder_shapeless_crafting" -> NoRemainderShapelessCraftingRecipe.class;
+            case "tfc:advanced_shaped_crafting" -> AdvancedShapedCraftingRecipe.class;
+            case "tfc:advanced_shapeless_crafting" -> AdvancedShapelessCraftingRecipe.class;
 
             // TFC 处理配方
             case "tfc:heating" -> HeatingRecipe.class;
@@ -38,6 +38,9 @@ public class RecipeResultDeserializer implements JsonDeserializer<RecipeResult>
             // 标准结果结构
             if (obj.has("item")) {
                 result.setItem(obj.get("item").getAsString());
+            } else if (obj.has("id")) {
+                // 1.20 的 item stack 使用 id
+                result.setItem(obj.get("id").getAsString());
             }
             if (obj.has("tag")) {
                 result.setTag(obj.get("tag").getAsString());
@@ -1,8 +1,6 @@
 package io.github.tfgcn.fieldguide.data.recipe.ingredient;
 
-import io.github.tfgcn.fieldguide.asset.ItemImageResult;
 import io.github.tfgcn.fieldguide.data.recipe.Ingredient;
-import io.github.tfgcn.fieldguide.render.TextureRenderer;
 import lombok.Data;
 
 import java.util.List;
@@ -16,7 +14,7 @@ public class CompoundIngredient implements Ingredient {
     private Map<String, Object> properties;
     
     @Override
-    public ItemImageResult toItemImage(TextureRenderer renderer) {
+    public String getItemId() {
         switch (type) {
             case "tfc:and":
                 // 处理 AND 逻辑
@@ -29,12 +27,12 @@ public class CompoundIngredient implements Ingredient {
                         items.append(((ItemIngredient) child).getItem());
                     }
                 }
-                return renderer.getItemImage(items.toString(), true);
+                return items.toString();
                 
             case "tfc:has_trait":
             case "tfc:lacks_trait":
             case "tfc:not_rotten":
-                return ingredient.toItemImage(renderer);
+                return ingredient.getItemId();
                 
             default:
                 throw new UnsupportedOperationException("Unknown compound ingredient type: " + type);
@@ -1,9 +1,7 @@
 package io.github.tfgcn.fieldguide.data.recipe.ingredient;
 
 import com.google.gson.annotations.SerializedName;
-import io.github.tfgcn.fieldguide.asset.ItemImageResult;
 import io.github.tfgcn.fieldguide.data.recipe.Ingredient;
-import io.github.tfgcn.fieldguide.render.TextureRenderer;
 import lombok.Data;
 
 @Data
@@ -13,12 +11,12 @@ public class FluidItemIngredient implements Ingredient {
     private FluidIngredient fluidIngredient;
 
     @Override
-    public ItemImageResult toItemImage(TextureRenderer renderer) {
+    public String getItemId() {
         // 根据流体类型返回对应的桶物品
         if ("minecraft:water".equals(fluidIngredient.getIngredient())) {
-            return renderer.getItemImage("minecraft:water_bucket", true);
+            return "minecraft:water_bucket";
         }
         // 处理其他流体
-        return renderer.getItemImage(fluidIngredient.getIngredient() + "_bucket", true);
+        return fluidIngredient.getIngredient() + "_bucket";
     }
 }
\ No newline at end of file
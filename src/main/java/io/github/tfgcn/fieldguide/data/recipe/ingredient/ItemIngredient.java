@@ -1,8 +1,6 @@
 package io.github.tfgcn.fieldguide.data.recipe.ingredient;
 
-import io.github.tfgcn.fieldguide.asset.ItemImageResult;
 import io.github.tfgcn.fieldguide.data.recipe.Ingredient;
-import io.github.tfgcn.fieldguide.render.TextureRenderer;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -15,7 +13,7 @@ public class ItemIngredient implements Ingredient {
     private Integer count;
 
     @Override
-    public ItemImageResult toItemImage(TextureRenderer renderer) {
-        return renderer.getItemImage(item, true);
+    public String getItemId() {
+        return item;
     }
 }
\ No newline at end of file
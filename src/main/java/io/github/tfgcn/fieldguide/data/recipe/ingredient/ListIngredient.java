@@ -1,8 +1,6 @@
 package io.github.tfgcn.fieldguide.data.recipe.ingredient;
 
-import io.github.tfgcn.fieldguide.asset.ItemImageResult;
 import io.github.tfgcn.fieldguide.data.recipe.Ingredient;
-import io.github.tfgcn.fieldguide.render.TextureRenderer;
 import lombok.Data;
 
 import java.util.ArrayList;
@@ -13,7 +11,7 @@ public class ListIngredient extends ArrayList<Ingredient> implements Ingredient
     private String type;
 
     @Override
-    public ItemImageResult toItemImage(TextureRenderer renderer) {
+    public String getItemId() {
         StringBuilder items = new StringBuilder();
         for (Ingredient child : this) {
             if (child instanceof ItemIngredient) {
@@ -23,6 +21,6 @@ public class ListIngredient extends ArrayList<Ingredient> implements Ingredient
                 items.append(((ItemIngredient) child).getItem());
             }
         }
-        return renderer.getItemImage(items.toString(), true);
+        return items.toString();
     }
 }
\ No newline at end of file
@@ -1,8 +1,6 @@
 package io.github.tfgcn.fieldguide.data.recipe.ingredient;
 
-import io.github.tfgcn.fieldguide.asset.ItemImageResult;
 import io.github.tfgcn.fieldguide.data.recipe.Ingredient;
-import io.github.tfgcn.fieldguide.render.TextureRenderer;
 import lombok.Data;
 
 @Data
@@ -12,7 +10,7 @@ public class TraitIngredient implements Ingredient {
     private Ingredient ingredient;
     
     @Override
-    public ItemImageResult toItemImage(TextureRenderer renderer) {
-        return ingredient.toItemImage(renderer);
+    public String getItemId() {
+        return ingredient.getItemId();
     }
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package io.github.tfgcn.fieldguide.data.recipe.tfc;
+
+import io.github.tfgcn.fieldguide.data.recipe.ShapelessCraftingRecipe;
+import lombok.Data;
+
+// result 是带修饰符的 stack，修饰符被丢弃
+@Data
+public class AdvancedShapelessCraftingRecipe extends ShapelessCraftingRecipe {
+}
@@ -1,9 +1,11 @@
 package io.github.tfgcn.fieldguide.data.recipe.tfc;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 import io.github.tfgcn.fieldguide.data.recipe.BaseRecipe;
 import io.github.tfgcn.fieldguide.data.recipe.RecipeResult;
 import io.github.tfgcn.fieldguide.data.recipe.Ingredient;
+import io.github.tfgcn.fieldguide.data.recipe.adapter.FluidDeserializer;
 import lombok.Data;
 
 @Data
@@ -26,7 +28,9 @@ public abstract class BarrelRecipe extends BaseRecipe {
 
     @Data
     public static class FluidIngredient {
-        private Ingredient ingredient;
+        // 流体 id 或 #tag
+        @JsonAdapter(FluidDeserializer.class)
+        private String ingredient;
         private Integer amount;
     }
 
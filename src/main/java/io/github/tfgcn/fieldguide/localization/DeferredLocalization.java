@@ -0,0 +1,165 @@
+package io.github.tfgcn.fieldguide.localization;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A localization that translates nothing yet.
+ * <p>
+ * Every translation is written as a marker holding its keys and arguments, {@link #localize} replaces
+ * the markers with the translations of a language later. Html rendered with it is the same for every
+ * language and only has to be rendered once.
+ *
+ * @author yanmaoyuan
+ */
+public class DeferredLocalization implements LocalizationManager {
+
+    private static final char START = '\u0001';
+    private static final char END = '\u0002';
+    private static final char KEY = '\u001f';
+    private static final char ARGUMENT = '\u001e';
+    private static final char NAMESPACE = '\u001d';
+
+    /**
+     * namespaces to load before the next translation, so the marker loads them in every language
+     */
+    private final ThreadLocal<List<String>> namespaces = ThreadLocal.withInitial(ArrayList::new);
+
+    @Override
+    public void switchLanguage(Language lang) {
+        // markers are translated by the language that localizes them
+    }
+
+    @Override
+    public Language getCurrentLanguage() {
+        return Language.EN_US;
+    }
+
+    @Override
+    public String translate(String... keys) {
+        StringBuilder sb = marker();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                sb.append(KEY);
+            }
+            sb.append(keys[i]);
+        }
+        return sb.append(END).toString();
+    }
+
+    @Override
+    public String translateWithArgs(String key, Object... args) {
+        StringBuilder sb = marker().append(key);
+        for (Object arg : args) {
+            sb.append(ARGUMENT);
+            if (arg instanceof Byte || arg instanceof Short || arg instanceof Integer || arg instanceof Long) {
+                sb.append('d');
+            } else if (arg instanceof Float || arg instanceof Double) {
+                sb.append('f');
+            } else {
+                sb.append('s');
+            }
+            sb.append(arg);
+        }
+        return sb.append(END).toString();
+    }
+
+    private StringBuilder marker() {
+        StringBuilder sb = new StringBuilder().append(START);
+        List<String> pending = namespaces.get();
+        for (String namespace : pending) {
+            sb.append(NAMESPACE).append(namespace);
+        }
+        if (!pending.isEmpty()) {
+            // the keys start after the namespaces
+            sb.append(KEY);
+            pending.clear();
+        }
+        return sb;
+    }
+
+    @Override
+    public Map<String, String> getKeybindings() {
+        return Map.of();
+    }
+
+    @Override
+    public void lazyLoadNamespace(String namespace) {
+        namespaces.get().add(namespace);
+    }
+
+    /**
+     * Replace the markers in the text with the translations of a language.
+     */
+    public static String localize(String text, LocalizationManager localizationManager) {
+        int start = text.indexOf(START);
+        if (start < 0) {
+            return text;
+        }
+
+        StringBuilder sb = new StringBuilder(text.length());
+        int from = 0;
+        while (start >= 0) {
+            int end = end(text, start);
+            sb.append(text, from, start);
+            sb.append(translate(text.substring(start + 1, end), localizationManager));
+            from = end + 1;
+            start = text.indexOf(START, from);
+        }
+        sb.append(text, from, text.length());
+        return sb.toString();
+    }
+
+    /**
+     * @return the end of the marker at start, markers in its arguments are skipped
+     */
+    private static int end(String text, int start) {
+        int depth = 0;
+        for (int i = start + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == START) {
+                depth++;
+            } else if (c == END && depth-- == 0) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unclosed translation marker at " + start);
+    }
+
+    private static String translate(String marker, LocalizationManager localizationManager) {
+        List<String> keys = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+
+        char kind = KEY;
+        int from = 0;
+        for (int i = 0; i <= marker.length(); i++) {
+            char c = i < marker.length() ? marker.charAt(i) : END;
+            if (c == START) {
+                // an argument translated itself, localized with it
+                i = end(marker, i);
+                continue;
+            }
+            if (c != KEY && c != ARGUMENT && c != NAMESPACE && c != END) {
+                continue;
+            }
+            if (i > 0) {
+                String part = marker.substring(from, i);
+                switch (kind) {
+                    case NAMESPACE -> localizationManager.lazyLoadNamespace(part);
+                    case ARGUMENT -> args.add(switch (part.charAt(0)) {
+                        case 'd' -> Long.valueOf(part.substring(1));
+                        case 'f' -> Double.valueOf(part.substring(1));
+                        default -> localize(part.substring(1), localizationManager);
+                    });
+                    default -> keys.add(part);
+                }
+            }
+            kind = c;
+            from = i + 1;
+        }
+
+        String translation = localizationManager.translate(keys.toArray(new String[0]));
+        return args.isEmpty() ? translation : String.format(translation, args.toArray());
+    }
+}
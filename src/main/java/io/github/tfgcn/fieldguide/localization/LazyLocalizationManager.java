@@ -2,35 +2,57 @@ package io.github.tfgcn.fieldguide.localization;
 
 import com.google.gson.reflect.TypeToken;
 import io.github.tfgcn.fieldguide.asset.AssetLoader;
+import io.github.tfgcn.fieldguide.asset.DependencyTracker;
 import io.github.tfgcn.fieldguide.gson.JsonUtils;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads translations of a namespace the first time it is used.
+ * <p>
+ * Thread-safe, the entries of a book are rendered concurrently. Translations are looked up without a lock,
+ * a namespace is loaded once, threads translating it meanwhile wait for it. {@link #switchLanguage} must not
+ * run while pages are rendered.
+ */
 @Slf4j
 public class LazyLocalizationManager implements LocalizationManager {
 
+    /**
+     * dependency on the translation of a key, recorded with the hash of the translation
+     */
+    public static final String LANG_DEPENDENCY = "lang:";
+    /**
+     * dependency on a namespace loaded lazily, which must be loaded again before translations are compared
+     */
+    public static final String NAMESPACE_DEPENDENCY = "lang-namespace:";
+
     private final AssetLoader assetLoader;
 
-    private final Map<String, Map<String, String>> translationCache = new TreeMap<>();
-    private final Set<String> loadedNamespaces = new TreeSet<>();
+    private final Map<String, Map<String, String>> translationCache = new ConcurrentHashMap<>();
+    /**
+     * namespace -> loaded, computed once per namespace
+     */
+    private final Map<String, Boolean> loadedNamespaces = new ConcurrentHashMap<>();
 
-    private Language currentLanguage = Language.EN_US;
-    private Map<String, String> currentTranslations = new TreeMap<>();
-    private final Map<String, String> fallbackTranslations = new TreeMap<>();
+    private volatile Language currentLanguage = Language.EN_US;
+    private volatile Map<String, String> currentTranslations = new ConcurrentHashMap<>();
+    private final Map<String, String> fallbackTranslations = new ConcurrentHashMap<>();
 
     private final Set<String> essentialNamespaces;
     private final Set<String> excludedNamespaces;
 
-    private final Map<String, String> keybindings = new TreeMap<>();
+    private volatile Map<String, String> keybindings = Map.of();
 
-    private final Set<String> missingKeys = new TreeSet<>();
+    private final Set<String> missingKeys = ConcurrentHashMap.newKeySet();
 
-    private int cacheHits = 0;
-    private int cacheMisses = 0;
+    private static final Metrics.Counter CACHE_HITS = Metrics.counter("cache_hits_total", "cache", "lang");
+    private static final Metrics.Counter CACHE_MISSES = Metrics.counter("cache_misses_total", "cache", "lang");
 
     public LazyLocalizationManager(AssetLoader assetLoader) {
         this.assetLoader = assetLoader;
@@ -52,7 +74,7 @@ public class LazyLocalizationManager implements LocalizationManager {
     private void loadEssentialNamespaces() {
         for (String namespace : essentialNamespaces) {
             loadNamespaceTranslations(namespace, "en_us", fallbackTranslations);
-            loadedNamespaces.add(namespace);
+            loadedNamespaces.put(namespace, Boolean.TRUE);
         }
 
         log.info("Pre-loaded essential namespaces: {}", essentialNamespaces);
@@ -75,39 +97,39 @@ public class LazyLocalizationManager implements LocalizationManager {
     }
 
     @Override
-    public void switchLanguage(Language lang) {
+    public synchronized void switchLanguage(Language lang) {
         String languageCode = lang.getKey();
-        this.currentLanguage = lang;
-        this.currentTranslations.clear();
-        this.currentTranslations = new TreeMap<>();
+        Map<String, String> translations = new ConcurrentHashMap<>();
 
         log.info("Loading translations for {} namespaces in {}", loadedNamespaces.size(), languageCode);
 
-        for (String namespace : loadedNamespaces) {
-            loadNamespaceTranslations(namespace, languageCode, currentTranslations);
-            loadedNamespaces.add(namespace);
+        for (String namespace : loadedNamespaces.keySet()) {
+            loadNamespaceTranslations(namespace, languageCode, translations);
         }
-        loadStatic(languageCode, currentTranslations);
+        loadStatic(languageCode, translations);
+        this.currentLanguage = lang;
+        this.currentTranslations = translations;
 
         // 如果当前语言不是英语，确保回退翻译存在
         if (!"en_us".equals(languageCode)) {
-            ensureFallbackTranslations(loadedNamespaces);
+            ensureFallbackTranslations(loadedNamespaces.keySet());
         }
 
-        keybindings.clear();
+        Map<String, String> bindings = new TreeMap<>();
         for (String key : I18n.KEYS) {
             String bindingKey = key.substring("field_guide.".length());
-            keybindings.put(bindingKey, translate(key));
+            bindings.put(bindingKey, translate(key));
         }
+        this.keybindings = Collections.unmodifiableMap(bindings);
 
-        log.info("Loaded {} translations for {}", currentTranslations.size(), languageCode);
+        log.info("Loaded {} translations for {}", translations.size(), languageCode);
     }
 
     private void ensureFallbackTranslations(Set<String> namespaces) {
         for (String namespace : namespaces) {
-            if (!loadedNamespaces.contains(namespace)) {
+            if (!loadedNamespaces.containsKey(namespace)) {
                 loadNamespaceTranslations(namespace, "en_us", fallbackTranslations);
-                loadedNamespaces.add(namespace);
+                loadedNamespaces.put(namespace, Boolean.TRUE);
             }
         }
 
@@ -119,7 +141,7 @@ public class LazyLocalizationManager implements LocalizationManager {
 
         Map<String, String> translations = translationCache.get(cacheKey);
         if (translations == null) {
-            cacheMisses++;
+            CACHE_MISSES.increment();
             translations = assetLoader.loadLang(namespace, language);
             translationCache.put(cacheKey, translations);
 
@@ -127,10 +149,14 @@ public class LazyLocalizationManager implements LocalizationManager {
                 log.debug("No translations found for {}:{}", namespace, language);
             }
         } else {
-            cacheHits++;
+            CACHE_HITS.increment();
         }
 
-        target.putAll(translations);
+        for (Map.Entry<String, String> entry : translations.entrySet()) {
+            if (entry.getValue() != null) {
+                target.put(entry.getKey(), entry.getValue());
+            }
+        }
     }
 
     @Override
@@ -140,19 +166,30 @@ public class LazyLocalizationManager implements LocalizationManager {
 
     @Override
     public String translate(String... keys) {
+        String value = lookup(keys);
+        if (DependencyTracker.isTracking()) {
+            // the same cached image is translated differently by each language
+            DependencyTracker.recordInRoot(LANG_DEPENDENCY + String.join("|", keys), Objects.hashCode(value));
+        }
+        return value;
+    }
+
+    private String lookup(String... keys) {
+        Map<String, String> translations = currentTranslations;
         for (String key : keys) {
-            if (currentTranslations.containsKey(key)) {
-                return currentTranslations.get(key);
+            String value = translations.get(key);
+            if (value != null) {
+                return value;
             }
 
             // fallback to en_us
-            if (fallbackTranslations.containsKey(key)) {
-                return fallbackTranslations.get(key);
+            value = fallbackTranslations.get(key);
+            if (value != null) {
+                return value;
             }
         }
 
-        if (!missingKeys.contains(keys[0])) {
-            missingKeys.add(keys[0]);
+        if (missingKeys.add(keys[0])) {
             log.info("Missing translation for: {}", Arrays.toString(keys));
         }
         return keys[0];
@@ -173,11 +210,15 @@ public class LazyLocalizationManager implements LocalizationManager {
         if (excludedNamespaces.contains(namespace)) {
             return;
         }
-        if (!loadedNamespaces.contains(namespace)) {
-            log.info("Lazy loading namespace: {}", namespace);
-            loadNamespaceTranslations(namespace, currentLanguage.getKey(), currentTranslations);
-            loadNamespaceTranslations(namespace, "en_us", fallbackTranslations);
-            loadedNamespaces.add(namespace);
+        DependencyTracker.recordInRoot(NAMESPACE_DEPENDENCY + namespace, 0);
+        if (!loadedNamespaces.containsKey(namespace)) {
+            // other threads wait for this namespace only, translations of loaded ones go on
+            loadedNamespaces.computeIfAbsent(namespace, ns -> {
+                log.info("Lazy loading namespace: {}", ns);
+                loadNamespaceTranslations(ns, currentLanguage.getKey(), currentTranslations);
+                loadNamespaceTranslations(ns, "en_us", fallbackTranslations);
+                return Boolean.TRUE;
+            });
         }
     }
 }
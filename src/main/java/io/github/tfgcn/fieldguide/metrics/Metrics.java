@@ -0,0 +1,290 @@
+package io.github.tfgcn.fieldguide.metrics;
+
+import com.google.gson.stream.JsonWriter;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counters, gauges and latency histograms of a build: asset lookups per source, cache hits, misses and
+ * evictions, bytes read and decoded, images rendered and bytes written.
+ * <p>
+ * Written as JSON at the end of a build, and optionally in the Prometheus text format, to compare
+ * builds between modpack releases. A metric is identified by its name and label pairs, asking twice
+ * returns the same counter or histogram, so hot paths keep it in a field instead.
+ * <p>
+ * The metrics are shared by the process, {@link #reset} zeroes them when a build starts so they only
+ * count that build, e.g. each rebuild of serve.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class Metrics {
+
+    private static final Map<String, Metric> METRICS = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    /**
+     * @param labels label names and values, alternating
+     */
+    public static Counter counter(String name, String... labels) {
+        return (Counter) METRICS.computeIfAbsent(key(name, labels), k -> new Counter(name, labels));
+    }
+
+    /**
+     * @param labels label names and values, alternating
+     */
+    public static Histogram histogram(String name, String... labels) {
+        return (Histogram) METRICS.computeIfAbsent(key(name, labels), k -> new Histogram(name, labels));
+    }
+
+    /**
+     * Register a value read when the metrics are written, replacing a gauge of the same name and labels.
+     *
+     * @param labels label names and values, alternating
+     * @return the gauge, to {@link #remove} it when what it reads is gone
+     */
+    public static Gauge gauge(String name, Supplier<? extends Number> value, String... labels) {
+        Gauge gauge = new Gauge(name, labels, value);
+        METRICS.put(key(name, labels), gauge);
+        return gauge;
+    }
+
+    /**
+     * Unregister a gauge, unless it was replaced meanwhile.
+     */
+    public static void remove(Gauge gauge) {
+        METRICS.remove(key(gauge.getName(), gauge.getLabels()), gauge);
+    }
+
+    /**
+     * Zero the counters and histograms, gauges are read when written.
+     */
+    public static void reset() {
+        for (Metric metric : METRICS.values()) {
+            switch (metric) {
+                case Counter counter -> counter.value.reset();
+                case Gauge ignored -> {}
+                case Histogram histogram -> histogram.reset();
+            }
+        }
+    }
+
+    private static String key(String name, String... labels) {
+        return name + toLabels(labels, null);
+    }
+
+    private static String toLabels(String[] labels, String extra) {
+        if (labels.length == 0 && extra == null) {
+            return "";
+        }
+        StringJoiner joiner = new StringJoiner(",", "{", "}");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            joiner.add(labels[i] + "=\"" + labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+        }
+        if (extra != null) {
+            joiner.add(extra);
+        }
+        return joiner.toString();
+    }
+
+    @Getter
+    public abstract static sealed class Metric permits Counter, Gauge, Histogram {
+        private final String name;
+        private final String[] labels;
+
+        private Metric(String name, String[] labels) {
+            if (labels.length % 2 != 0) {
+                throw new IllegalArgumentException("Labels must be name and value pairs: " + Arrays.toString(labels));
+            }
+            this.name = name;
+            this.labels = labels;
+        }
+
+        abstract String type();
+    }
+
+    public static final class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String[] labels) {
+            super(name, labels);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+    }
+
+    public static final class Gauge extends Metric {
+        private final Supplier<? extends Number> value;
+
+        private Gauge(String name, String[] labels, Supplier<? extends Number> value) {
+            super(name, labels);
+            this.value = value;
+        }
+
+        public Number get() {
+            return value.get();
+        }
+
+        @Override
+        String type() {
+            return "gauge";
+        }
+    }
+
+    /**
+     * Latencies in seconds, counted into fixed buckets.
+     */
+    public static final class Histogram extends Metric {
+        private static final double[] BOUNDS = {0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10};
+
+        private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Histogram(String name, String[] labels) {
+            super(name, labels);
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * @param startNanos the {@link System#nanoTime()} when the measured work started
+         */
+        public void observeSince(long startNanos) {
+            observe((System.nanoTime() - startNanos) / 1e9);
+        }
+
+        private void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            sum.reset();
+        }
+
+        public void observe(double seconds) {
+            int i = 0;
+            while (i < BOUNDS.length && seconds > BOUNDS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            count.increment();
+            sum.add(seconds);
+        }
+
+        @Override
+        String type() {
+            return "histogram";
+        }
+    }
+
+    private static List<Metric> sorted() {
+        List<Metric> metrics = new ArrayList<>(METRICS.values());
+        metrics.sort(Comparator.comparing((Metric metric) -> metric.getName())
+                .thenComparing(metric -> String.join(",", metric.getLabels())));
+        return metrics;
+    }
+
+    public static void writeJson(Path file) throws IOException {
+        createParent(file);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(writer)) {
+            json.setIndent("  ");
+            json.beginArray();
+            for (Metric metric : sorted()) {
+                json.beginObject();
+                json.name("name").value(metric.getName());
+                json.name("type").value(metric.type());
+                if (metric.getLabels().length > 0) {
+                    json.name("labels").beginObject();
+                    for (int i = 0; i < metric.getLabels().length; i += 2) {
+                        json.name(metric.getLabels()[i]).value(metric.getLabels()[i + 1]);
+                    }
+                    json.endObject();
+                }
+                switch (metric) {
+                    case Counter counter -> json.name("value").value(counter.get());
+                    case Gauge gauge -> json.name("value").value(gauge.get());
+                    case Histogram histogram -> {
+                        json.name("count").value(histogram.count.sum());
+                        json.name("sum").value(histogram.sum.sum());
+                        json.name("buckets").beginObject();
+                        for (int i = 0; i < histogram.buckets.length; i++) {
+                            String bound = i < Histogram.BOUNDS.length ? String.valueOf(Histogram.BOUNDS[i]) : "+Inf";
+                            json.name(bound).value(histogram.buckets[i].sum());
+                        }
+                        json.endObject();
+                    }
+                }
+                json.endObject();
+            }
+            json.endArray();
+        }
+        log.info("Metrics written: {}", file);
+    }
+
+    public static void writePrometheus(Path file) throws IOException {
+        createParent(file);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            String lastName = null;
+            for (Metric metric : sorted()) {
+                if (!metric.getName().equals(lastName)) {
+                    out.printf("# TYPE %s %s%n", metric.getName(), metric.type());
+                    lastName = metric.getName();
+                }
+                String labels = toLabels(metric.getLabels(), null);
+                switch (metric) {
+                    case Counter counter -> out.printf("%s%s %d%n", metric.getName(), labels, counter.get());
+                    case Gauge gauge -> out.printf("%s%s %s%n", metric.getName(), labels, gauge.get());
+                    case Histogram histogram -> {
+                        long cumulative = 0;
+                        for (int i = 0; i < histogram.buckets.length; i++) {
+                            cumulative += histogram.buckets[i].sum();
+                            String bound = i < Histogram.BOUNDS.length ? String.valueOf(Histogram.BOUNDS[i]) : "+Inf";
+                            out.printf("%s_bucket%s %d%n", metric.getName(),
+                                    toLabels(metric.getLabels(), "le=\"" + bound + "\""), cumulative);
+                        }
+                        out.printf("%s_sum%s %s%n", metric.getName(), labels, histogram.sum.sum());
+                        out.printf("%s_count%s %d%n", metric.getName(), labels, histogram.count.sum());
+                    }
+                }
+            }
+        }
+        log.info("Metrics written: {}", file);
+    }
+
+    private static void createParent(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package io.github.tfgcn.fieldguide.render;
 import io.github.tfgcn.fieldguide.asset.AssetKey;
 import io.github.tfgcn.fieldguide.asset.AssetLoader;
 import io.github.tfgcn.fieldguide.exception.AssetNotFoundException;
+import io.github.tfgcn.fieldguide.asset.SingleFlightCache;
 import io.github.tfgcn.fieldguide.data.minecraft.blockmodel.BlockModel;
 import io.github.tfgcn.fieldguide.data.minecraft.blockmodel.ElementFace;
 import io.github.tfgcn.fieldguide.data.minecraft.blockmodel.ElementRotation;
@@ -52,11 +53,24 @@ public class BaseModelBuilder {
     protected static final Vector3f SOUTH = new Vector3f(0, 0, 1);
 
     protected AssetLoader assetLoader;
-    protected Map<String, Material> materialCache = new HashMap<>();
-    protected Map<String, AnimatedTexture> animatedTextureCache = new HashMap<>();
+
+    // a builder is used by one thread, animated materials change while rendering
+    protected SingleFlightCache<String, Material> materialCache;
+    protected SingleFlightCache<String, AnimatedTexture> animatedTextureCache;
 
     public BaseModelBuilder(AssetLoader assetLoader) {
         this.assetLoader = assetLoader;
+        this.materialCache = assetLoader.getCaches().newCache("materials", BaseModelBuilder::materialBytes);
+        this.animatedTextureCache = assetLoader.getCaches().newCache("animated_textures",
+                texture -> texture.getFrames().stream().mapToLong(AssetLoader::imageBytes).sum());
+    }
+
+    /**
+     * the diffuse map keeps its source image and its own copy of the pixels
+     */
+    private static long materialBytes(Material material) {
+        Texture texture = material.getDiffuseMap();
+        return texture == null ? 0 : (long) texture.getWidth() * texture.getHeight() * 8;
     }
 
     public Node buildModel(String modelId) {
@@ -388,7 +402,7 @@ public class BaseModelBuilder {
     protected Material makeMaterial(String texture, String overlayTexture) {
         // 创建唯一的缓存键，包含基础纹理和overlay纹理信息
         String cacheKey = overlayTexture != null ? texture + "_overlay_" + overlayTexture : texture;
-        return materialCache.computeIfAbsent(cacheKey, it -> createMaterial(texture, overlayTexture));
+        return materialCache.get(cacheKey, key -> createMaterial(texture, overlayTexture));
     }
     
     /**
@@ -412,7 +426,7 @@ public class BaseModelBuilder {
      * 获取或创建动画纹理
      */
     private AnimatedTexture getOrCreateAnimatedTexture(String texture) {
-        return animatedTextureCache.computeIfAbsent(texture, t -> {
+        return animatedTextureCache.get(texture, t -> {
             AssetKey assetKey = new AssetKey(texture, "textures", "assets", ".png");
             BufferedImage img = assetLoader.loadTexture(assetKey);
             
@@ -600,13 +614,7 @@ public class BaseModelBuilder {
             overlayImg = extractFirstFrameIfNeeded(overlayImg);
             log.debug("Processed overlay size: {}x{}", overlayImg.getWidth(), overlayImg.getHeight());
 
-            BufferedImage combined = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = combined.createGraphics();
-            g.drawImage(img, 0, 0, null);
-            g.drawImage(overlayImg, 0, 0, null);
-            g.dispose();
-
-            img = combined;
+            img = RasterKernels.layer(img, overlayImg);
         }
         
         return img;
@@ -0,0 +1,341 @@
+package io.github.tfgcn.fieldguide.render;
+
+import com.google.gson.JsonParseException;
+import io.github.tfgcn.fieldguide.asset.AssetLoader;
+import io.github.tfgcn.fieldguide.data.patchouli.BookEntry;
+import io.github.tfgcn.fieldguide.gson.JsonUtils;
+import io.github.tfgcn.fieldguide.localization.LocalizationManager;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static io.github.tfgcn.fieldguide.localization.LazyLocalizationManager.LANG_DEPENDENCY;
+import static io.github.tfgcn.fieldguide.localization.LazyLocalizationManager.NAMESPACE_DEPENDENCY;
+
+/**
+ * What every entry of one language was rendered from, kept in .cache between runs for --incremental.
+ * <p>
+ * An entry records its own file, the assets read while rendering it (models, textures, block states,
+ * recipes, tags) and the translations it used, each with its signature at that time. When all of them
+ * still match, and the images and models it shows are still in the output directory, the rendered html
+ * of the previous run is reused and the entry is not rendered again.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class EntryManifest {
+
+    /**
+     * bump when the html of entries changes for the same inputs
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * a file of the output directory referred to by the html of an entry
+     */
+    private static final Pattern OUTPUT = Pattern.compile("\"\\.\\./\\.\\./([^\"]+)\"");
+
+    @Data
+    public static class Record {
+        private String source;
+        private Map<String, Long> dependencies;
+        private String iconPath;
+        private String iconName;
+        private String innerHtml;
+        private List<Map<String, String>> searchTree;
+        /**
+         * the files of the output directory the entry shows, relative to it
+         */
+        private List<String> outputs;
+    }
+
+    @Data
+    private static class Manifest {
+        private String generator;
+        private Map<String, Record> entries;
+    }
+
+    private final Path file;
+    private final Path outputDir;
+    private final ToLongFunction<String> signatureOf;
+    private final LocalizationManager localizationManager;
+    private final Map<String, Record> previous;
+    private final Map<String, Record> current = new ConcurrentHashMap<>();
+
+    private final AtomicInteger reused = new AtomicInteger();
+    private final AtomicInteger rebuilt = new AtomicInteger();
+
+    private EntryManifest(Path file, Path outputDir, ToLongFunction<String> signatureOf,
+                          LocalizationManager localizationManager, Map<String, Record> previous) {
+        this.file = file;
+        this.outputDir = outputDir;
+        this.signatureOf = signatureOf;
+        this.localizationManager = localizationManager;
+        this.previous = previous;
+    }
+
+    /**
+     * @param localizationManager the localization of the language, already switched to it
+     */
+    public static EntryManifest load(Path file, AssetLoader assetLoader, LocalizationManager localizationManager) {
+        return load(file, assetLoader.getOutputDir(), assetLoader::getDependencySignature, localizationManager);
+    }
+
+    /**
+     * @param outputDir the directory the images and models of the entries are written to
+     * @param signatureOf the current signature of a dependency, see {@link AssetLoader#getDependencySignature}
+     * @param localizationManager the localization of the language, already switched to it
+     */
+    static EntryManifest load(Path file, Path outputDir, ToLongFunction<String> signatureOf, LocalizationManager localizationManager) {
+        Map<String, Record> previous = Map.of();
+        if (Files.exists(file)) {
+            try {
+                Manifest manifest = JsonUtils.fromJson(Files.readString(file, StandardCharsets.UTF_8), Manifest.class);
+                if (manifest != null && generator().equals(manifest.getGenerator()) && manifest.getEntries() != null) {
+                    previous = manifest.getEntries();
+                } else {
+                    log.info("Entry manifest is outdated: {}", file);
+                }
+            } catch (IOException | JsonParseException e) {
+                log.warn("Failed to read entry manifest: {}, message: {}", file, e.getMessage());
+            }
+        }
+        return new EntryManifest(file, outputDir, signatureOf, localizationManager, previous);
+    }
+
+    /**
+     * The manifest of the next build in the same process, the entries of this build become the previous ones.
+     *
+     * @param localizationManager the localization of the language, already switched to it
+     */
+    public EntryManifest next(LocalizationManager localizationManager) {
+        return new EntryManifest(file, outputDir, signatureOf, localizationManager, Map.copyOf(current));
+    }
+
+    /**
+     * The version of the code that rendered the manifest. Changed code renders everything again.
+     */
+    private static String generator() {
+        return VERSION + codeVersion();
+    }
+
+    /**
+     * @return a hash of the classes and resources running the field guide, the same for every build of the same code
+     */
+    static String codeVersion() {
+        return CodeVersion.VALUE;
+    }
+
+    /**
+     * hashed once, on first use
+     */
+    private static final class CodeVersion {
+        private static final String VALUE = hashCodeSource();
+    }
+
+    /**
+     * Hash the names and contents of the files in the jar or the classes directory, not their times,
+     * so rebuilding or deploying the same code keeps the caches.
+     */
+    private static String hashCodeSource() {
+        long start = System.nanoTime();
+        try {
+            Path code = Paths.get(EntryManifest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest);
+            if (Files.isRegularFile(code)) {
+                try (ZipFile zip = new ZipFile(code.toFile())) {
+                    List<? extends ZipEntry> entries = zip.stream()
+                            .filter(entry -> !entry.isDirectory())
+                            .sorted(Comparator.comparing(ZipEntry::getName))
+                            .toList();
+                    for (ZipEntry entry : entries) {
+                        digest.update((entry.getName() + '\0').getBytes(StandardCharsets.UTF_8));
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            in.transferTo(out);
+                        }
+                    }
+                }
+            } else if (Files.isDirectory(code)) {
+                List<Path> files;
+                try (Stream<Path> stream = Files.walk(code)) {
+                    files = stream.filter(Files::isRegularFile).sorted().toList();
+                }
+                for (Path file : files) {
+                    digest.update((code.relativize(file).toString().replace('\\', '/') + '\0').getBytes(StandardCharsets.UTF_8));
+                    Files.copy(file, out);
+                }
+            } else {
+                return "";
+            }
+            String version = ":" + HexFormat.of().formatHex(digest.digest(), 0, 8);
+            log.debug("Code version{} of {} in {} ms", version, code, (System.nanoTime() - start) / 1_000_000);
+            return version;
+        } catch (Exception e) {
+            log.debug("Unknown code source, message: {}", e.getMessage());
+            return "";
+        }
+    }
+
+    /**
+     * Restore the entry from the previous run if nothing it depends on has changed.
+     *
+     * @return true if the entry is restored and must not be rendered
+     */
+    public boolean reuse(BookEntry entry) {
+        Record record = previous.get(entry.getId());
+        if (record == null || !Objects.equals(record.getSource(), entry.getAssetPath())
+                || !isUpToDate(record) || !hasOutputs(record)) {
+            return false;
+        }
+
+        entry.setIconPath(record.getIconPath());
+        entry.setIconName(record.getIconName());
+        entry.setInnerHtml(record.getInnerHtml());
+        entry.setSearchTree(copy(record.getSearchTree()));
+        entry.setRendered(true);
+
+        current.put(entry.getId(), record);
+        reused.incrementAndGet();
+        return true;
+    }
+
+    private boolean isUpToDate(Record record) {
+        Map<String, Long> dependencies = record.getDependencies();
+        // translations of lazily loaded namespaces are only known once the namespace is loaded
+        for (String dependency : dependencies.keySet()) {
+            if (dependency.startsWith(NAMESPACE_DEPENDENCY)) {
+                localizationManager.lazyLoadNamespace(dependency.substring(NAMESPACE_DEPENDENCY.length()));
+            }
+        }
+
+        for (Map.Entry<String, Long> entry : dependencies.entrySet()) {
+            String dependency = entry.getKey();
+            long signature;
+            if (dependency.startsWith(NAMESPACE_DEPENDENCY)) {
+                continue;
+            } else if (dependency.startsWith(LANG_DEPENDENCY)) {
+                String[] keys = dependency.substring(LANG_DEPENDENCY.length()).split("\\|");
+                signature = Objects.hashCode(localizationManager.translate(keys));
+            } else {
+                signature = signatureOf.applyAsLong(dependency);
+            }
+            if (signature != entry.getValue()) {
+                log.debug("Dependency changed: {}", dependency);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The images and models of the entry are rendered only when the entry is, so a deleted one is a change too.
+     */
+    private boolean hasOutputs(Record record) {
+        for (String output : record.getOutputs()) {
+            if (!Files.exists(outputDir.resolve(output))) {
+                log.debug("Output deleted: {}", output);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record a rendered entry.
+     *
+     * @param dependencies what was read while rendering it
+     */
+    public void put(BookEntry entry, Map<String, Long> dependencies) {
+        Map<String, Long> all = new TreeMap<>(dependencies);
+        all.put(entry.getAssetPath(), signatureOf.applyAsLong(entry.getAssetPath()));
+
+        Record record = new Record();
+        record.setSource(entry.getAssetPath());
+        record.setDependencies(all);
+        record.setIconPath(entry.getIconPath());
+        record.setIconName(entry.getIconName());
+        record.setInnerHtml(entry.getInnerHtml());
+        record.setSearchTree(copy(entry.getSearchTree()));
+        record.setOutputs(outputs(entry));
+
+        current.put(entry.getId(), record);
+        rebuilt.incrementAndGet();
+    }
+
+    /**
+     * @return the icon of the entry and the files its html refers to, relative to the output directory
+     */
+    private static List<String> outputs(BookEntry entry) {
+        Set<String> outputs = new TreeSet<>();
+        String iconPath = entry.getIconPath();
+        if (iconPath != null && !iconPath.isEmpty()) {
+            outputs.add(iconPath.startsWith("../../") ? iconPath.substring(6) : iconPath);
+        }
+        if (entry.getInnerHtml() != null) {
+            Matcher matcher = OUTPUT.matcher(entry.getInnerHtml());
+            while (matcher.find()) {
+                outputs.add(matcher.group(1));
+            }
+        }
+        return new ArrayList<>(outputs);
+    }
+
+    private static List<Map<String, String>> copy(List<Map<String, String>> searchTree) {
+        List<Map<String, String>> list = new ArrayList<>();
+        if (searchTree != null) {
+            for (Map<String, String> map : searchTree) {
+                list.add(new HashMap<>(map));
+            }
+        }
+        return list;
+    }
+
+    public int getReused() {
+        return reused.get();
+    }
+
+    public int getRebuilt() {
+        return rebuilt.get();
+    }
+
+    /**
+     * Write the entries of this run, entries that no longer exist are dropped.
+     */
+    public void save() {
+        Manifest manifest = new Manifest();
+        manifest.setGenerator(generator());
+        manifest.setEntries(new TreeMap<>(current));
+        try {
+            Files.createDirectories(file.getParent());
+            Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.writeString(tempFile, JsonUtils.toJson(manifest), StandardCharsets.UTF_8);
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to save entry manifest: {}, message: {}", file, e.getMessage());
+        }
+    }
+}
@@ -8,6 +8,7 @@ import io.github.tfgcn.fieldguide.gson.JsonUtils;
 import io.github.tfgcn.fieldguide.localization.I18n;
 import io.github.tfgcn.fieldguide.localization.Language;
 import io.github.tfgcn.fieldguide.localization.LocalizationManager;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 
@@ -15,6 +16,9 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 @Slf4j
@@ -27,9 +31,33 @@ public class HtmlRenderer {
 
     private final String outputRootDir;
 
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("output_bytes_written_total");
+
+    private final OutputWriter output;
+    /**
+     * pages not written yet, entry pages may be generated by the threads rendering the entries, see --streaming
+     */
+    private final Set<CompletableFuture<Void>> pendingPages = ConcurrentHashMap.newKeySet();
+
+    /**
+     * pages written, and pages skipped because the file already had the same content
+     */
+    private final AtomicInteger writtenPages = new AtomicInteger();
+    private final AtomicInteger unchangedPages = new AtomicInteger();
+
+    /**
+     * whether the pages link the css of the sprite sheets, see {@link SpriteAtlas}
+     */
+    private boolean sprites;
+
     public HtmlRenderer(LocalizationManager localizationManager, String outputRootDir) throws IOException {
+        this(localizationManager, outputRootDir, OutputWriter.direct());
+    }
+
+    public HtmlRenderer(LocalizationManager localizationManager, String outputRootDir, OutputWriter output) throws IOException {
         this.localizationManager = localizationManager;
         this.outputRootDir = outputRootDir;
+        this.output = output;
 
         cfg = new Configuration(Configuration.VERSION_2_3_32);
         cfg.setDirectoryForTemplateLoading(new File(Constants.TEMPLATE_DIR));
@@ -66,14 +94,59 @@ public class HtmlRenderer {
             throws IOException, TemplateException {
         
         Template template = cfg.getTemplate(templateName);
+        data.putIfAbsent("sprites", sprites);
         Path outputPath = Paths.get(outputRootDir, localizationManager.getCurrentLanguage().getKey(), outputFileName);
 
-        FileUtils.createParentDirectories(outputPath.toFile());
-        try (Writer out = new OutputStreamWriter(Files.newOutputStream(outputPath), StandardCharsets.UTF_8)) {
-            template.process(data, out);
+        StringWriter out = new StringWriter();
+        template.process(data, out);
+        writeIfChanged(outputPath, out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Keep the file untouched when the content is the same, so an incremental build only
+     * rewrites the pages that changed.
+     */
+    private void writeIfChanged(Path outputPath, byte[] content) throws IOException {
+        CompletableFuture<Void> page = output.write(outputPath, file -> {
+            if (Files.exists(file) && Files.size(file) == content.length
+                    && Arrays.equals(Files.readAllBytes(file), content)) {
+                unchangedPages.incrementAndGet();
+                return;
+            }
+            Files.write(file, content);
+            BYTES_WRITTEN.add(content.length);
+            writtenPages.incrementAndGet();
+        });
+        // forgotten once written, not every build waits for its pages
+        pendingPages.add(page);
+        page.whenComplete((result, e) -> pendingPages.remove(page));
+    }
+
+    /**
+     * Wait until the pages of this renderer are written, failures are reported by {@link OutputWriter#flush()}.
+     */
+    public void awaitPages() {
+        List<CompletableFuture<Void>> pending;
+        while (!(pending = List.copyOf(pendingPages)).isEmpty()) {
+            for (CompletableFuture<Void> future : pending) {
+                future.exceptionally(e -> null).join();
+                pendingPages.remove(future);
+            }
         }
     }
 
+    public void setSprites(boolean sprites) {
+        this.sprites = sprites;
+    }
+
+    public int getWrittenPages() {
+        return writtenPages.get();
+    }
+
+    public int getUnchangedPages() {
+        return unchangedPages.get();
+    }
+
     public void copyStaticFiles() throws IOException {
 
         // copy files from assets/static to outputDir
@@ -149,10 +222,18 @@ public class HtmlRenderer {
             String content = searchStrip(originalContent);
             result.put("content", content);
         }
-        JsonUtils.writeFile(new File(outputRootDir + "/" + localizationManager.getCurrentLanguage().getKey() + "/search_index.json"), searchTree);
+        Path outputPath = Paths.get(outputRootDir, localizationManager.getCurrentLanguage().getKey(), "search_index.json");
+        writeIfChanged(outputPath, JsonUtils.toJson(searchTree).getBytes(StandardCharsets.UTF_8));
     }
 
     public void buildCategoryPage(BookCategory cat, List<BookCategory> categories) throws IOException, TemplateException {
+        buildCategoryPage(cat, categories, true);
+    }
+
+    /**
+     * @param entryPages false if the entry pages are already written, see {@link #buildEntryPage}
+     */
+    public void buildCategoryPage(BookCategory cat, List<BookCategory> categories, boolean entryPages) throws IOException, TemplateException {
         Map<String, Object> data = new HashMap<>();
         data.put("title", localizationManager.translate(I18n.TITLE));
         data.put("long_title", cat.getName() + " | " + localizationManager.translate(I18n.SHORT_TITLE));
@@ -176,34 +257,39 @@ public class HtmlRenderer {
         generatePage("category.ftl", cat.getId() + ".html", data);
 
         // 生成该分类下的条目页面
-        buildEntryPages(cat, categories);
+        if (entryPages) {
+            for (BookEntry entry : cat.getEntries()) {
+                buildEntryPage(cat, entry, categories);
+            }
+        }
     }
 
-    private void buildEntryPages(BookCategory cat, List<BookCategory> categories) throws IOException, TemplateException {
-        for (BookEntry entry : cat.getEntries()) {
-            Map<String, Object> data = new HashMap<>();
-            data.put("title", localizationManager.translate(I18n.TITLE));
-            data.put("long_title", entry.getName() + " | " + localizationManager.translate(I18n.SHORT_TITLE));
-            data.put("short_description", entry.getName());
-            data.put("preview_image", cleanImagePath(entry.getIconPath()));
-            data.put("root", "../..");
+    /**
+     * Thread-safe, the names of the other entries of the category must be final, they are listed on the page.
+     */
+    public void buildEntryPage(BookCategory cat, BookEntry entry, List<BookCategory> categories) throws IOException, TemplateException {
+        Map<String, Object> data = new HashMap<>();
+        data.put("title", localizationManager.translate(I18n.TITLE));
+        data.put("long_title", entry.getName() + " | " + localizationManager.translate(I18n.SHORT_TITLE));
+        data.put("short_description", entry.getName());
+        data.put("preview_image", cleanImagePath(entry.getIconPath()));
+        data.put("root", "../..");
 
-            data.put("text_index", localizationManager.translate(I18n.INDEX));
-            data.put("text_contents", localizationManager.translate(I18n.CONTENTS));
-            data.put("text_github", localizationManager.translate(I18n.GITHUB));
-            data.put("text_discord", localizationManager.translate(I18n.DISCORD));
+        data.put("text_index", localizationManager.translate(I18n.INDEX));
+        data.put("text_contents", localizationManager.translate(I18n.CONTENTS));
+        data.put("text_github", localizationManager.translate(I18n.GITHUB));
+        data.put("text_discord", localizationManager.translate(I18n.DISCORD));
 
-            data.put("current_lang", localizationManager.getCurrentLanguage());
-            data.put("languages", Language.asList());
-            data.put("index", "../");
+        data.put("current_lang", localizationManager.getCurrentLanguage());
+        data.put("languages", Language.asList());
+        data.put("index", "../");
 
-            data.put("categories", categories);
-            data.put("current_category", cat);
-            data.put("current_entry", entry);
+        data.put("categories", categories);
+        data.put("current_category", cat);
+        data.put("current_entry", entry);
 
-            // 生成条目页面
-            generatePage("entry.ftl", entry.getId() + ".html", data);
-        }
+        // 生成条目页面
+        generatePage("entry.ftl", entry.getId() + ".html", data);
     }
 
     /**
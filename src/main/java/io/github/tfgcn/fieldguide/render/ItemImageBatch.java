@@ -0,0 +1,168 @@
+package io.github.tfgcn.fieldguide.render;
+
+import io.github.tfgcn.fieldguide.asset.AssetLoader;
+import io.github.tfgcn.fieldguide.data.patchouli.Book;
+import io.github.tfgcn.fieldguide.data.patchouli.BookEntry;
+import io.github.tfgcn.fieldguide.data.patchouli.BookPage;
+import io.github.tfgcn.fieldguide.data.patchouli.page.PageSpotlight;
+import io.github.tfgcn.fieldguide.data.patchouli.page.PageSpotlightItem;
+import io.github.tfgcn.fieldguide.data.recipe.Recipe;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
+import io.github.tfgcn.fieldguide.render.components.RecipeLayout;
+import io.github.tfgcn.fieldguide.trace.Trace;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Renders the item and fluid images of a book up front on a pool, instead of one at a time while pages ask for them.
+ * <p>
+ * Discovery reads the images from the parsed book: the entry icons, the spotlight items and the ingredients,
+ * results and fluids of the recipes the pages show, taken from the {@link RecipeLayouts} the pages are drawn
+ * with. The unique images are then rendered in parallel into the
+ * caches shared by all renderers, so the pages rendered afterward only look them up. Images the walk misses,
+ * e.g. asked for by the book of another language, are still rendered on demand.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class ItemImageBatch {
+
+    /**
+     * item or fluid key -> whether a placeholder may replace the image, only if every page allows it
+     */
+    private final Map<String, Boolean> items = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> fluids = new ConcurrentHashMap<>();
+    private final LongAdder references = new LongAdder();
+
+    private static final Metrics.Counter IMAGE_REFERENCES = Metrics.counter("item_image_references_total");
+    private static final Metrics.Counter IMAGES_BATCHED = Metrics.counter("item_images_batched_total");
+
+    private void item(String item, boolean placeholder) {
+        references.increment();
+        items.merge(item, placeholder, Boolean::logicalAnd);
+    }
+
+    private void fluid(String fluid, boolean placeholder) {
+        references.increment();
+        fluids.merge(fluid, placeholder, Boolean::logicalAnd);
+    }
+
+    /**
+     * Collect the images of every entry icon, spotlight and recipe of the book.
+     */
+    public void discover(Book book, AssetLoader assetLoader, ExecutorService pool) throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        Set<BookEntry> entries = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (BookEntry entry : book.getEntries()) {
+            if (!entries.add(entry)) {
+                continue;
+            }
+            tasks.add(() -> {
+                try (Trace.Span ignored = Trace.span("discover", entry.getId())) {
+                    discover(entry, assetLoader::getRecipe);
+                }
+                return null;
+            });
+        }
+        invokeAll(pool, tasks);
+        log.info("Discovered {} unique item images and {} fluid images in {} references, in {} ms",
+                items.size(), fluids.size(), references.sum(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Collect the images of an entry from the same page rules {@link PageRenderer} draws with.
+     *
+     * @param recipes the typed recipe of an id, throws if there is none
+     */
+    void discover(BookEntry entry, Function<String, Recipe> recipes) {
+        if (entry.getIcon() != null) {
+            item(entry.getIcon(), false);
+        }
+        for (BookPage page : entry.getPages()) {
+            if (page instanceof PageSpotlight spotlight && spotlight.getItem() != null) {
+                for (PageSpotlightItem item : spotlight.getItem()) {
+                    if (item.getText() != null) {
+                        item(PageRenderer.spotlightItem(item), false);
+                    }
+                }
+            }
+            for (String recipeId : RecipeLayouts.recipes(page)) {
+                try {
+                    RecipeLayout layout = RecipeLayouts.layout(page, recipes.apply(recipeId));
+                    layout.items().forEach(slot -> item(slot.item(), slot.placeholder()));
+                    // pages draw every fluid with a placeholder to fall back to
+                    layout.fluids().forEach(slot -> fluid(slot.fluid(), true));
+                } catch (RuntimeException e) {
+                    // reported when the entry is rendered
+                    log.debug("Failed to discover recipe {} of {}: {}", recipeId, entry.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return item key -> whether a placeholder may replace the image, as discovered so far
+     */
+    Map<String, Boolean> getItems() {
+        return items;
+    }
+
+    /**
+     * @return fluid key -> whether a placeholder may replace the image, as discovered so far
+     */
+    Map<String, Boolean> getFluids() {
+        return fluids;
+    }
+
+    /**
+     * Render the discovered images into the caches of the renderer.
+     */
+    public void render(TextureRenderer textureRenderer, ExecutorService pool) throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        items.forEach((item, placeholder) -> tasks.add(() -> {
+            try {
+                textureRenderer.getItemImage(item, placeholder);
+            } catch (RuntimeException e) {
+                // not cached, the page asking for it fails as it did without the batch
+                log.debug("Failed to render item image: {}, message: {}", item, e.getMessage());
+            }
+            return null;
+        }));
+        fluids.forEach((fluid, placeholder) -> tasks.add(() -> {
+            try {
+                textureRenderer.getFluidImage(fluid, 0, placeholder, false);
+            } catch (RuntimeException e) {
+                log.debug("Failed to render fluid image: {}, message: {}", fluid, e.getMessage());
+            }
+            return null;
+        }));
+        try (Trace.Span ignored = Trace.span("images", tasks.size() + " images")) {
+            invokeAll(pool, tasks);
+        }
+        IMAGE_REFERENCES.add(references.sum());
+        IMAGES_BATCHED.add(tasks.size());
+        log.info("Rendered {} images for {} references in {} ms", tasks.size(), references.sum(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void invokeAll(ExecutorService pool, List<Callable<Void>> tasks) throws InterruptedException, ExecutionException {
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            future.get();
+        }
+    }
+}
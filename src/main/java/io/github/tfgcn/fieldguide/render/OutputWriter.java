@@ -0,0 +1,194 @@
+package io.github.tfgcn.fieldguide.render;
+
+import io.github.tfgcn.fieldguide.metrics.Metrics;
+import io.github.tfgcn.fieldguide.trace.Trace;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes and writes output files behind the renderers.
+ * <p>
+ * Renderers hand over finished images, models and pages and keep rendering, a few workers encode and
+ * write them. At most {@link #QUEUE_PER_THREAD} writes per worker wait in the queue, a renderer that
+ * gets ahead of the disk blocks until there is room again. Every directory is created once, and again
+ * if it was deleted since.
+ * <p>
+ * Failed writes are logged, and reported by {@link #flush()}.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class OutputWriter implements AutoCloseable {
+
+    private static final int QUEUE_PER_THREAD = 64;
+
+    private static final Metrics.Counter FILES_WRITTEN = Metrics.counter("output_files_total");
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("output_bytes_written_total");
+    private static final Metrics.Histogram WRITE_SECONDS = Metrics.histogram("output_write_seconds");
+
+    public interface Output {
+        /**
+         * @param file the file to write, its directory exists
+         */
+        void write(Path file) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+
+    private int pending;
+    private final List<IOException> failures = new ArrayList<>();
+
+    /**
+     * @param threads the number of workers, 0 to write on the calling thread
+     */
+    public OutputWriter(int threads) {
+        if (threads <= 0) {
+            this.executor = null;
+            this.slots = null;
+        } else {
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "output-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.slots = new Semaphore(threads * QUEUE_PER_THREAD);
+        }
+    }
+
+    /**
+     * A writer that writes on the calling thread, for tools and tests that render a few files.
+     * Each call returns a new writer, so the directories one of them created are never shared.
+     */
+    public static OutputWriter direct() {
+        return new OutputWriter(0);
+    }
+
+    /**
+     * Write a file, the content must not change after it is handed over.
+     *
+     * @return completes when the file is written
+     * @throws IOException if writing on the calling thread failed
+     */
+    public CompletableFuture<Void> write(Path file, Output output) throws IOException {
+        if (executor == null) {
+            writeNow(file, output);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write: " + file);
+        }
+        synchronized (this) {
+            pending++;
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                writeNow(file, output);
+                future.complete(null);
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to write: {}, message: {}", file, e.getMessage());
+                synchronized (this) {
+                    failures.add(e instanceof IOException io ? io : new IOException("Failed to write: " + file, e));
+                }
+                future.completeExceptionally(e);
+            } finally {
+                slots.release();
+                synchronized (this) {
+                    pending--;
+                    notifyAll();
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Write to a temp file and move it into place, the same image may be saved twice at the same time.
+     */
+    public CompletableFuture<Void> writeAtomically(Path file, Output output) throws IOException {
+        return write(file, target -> {
+            Path tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                output.write(tempFile);
+                BYTES_WRITTEN.add(Files.size(tempFile));
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        });
+    }
+
+    private void writeNow(Path file, Output output) throws IOException {
+        try (Trace.Span ignored = Trace.span("write", file.getFileName().toString())) {
+            Path dir = file.toAbsolutePath().getParent();
+            if (!directories.contains(dir)) {
+                Files.createDirectories(dir);
+                directories.add(dir);
+            }
+            long start = System.nanoTime();
+            try {
+                output.write(file);
+            } catch (NoSuchFileException e) {
+                // the directory was deleted after it was created, e.g. between two builds of serve
+                Files.createDirectories(dir);
+                output.write(file);
+            }
+            WRITE_SECONDS.observeSince(start);
+            FILES_WRITTEN.increment();
+        }
+    }
+
+    /**
+     * Wait until every file handed over so far is written.
+     *
+     * @throws IOException if any of them failed
+     */
+    public void flush() throws IOException {
+        List<IOException> failed;
+        synchronized (this) {
+            try {
+                while (pending > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while flushing the output");
+            }
+            failed = new ArrayList<>(failures);
+            failures.clear();
+        }
+        if (!failed.isEmpty()) {
+            IOException e = new IOException(failed.size() + " output files failed to write", failed.getFirst());
+            failed.stream().skip(1).forEach(e::addSuppressed);
+            throw e;
+        }
+    }
+
+    /**
+     * Stop the workers once the files handed over are written, call {@link #flush()} first to wait for them.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.tfgcn.fieldguide.render;
+
+import io.github.tfgcn.fieldguide.asset.AssetLoader;
+import io.github.tfgcn.fieldguide.asset.SingleFlightCache;
+import io.github.tfgcn.fieldguide.localization.DeferredLocalization;
+import io.github.tfgcn.fieldguide.localization.LocalizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The parts of pages that are the same in every language, rendered once and localized for each language.
+ * <p>
+ * Recipes, image carousels and multiblocks only differ between languages in item names and labels.
+ * They are rendered with a {@link DeferredLocalization}, which leaves the translation keys in the html,
+ * so every other language only replaces the keys with its translations. Shared by the page renderers
+ * of all languages.
+ *
+ * @author yanmaoyuan
+ */
+public final class PageFragments {
+
+    interface Fragment {
+        void render(PageRenderer renderer, List<String> buffer);
+    }
+
+    private final PageRenderer renderer;
+    private final SingleFlightCache<String, String> cache;
+
+    public PageFragments(AssetLoader assetLoader, TextureRenderer textureRenderer) {
+        LocalizationManager deferred = new DeferredLocalization();
+        this.renderer = new PageRenderer(assetLoader, deferred, textureRenderer.forLanguage(deferred));
+        this.cache = assetLoader.getCaches().cache("page_fragments");
+    }
+
+    /**
+     * @param key what the fragment is rendered from, unique among all pages
+     * @return the fragment in the language of the localization
+     */
+    String render(String key, Fragment fragment, LocalizationManager localizationManager) {
+        String html = cache.get(key, k -> {
+            List<String> buffer = new ArrayList<>();
+            fragment.render(renderer, buffer);
+            return String.join("", buffer);
+        });
+        return DeferredLocalization.localize(html, localizationManager);
+    }
+
+    /**
+     * Forget the fragments rendered from the changed dependencies.
+     *
+     * @return the number of fragments invalidated
+     */
+    public int invalidate(Set<String> dependencies) {
+        renderer.invalidateKnappingRecipes(dependencies);
+        return cache.invalidate(dependencies).size();
+    }
+}
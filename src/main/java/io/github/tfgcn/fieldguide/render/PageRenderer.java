@@ -4,14 +4,22 @@ import io.github.tfgcn.fieldguide.asset.*;
 import io.github.tfgcn.fieldguide.data.patchouli.BookEntry;
 import io.github.tfgcn.fieldguide.data.patchouli.BookPage;
 import io.github.tfgcn.fieldguide.data.patchouli.page.*;
+import io.github.tfgcn.fieldguide.data.recipe.Recipe;
+import io.github.tfgcn.fieldguide.data.recipe.tfc.AnvilRecipe;
+import io.github.tfgcn.fieldguide.data.recipe.tfc.GlassworkingRecipe;
+import io.github.tfgcn.fieldguide.data.recipe.tfc.HeatingRecipe;
 import io.github.tfgcn.fieldguide.data.tfc.page.*;
 import io.github.tfgcn.fieldguide.exception.InternalException;
 import io.github.tfgcn.fieldguide.gson.JsonUtils;
 import io.github.tfgcn.fieldguide.localization.I18n;
 import io.github.tfgcn.fieldguide.localization.LocalizationManager;
+import io.github.tfgcn.fieldguide.render.components.BarrelRecipe;
 import io.github.tfgcn.fieldguide.render.components.CraftingRecipe;
+import io.github.tfgcn.fieldguide.render.components.FluidSlot;
+import io.github.tfgcn.fieldguide.render.components.ItemSlot;
 import io.github.tfgcn.fieldguide.render.components.KnappingRecipe;
 import io.github.tfgcn.fieldguide.render.components.KnappingType;
+import io.github.tfgcn.fieldguide.render.components.MiscRecipe;
 import lombok.extern.slf4j.Slf4j;
 
 import java.awt.image.BufferedImage;
@@ -42,31 +50,39 @@ public class PageRenderer {
             new HeatLevel("brilliant_white", "white", 1600)
     );
 
-    // 玻璃加工物品映射
-    private static final Map<String, String> GLASS_ITEMS = Map.ofEntries(
-            Map.entry("saw", "tfc:gem_saw"),
-            Map.entry("roll", "tfc:wool_cloth"),
-            Map.entry("stretch", "tfc:blowpipe_with_glass"),
-            Map.entry("blow", "tfc:blowpipe_with_glass"),
-            Map.entry("table_pour", "tfc:blowpipe_with_glass"),
-            Map.entry("basin_pour", "tfc:blowpipe_with_glass"),
-            Map.entry("flatten", "tfc:paddle"),
-            Map.entry("pinch", "tfc:jacks")
-    );
-
     private final AssetLoader assetLoader;
     private final TextureRenderer textureRenderer;
     private final LocalizationManager localizationManager;
-
-    private int id = 0;
+    private final PageFragments fragments;
+    // shared by the renderers of every language
+    private final SingleFlightCache<String, KnappingRecipe> knappingRecipeCache;
 
     public PageRenderer(AssetLoader loader, LocalizationManager localizationManager, TextureRenderer textureRenderer) {
+        this(loader, localizationManager, textureRenderer, null);
+    }
+
+    /**
+     * @param fragments the language independent parts of pages shared with other languages, or null to render everything
+     */
+    public PageRenderer(AssetLoader loader, LocalizationManager localizationManager, TextureRenderer textureRenderer,
+                        PageFragments fragments) {
         this.assetLoader = loader;
         this.localizationManager = localizationManager;
         this.textureRenderer = textureRenderer;
+        this.fragments = fragments;
+        this.knappingRecipeCache = loader.getCaches().cache("knapping_recipes");
     }
 
-    public void renderPage(BookEntry entry, BookPage page) {
+    /**
+     * Render a page into the buffer of its entry.
+     * <p>
+     * Element ids on the page are derived from the entry and the page index, so entries can be
+     * rendered in any order and on any thread.
+     *
+     * @param pageIndex the index of the page in the entry
+     */
+    public void renderPage(BookEntry entry, BookPage page, int pageIndex) {
+        String pageUid = String.format("%08x-%d", entry.getId().hashCode(), pageIndex);
         String pageType = page.getType();
         String anchor = page.getAnchor();
         if (anchor != null) {
@@ -82,13 +98,15 @@ public class PageRenderer {
             }
             case PageImage pageImage: {// patchouli:image
                 formatTitle(entry, buffer, pageImage.getTitle());
-                renderImagePage(buffer, pageImage.getImages());
+                renderFragment(buffer, "image:" + pageUid + ":" + pageImage.getImages(),
+                        (renderer, out) -> renderer.renderImagePage(out, pageImage.getImages(), pageUid));
                 formatCenteredText(entry, buffer, pageImage.getText());
                 break;
             }
             case PageCrafting pageCrafting: {// patchouli:crafting
                 formatTitle(entry, buffer, pageCrafting.getTitle());
-                parseCraftingRecipe(buffer, pageCrafting);
+                renderFragment(buffer, "crafting:" + pageCrafting.getRecipe() + ":" + pageCrafting.getRecipe2(),
+                        (renderer, out) -> renderer.parseCraftingRecipe(out, pageCrafting));
                 formatText(entry, buffer, pageCrafting.getText());
                 break;
             }
@@ -109,32 +127,34 @@ public class PageRenderer {
             }
             case PageMultiblock pageMultiblock: {// patchouli:multiblock
                 formatTitle(entry, buffer, pageMultiblock.getName());
-                parseMultiblockPage(buffer, pageMultiblock);
+                renderFragment(buffer, "multiblock:" + pageUid + ":" + pageMultiblock.getMultiblockId() + ":" + JsonUtils.toJson(pageMultiblock.getMultiblock()),
+                        (renderer, out) -> renderer.parseMultiblockPage(out, pageMultiblock, pageUid));
                 formatCenteredText(entry, buffer, pageMultiblock.getText());
                 break;
             }
             case PageMultiMultiblock pageMultiMultiblock: {// tfc:multimultiblock
-                parseMultiMultiblockPage(buffer, pageMultiMultiblock);
+                renderFragment(buffer, "multimultiblock:" + pageUid + ":" + JsonUtils.toJson(pageMultiMultiblock.getMultiblocks()),
+                        (renderer, out) -> renderer.parseMultiMultiblockPage(out, pageMultiMultiblock, pageUid));
                 formatCenteredText(entry, buffer, pageMultiMultiblock.getText());
                 break;
             }
             case PageHeating pageHeating: {// tfc:heating
-                parseMiscRecipe(entry, buffer, pageHeating, pageType);
+                renderMiscRecipe(entry, buffer, pageHeating, pageType);
                 formatText(entry, buffer, pageHeating.getText());
                 break;
             }
             case PageQuern pageQuern:{// tfc:quern
-                parseMiscRecipe(entry, buffer, pageQuern, pageType);
+                renderMiscRecipe(entry, buffer, pageQuern, pageType);
                 formatText(entry, buffer, pageQuern.getText());
                 break;
             }
             case PageLoom pageLoom: {// tfc:loom
-                parseMiscRecipe(entry, buffer, pageLoom, pageType);
+                renderMiscRecipe(entry, buffer, pageLoom, pageType);
                 formatText(entry, buffer, pageLoom.getText());
                 break;
             }
             case PageAnvil pageAnvil: {// tfc:anvil
-                parseMiscRecipe(entry, buffer, pageAnvil, pageType);
+                renderMiscRecipe(entry, buffer, pageAnvil, pageType);
                 formatText(entry, buffer, pageAnvil.getText());
                 break;
             }
@@ -144,17 +164,18 @@ public class PageRenderer {
                 break;
             }
             case PageSmelting pageSmelting: {// tfc:smelting
-                parseMiscRecipe(entry, buffer, pageSmelting, pageType);
+                renderMiscRecipe(entry, buffer, pageSmelting, pageType);
                 formatText(entry, buffer, pageSmelting.getText());
                 break;
             }
             case PageDrying pageDrying: {// tfc:drying
-                parseMiscRecipe(entry, buffer, pageDrying, pageType);
+                renderMiscRecipe(entry, buffer, pageDrying, pageType);
                 formatText(entry, buffer, pageDrying.getText());
                 break;
             }
             case PageBarrel pageBarrel: {// tfc:instant_barrel_recipe, tfc:sealed_barrel_recipe
-                parseBarrelRecipe(buffer, pageBarrel, pageType);
+                renderFragment(buffer, pageType + ":" + pageBarrel.getRecipe(),
+                        (renderer, out) -> renderer.parseBarrelRecipe(out, pageBarrel, pageType));
                 formatText(entry, buffer, pageBarrel.getText());
                 break;
             }
@@ -186,6 +207,27 @@ public class PageRenderer {
     }
 
 
+    /**
+     * Render a language independent part of a page once for all languages, then localize it.
+     *
+     * @param key what the fragment is rendered from, unique among all pages
+     */
+    private void renderFragment(List<String> buffer, String key, PageFragments.Fragment fragment) {
+        if (fragments == null) {
+            fragment.render(this, buffer);
+        } else {
+            buffer.add(fragments.render(key, fragment, localizationManager));
+        }
+    }
+
+    /**
+     * Misc recipes are fragments, except glassworking, which adds its title to the search of the entry.
+     */
+    private void renderMiscRecipe(BookEntry entry, List<String> buffer, IPageDoubleRecipe page, String pageType) {
+        renderFragment(buffer, pageType + ":" + page.getRecipe(),
+                (renderer, out) -> renderer.parseMiscRecipe(entry, out, page, pageType));
+    }
+
     public void formatText(BookEntry entry, List<String> buffer, String text) {
         if (text != null && !text.isEmpty()) {
             TextFormatter.formatText(buffer, text, localizationManager.getKeybindings());
@@ -226,11 +268,11 @@ public class PageRenderer {
         String html = String.format("""
             <div class="item-header">
                 <span href="#" data-bs-toggle="tooltip" title="%s">
-                    <img src="../../%s" alt="%s" />
+                    %s
                 </span>
                 <%s>%s</%s>
             </div>
-            """, iconName, iconSrc, tooltip, tag, title, tag);
+            """, iconName, itemIcon(iconSrc, null, tooltip), tag, title, tag);
 
         buffer.add(html);
     }
@@ -271,7 +313,7 @@ public class PageRenderer {
     }
 
     ///  patchouli:image
-    private void renderImagePage(List<String> buffer, List<String> images) {
+    private void renderImagePage(List<String> buffer, List<String> images, String pageUid) {
         List<Map.Entry<String, String>> processedImages = new ArrayList<>();
 
         if (images != null) {
@@ -290,7 +332,7 @@ public class PageRenderer {
             buffer.add(String.format(IMAGE_SINGLE,
                     imageEntry.getValue(), imageEntry.getKey()));
         } else if (!processedImages.isEmpty()) {
-            String uid = String.valueOf(id++);
+            String uid = "carousel-" + pageUid;
             StringBuilder parts = new StringBuilder();
             StringBuilder seq = new StringBuilder();
 
@@ -310,106 +352,34 @@ public class PageRenderer {
     /// crafting recipe
 
     private void parseCraftingRecipe(List<String> buffer, PageCrafting page) {
-        // 处理主要配方
-        if (page.getRecipe() != null) {
+        // 处理主要配方和第二个配方
+        for (String recipeId : RecipeLayouts.recipes(page)) {
             try {
-                formatCraftingRecipe(buffer, page.getRecipe());
+                formatRecipeLayout(null, buffer, page, recipeId);
             } catch (Exception e) {
                 // TODO add "e" later
-                log.error("Recipe processing craft failed: {}. e: {}", page.getRecipe(), e.getMessage());
-                formatRecipe(buffer, page.getRecipe());
-            }
-        }
-
-        // 处理第二个配方
-        if (page.getRecipe2() != null) {
-            try {
-                formatCraftingRecipe(buffer, page.getRecipe2());
-            } catch (Exception e) {
-                // TODO add e later
-                log.error("Recipe2 processing failed: {}, message: {}", page.getRecipe2(), e.getMessage());
-                formatRecipe(buffer, page.getRecipe2());
+                log.error("Recipe processing craft failed: {}. e: {}", recipeId, e.getMessage());
+                formatRecipe(buffer, recipeId);
             }
         }
     }
 
-
     /**
-     * 格式化合成配方
+     * 按页面绘制配方，页面显示哪些配方和格子由 {@link RecipeLayouts} 决定，与 {@link ItemImageBatch} 相同
      */
-    public void formatCraftingRecipe(List<String> buffer, String identifier) {
-        Map<String, Object> recipe = assetLoader.loadRecipe(identifier);
-        formatCraftingRecipeFromData(buffer, identifier, recipe);
+    private void formatRecipeLayout(BookEntry entry, List<String> buffer, BookPage page, String recipeId) {
+        Recipe recipe = assetLoader.getRecipe(recipeId);
+        switch (RecipeLayouts.layout(page, recipe)) {
+            case CraftingRecipe crafting -> formatCraftingRecipe(buffer, crafting);
+            case MiscRecipe misc -> formatMiscRecipe(entry, buffer, recipe, misc);
+            case BarrelRecipe barrel -> formatBarrelRecipe(buffer, recipe, barrel);
+        }
     }
 
     /**
-     * 从数据格式化合成配方
+     * 格式化合成配方
      */
-    private void formatCraftingRecipeFromData(List<String> buffer, String identifier, Map<String, Object> data) {
-        String recipeType = (String) data.get("type");
-        CraftingRecipe recipe;
-
-        switch (recipeType) {
-            case "minecraft:crafting_shaped":
-                recipe = parseShapedRecipe(data);
-                break;
-
-            case "minecraft:crafting_shapeless": {
-                recipe = parseShapelessRecipe(data);
-                break;
-            }
-            case "waterflasks:heal_flask": {
-                Map<String, Object> innerRecipe = (Map<String, Object>) data.get("recipe");
-                String type = (String) innerRecipe.get("type");
-                if ("minecraft:crafting_shaped".equals(type)) {
-                    recipe = parseShapedRecipe(innerRecipe);
-                } else if ("minecraft:crafting_shapless".equals(type)) {
-                    recipe = parseShapelessRecipe(innerRecipe);
-                } else {
-                    throw new InternalException("Unsupported recipe: " + type + " of " + identifier);
-                }
-                break;
-            }
-            case "tfc:damage_inputs_shaped_crafting":
-            case "tfc:damage_inputs_shapeless_crafting":
-            case "tfc:extra_products_shapeless_crafting":
-            case "tfc:no_remainder_shapeless_crafting": {
-                Map<String, Object> innerRecipe = (Map<String, Object>) data.get("recipe");
-                formatCraftingRecipeFromData(buffer, identifier, innerRecipe);
-                return;
-            }
-            case "tfc:advanced_shaped_crafting": {
-                data.put("type", "minecraft:crafting_shaped");
-                Object result = data.get("result");
-                Object stack = anyOf(result, "stack", "id");
-                if (stack == null) {
-                    throw new InternalException("Advanced shaped crafting with complex modifiers: '" + data.get("result") + "'");
-                }
-                data.put("result", stack); // 丢弃修饰符
-                formatCraftingRecipeFromData(buffer, identifier, data);
-                return;
-            }
-            case "tfc:advanced_shapeless_crafting": {
-                data.put("type", "minecraft:crafting_shapeless");
-                Object result2 = data.get("result");
-                Object stack2 = anyOf(result2, "stack", "id");
-                if (stack2 == null) {
-                    throw new InternalException("Advanced shapeless crafting with complex modifiers: '" + data.get("result") + "'");
-                }
-                data.put("result", stack2); // 丢弃修饰符
-                formatCraftingRecipeFromData(buffer, identifier, data);
-                return;
-            }
-            default:
-                throw new RuntimeException("Unknown crafting recipe type: " + recipeType + " for recipe " + identifier);
-        }
-
-        for (int i = 0; i < recipe.grid.length; i++) {
-            Object key = recipe.grid[i];
-            if (key != null) {
-                recipe.grid[i] = formatIngredient(key);
-            }
-        }
+    private void formatCraftingRecipe(List<String> buffer, CraftingRecipe recipe) {
 
         buffer.add(String.format("""
             <div class="d-flex align-items-center justify-content-center">
@@ -419,188 +389,53 @@ public class PageRenderer {
 
         // 添加网格物品
         for (int i = 0; i < recipe.grid.length; i++) {
-            Object key = recipe.grid[i];
-            if (key != null) {
-                ItemImageResult ingredient = (ItemImageResult) key;
+            ItemSlot slot = recipe.grid[i];
+            if (slot != null) {
+                ItemImageResult ingredient = itemImage(slot);
                 int x = i % 3;
                 int y = i / 3;
                 buffer.add(String.format("""
                     <div class="crafting-recipe-item crafting-recipe-pos-%d-%d">
                         <span href="#" data-bs-toggle="tooltip" title="%s" class="crafting-recipe-item-tooltip"></span>
-                        <img class="recipe-item" src="../../%s" />
+                        %s
                     </div>
-                    """, x, y, ingredient.getName(), ingredient.getPath()));
+                    """, x, y, ingredient.getName(), itemIcon(ingredient.getPath(), "recipe-item", null)));
             }
         }
 
         // 添加输出物品
-        ItemStackResult output = recipe.output;
+        ItemStackResult output = itemStack(recipe.output);
         buffer.add(String.format("""
                     <div class="crafting-recipe-item crafting-recipe-pos-out">
                         <span href="#" data-bs-toggle="tooltip" title="%s" class="crafting-recipe-item-tooltip"></span>
                         %s
-                        <img class="recipe-item" src="../../%s" />
+                        %s
                     </div>
                 </div>
             </div>
             """,
                 output.name,
                 formatCount(output.count),
-                output.path
+                itemIcon(output.path, "recipe-item", null)
         ));
     }
 
     /**
-     * 从多个键中获取第一个存在的值
-     */
-    public static Object anyOf(Object data, String... keys) {
-        if (data instanceof Map) {
-            Map<String, Object> map = (Map<String, Object>) data;
-            for (String key : keys) {
-                if (map.containsKey(key)) {
-                    return map.get(key);
-                }
-            }
-        }
-        return null;
-    }
-
-    /**
-     * 解析有序合成配方
-     */
-    private CraftingRecipe parseShapedRecipe(Map<String, Object> data) {
-        CraftingRecipe recipe = new CraftingRecipe();
-        List<String> pattern = (List<String>) data.get("pattern");
-        Map<String, Object> keyMap = (Map<String, Object>) data.get("key");
-
-        for (int y = 0; y < pattern.size(); y++) {
-            String row = pattern.get(y);
-            for (int x = 0; x < row.length(); x++) {
-                char keyChar = row.charAt(x);
-                if (keyChar != ' ') {
-                    recipe.grid[x + 3 * y] = keyMap.get(String.valueOf(keyChar));
-                }
-            }
-        }
-
-        recipe.output = formatItemStack(data.get("result"));
-        recipe.shapeless = false;
-        return recipe;
-    }
-
-    /**
-     * 解析无序合成配方
-     */
-    private CraftingRecipe parseShapelessRecipe(Map<String, Object> data) {
-        CraftingRecipe recipe = new CraftingRecipe();
-        List<Object> ingredients = (List<Object>) data.get("ingredients");
-
-        for (int i = 0; i < ingredients.size(); i++) {
-            recipe.grid[i] = ingredients.get(i);
-        }
-
-        recipe.output = formatItemStack(data.get("result"));
-        recipe.shapeless = true;
-        return recipe;
-    }
-
-    /**
-     * 格式化成分
+     * 成分的图像
      */
-    public ItemImageResult formatIngredient(Object data) {
-        if (data instanceof Map) {
-            Map<String, Object> mapData = (Map<String, Object>) data;
-
-            if (mapData.containsKey("item")) {
-                return textureRenderer.getItemImage((String) mapData.get("item"), true);
-            } else if (mapData.containsKey("tag")) {
-                return textureRenderer.getItemImage("#" + mapData.get("tag"), true);
-            } else if (mapData.containsKey("type")) {
-                String type = (String) mapData.get("type");
-                switch (type) {
-                    case "tfc:has_trait": {// FIXME 不知道对不对。这是 firmalife:food/pineapple firmalife:dried
-                        return formatIngredient(mapData.get("ingredient"));
-                    }
-                    case "tfc:lacks_trait": {// FIXME 不知道对不对。这是 casting_channel 做巧克力的配方。
-                        return formatIngredient(mapData.get("ingredient"));
-                    }
-                    case "tfc:not_rotten":
-                        return formatIngredient(mapData.get("ingredient"));
-                    case "tfc:fluid_item":
-                        Map<String, Object> fluidIngredient = (Map<String, Object>) mapData.get("fluid_ingredient");
-                        Map<String, Object> ingredient = (Map<String, Object>) fluidIngredient.get("ingredient");
-                        if (!"minecraft:water".equals(ingredient.get("ingredient"))) {
-                            throw new RuntimeException("Unknown `tfc:fluid_item` ingredient: '" + data + "'");
-                        }
-                        return textureRenderer.getItemImage("minecraft:water_bucket", true);
-                    case "tfc:fluid_content":
-                        Map<String, Object> fluid = (Map<String, Object>) mapData.get("fluid");
-                        if (!"minecraft:water".equals(fluid.get("fluid"))) {
-                            throw new RuntimeException("Unknown `tfc:fluid_content` ingredient: '" + data + "'");
-                        }
-                        return textureRenderer.getItemImage("minecraft:water_bucket", true);
-                    case "tfc:and":
-                        List<Map<String, Object>> children = (List<Map<String, Object>>) mapData.get("children");
-                        StringBuilder csvString = new StringBuilder();
-                        for (Map<String, Object> child : children) {
-                            if (child.containsKey("item")) {
-                                if (!csvString.isEmpty()) {
-                                    csvString.append(",");
-                                }
-                                csvString.append(child.get("item"));
-                            }
-                        }
-                        return textureRenderer.getItemImage(csvString.toString(), true);
-                    default:
-                        log.info("Unknown ingredient type: {}", type);
-                }
-            }
-        } else if (data instanceof List) {
-            List<Object> listData = (List<Object>) data;
-            StringBuilder csvString = new StringBuilder();
-            for (Object item : listData) {
-                if (item instanceof Map) {
-                    Map<String, Object> itemMap = (Map<String, Object>) item;
-                    if (itemMap.containsKey("item")) {
-                        if (!csvString.isEmpty()) {
-                            csvString.append(",");
-                        }
-                        csvString.append(itemMap.get("item"));
-                    }
-                }
-            }
-            return textureRenderer.getItemImage(csvString.toString(), true);
-        }
-
-        throw new RuntimeException("Unsupported ingredient: " + data);
+    private ItemImageResult itemImage(ItemSlot slot) {
+        return textureRenderer.getItemImage(slot.item(), slot.placeholder());
     }
 
     /**
-     * 格式化物品堆
+     * 物品堆的图像，没有物品时为占位符
      */
-    public ItemStackResult formatItemStack(Object data) {
-        if (data instanceof Map) {
-            Map<String, Object> mapData = (Map<String, Object>) data;
-            if (mapData.containsKey("modifiers") && mapData.containsKey("stack")) {
-                return formatItemStack(mapData.get("stack")); // 丢弃修饰符
-            }
-
-            String itemId = null;
-            if (mapData.containsKey("item")) {
-                itemId = (String) mapData.get("item");
-            } else if (mapData.containsKey("id")) {
-                itemId = (String) mapData.get("id");
-            }
-
-            if (itemId != null) {
-                ItemImageResult itemImage = textureRenderer.getItemImage(itemId, true);
-                int count = mapData.containsKey("count") ? ((Number) mapData.get("count")).intValue() : 1;
-                return new ItemStackResult(itemImage.getPath(), itemImage.getName(), count);
-            }
+    private ItemStackResult itemStack(ItemSlot slot) {
+        if (slot.item() == null) {
+            return new ItemStackResult("../../_images/placeholder_64.png", null, 1);
         }
-
-        // 默认返回占位符
-        return new ItemStackResult("../../_images/placeholder_64.png", null, 1);
+        ItemImageResult itemImage = itemImage(slot);
+        return new ItemStackResult(itemImage.getPath(), itemImage.getName(), slot.count());
     }
 
     /**
@@ -613,6 +448,14 @@ public class PageRenderer {
     }
 
     ///  spotlight
+
+    /**
+     * @return the item or #tag a spotlight shows, also rendered up front by {@link ItemImageBatch}
+     */
+    static String spotlightItem(PageSpotlightItem item) {
+        return "tag".equals(item.getType()) ? "#" + item.getText() : item.getText();
+    }
+
     private void parseSpotlightPage(BookEntry entry, List<String> buffer, PageSpotlight page) {
         List<PageSpotlightItem> items = page.getItem();
         if (items == null || items.isEmpty()) {
@@ -621,13 +464,8 @@ public class PageRenderer {
         }
         try {
             for (PageSpotlightItem item : items) {
-                if ("tag".equals(item.getType())) {
-                    ItemImageResult itemResult = textureRenderer.getItemImage("#" + item.getText(), false);
-                    formatTitleWithIcon(entry, buffer, itemResult.getPath(), itemResult.getName(), page.getTitle());
-                } else {
-                    ItemImageResult itemResult = textureRenderer.getItemImage(item.getText(), false);
-                    formatTitleWithIcon(entry, buffer, itemResult.getPath(), itemResult.getName(), page.getTitle());
-                }
+                ItemImageResult itemResult = textureRenderer.getItemImage(spotlightItem(item), false);
+                formatTitleWithIcon(entry, buffer, itemResult.getPath(), itemResult.getName(), page.getTitle());
             }
         } catch (Exception e) {
             // Fallback
@@ -653,14 +491,14 @@ public class PageRenderer {
         }
     }
 
-    private void parseMultiblockPage(List<String> buffer, PageMultiblock page) {
+    private void parseMultiblockPage(List<String> buffer, PageMultiblock page, String pageUid) {
         try {
             String src = textureRenderer.getMultiBlockImage(page);
             
             // 只添加GLB 3D模型查看器，不要2D图片
             if (src != null && src.endsWith(".png")) {
                 String glbPath = src.substring(0, src.length() - 4) + ".glb";
-                String viewerId = generateUniqueViewerId("multiblock");
+                String viewerId = generateUniqueViewerId("multiblock", pageUid);
                 
                 // 添加GLB查看器div（手动加载模式）
                 buffer.add(String.format("""
@@ -708,8 +546,9 @@ public class PageRenderer {
     /**
      * 生成唯一的查看器 ID
      */
-    private String generateUniqueViewerId(String prefix) {
-        return String.format("glb-viewer-%s-%d-%d", prefix, System.currentTimeMillis(), id++);
+    private String generateUniqueViewerId(String prefix, String pageUid) {
+        // no timestamp, the same book must always render to the same html
+        return String.format("glb-viewer-%s-%s", prefix, pageUid);
     }
     
     /**
@@ -751,14 +590,14 @@ public class PageRenderer {
         }
     }
 
-    private void parseMultiMultiblockPage(List<String> buffer, PageMultiMultiblock page) {
+    private void parseMultiMultiblockPage(List<String> buffer, PageMultiMultiblock page, String pageUid) {
         try {
             // 使用新方法生成多个GLB文件
             List<String> glbPaths = textureRenderer.generateMultiMultiblockGLB(page);
             
             // 添加GLB查看器
             if (!glbPaths.isEmpty()) {
-                String viewerId = generateUniqueViewerId("multimultiblock");
+                String viewerId = generateUniqueViewerId("multimultiblock", pageUid);
                 StringBuilder glbPathsJson = new StringBuilder("[");
                 
                 // 构建GLB文件路径的JSON数组
@@ -806,133 +645,59 @@ public class PageRenderer {
 
     ///  misc recipe
     private void parseMiscRecipe(BookEntry entry, List<String> buffer, IPageDoubleRecipe page, String pageType) {
-        try {
-            formatMiscRecipe(entry, buffer, page.getRecipe());
-        } catch (Exception e) {
-            // TODO add e later
-            log.error("Misc recipe processing failed: {}, message: {}", pageType, e.getMessage());
-            formatRecipe(buffer, page.getRecipe());
+        for (String recipeId : RecipeLayouts.recipes(page)) {
+            try {
+                formatRecipeLayout(entry, buffer, page, recipeId);
+            } catch (Exception e) {
+                // TODO add e later
+                log.error("Misc recipe processing failed: {}, message: {}", pageType, e.getMessage());
+                formatRecipe(buffer, recipeId);
+            }
         }
     }
 
     /**
      * 格式化杂项配方
      */
-    public void formatMiscRecipe(BookEntry entry, List<String> buffer, String identifier) {
-        Map<String, Object> data = assetLoader.loadRecipe(identifier);
-        String recipeType = (String) data.get("type");
-
-        switch (recipeType) {
-            case "tfc:quern":
-                formatMiscRecipeFromData(buffer, identifier, data);
-                break;
+    private void formatMiscRecipe(BookEntry entry, List<String> buffer, Recipe recipe, MiscRecipe layout) {
+        formatMiscRecipe(buffer, layout);
 
-            case "tfc:heating":
-                formatMiscRecipeFromData(buffer, identifier, data, "result_item");
-                TemperatureResult tempResult = getTemperature(((Number) data.get("temperature")).intValue());
+        switch (recipe) {
+            case HeatingRecipe heating -> {
+                TemperatureResult tempResult = getTemperature(heating.getTemperature());
                 buffer.add(String.format("""
                     <div style="text-align: center;" class="minecraft-text minecraft-%s">
                         <p>%s</p>
                     </div>
                     """, tempResult.cssClass, tempResult.tooltip));
-                break;
-
-            case "tfc:loom":
-                handleLoomRecipe(buffer, identifier, data);
-                break;
-
-            case "tfc:anvil":
-                handleAnvilRecipe(buffer, identifier, data);
-                break;
-
-            case "tfc:glassworking":
-                formatGlassworkingRecipe(entry, buffer, identifier, data);
-                break;
-
-            default:
-                throw new RuntimeException("Cannot handle as a misc recipe: " + recipeType);
-        }
-    }
-
-    /**
-     * 处理织布机配方
-     */
-    private void handleLoomRecipe(List<String> buffer, String identifier, Map<String, Object> data) {
-        int count = 1;
-        Object ingredient = null;
-
-        if (data.containsKey("ingredient")) {
-            Object ing = data.get("ingredient");
-            if (ing instanceof Map) {
-                Map<String, Object> ingMap = (Map<String, Object>) ing;
-                if (data.containsKey("input_count")) {
-                    // 1.18 格式
-                    count = ((Number) data.get("input_count")).intValue();
-                    ingredient = ing;
-                } else if (ingMap.containsKey("ingredient") && ingMap.containsKey("count")) {
-                    // 嵌套格式
-                    ingredient = ingMap.get("ingredient");
-                    count = ((Number) ingMap.get("count")).intValue();
-                } else if (ingMap.containsKey("count")) {
-                    // 1.20 格式
-                    count = ((Number) ingMap.get("count")).intValue();
-                    ingredient = ing;
-                }
             }
-        }
-
-        if (ingredient != null) {
-            formatMiscRecipeFromData(buffer, identifier, data, ingredient, count);
-        } else {
-            throw new RuntimeException("Unrecognized loom recipe format: " + data);
-        }
-    }
-
-    /**
-     * 处理铁砧配方
-     */
-    private void handleAnvilRecipe(List<String> buffer, String identifier, Map<String, Object> data) {
-        Object ingredient = null;
-
-        if (data.containsKey("input")) {
-            ingredient = data.get("input");
-        } else if (data.containsKey("ingredient")) {
-            ingredient = data.get("ingredient");
-        }
-
-        if (ingredient != null) {
-            formatMiscRecipeFromData(buffer, identifier, data, ingredient, 1);
-            String tooltip = getTier(((Number) data.get("tier")).intValue());
-            buffer.add(String.format("""
-                <div style="text-align: center;" class="minecraft-text minecraft-gray">
-                    <p>%s</p>
-                </div>
-                """, tooltip));
-        } else {
-            throw new RuntimeException("Unrecognized anvil recipe format: " + data);
+            case AnvilRecipe anvil -> {
+                String tooltip = getTier(anvil.getTier());
+                buffer.add(String.format("""
+                    <div style="text-align: center;" class="minecraft-text minecraft-gray">
+                        <p>%s</p>
+                    </div>
+                    """, tooltip));
+            }
+            case GlassworkingRecipe glassworking -> formatGlassworkingSteps(entry, buffer, glassworking, layout);
+            default -> {
+            }
         }
     }
 
     /**
-     * 处理玻璃加工配方
+     * 处理玻璃加工配方的步骤
      */
-    private void formatGlassworkingRecipe(BookEntry entry, List<String> buffer, String identifier, Map<String, Object> data) {
-        formatMiscRecipeFromData(buffer, identifier, data, data.get("batch"), 1);
+    private void formatGlassworkingSteps(BookEntry entry, List<String> buffer, GlassworkingRecipe recipe, MiscRecipe layout) {
         buffer.add("<h4>Steps</h4><ol>");
 
-        List<String> operations = (List<String>) data.get("operations");
-        for (String key : operations) {
-            String opName = localizationManager.translate("tfc.enum.glassoperation." + key);
-
-            if (!GLASS_ITEMS.containsKey(key)) {
-                throw new RuntimeException("Missing item for glass op: " + key);
-            }
-
-            String opItem = GLASS_ITEMS.get(key);
+        List<String> operations = recipe.getOperations();
+        for (int i = 0; i < operations.size(); i++) {
+            String opName = localizationManager.translate("tfc.enum.glassoperation." + operations.get(i));
             try {
-                ItemImageResult itemResult = textureRenderer.getItemImage(opItem, false);
+                ItemImageResult itemResult = itemImage(layout.tools().get(i));
                 buffer.add("<li>");
-                formatTitleWithIcon(entry, buffer, itemResult.getPath(), opName, (String)data.get( "title"), "p", itemResult.getName());
+                formatTitleWithIcon(entry, buffer, itemResult.getPath(), opName, null, "p", itemResult.getName());
                 buffer.add("</li>");
             } catch (Exception e) {
                 System.err.println("Warning: " + e.getMessage());
@@ -944,31 +709,11 @@ public class PageRenderer {
     }
 
     /**
-     * 从数据格式化杂项配方
+     * 格式化单输入单输出的配方
      */
-    public void formatMiscRecipeFromData(List<String> buffer, String identifier, Map<String, Object> data) {
-        formatMiscRecipeFromData(buffer, identifier, data, null, "result", 1);
-    }
-
-    public void formatMiscRecipeFromData(List<String> buffer, String identifier, Map<String, Object> data, String resultField) {
-        formatMiscRecipeFromData(buffer, identifier, data, null, resultField, 1);
-    }
-
-    public void formatMiscRecipeFromData(List<String> buffer, String identifier, Map<String, Object> data, Object ingredient, int inCount) {
-        formatMiscRecipeFromData(buffer, identifier, data, ingredient, "result", inCount);
-    }
-
-    public void formatMiscRecipeFromData(List<String> buffer, String identifier, Map<String, Object> data, Object ingredient, String resultField, int inCount) {
-        if (!data.containsKey(resultField)) {
-            throw new RuntimeException("Missing '" + resultField + "' field for recipe: " + identifier);
-        }
-
-        if (ingredient == null) {
-            ingredient = data.get("ingredient");
-        }
-
-        ItemImageResult inResult = formatIngredient(ingredient);
-        ItemStackResult outResult = formatItemStack(data.get(resultField));
+    private void formatMiscRecipe(List<String> buffer, MiscRecipe recipe) {
+        ItemImageResult inResult = itemImage(recipe.input());
+        ItemStackResult outResult = itemStack(recipe.output());
 
         buffer.add(String.format("""
             <div class="d-flex align-items-center justify-content-center">
@@ -977,22 +722,22 @@ public class PageRenderer {
                     <div class="crafting-recipe-item misc-recipe-pos-in">
                         <span href="#" data-bs-toggle="tooltip" title="%s" class="crafting-recipe-item-tooltip"></span>
                         %s
-                        <img class="recipe-item" src="../../%s" />
+                        %s
                     </div>
                     <div class="crafting-recipe-item misc-recipe-pos-out">
                         <span href="#" data-bs-toggle="tooltip" title="%s" class="crafting-recipe-item-tooltip"></span>
                         %s
-                        <img class="recipe-item" src="../../%s" />
+                        %s
                     </div>
                 </div>
             </div>
             """,
                 inResult.getName(),
-                formatCount(inCount),
-                inResult.getPath(),
+                formatCount(recipe.input().count()),
+                itemIcon(inResult.getPath(), "recipe-item", null),
                 outResult.getName(),
                 formatCount(outResult.getCount()),
-                outResult.getPath()
+                itemIcon(outResult.getPath(), "recipe-item", null)
         ));
     }
 
@@ -1058,38 +803,17 @@ public class PageRenderer {
 
     /// barrel recipe
     private void parseBarrelRecipe(List<String> buffer, PageBarrel page, String pageType) {
-        try {
-            formatBarrelRecipe(buffer, page.getRecipe());
-        } catch (Exception e) {
-            log.error("Barrel recipe processing failed: {}", pageType, e);
-            formatRecipe(buffer, page.getRecipe());
-        }
-    }
-
-    private void formatBarrelRecipe(List<String> buffer, String identifier) {
-
-        Map<String, Object> data = assetLoader.loadRecipe(identifier);
-        String recipeType = (String) data.get("type");
-
-        if ("tfc:barrel_sealed".equals(recipeType)) {
-            formatBarrelRecipeFromData(buffer, data);
-        } else if ("tfc:barrel_instant".equals(recipeType)) {
-            formatBarrelRecipeFromData(buffer, data);
-        } else {
-            throw new InternalException("Cannot handle barrel recipe type: " + recipeType);
+        for (String recipeId : RecipeLayouts.recipes(page)) {
+            try {
+                formatRecipeLayout(null, buffer, page, recipeId);
+            } catch (Exception e) {
+                log.error("Barrel recipe processing failed: {}", pageType, e);
+                formatRecipe(buffer, recipeId);
+            }
         }
-
     }
 
-    private void formatBarrelRecipeFromData(List<String> buffer, Map<String, Object> data) {
-        String inPath;
-        String inName;
-        String outPath;
-        String outName;
-        String fOutName;
-        String fOutPath;
-        String fInName;
-        String fInPath;
+    private void formatBarrelRecipe(List<String> buffer, Recipe recipe, BarrelRecipe layout) {
         String inputFluidDiv = "";
         String inputItemDiv = "";
         String outputFluidDiv = "";
@@ -1097,49 +821,37 @@ public class PageRenderer {
         String duration = "";
 
         // 处理输入物品
-        if (data.containsKey("input_item")) {
-            Map<String, Object> inItem = (Map<String, Object>) data.get("input_item");
-            Object ingredient = inItem.containsKey("ingredient") ? inItem.get("ingredient") : inItem;
-            ItemImageResult ingredientResult = formatIngredient(ingredient);
-            inPath = ingredientResult.getPath();
-            inName = ingredientResult.getName();
-            int count = inItem.containsKey("count") ? ((Number) inItem.get("count")).intValue() : 1;
-            inputItemDiv = makeIcon(inName, inPath, 1, formatCount(count));
+        if (layout.inputItem() != null) {
+            ItemImageResult ingredientResult = itemImage(layout.inputItem());
+            inputItemDiv = makeIcon(ingredientResult.getName(), ingredientResult.getPath(), 1, formatCount(layout.inputItem().count()));
         }
 
         // 处理输出物品
-        if (data.containsKey("output_item")) {
-            ItemStackResult itemStack = formatItemStack(data.get("output_item"));
-            outPath = itemStack.path;
-            outName = itemStack.name;
-            int count = itemStack.count;
-            outputItemDiv = makeIcon(outName, outPath, 3, formatCount(count));
+        if (layout.outputItem() != null) {
+            ItemStackResult itemStack = itemStack(layout.outputItem());
+            outputItemDiv = makeIcon(itemStack.name, itemStack.path, 3, formatCount(itemStack.count));
         }
 
         // 处理输入流体
-        if (data.containsKey("input_fluid")) {
-            ItemImageResult fluidResult = textureRenderer.getFluidImage(data.get("input_fluid"), true);
-            fInPath = fluidResult.getPath();
-            fInName = fluidResult.getName();
-            inputFluidDiv = makeIcon(fInName, fInPath, 2, "");
+        if (layout.inputFluid() != null) {
+            ItemImageResult fluidResult = fluidImage(layout.inputFluid());
+            inputFluidDiv = makeIcon(fluidResult.getName(), fluidResult.getPath(), 2, "");
         }
 
         // 处理输出流体
-        if (data.containsKey("output_fluid")) {
-            ItemImageResult fluidResult = textureRenderer.getFluidImage(data.get("output_fluid"), true);
-            fOutPath = fluidResult.getPath();
-            fOutName = fluidResult.getName();
-            outputFluidDiv = makeIcon(fOutName, fOutPath, 4, "");
+        if (layout.outputFluid() != null) {
+            ItemImageResult fluidResult = fluidImage(layout.outputFluid());
+            outputFluidDiv = makeIcon(fluidResult.getName(), fluidResult.getPath(), 4, "");
         }
 
         // 处理持续时间
-        if (data.containsKey("duration")) {
-            int durationTicks = ((Number) data.get("duration")).intValue();
+        if (recipe instanceof io.github.tfgcn.fieldguide.data.recipe.tfc.BarrelRecipe barrel && barrel.getDuration() != null) {
+            int durationTicks = barrel.getDuration();
             duration = String.format("""
             <div style="text-align: center;" class="minecraft-text minecraft-gray">
                 <p>%s</p>
             </div>
-            """, String.format(localizationManager.translate(I18n.TICKS), durationTicks));
+            """, localizationManager.translateWithArgs(I18n.TICKS, durationTicks));
         }
 
         String toAppend = String.format("""
@@ -1158,14 +870,36 @@ public class PageRenderer {
         buffer.add(toAppend);
     }
 
-    public static String makeIcon(String name, String path, int index, String extraBit) {
+    private ItemImageResult fluidImage(FluidSlot slot) {
+        return textureRenderer.getFluidImage(slot.fluid(), slot.amount(), true, true);
+    }
+
+    public String makeIcon(String name, String path, int index, String extraBit) {
         return String.format("""
         <div class="crafting-recipe-item two-recipe-pos-%d">
             <span href="#" data-bs-toggle="tooltip" title="%s" class="crafting-recipe-item-tooltip"></span>
-            <img class="recipe-item" src="../../%s" />
+            %s
             %s
         </div>
-        """, index, name, path, extraBit == null ? "" : extraBit);
+        """, index, name, itemIcon(path, "recipe-item", null), extraBit == null ? "" : extraBit);
+    }
+
+    /**
+     * An item or fluid image, from the sprite sheets if they are written, see {@link SpriteAtlas}.
+     *
+     * @param cssClass the class of the image, or null
+     * @param alt the alt text, or null
+     */
+    private String itemIcon(String path, String cssClass, String alt) {
+        String sprite = textureRenderer.sprite(path);
+        if (sprite != null) {
+            return String.format("<i class=\"sprite %s%s\" role=\"img\"%s></i>", sprite,
+                    cssClass == null ? "" : " " + cssClass,
+                    alt == null ? "" : " aria-label=\"" + alt + "\"");
+        }
+        return String.format("<img%s src=\"../../%s\"%s />",
+                cssClass == null ? "" : " class=\"" + cssClass + "\"", path,
+                alt == null ? "" : " alt=\"" + alt + "\"");
     }
 
     /// knapping recipe
@@ -1204,7 +938,6 @@ public class PageRenderer {
     );
 
     public static final String KNAPPING_RECIPE_OUTLINE = "tfc:textures/gui/book/icons.png";
-    private static final Map<String, KnappingRecipe> KNAPPING_RECIPE_CACHE = new HashMap<>();
 
     /**
      * 格式化敲击配方
@@ -1212,24 +945,30 @@ public class PageRenderer {
      * @return 包含配方ID和图片路径的数组
      */
     private KnappingRecipe formatKnappingRecipe(String recipeId) {
-        if (KNAPPING_RECIPE_CACHE.containsKey(recipeId)) {
-            return KNAPPING_RECIPE_CACHE.get(recipeId);
-        }
+        return knappingRecipeCache.get(recipeId, this::renderKnappingRecipe);
+    }
 
-        Map<String, Object> recipeData = assetLoader.loadRecipe(recipeId);
+    void invalidateKnappingRecipes(Set<String> dependencies) {
+        knappingRecipeCache.invalidate(dependencies);
+    }
+
+    private KnappingRecipe renderKnappingRecipe(String recipeId) {
+        if (!(assetLoader.getRecipe(recipeId) instanceof io.github.tfgcn.fieldguide.data.recipe.tfc.KnappingRecipe recipeData)) {
+            throw new InternalException("Not a knapping recipe: " + recipeId);
+        }
         BufferedImage img = new BufferedImage(90, 90, BufferedImage.TYPE_INT_ARGB);
 
         // 1.18版本使用'type'字段表示敲击类型
         // 1.20版本'type'字段仅为'tfc:knapping'，使用'knapping_type'字段表示具体类型
         KnappingType typeData;
-        if (recipeData.containsKey("knapping_type")) {
-            String knappingType = (String) recipeData.get("knapping_type");
+        if (recipeData.getKnappingType() != null) {
+            String knappingType = recipeData.getKnappingType();
             typeData = KNAPPING_TYPES.stream()
                     .filter(t -> knappingType.equals(t.type_1_20()))
                     .findFirst()
                     .orElseThrow(() -> new RuntimeException("Unknown knapping type: " + knappingType));
         } else {
-            String type = (String) recipeData.get("type");
+            String type = recipeData.getType();
             typeData = KNAPPING_TYPES.stream()
                     .filter(t -> type.equals(t.type_1_18()))
                     .findFirst()
@@ -1253,9 +992,8 @@ public class PageRenderer {
         }
 
         // 图案
-        List<String> pattern = (List<String>) recipeData.get("pattern");
-        boolean outsideSlot = recipeData.containsKey("outside_slot_required") ?
-                (Boolean) recipeData.get("outside_slot_required") : true;
+        List<String> pattern = recipeData.getPattern();
+        boolean outsideSlot = recipeData.getOutsideSlotRequired() == null || recipeData.getOutsideSlotRequired();
 
         // 如果图案在任何方向上小于5格宽，我们偏移它以使其居中显示，向下取整
         int offsetY = (5 - pattern.size()) / 2;
@@ -1284,9 +1022,7 @@ public class PageRenderer {
 
         AssetKey assetKey = new AssetKey(recipeId, "textures/recipes", "assets", ".png");
         String path = textureRenderer.saveImage(assetKey.getResourcePath(), img);
-        KnappingRecipe result = new KnappingRecipe(recipeId, path);
-        KNAPPING_RECIPE_CACHE.put(recipeId, result);
-        return result;
+        return new KnappingRecipe(recipeId, path);
     }
 
     /// page_table
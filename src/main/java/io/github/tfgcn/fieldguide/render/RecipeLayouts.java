@@ -0,0 +1,242 @@
+package io.github.tfgcn.fieldguide.render;
+
+import io.github.tfgcn.fieldguide.data.patchouli.BookPage;
+import io.github.tfgcn.fieldguide.data.patchouli.page.IPageDoubleRecipe;
+import io.github.tfgcn.fieldguide.data.patchouli.page.PageCrafting;
+import io.github.tfgcn.fieldguide.data.patchouli.page.PageSmelting;
+import io.github.tfgcn.fieldguide.data.recipe.Ingredient;
+import io.github.tfgcn.fieldguide.data.recipe.Recipe;
+import io.github.tfgcn.fieldguide.data.recipe.RecipeResult;
+import io.github.tfgcn.fieldguide.data.recipe.ShapedCraftingRecipe;
+import io.github.tfgcn.fieldguide.data.recipe.ShapelessCraftingRecipe;
+import io.github.tfgcn.fieldguide.data.recipe.misc.WaterflasksHealRecipe;
+import io.github.tfgcn.fieldguide.data.recipe.tfc.*;
+import io.github.tfgcn.fieldguide.data.tfc.page.*;
+import io.github.tfgcn.fieldguide.exception.InternalException;
+import io.github.tfgcn.fieldguide.render.components.BarrelRecipe;
+import io.github.tfgcn.fieldguide.render.components.CraftingRecipe;
+import io.github.tfgcn.fieldguide.render.components.FluidSlot;
+import io.github.tfgcn.fieldguide.render.components.ItemSlot;
+import io.github.tfgcn.fieldguide.render.components.MiscRecipe;
+import io.github.tfgcn.fieldguide.render.components.RecipeLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the item and fluid slots of a recipe page from the typed recipe.
+ * <p>
+ * {@link PageRenderer} draws these slots and {@link ItemImageBatch} renders their images up front, so which
+ * recipes a page shows and which images a recipe shows are decided here only.
+ * A recipe that does not fit the page throws, and the page shows the recipe id instead.
+ *
+ * @author yanmaoyuan
+ */
+final class RecipeLayouts {
+
+    // 玻璃加工物品映射
+    private static final Map<String, String> GLASS_ITEMS = Map.ofEntries(
+            Map.entry("saw", "tfc:gem_saw"),
+            Map.entry("roll", "tfc:wool_cloth"),
+            Map.entry("stretch", "tfc:blowpipe_with_glass"),
+            Map.entry("blow", "tfc:blowpipe_with_glass"),
+            Map.entry("table_pour", "tfc:blowpipe_with_glass"),
+            Map.entry("basin_pour", "tfc:blowpipe_with_glass"),
+            Map.entry("flatten", "tfc:paddle"),
+            Map.entry("pinch", "tfc:jacks")
+    );
+
+    private RecipeLayouts() {}
+
+    /**
+     * @return the recipes a page draws, both recipes of a crafting page, none for pages without recipe slots
+     */
+    static List<String> recipes(BookPage page) {
+        List<String> recipes = new ArrayList<>();
+        if (page instanceof PageCrafting || page instanceof PageBarrel || isMisc(page)) {
+            IPageDoubleRecipe recipePage = (IPageDoubleRecipe) page;
+            if (recipePage.getRecipe() != null) {
+                recipes.add(recipePage.getRecipe());
+            }
+            if (page instanceof PageCrafting && recipePage.getRecipe2() != null) {
+                recipes.add(recipePage.getRecipe2());
+            }
+        }
+        return recipes;
+    }
+
+    /**
+     * @return the slots a page draws one of its {@link #recipes(BookPage)} with
+     */
+    static RecipeLayout layout(BookPage page, Recipe recipe) {
+        if (page instanceof PageCrafting) {
+            return crafting(recipe);
+        } else if (page instanceof PageBarrel) {
+            return barrel(recipe);
+        } else if (isMisc(page)) {
+            return misc(recipe);
+        }
+        throw new InternalException("Page without recipe slots: " + page.getType());
+    }
+
+    private static boolean isMisc(BookPage page) {
+        return page instanceof PageHeating || page instanceof PageQuern || page instanceof PageLoom
+                || page instanceof PageAnvil || page instanceof PageGlassworking || page instanceof PageSmelting
+                || page instanceof PageDrying;
+    }
+
+    /**
+     * patchouli:crafting, the wrapping recipes of tfc and waterflasks show the recipe they wrap
+     */
+    static CraftingRecipe crafting(Recipe recipe) {
+        CraftingRecipe layout = switch (recipe) {
+            case ShapedCraftingRecipe shaped -> shaped(shaped);
+            case ShapelessCraftingRecipe shapeless -> shapeless(shapeless);
+            case WaterflasksHealRecipe heal -> crafting(heal.getRecipe());
+            case DamageInputsShapedCraftingRecipe damageInputs -> crafting(damageInputs.getRecipe());
+            case DamageInputsShapelessCraftingRecipe damageInputs -> crafting(damageInputs.getRecipe());
+            case ExtraProductsShapelessCraftingRecipe extraProducts -> crafting(extraProducts.getRecipe());
+            case NoRemainderShapelessCraftingRecipe noRemainder -> crafting(noRemainder.getRecipe());
+            case null -> throw new InternalException("Missing wrapped crafting recipe");
+            default -> throw new InternalException("Unknown crafting recipe type: " + recipe.getType() + " for recipe " + recipe.getId());
+        };
+        if ((recipe instanceof AdvancedShapedCraftingRecipe || recipe instanceof AdvancedShapelessCraftingRecipe)
+                && layout.output.item() == null) {
+            throw new InternalException("Advanced crafting with complex modifiers: " + recipe.getId());
+        }
+        return layout;
+    }
+
+    private static CraftingRecipe shaped(ShapedCraftingRecipe recipe) {
+        CraftingRecipe layout = new CraftingRecipe();
+        List<String> pattern = recipe.getPattern();
+        Map<String, Ingredient> keys = recipe.getKey();
+
+        for (int y = 0; y < pattern.size(); y++) {
+            String row = pattern.get(y);
+            for (int x = 0; x < row.length(); x++) {
+                char keyChar = row.charAt(x);
+                if (keyChar != ' ') {
+                    Ingredient ingredient = keys.get(String.valueOf(keyChar));
+                    if (ingredient != null) {
+                        layout.grid[x + 3 * y] = ingredient(ingredient, 1);
+                    }
+                }
+            }
+        }
+
+        layout.output = result(recipe.getResult());
+        layout.shapeless = false;
+        return layout;
+    }
+
+    private static CraftingRecipe shapeless(ShapelessCraftingRecipe recipe) {
+        CraftingRecipe layout = new CraftingRecipe();
+        List<Ingredient> ingredients = recipe.getIngredients();
+
+        for (int i = 0; i < ingredients.size(); i++) {
+            layout.grid[i] = ingredient(ingredients.get(i), 1);
+        }
+
+        layout.output = result(recipe.getResult());
+        layout.shapeless = true;
+        return layout;
+    }
+
+    /**
+     * tfc:quern, tfc:heating, tfc:loom, tfc:anvil and tfc:glassworking
+     */
+    static MiscRecipe misc(Recipe recipe) {
+        return switch (recipe) {
+            case QuernRecipe quern -> new MiscRecipe(
+                    ingredient(required(quern.getIngredient(), "ingredient", recipe), 1),
+                    result(required(quern.getResult(), "result", recipe)),
+                    List.of());
+            case HeatingRecipe heating -> new MiscRecipe(
+                    ingredient(required(heating.getIngredient(), "ingredient", recipe), 1),
+                    result(required(heating.getResultItem(), "result_item", recipe)),
+                    List.of());
+            case LoomRecipe loom -> loom(loom);
+            case AnvilRecipe anvil -> new MiscRecipe(
+                    ingredient(required(anvil.getInput(), "input", recipe), 1),
+                    result(required(anvil.getResult(), "result", recipe)),
+                    List.of());
+            case GlassworkingRecipe glassworking -> new MiscRecipe(
+                    ingredient(required(glassworking.getBatch(), "batch", recipe), 1),
+                    result(required(glassworking.getResult(), "result", recipe)),
+                    tools(glassworking));
+            default -> throw new InternalException("Cannot handle as a misc recipe: " + recipe.getType());
+        };
+    }
+
+    private static MiscRecipe loom(LoomRecipe recipe) {
+        LoomRecipe.LoomIngredient ingredient = recipe.getIngredient();
+        if (ingredient == null || ingredient.getIngredient() == null) {
+            throw new InternalException("Unrecognized loom recipe format: " + recipe.getId());
+        }
+        int count = ingredient.getCount() == null ? 1 : ingredient.getCount();
+        return new MiscRecipe(ingredient(ingredient.getIngredient(), count),
+                result(required(recipe.getResult(), "result", recipe)), List.of());
+    }
+
+    private static List<ItemSlot> tools(GlassworkingRecipe recipe) {
+        List<ItemSlot> tools = new ArrayList<>();
+        for (String operation : required(recipe.getOperations(), "operations", recipe)) {
+            String item = GLASS_ITEMS.get(operation);
+            if (item == null) {
+                throw new InternalException("Missing item for glass op: " + operation);
+            }
+            tools.add(new ItemSlot(item, 1, false));
+        }
+        return tools;
+    }
+
+    /**
+     * tfc:barrel_sealed and tfc:barrel_instant
+     */
+    static BarrelRecipe barrel(Recipe recipe) {
+        if (!(recipe instanceof io.github.tfgcn.fieldguide.data.recipe.tfc.BarrelRecipe barrel)) {
+            throw new InternalException("Cannot handle barrel recipe type: " + recipe.getType());
+        }
+
+        ItemSlot inputItem = null;
+        if (barrel.getInputItem() != null) {
+            Integer count = barrel.getInputItem().getCount();
+            inputItem = ingredient(required(barrel.getInputItem().getIngredient(), "input_item", recipe), count == null ? 1 : count);
+        }
+        ItemSlot outputItem = barrel.getOutputItem() == null ? null : result(barrel.getOutputItem());
+
+        FluidSlot inputFluid = null;
+        if (barrel.getInputFluid() != null) {
+            inputFluid = fluid(required(barrel.getInputFluid().getIngredient(), "input_fluid", recipe), barrel.getInputFluid().getAmount());
+        }
+        FluidSlot outputFluid = null;
+        if (barrel.getOutputFluid() != null) {
+            outputFluid = fluid(required(barrel.getOutputFluid().getFluid(), "output_fluid", recipe), barrel.getOutputFluid().getAmount());
+        }
+        return new BarrelRecipe(inputItem, inputFluid, outputItem, outputFluid);
+    }
+
+    private static ItemSlot ingredient(Ingredient ingredient, int count) {
+        return new ItemSlot(ingredient.getItemId(), count, true);
+    }
+
+    /**
+     * 修饰符被丢弃，没有物品时显示占位符
+     */
+    private static ItemSlot result(RecipeResult result) {
+        return result == null ? new ItemSlot(null, 1, true) : new ItemSlot(result.getItemId(), result.getCount(), true);
+    }
+
+    private static FluidSlot fluid(String fluid, Integer amount) {
+        return new FluidSlot(fluid, amount == null ? 1000 : amount);
+    }
+
+    private static <T> T required(T value, String field, Recipe recipe) {
+        if (value == null) {
+            throw new InternalException("Missing '" + field + "' field for recipe: " + recipe.getId());
+        }
+        return value;
+    }
+}
@@ -0,0 +1,421 @@
+package io.github.tfgcn.fieldguide.render;
+
+import com.google.gson.JsonParseException;
+import io.github.tfgcn.fieldguide.asset.AssetLoader;
+import io.github.tfgcn.fieldguide.asset.DependencyTracker;
+import io.github.tfgcn.fieldguide.gson.JsonUtils;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import static io.github.tfgcn.fieldguide.localization.LazyLocalizationManager.LANG_DEPENDENCY;
+import static io.github.tfgcn.fieldguide.localization.LazyLocalizationManager.NAMESPACE_DEPENDENCY;
+
+/**
+ * The encoded images and models of earlier builds, kept in .cache/renders and reused while their inputs are unchanged.
+ * <p>
+ * An artifact is an item, fluid or book image or a multiblock, with the PNG, GIF and GLB files written while
+ * rendering it. It is recorded with a hash of its inputs: the renderer version and the signature of every model,
+ * block state, texture and tag read, see {@link DependencyTracker}. Tint colors and output sizes are part of the
+ * renderer. The files are stored once by the hash of their bytes, so artifacts of different versions share them.
+ * <p>
+ * When the hash of an artifact still matches, its files are hard-linked, or copied, into the output instead of
+ * rendered. Artifacts not used for {@code maxAge}, and the least recently used ones beyond {@code maxBytes}, are
+ * pruned when the cache is saved.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class RenderCache {
+
+    /**
+     * bump when the images rendered from the same inputs change
+     */
+    private static final int VERSION = 1;
+
+    private static final String INDEX = "index.json";
+    private static final String BLOBS = "blobs";
+
+    @Data
+    private static class Record {
+        private String inputs;
+        private Map<String, Long> dependencies;
+        /**
+         * output path -> blob
+         */
+        private Map<String, String> outputs;
+        private String result;
+        private long lastUsed;
+    }
+
+    @Data
+    private static class Index {
+        private String generator;
+        private Map<String, Record> artifacts;
+    }
+
+    /**
+     * the outputs written while rendering an artifact, nested like the artifacts
+     */
+    private static final class Recording {
+        private final Set<String> outputs = new LinkedHashSet<>();
+        private final Recording parent;
+
+        private Recording(Recording parent) {
+            this.parent = parent;
+        }
+    }
+
+    private final Path dir;
+    private final AssetLoader assetLoader;
+    private final long maxBytes;
+    private final Duration maxAge;
+    private final Map<String, Record> previous;
+    private final Map<String, Record> current = new ConcurrentHashMap<>();
+    /**
+     * rendered in this build, stored once their files are written
+     */
+    private final Map<String, Record> rendered = new ConcurrentHashMap<>();
+    private final ThreadLocal<Recording> recording = new ThreadLocal<>();
+
+    /**
+     * kind -> hits and misses since the last save, the metrics count every build of the process
+     */
+    private final Map<String, LongAdder> hits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> misses = new ConcurrentHashMap<>();
+
+    private RenderCache(Path dir, AssetLoader assetLoader, long maxBytes, Duration maxAge, Map<String, Record> previous) {
+        this.dir = dir;
+        this.assetLoader = assetLoader;
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+        this.previous = previous;
+    }
+
+    /**
+     * @param maxBytes the bytes the stored files may take, the least recently used are pruned beyond
+     * @param maxAge   how long an artifact is kept without being used
+     */
+    public static RenderCache load(Path dir, AssetLoader assetLoader, long maxBytes, Duration maxAge) {
+        Map<String, Record> previous = Map.of();
+        Path file = dir.resolve(INDEX);
+        if (Files.exists(file)) {
+            try {
+                Index index = JsonUtils.fromJson(Files.readString(file, StandardCharsets.UTF_8), Index.class);
+                if (index != null && generator().equals(index.getGenerator()) && index.getArtifacts() != null) {
+                    previous = index.getArtifacts();
+                } else {
+                    log.info("Render cache is outdated: {}", dir);
+                }
+            } catch (IOException | JsonParseException e) {
+                log.warn("Failed to read render cache: {}, message: {}", file, e.getMessage());
+            }
+        }
+        log.info("Render cache: {} artifacts in {}", previous.size(), dir);
+        return new RenderCache(dir, assetLoader, maxBytes, maxAge, previous);
+    }
+
+    private static String generator() {
+        return VERSION + EntryManifest.codeVersion();
+    }
+
+    /**
+     * Restore an artifact of an earlier build if its inputs are unchanged, otherwise render it and record it.
+     *
+     * @param key     the artifact, its kind before the first colon, e.g. item:minecraft:stone
+     * @param type    the type of the value, stored as json
+     * @param render  renders the artifact and writes its files, see {@link #output}
+     * @param restore turns a restored value into the value of this build, e.g. puts it into the caches of the renderer
+     */
+    public <T> T get(String key, Type type, Supplier<T> render, UnaryOperator<T> restore) {
+        if (!DependencyTracker.isEnabled()) {
+            // the inputs are unknown
+            return render.get();
+        }
+        String kind = key.substring(0, Math.max(0, key.indexOf(':')));
+
+        Record record = current.getOrDefault(key, previous.get(key));
+        if (record != null && record.getInputs().equals(inputs(key, record.getDependencies(), true)) && restoreOutputs(record)) {
+            T value = JsonUtils.fromJson(record.getResult(), type);
+            DependencyTracker.recordAll(record.getDependencies());
+            record.setLastUsed(System.currentTimeMillis());
+            current.put(key, record);
+            count(kind, "hit");
+            return restore.apply(value);
+        }
+        count(kind, "miss");
+
+        Map<String, Long> dependencies = new HashMap<>();
+        Recording mine = new Recording(recording.get());
+        recording.set(mine);
+        T value;
+        try {
+            value = DependencyTracker.track(dependencies, render);
+        } finally {
+            if (mine.parent == null) {
+                recording.remove();
+            } else {
+                recording.set(mine.parent);
+                mine.parent.outputs.addAll(mine.outputs);
+            }
+        }
+
+        Map<String, Long> inputs = new TreeMap<>();
+        dependencies.forEach((dependency, signature) -> {
+            // translations only name the artifact
+            if (!dependency.startsWith(LANG_DEPENDENCY) && !dependency.startsWith(NAMESPACE_DEPENDENCY)) {
+                inputs.put(dependency, signature);
+            }
+        });
+        // an artifact served from the caches of the renderer wrote nothing to restore
+        if (value != null && !mine.outputs.isEmpty() && !inputs.containsValue(Long.MIN_VALUE)) {
+            Record rendered = new Record();
+            rendered.setInputs(inputs(key, inputs, false));
+            rendered.setDependencies(inputs);
+            Map<String, String> outputs = new TreeMap<>();
+            mine.outputs.forEach(path -> outputs.put(path, null));
+            rendered.setOutputs(outputs);
+            rendered.setResult(JsonUtils.toJson(value));
+            rendered.setLastUsed(System.currentTimeMillis());
+            this.rendered.put(key, rendered);
+        }
+        return value;
+    }
+
+    /**
+     * Record a file written for the artifact being rendered on this thread.
+     *
+     * @param path relative to the output directory
+     */
+    public void output(String path) {
+        Recording mine = recording.get();
+        if (mine != null) {
+            mine.outputs.add(path);
+        }
+    }
+
+    /**
+     * @param current the signatures of this build instead of the recorded ones
+     * @return a hash of the renderer and the inputs of an artifact
+     */
+    private String inputs(String key, Map<String, Long> dependencies, boolean current) {
+        MessageDigest digest = sha256();
+        digest.update(generator().getBytes(StandardCharsets.UTF_8));
+        digest.update(key.getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, Long> entry : new TreeMap<>(dependencies).entrySet()) {
+            long signature = current ? assetLoader.getDependencySignature(entry.getKey()) : entry.getValue();
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update(Long.toString(signature).getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return false if a stored file is missing
+     */
+    private boolean restoreOutputs(Record record) {
+        try {
+            for (Map.Entry<String, String> output : record.getOutputs().entrySet()) {
+                Path blob = blob(output.getValue());
+                Path target = assetLoader.getOutputDir().resolve(output.getKey());
+                if (!Files.exists(blob)) {
+                    return false;
+                }
+                if (Files.exists(target) && Files.isSameFile(blob, target)) {
+                    continue;
+                }
+                Files.createDirectories(target.getParent());
+                Files.deleteIfExists(target);
+                try {
+                    Files.createLink(target, blob);
+                } catch (IOException | UnsupportedOperationException e) {
+                    // another file system
+                    Files.copy(blob, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to restore: {}, message: {}", record.getOutputs().keySet(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void count(String kind, String result) {
+        ("hit".equals(result) ? hits : misses).computeIfAbsent(kind, k -> new LongAdder()).increment();
+        Metrics.counter("render_cache_requests_total", "kind", kind, "result", result).increment();
+    }
+
+    /**
+     * Store the files of the artifacts rendered in this build and prune the cache. The files must be written,
+     * see {@link OutputWriter#flush()}.
+     */
+    public void save() {
+        int stored = 0;
+        for (Map.Entry<String, Record> entry : rendered.entrySet()) {
+            Record record = entry.getValue();
+            try {
+                for (Map.Entry<String, String> output : record.getOutputs().entrySet()) {
+                    output.setValue(store(assetLoader.getOutputDir().resolve(output.getKey())));
+                }
+                current.put(entry.getKey(), record);
+                stored++;
+            } catch (IOException e) {
+                log.debug("Not cached: {}, message: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        rendered.clear();
+
+        // the artifacts of other languages and earlier builds are kept until they are too old
+        Map<String, Record> artifacts = new HashMap<>();
+        long oldest = System.currentTimeMillis() - maxAge.toMillis();
+        previous.forEach((key, record) -> {
+            if (record.getLastUsed() >= oldest) {
+                artifacts.put(key, record);
+            }
+        });
+        artifacts.putAll(current);
+        int pruned = prune(artifacts);
+
+        Index index = new Index();
+        index.setGenerator(generator());
+        index.setArtifacts(new TreeMap<>(artifacts));
+        try {
+            Files.createDirectories(dir);
+            Path tempFile = Files.createTempFile(dir, INDEX, ".tmp");
+            Files.writeString(tempFile, JsonUtils.toJson(index), StandardCharsets.UTF_8);
+            Files.move(tempFile, dir.resolve(INDEX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to save render cache: {}, message: {}", dir, e.getMessage());
+        }
+
+        log.info("=== Render cache: {} artifacts, {} stored, {} pruned", artifacts.size(), stored, pruned);
+        Set<String> kinds = new TreeSet<>(hits.keySet());
+        kinds.addAll(misses.keySet());
+        for (String kind : kinds) {
+            long hit = sumThenReset(hits, kind);
+            long miss = sumThenReset(misses, kind);
+            log.info("{}: {} hits, {} misses, {}% hit rate", String.format("%-20s", kind), hit, miss,
+                    hit * 100 / Math.max(1, hit + miss));
+        }
+    }
+
+    private static long sumThenReset(Map<String, LongAdder> counts, String kind) {
+        LongAdder count = counts.get(kind);
+        return count == null ? 0 : count.sumThenReset();
+    }
+
+    /**
+     * Copy a written file into the blobs, named by the hash of its bytes.
+     *
+     * @return the name of the blob
+     */
+    private String store(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String name = file.getFileName().toString();
+        String blob = HexFormat.of().formatHex(digest.digest()) + name.substring(Math.max(0, name.lastIndexOf('.')));
+        Path target = blob(blob);
+        if (!Files.exists(target)) {
+            Files.createDirectories(target.getParent());
+            Path tempFile = Files.createTempFile(target.getParent(), blob, ".tmp");
+            try {
+                Files.copy(file, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+        return blob;
+    }
+
+    private Path blob(String blob) {
+        return dir.resolve(BLOBS).resolve(blob.substring(0, 2)).resolve(blob);
+    }
+
+    /**
+     * Drop the least recently used artifacts while their files take more than maxBytes, then delete the files
+     * no artifact uses anymore.
+     *
+     * @return the number of artifacts dropped
+     */
+    private int prune(Map<String, Record> artifacts) {
+        Map<String, Long> sizes = new HashMap<>();
+        try (Stream<Path> files = Files.exists(dir.resolve(BLOBS)) ? Files.walk(dir.resolve(BLOBS)) : Stream.empty()) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) {
+                    sizes.put(file.getFileName().toString(), Files.size(file));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to list render cache: {}, message: {}", dir, e.getMessage());
+            return 0;
+        }
+
+        List<Map.Entry<String, Record>> byAge = new ArrayList<>(artifacts.entrySet());
+        byAge.sort(Comparator.comparingLong(entry -> entry.getValue().getLastUsed()));
+        Map<String, Integer> users = new HashMap<>();
+        long bytes = 0;
+        for (Record record : artifacts.values()) {
+            for (String blob : record.getOutputs().values()) {
+                if (users.merge(blob, 1, Integer::sum) == 1) {
+                    bytes += sizes.getOrDefault(blob, 0L);
+                }
+            }
+        }
+        int pruned = 0;
+        for (Map.Entry<String, Record> entry : byAge) {
+            if (bytes <= maxBytes) {
+                break;
+            }
+            artifacts.remove(entry.getKey());
+            current.remove(entry.getKey());
+            pruned++;
+            for (String blob : entry.getValue().getOutputs().values()) {
+                if (users.merge(blob, -1, Integer::sum) == 0) {
+                    users.remove(blob);
+                    bytes -= sizes.getOrDefault(blob, 0L);
+                }
+            }
+        }
+
+        for (String blob : sizes.keySet()) {
+            if (!users.containsKey(blob)) {
+                try {
+                    Files.deleteIfExists(blob(blob));
+                } catch (IOException e) {
+                    log.debug("Failed to delete: {}, message: {}", blob, e.getMessage());
+                }
+            }
+        }
+        return pruned;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+}
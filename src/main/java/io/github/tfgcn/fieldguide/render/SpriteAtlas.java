@@ -0,0 +1,283 @@
+package io.github.tfgcn.fieldguide.render;
+
+import io.github.tfgcn.fieldguide.gson.JsonUtils;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Packs the static item icons of the site into a few sprite sheets, so a page loads a handful of images
+ * instead of one per icon.
+ * <p>
+ * Pages ask for the css class of an icon while they are rendered, see {@link #sprite}, the class only depends
+ * on the path of the icon. Once every image is written, {@link #write} packs the icons into sheets of at most
+ * {@value #MAX_SIZE} pixels with a shelf packer, and writes the offsets as {@code sprites.css} and
+ * {@code sprites.json} next to the sheets. The generated icons only shown by sprites are then removed from the
+ * output. Textures of mods are kept, pages may show them as images too.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class SpriteAtlas {
+
+    public static final String DIR = "assets/generated";
+    public static final String CSS = "sprites.css";
+    public static final String JSON = "sprites.json";
+
+    private static final int MAX_SIZE = 2048;
+    /**
+     * transparent pixels between sprites, so scaled neighbors don't bleed in
+     */
+    private static final int PADDING = 2;
+
+    private static final Metrics.Counter ICONS_PACKED = Metrics.counter("sprite_atlas_files_total", "kind", "icon");
+    private static final Metrics.Counter SHEETS_WRITTEN = Metrics.counter("sprite_atlas_files_total", "kind", "sheet");
+    private static final Metrics.Counter ICON_BYTES = Metrics.counter("sprite_atlas_bytes_total", "kind", "icon");
+    private static final Metrics.Counter SHEET_BYTES = Metrics.counter("sprite_atlas_bytes_total", "kind", "sheet");
+
+    /**
+     * icon path -> css class
+     */
+    private final Map<String, String> sprites = new ConcurrentHashMap<>();
+    /**
+     * icons also referenced by their path, e.g. the preview image of an entry
+     */
+    private final Set<String> kept = ConcurrentHashMap.newKeySet();
+
+    @Data
+    public static class Sprite {
+        private String css;
+        private String sheet;
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+    }
+
+    private record Icon(String path, BufferedImage image, long bytes) {}
+
+    /**
+     * @param path the icon, relative to the output directory
+     * @return the css class showing the icon, or null if it is not packed, e.g. a gif or a static image
+     */
+    public String sprite(String path) {
+        if (path == null || !path.endsWith(".png") || !path.startsWith("assets/")) {
+            return null;
+        }
+        return sprites.computeIfAbsent(path, p -> TextureRenderer.contentId("sprite", p));
+    }
+
+    /**
+     * Keep the file of an icon, it is also referenced by its path.
+     */
+    public void keep(String path) {
+        if (path != null) {
+            kept.add(path);
+        }
+    }
+
+    /**
+     * Pack the icons asked for into sheets, write them with the css and json, and remove the packed files.
+     * The icons must be written, see {@link OutputWriter#flush()}.
+     */
+    public void write(Path outputDir, OutputWriter output) throws IOException {
+        long start = System.nanoTime();
+        List<Icon> icons = new ArrayList<>();
+        StringBuilder css = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(sprites).entrySet()) {
+            Path file = outputDir.resolve(entry.getKey());
+            BufferedImage image = null;
+            try {
+                image = Files.exists(file) ? ImageIO.read(file.toFile()) : null;
+            } catch (IOException e) {
+                log.warn("Failed to read icon: {}, message: {}", file, e.getMessage());
+            }
+            if (image == null || image.getWidth() + PADDING > MAX_SIZE || image.getHeight() + PADDING > MAX_SIZE) {
+                // shown from its own file
+                css.append(String.format(".%s{background-image:url(\"%s\");background-size:100%% 100%%}\n",
+                        entry.getValue(), relative(entry.getKey())));
+                kept.add(entry.getKey());
+                continue;
+            }
+            icons.add(new Icon(entry.getKey(), image, Files.size(file)));
+        }
+
+        // tallest first, the shelves are filled left to right
+        icons.sort(Comparator.comparingInt((Icon icon) -> icon.image().getHeight()).reversed()
+                .thenComparing(Icon::path));
+        List<int[]> boxes = new ArrayList<>();
+        for (Icon icon : icons) {
+            boxes.add(new int[]{icon.image().getWidth() + PADDING, icon.image().getHeight() + PADDING});
+        }
+        Packing packing = pack(boxes, MAX_SIZE);
+        List<int[]> sizes = packing.sheets();
+        List<List<Icon>> sheets = new ArrayList<>();
+        for (int i = 0; i < sizes.size(); i++) {
+            sheets.add(new ArrayList<>());
+        }
+        Map<String, Sprite> layout = new TreeMap<>();
+        for (int i = 0; i < icons.size(); i++) {
+            Icon icon = icons.get(i);
+            int[] position = packing.positions()[i];
+            Sprite sprite = new Sprite();
+            sprite.setCss(sprites.get(icon.path()));
+            sprite.setSheet("sprites_" + position[0] + ".png");
+            sprite.setX(position[1]);
+            sprite.setY(position[2]);
+            sprite.setWidth(icon.image().getWidth());
+            sprite.setHeight(icon.image().getHeight());
+            sheets.get(position[0]).add(icon);
+            layout.put(icon.path(), sprite);
+        }
+
+        deleteSheets(outputDir);
+        long sheetBytes = 0;
+        for (int i = 0; i < sheets.size(); i++) {
+            int sheetWidth = sizes.get(i)[0];
+            int sheetHeight = sizes.get(i)[1];
+            BufferedImage image = RasterKernels.newImage(sheetWidth, sheetHeight);
+            for (Icon icon : sheets.get(i)) {
+                // copied, not drawn, so translucent pixels keep their colors
+                Sprite sprite = layout.get(icon.path());
+                int[] pixels = RasterKernels.pixels(icon.image());
+                image.setRGB(sprite.getX(), sprite.getY(), sprite.getWidth(), sprite.getHeight(), pixels, 0, sprite.getWidth());
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", bytes);
+            sheetBytes += write(outputDir, output, "sprites_" + i + ".png", bytes.toByteArray());
+
+            for (Icon icon : sheets.get(i)) {
+                Sprite sprite = layout.get(icon.path());
+                css.append(String.format(Locale.ROOT,
+                        ".%s{background-image:url(\"%s\");background-size:%s%% %s%%;background-position:%s%% %s%%}\n",
+                        sprite.getCss(), sprite.getSheet(),
+                        percent(sheetWidth, sprite.getWidth()), percent(sheetHeight, sprite.getHeight()),
+                        position(sprite.getX(), sheetWidth, sprite.getWidth()),
+                        position(sprite.getY(), sheetHeight, sprite.getHeight())));
+            }
+        }
+        String rules = ".sprite{display:inline-block;background-repeat:no-repeat;image-rendering:pixelated}\n" + css;
+        sheetBytes += write(outputDir, output, CSS, rules.getBytes(StandardCharsets.UTF_8));
+        sheetBytes += write(outputDir, output, JSON, JsonUtils.toJson(layout).getBytes(StandardCharsets.UTF_8));
+        output.flush();
+
+        // the generated icons are only shown by sprites now
+        long iconBytes = 0;
+        int removed = 0;
+        for (Icon icon : icons) {
+            iconBytes += icon.bytes();
+            if (icon.path().startsWith(DIR + "/") && !kept.contains(icon.path())
+                    && Files.deleteIfExists(outputDir.resolve(icon.path()))) {
+                removed++;
+            }
+        }
+
+        ICONS_PACKED.add(icons.size());
+        SHEETS_WRITTEN.add(sheets.size() + 2L);
+        ICON_BYTES.add(iconBytes);
+        SHEET_BYTES.add(sheetBytes);
+        log.info("=== Sprite atlas: {} icons ({} KB) packed into {} sheets with css and json ({} KB), {} files removed, in {} ms",
+                icons.size(), iconBytes >> 10, sheets.size(), sheetBytes >> 10, removed,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @param positions the sheet, x and y of each box
+     * @param sheets    the width and height of each sheet
+     */
+    record Packing(int[][] positions, List<int[]> sheets) {}
+
+    /**
+     * Place boxes on shelves in the given order, left to right, a shelf as high as its tallest box.
+     * A box that doesn't fit on the sheet starts the next one.
+     *
+     * @param boxes the width and height of each box, at most maxSize
+     */
+    static Packing pack(List<int[]> boxes, int maxSize) {
+        int[][] positions = new int[boxes.size()][];
+        List<int[]> sheets = new ArrayList<>();
+        int x = 0, y = 0, shelf = 0, width = 0;
+        for (int i = 0; i < boxes.size(); i++) {
+            int w = boxes.get(i)[0];
+            int h = boxes.get(i)[1];
+            if (!sheets.isEmpty() && x + w > maxSize) {
+                x = 0;
+                y += shelf;
+                shelf = 0;
+            }
+            if (sheets.isEmpty() || y + h > maxSize) {
+                if (!sheets.isEmpty()) {
+                    sheets.set(sheets.size() - 1, new int[]{width, y + shelf});
+                }
+                sheets.add(null);
+                x = y = shelf = width = 0;
+            }
+            positions[i] = new int[]{sheets.size() - 1, x, y};
+            x += w;
+            shelf = Math.max(shelf, h);
+            width = Math.max(width, x);
+        }
+        if (!sheets.isEmpty()) {
+            sheets.set(sheets.size() - 1, new int[]{width, y + shelf});
+        }
+        return new Packing(positions, sheets);
+    }
+
+    /**
+     * The sheets of the last build, there may have been more.
+     */
+    private static void deleteSheets(Path outputDir) throws IOException {
+        Path dir = outputDir.resolve(DIR);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "sprites_*.png")) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static long write(Path outputDir, OutputWriter output, String name, byte[] content) throws IOException {
+        output.writeAtomically(outputDir.resolve(DIR).resolve(name), file -> Files.write(file, content));
+        return content.length;
+    }
+
+    /**
+     * @return the path of an icon relative to the css
+     */
+    private static String relative(String path) {
+        return "../".repeat((int) DIR.chars().filter(c -> c == '/').count() + 1) + path;
+    }
+
+    /**
+     * background-size of a sprite, so it fills an element of any size
+     */
+    static String percent(int sheet, int sprite) {
+        return trim(sheet * 100.0 / sprite);
+    }
+
+    /**
+     * background-position of a sprite, relative to the free space around it
+     */
+    static String position(int offset, int sheet, int sprite) {
+        return sheet == sprite ? "0" : trim(offset * 100.0 / (sheet - sprite));
+    }
+
+    static String trim(double value) {
+        String s = String.format(Locale.ROOT, "%.4f", value);
+        s = s.replaceAll("0+$", "");
+        return s.endsWith(".") ? s.substring(0, s.length() - 1) : s;
+    }
+}
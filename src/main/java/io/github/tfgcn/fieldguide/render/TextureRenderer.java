@@ -1,5 +1,6 @@
 package io.github.tfgcn.fieldguide.render;
 
+import com.google.gson.reflect.TypeToken;
 import com.madgag.gif.fmsware.AnimatedGifEncoder;
 import io.github.tfgcn.fieldguide.Pair;
 import io.github.tfgcn.fieldguide.asset.*;
@@ -13,26 +14,37 @@ import io.github.tfgcn.fieldguide.data.tfc.page.PageMultiMultiblock;
 import io.github.tfgcn.fieldguide.data.tfc.page.TFCMultiblockData;
 import io.github.tfgcn.fieldguide.exception.InternalException;
 import io.github.tfgcn.fieldguide.export.GlTFExporter;
+import io.github.tfgcn.fieldguide.gson.JsonUtils;
 import io.github.tfgcn.fieldguide.localization.I18n;
 import io.github.tfgcn.fieldguide.localization.LocalizationManager;
+import io.github.tfgcn.fieldguide.metrics.Metrics;
 import io.github.tfgcn.fieldguide.render3d.scene.Node;
+import io.github.tfgcn.fieldguide.trace.Trace;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Type;
 import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
 
 @Slf4j
 public class TextureRenderer {
@@ -59,42 +71,21 @@ public class TextureRenderer {
         new Point(150, 0)    // 左上
     };
 
+    private static final int BLOCK_IMAGE_SIZE = 300;
+    // every block image samples its faces the same way, see WarpTable
+    private static final WarpTable.Face LEFT_FACE = WarpTable.face(LEFT_FACE_POINTS, BLOCK_IMAGE_SIZE);
+    private static final WarpTable.Face RIGHT_FACE = WarpTable.face(RIGHT_FACE_POINTS, BLOCK_IMAGE_SIZE);
+    private static final WarpTable.Face TOP_FACE = WarpTable.face(TOP_FACE_POINTS, BLOCK_IMAGE_SIZE);
+
 
     /// fluid images
 
-    private final Map<String, ItemImageResult> FLUID_CACHE = new HashMap<>();
+    private final Map<String, ItemImageResult> fluidCache;
 
     // 流体颜色映射
     private final static Map<String, String> FLUID_COLORS = new HashMap<>();
 
-    private final AssetLoader loader;
-    private final LocalizationManager localizationManager;
-    private final SingleBlock3DRenderer singleBlock3DRenderer;
-    private final Multiblock3DRenderer multiblock3DRenderer;
-    private final BlockStateModelBuilder blockStateModelBuilder;
-
-    // Cache
-    private final Map<String, String> IMAGE_CACHE = new HashMap<>();
-    private final Map<String, ItemImageResult> itemImageCache = new HashMap<>();
-
-    private final Set<String> missingImages = new TreeSet<>();
-
-    private final Map<String, Integer> lastUid = new HashMap<>();
-
-    public TextureRenderer(AssetLoader loader, LocalizationManager localizationManager) {
-        this.loader = loader;
-        this.localizationManager = localizationManager;
-        this.blockStateModelBuilder = new BlockStateModelBuilder(loader);
-        this.singleBlock3DRenderer = new SingleBlock3DRenderer(new BaseModelBuilder(loader), 256, 256);
-        this.multiblock3DRenderer = new Multiblock3DRenderer(blockStateModelBuilder, 256, 256);
-
-        lastUid.put("content", 0);
-        lastUid.put("image", 0);
-        lastUid.put("item", 0);
-        lastUid.put("block", 0);
-        lastUid.put("model", 0);
-        lastUid.put("fluid", 0);
-
+    static {
         FLUID_COLORS.put("brine", "#DCD3C9");
         FLUID_COLORS.put("curdled_milk", "#FFFBE8");
         FLUID_COLORS.put("limewater", "#B4B4B4");
@@ -129,10 +120,197 @@ public class TextureRenderer {
         }
     }
 
-    public String nextId(String prefix) {
-        int count = lastUid.getOrDefault(prefix, 0) + 1;
-        lastUid.put(prefix, count);
-        return prefix + count;
+    private final AssetLoader loader;
+    private final LocalizationManager localizationManager;
+    // the 3d renderers keep a frame buffer and material caches, one per thread
+    private final ThreadLocal<SingleBlock3DRenderer> singleBlock3DRenderer;
+    private final ThreadLocal<Multiblock3DRenderer> multiblock3DRenderer;
+
+    // Cache, shared by all language views
+    private final Map<String, String> imageCache;
+    private final Map<String, ItemImageResult> itemImageCache;
+
+    private final Set<String> missingImages;
+
+    /**
+     * GLB files exported by this renderer and all of its language views
+     */
+    private final Set<String> exportedFiles;
+    /**
+     * images rendered so far, with what they were rendered from, see {@link #remember}
+     */
+    private final SingleFlightCache<String, Boolean> rendered;
+    /**
+     * the images and models of earlier builds, null to always render them
+     */
+    private final RenderCache renderCache;
+    /**
+     * packs the item icons into sprite sheets, null to show them as images
+     */
+    private final SpriteAtlas spriteAtlas;
+
+    private static final Type GLB_PATHS = new TypeToken<List<String>>() {}.getType();
+
+    private static final Metrics.Counter PNG_RENDERED = Metrics.counter("images_rendered_total", "format", "png");
+    private static final Metrics.Counter GIF_RENDERED = Metrics.counter("images_rendered_total", "format", "gif");
+    private static final Metrics.Counter MODELS_EXPORTED = Metrics.counter("models_exported_total", "format", "glb");
+    private static final Metrics.Histogram ITEM_RENDER_SECONDS = Metrics.histogram("item_render_seconds");
+    /**
+     * encodes and writes the images and models, shared with all language views
+     */
+    private final OutputWriter output;
+
+    public TextureRenderer(AssetLoader loader, LocalizationManager localizationManager) {
+        this(loader, localizationManager, OutputWriter.direct());
+    }
+
+    public TextureRenderer(AssetLoader loader, LocalizationManager localizationManager, OutputWriter output) {
+        this(loader, localizationManager, output, null);
+    }
+
+    public TextureRenderer(AssetLoader loader, LocalizationManager localizationManager, OutputWriter output, RenderCache renderCache) {
+        this(loader, localizationManager, output, renderCache, null);
+    }
+
+    public TextureRenderer(AssetLoader loader, LocalizationManager localizationManager, OutputWriter output,
+                           RenderCache renderCache, SpriteAtlas spriteAtlas) {
+        this.loader = loader;
+        this.localizationManager = localizationManager;
+        this.singleBlock3DRenderer = ThreadLocal.withInitial(() ->
+                new SingleBlock3DRenderer(new BaseModelBuilder(loader), 256, 256));
+        this.multiblock3DRenderer = ThreadLocal.withInitial(() ->
+                new Multiblock3DRenderer(new BlockStateModelBuilder(loader), 256, 256));
+        // only paths of images already written, reported with the caches of the loader
+        CacheManager caches = loader.getCaches();
+        this.fluidCache = caches.map("fluid_images");
+        this.imageCache = caches.map("item_images");
+        this.itemImageCache = caches.map("item_image_results");
+        this.blockImageCache = caches.map("block_images");
+        this.glbCache = caches.map("multiblock_models");
+        this.missingImages = new ConcurrentSkipListSet<>();
+        this.exportedFiles = ConcurrentHashMap.newKeySet();
+        this.rendered = caches.newCache("rendered_images", null);
+        this.output = output;
+        this.renderCache = renderCache;
+        this.spriteAtlas = spriteAtlas;
+    }
+
+    private TextureRenderer(TextureRenderer base, LocalizationManager localizationManager) {
+        this.loader = base.loader;
+        this.localizationManager = localizationManager;
+        this.singleBlock3DRenderer = base.singleBlock3DRenderer;
+        this.multiblock3DRenderer = base.multiblock3DRenderer;
+        this.fluidCache = base.fluidCache;
+        this.imageCache = base.imageCache;
+        this.itemImageCache = base.itemImageCache;
+        this.blockImageCache = base.blockImageCache;
+        this.glbCache = base.glbCache;
+        this.missingImages = base.missingImages;
+        this.exportedFiles = base.exportedFiles;
+        this.rendered = base.rendered;
+        this.output = base.output;
+        this.renderCache = base.renderCache;
+        this.spriteAtlas = base.spriteAtlas;
+    }
+
+    /**
+     * A renderer for one language, so languages can be rendered concurrently.
+     * <p>
+     * It shares every image with this renderer, only the names of items and fluids are translated
+     * with its own localization manager.
+     */
+    public TextureRenderer forLanguage(LocalizationManager localizationManager) {
+        return new TextureRenderer(this, localizationManager);
+    }
+
+    /**
+     * Forget the images rendered from changed assets, they are rendered again on next use.
+     *
+     * @param dependencies the changed dependencies, see {@link AssetLoader#invalidate}
+     * @return the number of images forgotten
+     */
+    public int invalidate(Set<String> dependencies) {
+        List<String> keys = rendered.invalidate(dependencies);
+        boolean multiblocks = false;
+        for (String key : keys) {
+            int index = key.indexOf(':');
+            String value = key.substring(index + 1);
+            switch (key.substring(0, index)) {
+                case "item" -> {
+                    itemImageCache.remove(value.startsWith("tag:") ? "#" + value.substring(4) : value);
+                    imageCache.remove(value);
+                }
+                case "image" -> imageCache.remove(value);
+                case "fluid" -> fluidCache.remove(value);
+                default -> multiblocks = true;
+            }
+        }
+        if (multiblocks) {
+            // multiblocks are cached by pattern, not by key, and few enough to export again
+            blockImageCache.clear();
+            glbCache.clear();
+            for (String glbPath : exportedFiles) {
+                try {
+                    Files.deleteIfExists(loader.getOutputDir().resolve(glbPath));
+                } catch (IOException e) {
+                    log.warn("Failed to delete: {}, message: {}", glbPath, e.getMessage());
+                }
+            }
+            exportedFiles.clear();
+        }
+        return keys.size();
+    }
+
+    /**
+     * Run a cached rendering once per key, so that later calls, which are served from the caches of
+     * this class, still record the assets the image was made from. See {@link DependencyTracker}.
+     * <p>
+     * The first run is served from the {@link RenderCache} when the inputs are unchanged since an earlier build.
+     *
+     * @param restore puts a value of an earlier build into the caches of this class
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T remember(String key, Type type, Supplier<T> action, UnaryOperator<T> restore) {
+        Object[] result = new Object[1];
+        boolean[] done = new boolean[1];
+        rendered.get(key, k -> {
+            result[0] = renderCache == null ? action.get() : renderCache.get(key, type, action, restore);
+            done[0] = true;
+            return Boolean.TRUE;
+        });
+        return done[0] ? (T) result[0] : action.get();
+    }
+
+    private <T> T rememberChecked(String key, Type type, Callable<T> action, UnaryOperator<T> restore) throws Exception {
+        try {
+            return remember(key, type, () -> {
+                try {
+                    return action.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, restore);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * The id of a generated image, derived from what it shows rather than from the order of rendering,
+     * so entries can be rendered in any order, on any thread, or on another machine.
+     *
+     * @param prefix the kind of image, e.g. item
+     * @param key what the image shows, e.g. the item key
+     */
+    public static String contentId(String prefix, String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            return prefix + "_" + HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalException("SHA-1 not supported");
+        }
     }
 
     /**
@@ -147,6 +325,25 @@ public class TextureRenderer {
      *     name: The translated name of the item (if a single item), or a best guess (if a tag), or None (if csv)
      */
     public ItemImageResult getItemImage(String item, boolean placeholder) {
+        return remember("item:" + item, ItemImageResult.class, () -> {
+            long start = System.nanoTime();
+            try (Trace.Span ignored = Trace.span("item", item)) {
+                return renderItemImage(item, placeholder);
+            } finally {
+                ITEM_RENDER_SECONDS.observeSince(start);
+            }
+        }, restored -> {
+            if (item.endsWith(".png")) {
+                return restored;
+            }
+            // translated again from the cache
+            String key = item.startsWith("tag:") ? "#" + item.substring(4) : item;
+            itemImageCache.put(key, new ItemImageResult(restored.getPath(), null, restored.getKey()));
+            return renderItemImage(item, placeholder);
+        });
+    }
+
+    private ItemImageResult renderItemImage(String item, boolean placeholder) {
 
         if (item.endsWith(".png")) {
             // This is not an item image, it must be a image directly
@@ -161,12 +358,9 @@ public class TextureRenderer {
         // get from cache
         if (itemImageCache.containsKey(item)) {
             ItemImageResult result = itemImageCache.get(item);
-            if (result.getKey() != null) {
-                //Must re-translate the item each time, as the same image will be asked for in different localizations
-                // TODO Translate, 这应该移到外面的渲染环节，这个类就纯粹处理图片。
-                result.setName(localizationManager.translate("item." + result.getKey(), "block." + result.getKey()));
-            }
-            return result;
+            //Must re-translate the item each time, as the same image will be asked for in different localizations
+            // TODO Translate, 这应该移到外面的渲染环节，这个类就纯粹处理图片。
+            return new ItemImageResult(result.getPath(), itemName(item, result.getKey()), result.getKey());
         }
 
         int nbtIndex = item.indexOf('{');
@@ -175,13 +369,11 @@ public class TextureRenderer {
             item = item.substring(0, nbtIndex);// TODO remove it for test, maybe nbt support is much harder than I think
         }
 
-        String name = null;
         String key = null;// translation key, if this needs to be re-translated
         java.util.List<String> items;
 
         boolean isItem = false;// this is to identify the itemId
         if (item.startsWith("#")) {
-            name = localizationManager.translateWithArgs(I18n.TAG, item);
             items = loader.loadItemTag(item.substring(1));
         } else if (item.contains(",")) {
             items = Arrays.asList(item.split(","));
@@ -191,17 +383,7 @@ public class TextureRenderer {
         }
 
         if (items.size() == 1) {
-            // lazy load translation;
-            int index = item.indexOf(':');
-            if (index > 0) {
-                String namespace = item.substring(0, index);
-                if (namespace.startsWith("#")) {
-                    namespace = namespace.substring(1);
-                }
-                localizationManager.lazyLoadNamespace(namespace);
-            }
             key = items.getFirst().replace('/', '.').replace(':', '.');
-            name = localizationManager.translate("item." + key, "block." + key);
         }
 
         try {
@@ -224,12 +406,11 @@ public class TextureRenderer {
             if (images.isEmpty()) {
                 log.error("Failed to create item image for: {}", item);
                 // Fallback to using the placeholder image
-                ItemImageResult fallback = new ItemImageResult("_images/placeholder_64.png", name, null);
-                itemImageCache.put(item, fallback);
+                itemImageCache.put(item, new ItemImageResult("_images/placeholder_64.png", null, key));
             }
 
             String path;
-            String itemId = nextId("item");// counting
+            String itemId = contentId("item", item);
             if (images.size() == 1) {
             if (isItem) {
                 AssetKey assetKey = new AssetKey(item, "textures", "assets", ".png");
@@ -261,22 +442,43 @@ public class TextureRenderer {
                 path = saveGif("assets/generated/" + itemId + ".gif", images);
             }
 
-            ItemImageResult result = new ItemImageResult(path, name, key);
-            itemImageCache.put(item, result);
-            return result;
+            // cached results are shared with other languages, they are named on the way out
+            itemImageCache.put(item, new ItemImageResult(path, null, key));
+            return new ItemImageResult(path, itemName(item, key), key);
         } catch (Exception e) {
             // TODO add e later
             log.error("Failed to create item image: {}, message: {}", item, e.getMessage());
             if (placeholder) {
                 // Fallback to using the placeholder image
-                ItemImageResult fallback = new ItemImageResult("_images/placeholder_64.png", name, null);
-                itemImageCache.put(item, fallback);
-                return fallback;
+                itemImageCache.put(item, new ItemImageResult("_images/placeholder_64.png", null, key));
+                return new ItemImageResult("_images/placeholder_64.png", itemName(item, key), key);
             }
             throw new InternalException("Failed to create item image: " + item);
         }
     }
 
+    /**
+     * The name of an item image in the language of this renderer.
+     *
+     * @param key the translation key of a single item, or null for a tag or csv
+     * @return the translated name of the item, a best guess for a tag, or null for csv
+     */
+    private String itemName(String item, String key) {
+        if (key == null) {
+            return item.startsWith("#") ? localizationManager.translateWithArgs(I18n.TAG, item) : null;
+        }
+        // lazy load translation, also on cache hits, the namespace may not be loaded in this language yet
+        int index = item.indexOf(':');
+        if (index > 0) {
+            String namespace = item.substring(0, index);
+            if (namespace.startsWith("#")) {
+                namespace = namespace.substring(1);
+            }
+            localizationManager.lazyLoadNamespace(namespace);
+        }
+        return localizationManager.translate("item." + key, "block." + key);
+    }
+
     public BufferedImage createItemImage(String itemId) {
 
         BlockModel model = loader.loadItemModel(itemId);
@@ -389,12 +591,7 @@ public class TextureRenderer {
         BufferedImage colorImage = multiplyImageByColor(fluidMaskImg, parseColor(color));
 
         BufferedImage baseImage = loader.loadTexture(base);
-        BufferedImage combined = new BufferedImage(baseImage.getWidth(), baseImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = combined.createGraphics();
-        g.drawImage(baseImage, 0, 0, null);
-        g.drawImage(colorImage, 0, 0, null);
-        g.dispose();
-        return combined;
+        return RasterKernels.layer(baseImage, colorImage);
     }
 
     private BufferedImage getForgeSeparateTransformsLoader(BlockModel model, String itemId) {
@@ -433,8 +630,15 @@ public class TextureRenderer {
      * 图片转换
      */
     public String convertImage(String image) {
-        if (IMAGE_CACHE.containsKey(image)) {
-            return IMAGE_CACHE.get(image);
+        return remember("image:" + image, String.class, () -> renderImage(image), path -> {
+            imageCache.put(image, path);
+            return path;
+        });
+    }
+
+    private String renderImage(String image) {
+        if (imageCache.containsKey(image)) {
+            return imageCache.get(image);
         }
 
         try {
@@ -465,9 +669,8 @@ public class TextureRenderer {
                 cropped = resizeImage(cropped, 400, 400);
             }
 
-            nextId("image");// counting images
             String ref = saveImage(assetKey.getResourcePath(), cropped);
-            IMAGE_CACHE.put(image, ref);
+            imageCache.put(image, ref);
             return ref;
         } catch (Exception e) {
             throw new InternalException("Failed to convert image: " + image + " - " + e.getMessage());
@@ -478,8 +681,8 @@ public class TextureRenderer {
      * 图标转换
      */
     public String convertIcon(String image) {
-        if (IMAGE_CACHE.containsKey(image)) {
-            return IMAGE_CACHE.get(image);
+        if (imageCache.containsKey(image)) {
+            return imageCache.get(image);
         }
 
         try {
@@ -496,7 +699,7 @@ public class TextureRenderer {
             // 调整到64x64以匹配物品图标尺寸
             BufferedImage resized = resizeImage(img, 64, 64);
             String ref = saveImage(assetKey.getResourcePath(), resized);
-            IMAGE_CACHE.put(image, ref);
+            imageCache.put(image, ref);
             return ref;
         } catch (Exception e) {
             throw new InternalException("Failed to convert icon: " + image + " - " + e.getMessage());
@@ -510,15 +713,14 @@ public class TextureRenderer {
      * @return the relative id to that location.
      */
     public String saveImage(String path, BufferedImage image) {
-        File outputFile = loader.getOutputDir().resolve(path).toFile();
+        Path outputFile = loader.getOutputDir().resolve(path);
         try {
-            // Create output directory if it doesn't exist
-            FileUtils.createParentDirectories(outputFile);
-
-            // Save the image
-            ImageIO.write(image, "png", outputFile);
+            // Save the image, encoded in the background
+            output.writeAtomically(outputFile, file -> ImageIO.write(image, "png", file.toFile()));
+            written(path);
+            PNG_RENDERED.increment();
         } catch (IOException e) {
-            throw new RuntimeException("Failed to save image: " + outputFile.getAbsolutePath(), e);
+            throw new RuntimeException("Failed to save image: " + outputFile.toAbsolutePath(), e);
         }
 
         // Return relative path
@@ -533,32 +735,63 @@ public class TextureRenderer {
             throw new IllegalArgumentException("Images list cannot be empty");
         }
 
-        // Create output directory if it doesn't exist
-        File outputFile = loader.getOutputDir().resolve(path).toFile();
-        FileUtils.createParentDirectories(outputFile);
+        Path outputFile = loader.getOutputDir().resolve(path);
 
-        // Save as GIF
-        try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-            AnimatedGifEncoder encoder = new AnimatedGifEncoder();
-            encoder.start(fos);
-            encoder.setDelay(1000);
-            encoder.setRepeat(0);
+        // Save as GIF, encoded in the background
+        output.writeAtomically(outputFile, file -> {
+            try (FileOutputStream fos = new FileOutputStream(file.toFile())) {
+                AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+                encoder.start(fos);
+                encoder.setDelay(1000);
+                encoder.setRepeat(0);
 
-            // 添加每一帧图像
-            for (BufferedImage image : images) {
-                encoder.addFrame(image);
+                // 添加每一帧图像
+                for (BufferedImage image : images) {
+                    encoder.addFrame(image);
+                }
+                encoder.finish();
             }
-            encoder.finish();
-        }
+        });
 
+        written(path);
+        GIF_RENDERED.increment();
         return path;
     }
 
+    /**
+     * @param path an item or fluid image
+     * @return the css class of its sprite, or null to show it by its path, see {@link SpriteAtlas}
+     */
+    public String sprite(String path) {
+        return spriteAtlas == null ? null : spriteAtlas.sprite(path);
+    }
+
+    /**
+     * Record a file of the image or model being rendered, to be restored by the {@link RenderCache}.
+     */
+    private void written(String path) {
+        if (renderCache != null) {
+            renderCache.output(path);
+        }
+    }
+
+    /**
+     * Export a model in the background, the node must not change afterwards.
+     */
+    private void exportGlb(Node node, Path outputPath) throws IOException {
+        MODELS_EXPORTED.increment();
+        output.writeAtomically(outputPath, file -> {
+            try (Trace.Span ignored = Trace.span("glb", outputPath.getFileName().toString())) {
+                new GlTFExporter().export(node, file.toString());
+            }
+        });
+    }
+
     /// ///////////// block_loader
     ///
 
-    private static final Map<String, String> CACHE = new HashMap<>();
-    private static final Map<String, String> GLB_CACHE = new HashMap<>();
+    private final Map<String, String> blockImageCache;
+    private final Map<String, String> glbCache;
 
     // 透视变换系数（与Python版本相同）
     private static final double[] LEFT = calculatePerspectiveCoefficients(
@@ -589,6 +822,12 @@ public class TextureRenderer {
             new Point2D.Double(242, 129), new Point2D.Double(128, 185)
     );
 
+    private static final int PERSPECTIVE_SIZE = 256;
+    private static final WarpTable.Face LEFT_WARP = WarpTable.perspective(LEFT, PERSPECTIVE_SIZE);
+    private static final WarpTable.Face RIGHT_WARP = WarpTable.perspective(RIGHT, PERSPECTIVE_SIZE);
+    private static final WarpTable.Face TOP_WARP = WarpTable.perspective(TOP, PERSPECTIVE_SIZE);
+    private static final WarpTable.Face TOP_SLAB_WARP = WarpTable.perspective(TOP_SLAB, PERSPECTIVE_SIZE);
+
     // 计算透视变换系数
     public static double[] calculatePerspectiveCoefficients(Point2D.Double... points) {
         if (points.length != 8) {
@@ -703,6 +942,10 @@ public class TextureRenderer {
      * @return GLB文件路径列表
      */
     public List<String> generateMultiMultiblockGLB(PageMultiMultiblock data) throws Exception {
+        return rememberChecked("multimultiblock:" + JsonUtils.toJson(data), GLB_PATHS, () -> exportMultiMultiblockGLB(data), UnaryOperator.identity());
+    }
+
+    private List<String> exportMultiMultiblockGLB(PageMultiMultiblock data) throws Exception {
         List<String> glbPaths = new ArrayList<>();
 
         // 检查是否有TFC多方块数据
@@ -715,15 +958,16 @@ public class TextureRenderer {
                 String cacheKey = generateCacheKey(block.getPattern(), block.getMapping());
                 
                 // 检查缓存
-                if (GLB_CACHE.containsKey(cacheKey)) {
-                    glbPaths.add(GLB_CACHE.get(cacheKey));
+                if (glbCache.containsKey(cacheKey)) {
+                    glbPaths.add(glbCache.get(cacheKey));
+                    written(glbCache.get(cacheKey));
                     log.debug("Using cached GLB file for multiblock: {}", block.getMultiblockId());
                     continue;
                 }
                 
                 try {
                     // 构建多方块节点
-                    Node node = multiblock3DRenderer.buildMultiblock(block.getPattern(), block.getMapping());
+                    Node node = multiblock3DRenderer.get().buildMultiblock(block.getPattern(), block.getMapping());
                     
                     // 生成唯一的blockId
                     String blockId = (block.getMultiblockId() != null ? 
@@ -731,20 +975,20 @@ public class TextureRenderer {
                         cacheKey;
                     
                     // 导出GLB文件
-                    GlTFExporter exporter = new GlTFExporter();
                     String glbPath = "assets/generated/" + blockId + ".glb";
                     Path outputPath = loader.getOutputDir().resolve(glbPath);
                     
                     // 检查文件是否已存在
-                    if (!Files.exists(outputPath)) {
-                        exporter.export(node, outputPath.toString());
+                    if (exportedFiles.add(glbPath) && !Files.exists(outputPath)) {
+                        exportGlb(node, outputPath);
                         log.info("Generated GLB file for multiblock: {}", blockId);
                     } else {
                         log.debug("GLB file already exists: {}", blockId);
                     }
+                    written(glbPath);
                     
                     // 缓存结果
-                    GLB_CACHE.put(cacheKey, glbPath);
+                    glbCache.put(cacheKey, glbPath);
                     glbPaths.add(glbPath);
                 } catch (Exception e) {
                     log.error("Failed to generate GLB for multiblock: {}, error: {}", block.getMultiblockId(), e.getMessage());
@@ -778,15 +1022,15 @@ public class TextureRenderer {
                 
                 try {
                     // 构建多方块节点
-                    Node node = multiblock3DRenderer.buildMultiblock(block.getPattern(), block.getMapping());
+                    Node node = multiblock3DRenderer.get().buildMultiblock(block.getPattern(), block.getMapping());
                     
                     // 渲染图像
-                    BufferedImage image = multiblock3DRenderer.render(node);
+                    BufferedImage image = multiblock3DRenderer.get().render(node);
                     images.add(image);
                     
                     // 检查GLB缓存
-                    if (GLB_CACHE.containsKey(cacheKey)) {
-                        glbPaths.add(GLB_CACHE.get(cacheKey));
+                    if (glbCache.containsKey(cacheKey)) {
+                        glbPaths.add(glbCache.get(cacheKey));
                         log.debug("Using cached GLB file for multiblock: {}", block.getMultiblockId());
                     } else {
                         // 生成唯一的blockId
@@ -795,18 +1039,17 @@ public class TextureRenderer {
                             cacheKey;
                         
                         // 导出GLB文件
-                        GlTFExporter exporter = new GlTFExporter();
                         String glbPath = "assets/generated/" + blockId + ".glb";
                         Path outputPath = loader.getOutputDir().resolve(glbPath);
                         
                         // 检查文件是否已存在
-                        if (!Files.exists(outputPath)) {
-                            exporter.export(node, outputPath.toString());
+                        if (exportedFiles.add(glbPath) && !Files.exists(outputPath)) {
+                            exportGlb(node, outputPath);
                             log.info("Generated GLB file for multiblock: {}", blockId);
                         }
                         
                         // 缓存结果
-                        GLB_CACHE.put(cacheKey, glbPath);
+                        glbCache.put(cacheKey, glbPath);
                         glbPaths.add(glbPath);
                     }
                 } catch (Exception e) {
@@ -824,7 +1067,7 @@ public class TextureRenderer {
         }
 
         String imagePath;
-        String baseId = nextId("multiblock_image");
+        String baseId = contentId("multiblock_image", String.join(",", glbPaths));
         if (images.size() == 1) {
             // 单个图像直接保存为PNG
             imagePath = saveImage("assets/generated/" + baseId + ".png", images.getFirst());
@@ -860,30 +1103,29 @@ public class TextureRenderer {
             String cacheKey = generateCacheKey(multiblock.getPattern(), multiblock.getMapping());
             
             // 检查缓存
-            if (GLB_CACHE.containsKey(cacheKey)) {
+            if (glbCache.containsKey(cacheKey)) {
                 log.debug("Using cached GLB file for multiblock");
-                return GLB_CACHE.get(cacheKey);
+                return glbCache.get(cacheKey);
             }
             
             // 构建多方块节点
-            Node node = multiblock3DRenderer.buildMultiblock(multiblock.getPattern(), multiblock.getMapping());
+            Node node = multiblock3DRenderer.get().buildMultiblock(multiblock.getPattern(), multiblock.getMapping());
             
             // 生成基于缓存键的blockId
             String blockId = "block_" + cacheKey;
             
             // 导出GLB文件
-            GlTFExporter exporter = new GlTFExporter();
             String glbPath = "assets/generated/" + blockId + ".glb";
             Path outputPath = loader.getOutputDir().resolve(glbPath);
             
             // 检查文件是否已存在
-            if (!Files.exists(outputPath)) {
-                exporter.export(node, outputPath.toString());
+            if (exportedFiles.add(glbPath) && !Files.exists(outputPath)) {
+                exportGlb(node, outputPath);
                 log.info("Generated GLB file for multiblock: {}", blockId);
             }
             
             // 缓存结果
-            GLB_CACHE.put(cacheKey, glbPath);
+            glbCache.put(cacheKey, glbPath);
             return glbPath;
         } else {
             throw new RuntimeException("Multiblock : Custom Multiblock '" + data.getMultiblockId() + "'");
@@ -915,6 +1157,14 @@ public class TextureRenderer {
     }
 
     public String getMultiBlockImage(PageMultiblock data) throws Exception {
+        return rememberChecked("multiblock:" + JsonUtils.toJson(data), String.class, () -> {
+            try (Trace.Span ignored = Trace.span("multiblock", String.valueOf(data.getMultiblockId()))) {
+                return renderMultiBlockImage(data);
+            }
+        }, UnaryOperator.identity());
+    }
+
+    private String renderMultiBlockImage(PageMultiblock data) throws Exception {
         String key;
         List<BufferedImage> images;
 
@@ -922,7 +1172,7 @@ public class TextureRenderer {
         if (data.getMultiblock() != null) {
             PageMultiblockData multiblock = data.getMultiblock();
 
-            node = multiblock3DRenderer.buildMultiblock(multiblock.getPattern(), multiblock.getMapping());
+            node = multiblock3DRenderer.get().buildMultiblock(multiblock.getPattern(), multiblock.getMapping());
             Pair<String, List<BufferedImage>> result = getMultiBlockImages(multiblock);
             key = result.getKey();
             images = result.getValue();
@@ -930,12 +1180,12 @@ public class TextureRenderer {
             throw new RuntimeException("Multiblock : Custom Multiblock '" + data.getMultiblockId() + "'");
         }
 
-        if (CACHE.containsKey(key)) {
-            return CACHE.get(key);
+        if (blockImageCache.containsKey(key)) {
+            return blockImageCache.get(key);
         }
 
         String path;
-        String blockId = nextId("block");// counting blocks
+        String blockId = contentId("block", key);
         if (images.size() == 1) {
             path = saveImage("assets/generated/" + blockId + ".png", images.getFirst());
         } else {
@@ -948,22 +1198,22 @@ public class TextureRenderer {
             String cacheKey = generateCacheKey(multiblock.getPattern(), multiblock.getMapping());
             
             // 检查缓存
-            if (!GLB_CACHE.containsKey(cacheKey)) {
-                GlTFExporter exporter = new GlTFExporter();
+            if (!glbCache.containsKey(cacheKey)) {
                 String glbPath = "assets/generated/" + blockId + ".glb";
                 Path outputPath = loader.getOutputDir().resolve(glbPath);
                 
                 // 检查文件是否已存在
-                if (!Files.exists(outputPath)) {
-                    exporter.export(node, outputPath.toString());
+                if (exportedFiles.add(glbPath) && !Files.exists(outputPath)) {
+                    exportGlb(node, outputPath);
                 }
                 
                 // 缓存结果
-                GLB_CACHE.put(cacheKey, glbPath);
+                glbCache.put(cacheKey, glbPath);
             }
+            written(glbCache.get(cacheKey));
         }
 
-        CACHE.put(key, path);
+        blockImageCache.put(key, path);
         return path;
     }
 
@@ -982,8 +1232,8 @@ public class TextureRenderer {
         if (!Arrays.deepEquals(pattern, validPattern1) && !Arrays.deepEquals(pattern, validPattern2)) {
             if (!Arrays.deepEquals(pattern, validPattern3)) {
                 try {
-                    Node node = multiblock3DRenderer.buildMultiblock(data.getPattern(), data.getMapping());
-                    BufferedImage image = multiblock3DRenderer.render(node);
+                    Node node = multiblock3DRenderer.get().buildMultiblock(data.getPattern(), data.getMapping());
+                    BufferedImage image = multiblock3DRenderer.get().render(node);
                     return new Pair<>(Arrays.deepToString(pattern), List.of(image));
                 } catch (Exception e) {
                     log.error("Failed loading multiblock image: {}, mapping: {}, message: {}", Arrays.deepToString(pattern), data.getMapping(), e.getMessage(), e);
@@ -1098,7 +1348,7 @@ public class TextureRenderer {
             return img;
         } else {
             try {
-                return singleBlock3DRenderer.render(model);
+                return singleBlock3DRenderer.get().render(model);
             } catch (Exception e) {
                 log.warn("Unsupported parent: {}@{}", parent, block);
                 throw new RuntimeException("Block Model : Unknown Parent '" + parent + "' : at '" + block + "'");
@@ -1108,17 +1358,10 @@ public class TextureRenderer {
 
     public BufferedImage overlayImage(String baseId, String overlayId) {
         BufferedImage baseImage = loader.loadTexture(baseId);
-        BufferedImage combined = new BufferedImage(baseImage.getWidth(), baseImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = combined.createGraphics();
-        g.drawImage(baseImage, 0, 0, null);
-
-        if (overlayId != null) {
-            BufferedImage overlay = loader.loadTexture(overlayId);
-            g.drawImage(overlay, 0, 0, null);
+        if (overlayId == null) {
+            return RasterKernels.layer(baseImage);
         }
-
-        g.dispose();
-        return combined;
+        return RasterKernels.layer(baseImage, loader.loadTexture(overlayId));
     }
 
     public BufferedImage createBlockModelProjection(BufferedImage left, BufferedImage right, BufferedImage top, boolean rotate) {
@@ -1202,230 +1445,41 @@ public class TextureRenderer {
     }
 
     public static BufferedImage perspectiveTransform(BufferedImage src, double[] coefficients) {
-        int width = 256;
-        int height = 256;
-        BufferedImage dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-
-        // 逆变换：从目标像素找源像素
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Point2D.Double srcPoint = applyPerspectiveTransform(x, y, coefficients, true);
-
-                if (srcPoint.x >= 0 && srcPoint.x < src.getWidth() &&
-                        srcPoint.y >= 0 && srcPoint.y < src.getHeight()) {
-                    int rgb = getBilinearInterpolation(src, srcPoint.x, srcPoint.y);
-                    dst.setRGB(x, y, rgb);
-                }
-            }
-        }
-
-        return dst;
-    }
-
-    // 应用透视变换
-    private static Point2D.Double applyPerspectiveTransform(double x, double y, double[] coeffs, boolean inverse) {
-        if (inverse) {
-            // 计算逆变换：从目标坐标找源坐标
-            double denominator = coeffs[6] * x + coeffs[7] * y + 1;
-            double srcX = (coeffs[0] * x + coeffs[1] * y + coeffs[2]) / denominator;
-            double srcY = (coeffs[3] * x + coeffs[4] * y + coeffs[5]) / denominator;
-            return new Point2D.Double(srcX, srcY);
+        WarpTable.Face face;
+        if (coefficients == LEFT) {
+            face = LEFT_WARP;
+        } else if (coefficients == RIGHT) {
+            face = RIGHT_WARP;
+        } else if (coefficients == TOP) {
+            face = TOP_WARP;
+        } else if (coefficients == TOP_SLAB) {
+            face = TOP_SLAB_WARP;
         } else {
-            // 正变换：从源坐标找目标坐标
-            double denominator = coeffs[6] * x + coeffs[7] * y + 1;
-            double dstX = (coeffs[0] * x + coeffs[1] * y + coeffs[2]) / denominator;
-            double dstY = (coeffs[3] * x + coeffs[4] * y + coeffs[5]) / denominator;
-            return new Point2D.Double(dstX, dstY);
+            face = WarpTable.perspective(coefficients, PERSPECTIVE_SIZE);
         }
-    }
-
-    // 双线性插值
-    private static int getBilinearInterpolation(BufferedImage img, double x, double y) {
-        int x1 = (int) Math.floor(x);
-        int y1 = (int) Math.floor(y);
-        int x2 = x1 + 1;
-        int y2 = y1 + 1;
-
-        if (x2 >= img.getWidth()) x2 = img.getWidth() - 1;
-        if (y2 >= img.getHeight()) y2 = img.getHeight() - 1;
-
-        double dx = x - x1;
-        double dy = y - y1;
-
-        int q11 = img.getRGB(x1, y1);
-        int q21 = img.getRGB(x2, y1);
-        int q12 = img.getRGB(x1, y2);
-        int q22 = img.getRGB(x2, y2);
-
-        return bilinearInterpolate(q11, q21, q12, q22, dx, dy);
-    }
 
-    private static int bilinearInterpolate(int q11, int q21, int q12, int q22, double dx, double dy) {
-        Color c11 = new Color(q11, true);
-        Color c21 = new Color(q21, true);
-        Color c12 = new Color(q12, true);
-        Color c22 = new Color(q22, true);
-
-        int r = (int) ((1 - dx) * (1 - dy) * c11.getRed() + dx * (1 - dy) * c21.getRed() +
-                (1 - dx) * dy * c12.getRed() + dx * dy * c22.getRed());
-        int g = (int) ((1 - dx) * (1 - dy) * c11.getGreen() + dx * (1 - dy) * c21.getGreen() +
-                (1 - dx) * dy * c12.getGreen() + dx * dy * c22.getGreen());
-        int b = (int) ((1 - dx) * (1 - dy) * c11.getBlue() + dx * (1 - dy) * c21.getBlue() +
-                (1 - dx) * dy * c12.getBlue() + dx * dy * c22.getBlue());
-        int a = (int) ((1 - dx) * (1 - dy) * c11.getAlpha() + dx * (1 - dy) * c21.getAlpha() +
-                (1 - dx) * dy * c12.getAlpha() + dx * dy * c22.getAlpha());
-
-        r = Math.min(255, Math.max(0, r));
-        g = Math.min(255, Math.max(0, g));
-        b = Math.min(255, Math.max(0, b));
-        a = Math.min(255, Math.max(0, a));
-
-        return new Color(r, g, b, a).getRGB();
+        // 逆变换：从目标像素找源像素，双线性插值
+        BufferedImage dst = new BufferedImage(PERSPECTIVE_SIZE, PERSPECTIVE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        face.get(src.getWidth(), src.getHeight()).interpolate(RasterKernels.pixels(src), RasterKernels.raster(dst));
+        return dst;
     }
 
     public static BufferedImage createBlockImage(BufferedImage leftTexture,
                                                BufferedImage rightTexture, 
                                                BufferedImage topTexture) {
-        BufferedImage result = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = result.createGraphics();
-        
-        // 设置高质量渲染
-        setupHighQualityRendering(g2d);
-        
-        // 透明背景
-        g2d.setComposite(AlphaComposite.Clear);
-        g2d.fillRect(0, 0, 300, 300);
-        g2d.setComposite(AlphaComposite.SrcOver);
-        
-        // 使用更高效的亮度调整
-        BufferedImage darkLeft = adjustBrightness(leftTexture, 0.85f);
-        BufferedImage darkRight = adjustBrightness(rightTexture, 0.6f);
-        
-        // 使用改进的纹理映射
-        drawTexturedPolygon(g2d, darkLeft, LEFT_FACE_POINTS);
-        drawTexturedPolygon(g2d, darkRight, RIGHT_FACE_POINTS);
-        drawTexturedPolygon(g2d, topTexture, TOP_FACE_POINTS);
-        
-        g2d.dispose();
+        BufferedImage result = new BufferedImage(BLOCK_IMAGE_SIZE, BLOCK_IMAGE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        int[] out = RasterKernels.raster(result);
+
+        // 侧面变暗，依次绘制左、右、顶面
+        LEFT_FACE.get(leftTexture.getWidth(), leftTexture.getHeight()).drawOver(WarpTable.pixels(leftTexture, 0.85f), out);
+        RIGHT_FACE.get(rightTexture.getWidth(), rightTexture.getHeight()).drawOver(WarpTable.pixels(rightTexture, 0.6f), out);
+        TOP_FACE.get(topTexture.getWidth(), topTexture.getHeight()).drawOver(RasterKernels.pixels(topTexture), out);
         return result;
     }
-    
-    private static void setupHighQualityRendering(Graphics2D g2d) {
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-    }
-    
-    /**
-     * 改进的纹理映射方法，使用透视变换
-     */
-    private static void drawTexturedPolygon(Graphics2D g2d, BufferedImage texture, Point[] points) {
-        // 创建多边形路径
-        Path2D polygon = new Path2D.Double();
-        polygon.moveTo(points[0].x, points[0].y);
-        for (int i = 1; i < points.length; i++) {
-            polygon.lineTo(points[i].x, points[i].y);
-        }
-        polygon.closePath();
-        
-        // 保存原始裁剪区域
-        Shape oldClip = g2d.getClip();
-        g2d.setClip(polygon);
-        
-        try {
-            // 计算多边形的边界
-            Rectangle bounds = polygon.getBounds();
-            
-            // 对于平行四边形面，使用仿射变换
-            if (isParallelogram(points)) {
-                drawParallelogramTexture(g2d, texture, points);
-            } else {
-                // 对于梯形面，使用更复杂的变换
-                drawTrapezoidTexture(g2d, texture, bounds);
-            }
-        } finally {
-            // 恢复裁剪区域
-            g2d.setClip(oldClip);
-        }
-    }
-    
-    /**
-     * 检查是否为平行四边形
-     */
-    private static boolean isParallelogram(Point[] points) {
-        if (points.length != 4) return false;
-        
-        // 检查对边是否平行
-        double dx1 = points[1].x - points[0].x;
-        double dy1 = points[1].y - points[0].y;
-        double dx2 = points[2].x - points[3].x;
-        double dy2 = points[2].y - points[3].y;
-        
-        // 简单的平行检查（向量叉积接近0）
-        double cross1 = dx1 * dy2 - dy1 * dx2;
-        return Math.abs(cross1) < 1.0;
-    }
-    
-    /**
-     * 绘制平行四边形纹理
-     */
-    private static void drawParallelogramTexture(Graphics2D g2d, BufferedImage texture, Point[] points) {
-        // 计算仿射变换矩阵
-        double sx1 = points[1].x - points[0].x;
-        double sy1 = points[1].y - points[0].y;
-        double sx2 = points[3].x - points[0].x;
-        double sy2 = points[3].y - points[0].y;
-        
-        AffineTransform transform = new AffineTransform(
-            sx1 / texture.getWidth(), sy1 / texture.getHeight(),
-            sx2 / texture.getWidth(), sy2 / texture.getHeight(),
-            points[0].x, points[0].y
-        );
-        
-        g2d.drawImage(texture, transform, null);
-    }
-    
-    /**
-     * 绘制梯形纹理（简化版本）
-     */
-    private static void drawTrapezoidTexture(Graphics2D g2d, BufferedImage texture, Rectangle bounds) {
-        // 对于梯形，使用缩放和平移（这是一个简化方案）
-        // 在实际应用中，您可能需要真正的透视变换
-        
-        double scaleX = (double) bounds.width / texture.getWidth();
-        double scaleY = (double) bounds.height / texture.getHeight();
-        
-        AffineTransform transform = new AffineTransform();
-        transform.translate(bounds.x, bounds.y);
-        transform.scale(scaleX, scaleY);
-        
-        g2d.drawImage(texture, transform, null);
-    }
 
     public static BufferedImage adjustBrightness(BufferedImage image, float factor) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        
-        int[] pixels = new int[width * height];
-        image.getRGB(0, 0, width, height, pixels, 0, width);
-        
-        for (int i = 0; i < pixels.length; i++) {
-            int argb = pixels[i];
-            int a = (argb >> 24) & 0xFF;
-            int r = (int) (((argb >> 16) & 0xFF) * factor);
-            int g = (int) (((argb >> 8) & 0xFF) * factor);
-            int b = (int) ((argb & 0xFF) * factor);
-            
-            r = Math.min(255, Math.max(0, r));
-            g = Math.min(255, Math.max(0, g));
-            b = Math.min(255, Math.max(0, b));
-            
-            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
-        }
-        
-        result.setRGB(0, 0, width, height, pixels, 0, width);
+        BufferedImage result = RasterKernels.newImage(image.getWidth(), image.getHeight());
+        RasterKernels.brightness(RasterKernels.pixels(image), RasterKernels.raster(result), factor);
         return result;
     }
 
@@ -1433,7 +1487,12 @@ public class TextureRenderer {
      * 图片缩放工具方法
      */
     public static BufferedImage resizeImage(BufferedImage original, int targetWidth, int targetHeight) {
-        BufferedImage resized = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage resized = RasterKernels.newImage(targetWidth, targetHeight);
+        // 整数倍放大直接复制像素
+        if (RasterKernels.upscale(RasterKernels.pixels(original), original.getWidth(), original.getHeight(),
+                RasterKernels.raster(resized), targetWidth, targetHeight)) {
+            return resized;
+        }
         Graphics2D g2d = resized.createGraphics();
 
         g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
@@ -1446,34 +1505,8 @@ public class TextureRenderer {
     }
 
     public static BufferedImage multiplyImageByColor(BufferedImage grayscaleImage, Color color) {
-        int width = grayscaleImage.getWidth();
-        int height = grayscaleImage.getHeight();
-        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-
-        float targetR = color.getRed() / 255.0f;
-        float targetG = color.getGreen() / 255.0f;
-        float targetB = color.getBlue() / 255.0f;
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int pixel = grayscaleImage.getRGB(x, y);
-                int alpha = (pixel >> 24) & 0xFF;
-                int gray = (pixel >> 16) & 0xFF;
-                float grayScale = gray / 255.0f;
-
-                int r = (int) (grayScale * targetR * 255);
-                int g = (int) (grayScale * targetG * 255);
-                int b = (int) (grayScale * targetB * 255);
-
-                r = Math.min(255, Math.max(0, r));
-                g = Math.min(255, Math.max(0, g));
-                b = Math.min(255, Math.max(0, b));
-
-                int newPixel = (alpha << 24) | (r << 16) | (g << 8) | b;
-                result.setRGB(x, y, newPixel);
-            }
-        }
-
+        BufferedImage result = RasterKernels.newImage(grayscaleImage.getWidth(), grayscaleImage.getHeight());
+        RasterKernels.multiplyTint(RasterKernels.pixels(grayscaleImage), RasterKernels.raster(result), color);
         return result;
     }
 
@@ -1481,39 +1514,30 @@ public class TextureRenderer {
 
     /**
      * 获取流体图像
+     *
+     * @param fluid the fluid id, #tag or comma separated fluid ids
+     * @param amount in mB, shown in the name if asked for and more than 0
      */
-    public ItemImageResult getFluidImage(Object fluidIn, boolean placeholder) {
-        return getFluidImage(fluidIn, placeholder, true);
+    public ItemImageResult getFluidImage(String fluid, int amount, boolean placeholder, boolean includeAmount) {
+        return remember("fluid:" + fluid, ItemImageResult.class, () -> renderFluidImage(fluid, amount, placeholder, includeAmount),
+                restored -> {
+                    fluidCache.put(fluid, new ItemImageResult(restored.getPath(), null, restored.getKey()));
+                    return renderFluidImage(fluid, amount, placeholder, includeAmount);
+                });
     }
 
-    public ItemImageResult getFluidImage(Object fluidIn, boolean placeholder, boolean includeAmount) {
-        FluidResult decoded = decodeFluid(fluidIn);
-        String fluid = decoded.getFluid();
-        int amount = decoded.getAmount();
+    private ItemImageResult renderFluidImage(String fluid, int amount, boolean placeholder, boolean includeAmount) {
 
-        if (FLUID_CACHE.containsKey(fluid)) {
-            ItemImageResult entry = FLUID_CACHE.get(fluid);
-            String name = entry.getName();
-            if (entry.getKey() != null) {
-                try {
-                    // 必须每次都重新翻译，因为相同的图像会在不同的本地化环境中被请求
-                    name = localizationManager.translate("fluid." + entry.getKey(), "block." + entry.getKey());
-                } catch (Exception e) {
-                    System.err.println("Warning: " + e.getMessage());
-                }
-            }
-            String finalName = includeAmount && amount > 0 ?
-                    String.format("%s mB %s", amount, name) : name;
-            entry.setName(finalName);
-            return entry;
+        if (fluidCache.containsKey(fluid)) {
+            ItemImageResult entry = fluidCache.get(fluid);
+            // 必须每次都重新翻译，因为相同的图像会在不同的本地化环境中被请求
+            return new ItemImageResult(entry.getPath(), fluidName(fluid, entry.getKey(), amount, includeAmount), entry.getKey());
         }
 
-        String name = null;
         String key = null;
         List<String> fluids;
 
         if (fluid.startsWith("#")) {
-            name = String.format(localizationManager.translate(I18n.TAG), fluid);
             fluids = loader.loadFluidTag(fluid.substring(1));
         } else if (fluid.contains(",")) {
             fluids = Arrays.asList(fluid.split(","));
@@ -1523,11 +1547,6 @@ public class TextureRenderer {
 
         if (fluids.size() == 1) {
             key = fluids.get(0).replace("/", ".").replace(":", ".");
-            try {
-                name = localizationManager.translate("fluid." + key, "block." + key);
-            } catch (Exception e) {
-                System.err.println("Warning: " + e.getMessage());
-            }
         }
 
         String path;
@@ -1537,14 +1556,14 @@ public class TextureRenderer {
                 images.add(createFluidImage(fluidId));
             }
 
-            String fluidId = nextId("fluid");// counting fluid
+            String fluidId = contentId("fluid", fluid);
             if (images.size() == 1) {
                 path = saveImage("assets/generated/" + fluidId + ".png", images.getFirst());
             } else {
                 path = saveGif("assets/generated/" + fluidId + ".gif", images);
             }
         } catch (Exception e) {
-            System.err.println("Warning: Fluid Image(s) - " + e.getMessage());
+            log.warn("Failed to render fluid image: {}, message: {}", fluid, e.getMessage());
 
             if (placeholder) {
                 // 回退到使用占位符图像
@@ -1555,57 +1574,26 @@ public class TextureRenderer {
         }
 
 
-        String finalName = includeAmount && amount > 0 ?
-                String.format("%s mB %s", amount, name) : name;
-
-        ItemImageResult result = new ItemImageResult(path, finalName, key);
-
-        FLUID_CACHE.put(fluid, result);
-        return result;
-    }
-
-    /**
-     * 解码流体数据
-     */
-    public static FluidResult decodeFluid(Object item) {
-        int amount = 0;
-        String ingredient = null;
-
-        if (item instanceof Map) {
-            Map<?, ?> itemMap = (Map<?, ?>) item;
-            if (itemMap.containsKey("ingredient")) {
-                ingredient = decodeFluidIngredient(itemMap.get("ingredient"));
-            } else if (itemMap.containsKey("fluid") || itemMap.containsKey("tag")) {
-                ingredient = decodeFluidIngredient(item);
-            }
-            amount = itemMap.containsKey("amount") ? ((Number) itemMap.get("amount")).intValue() : 1000;
-        } else if (item instanceof String) {
-            ingredient = (String) item;
-        }
-
-        if (ingredient == null) {
-            throw new RuntimeException("Invalid format for a fluid: '" + item + "'");
-        } else {
-            return new FluidResult(ingredient, amount);
-        }
+        // cached results are shared with other languages, they are named on the way out
+        fluidCache.put(fluid, new ItemImageResult(path, null, key));
+        return new ItemImageResult(path, fluidName(fluid, key, amount, includeAmount), key);
     }
 
     /**
-     * 解码流体成分
+     * The name of a fluid image in the language of this renderer, with the amount if asked for.
      */
-    @SuppressWarnings("unchecked")
-    public static String decodeFluidIngredient(Object item) {
-        if (item instanceof String) {
-            return (String) item;
-        } else if (item instanceof Map) {
-            Map<String, Object> itemMap = (Map<String, Object>) item;
-            if (itemMap.containsKey("fluid")) {
-                return (String) itemMap.get("fluid");
-            } else if (itemMap.containsKey("tag")) {
-                return "#" + itemMap.get("tag");
+    private String fluidName(String fluid, String key, int amount, boolean includeAmount) {
+        String name = null;
+        if (key != null) {
+            try {
+                name = localizationManager.translate("fluid." + key, "block." + key);
+            } catch (Exception e) {
+                log.warn("Failed to translate fluid: {}, message: {}", key, e.getMessage());
             }
+        } else if (fluid.startsWith("#")) {
+            name = localizationManager.translateWithArgs(I18n.TAG, fluid);
         }
-        throw new RuntimeException("Could not decode fluid ingredient: " + item);
+        return includeAmount && amount > 0 ? String.format("%s mB %s", amount, name) : name;
     }
 
     /**
@@ -1644,25 +1632,8 @@ public class TextureRenderer {
     }
 
     public static BufferedImage applyColorToImage(BufferedImage img, Color color, float darkThreshold) {
-        BufferedImage result = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
-
-        float[] hsv = rgbToHsv(color.getRed(), color.getGreen(), color.getBlue());
-        float hue = hsv[0];
-        float saturation = hsv[1];
-        float value = hsv[2];
-
-        for (int x = 0; x < img.getWidth(); x++) {
-            for (int y = 0; y < img.getHeight(); y++) {
-                int rgb = img.getRGB(x, y);
-                Color pixelColor = new Color(rgb, true);
-
-                float[] pixelHsv = rgbToHsv(pixelColor.getRed(), pixelColor.getGreen(), pixelColor.getBlue());
-                float newValue = value > darkThreshold ? pixelHsv[2] : pixelHsv[2] * 0.5f;
-
-                Color newColor = hsvToRgb(hue, saturation, newValue, pixelColor.getAlpha());
-                result.setRGB(x, y, newColor.getRGB());
-            }
-        }
+        BufferedImage result = RasterKernels.newImage(img.getWidth(), img.getHeight());
+        RasterKernels.hsvTint(RasterKernels.pixels(img), RasterKernels.raster(result), color, darkThreshold);
         return result;
     }
 
@@ -1676,15 +1647,4 @@ public class TextureRenderer {
                 Integer.valueOf(hex.substring(4, 6), 16)
         );
     }
-
-    private static float[] rgbToHsv(int r, int g, int b) {
-        float[] hsv = new float[3];
-        Color.RGBtoHSB(r, g, b, hsv);
-        return hsv;
-    }
-
-    private static Color hsvToRgb(float h, float s, float v, int alpha) {
-        int rgb = Color.HSBtoRGB(h, s, v);
-        return new Color((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, alpha);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,240 @@
+package io.github.tfgcn.fieldguide.render;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Where each pixel of a projected block face is sampled from, computed once per face and texture size.
+ * <p>
+ * The faces and coefficients are constants and almost every texture is 16x16, so the source of every
+ * destination pixel is found once. Warping a texture is then a loop over the covered pixels
+ * of the raster, without transforms or allocations.
+ *
+ * @author yanmaoyuan
+ */
+final class WarpTable {
+
+    /**
+     * The tables of one face, one per texture size.
+     */
+    static final class Face {
+        private final Map<Integer, WarpTable> tables = new ConcurrentHashMap<>();
+        private final BiFunction<Integer, Integer, WarpTable> factory;
+
+        private Face(BiFunction<Integer, Integer, WarpTable> factory) {
+            this.factory = factory;
+        }
+
+        WarpTable get(int width, int height) {
+            return tables.computeIfAbsent(width << 16 | height, k -> factory.apply(width, height));
+        }
+    }
+
+    /**
+     * covered destination pixels, by index into the destination raster
+     */
+    private final int[] dst;
+    /**
+     * the source pixel of each destination pixel, or the four around it when interpolating
+     */
+    private final int[] src;
+    /**
+     * bilinear weights of the four source pixels, null for nearest neighbor
+     */
+    private final double[] weights;
+
+    private WarpTable(int[] dst, int[] src, double[] weights) {
+        this.dst = dst;
+        this.src = src;
+        this.weights = weights;
+    }
+
+    /**
+     * A face of a block image, the texture is stretched over the polygon like drawing it with an affine
+     * transform clipped to the polygon, nearest neighbor.
+     * <p>
+     * Java2D rounds the clip and the sample positions its own way, so the table is taken from Java2D:
+     * an opaque image holding the index of each of its pixels is drawn once that way, and every covered
+     * pixel of the canvas then names its source pixel. The faces drawn from the table are the same pixels
+     * as drawn with {@link Graphics2D}.
+     *
+     * @param points the corners on the canvas, the texture's origin first
+     */
+    static Face face(Point[] points, int canvasSize) {
+        Path2D polygon = new Path2D.Double();
+        polygon.moveTo(points[0].x, points[0].y);
+        for (int i = 1; i < points.length; i++) {
+            polygon.lineTo(points[i].x, points[i].y);
+        }
+        polygon.closePath();
+
+        return new Face((width, height) -> {
+            if ((long) width * height >= 1 << 24) {
+                throw new IllegalArgumentException("Texture too large: " + width + "x" + height);
+            }
+            // index + 1, 0 is left for the pixels the face doesn't cover
+            BufferedImage indices = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] index = RasterKernels.raster(indices);
+            for (int i = 0; i < index.length; i++) {
+                index[i] = 0xFF000000 | (i + 1);
+            }
+
+            BufferedImage canvas = new BufferedImage(canvasSize, canvasSize, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = canvas.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+            g.setClip(polygon);
+            g.drawImage(indices, faceTransform(points, polygon, width, height), null);
+            g.dispose();
+
+            int[] covered = RasterKernels.raster(canvas);
+            int[] dst = new int[covered.length];
+            int[] src = new int[covered.length];
+            int count = 0;
+            for (int i = 0; i < covered.length; i++) {
+                if (covered[i] != 0) {
+                    dst[count] = i;
+                    src[count] = (covered[i] & 0xFFFFFF) - 1;
+                    count++;
+                }
+            }
+            return new WarpTable(Arrays.copyOf(dst, count), Arrays.copyOf(src, count), null);
+        });
+    }
+
+    private static AffineTransform faceTransform(Point[] points, Path2D polygon, int width, int height) {
+        if (isParallelogram(points)) {
+            double sx1 = points[1].x - points[0].x;
+            double sy1 = points[1].y - points[0].y;
+            double sx2 = points[3].x - points[0].x;
+            double sy2 = points[3].y - points[0].y;
+            return new AffineTransform(sx1 / width, sy1 / height, sx2 / width, sy2 / height, points[0].x, points[0].y);
+        }
+        // 梯形面简化为缩放和平移
+        Rectangle bounds = polygon.getBounds();
+        AffineTransform transform = new AffineTransform();
+        transform.translate(bounds.x, bounds.y);
+        transform.scale((double) bounds.width / width, (double) bounds.height / height);
+        return transform;
+    }
+
+    /**
+     * 检查是否为平行四边形
+     */
+    private static boolean isParallelogram(Point[] points) {
+        if (points.length != 4) return false;
+
+        // 检查对边是否平行
+        double dx1 = points[1].x - points[0].x;
+        double dy1 = points[1].y - points[0].y;
+        double dx2 = points[2].x - points[3].x;
+        double dy2 = points[2].y - points[3].y;
+
+        // 简单的平行检查（向量叉积接近0）
+        double cross1 = dx1 * dy2 - dy1 * dx2;
+        return Math.abs(cross1) < 1.0;
+    }
+
+    /**
+     * A perspective transform, every destination pixel maps back to the source and interpolates the four
+     * pixels around it.
+     *
+     * @param coefficients maps destination to source coordinates, see {@link TextureRenderer#calculatePerspectiveCoefficients}
+     */
+    static Face perspective(double[] coefficients, int size) {
+        return new Face((width, height) -> {
+            int[] dst = new int[size * size];
+            int[] src = new int[size * size * 4];
+            double[] weights = new double[size * size * 4];
+            int count = 0;
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    double denominator = coefficients[6] * x + coefficients[7] * y + 1;
+                    double srcX = (coefficients[0] * x + coefficients[1] * y + coefficients[2]) / denominator;
+                    double srcY = (coefficients[3] * x + coefficients[4] * y + coefficients[5]) / denominator;
+                    if (srcX < 0 || srcX >= width || srcY < 0 || srcY >= height) {
+                        continue;
+                    }
+
+                    int x1 = (int) Math.floor(srcX);
+                    int y1 = (int) Math.floor(srcY);
+                    int x2 = Math.min(x1 + 1, width - 1);
+                    int y2 = Math.min(y1 + 1, height - 1);
+                    double dx = srcX - x1;
+                    double dy = srcY - y1;
+
+                    int i = count * 4;
+                    dst[count] = y * size + x;
+                    src[i] = y1 * width + x1;
+                    src[i + 1] = y1 * width + x2;
+                    src[i + 2] = y2 * width + x1;
+                    src[i + 3] = y2 * width + x2;
+                    weights[i] = (1 - dx) * (1 - dy);
+                    weights[i + 1] = dx * (1 - dy);
+                    weights[i + 2] = (1 - dx) * dy;
+                    weights[i + 3] = dx * dy;
+                    count++;
+                }
+            }
+            return new WarpTable(Arrays.copyOf(dst, count), Arrays.copyOf(src, count * 4),
+                    Arrays.copyOf(weights, count * 4));
+        });
+    }
+
+    /**
+     * @return the pixels of an image as ARGB, scaled by the brightness, only to be read
+     */
+    static int[] pixels(BufferedImage image, float brightness) {
+        int[] pixels = RasterKernels.pixels(image);
+        if (brightness == 1f) {
+            return pixels;
+        }
+        int[] scaled = new int[pixels.length];
+        RasterKernels.brightness(pixels, scaled, brightness);
+        return scaled;
+    }
+
+    /**
+     * Draw the source pixels over the destination, nearest neighbor, blended like {@link RasterKernels#alphaOver}.
+     */
+    void drawOver(int[] pixels, int[] out) {
+        for (int i = 0; i < dst.length; i++) {
+            out[dst[i]] = RasterKernels.alphaOver(pixels[src[i]], out[dst[i]]);
+        }
+    }
+
+    /**
+     * Write the interpolated source pixels into the destination.
+     */
+    void interpolate(int[] pixels, int[] out) {
+        for (int i = 0, j = 0; i < dst.length; i++, j += 4) {
+            int q11 = pixels[src[j]];
+            int q21 = pixels[src[j + 1]];
+            int q12 = pixels[src[j + 2]];
+            int q22 = pixels[src[j + 3]];
+            double w11 = weights[j];
+            double w21 = weights[j + 1];
+            double w12 = weights[j + 2];
+            double w22 = weights[j + 3];
+            int a = channel(q11, q21, q12, q22, w11, w21, w12, w22, 24);
+            int r = channel(q11, q21, q12, q22, w11, w21, w12, w22, 16);
+            int g = channel(q11, q21, q12, q22, w11, w21, w12, w22, 8);
+            int b = channel(q11, q21, q12, q22, w11, w21, w12, w22, 0);
+            out[dst[i]] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private static int channel(int q11, int q21, int q12, int q22, double w11, double w21, double w12, double w22, int shift) {
+        int value = (int) (w11 * ((q11 >>> shift) & 0xFF) + w21 * ((q21 >>> shift) & 0xFF)
+                + w12 * ((q12 >>> shift) & 0xFF) + w22 * ((q22 >>> shift) & 0xFF));
+        return Math.min(255, Math.max(0, value));
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.tfgcn.fieldguide.render.components;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 桶配方，每一格都可能为 null
+ */
+public record BarrelRecipe(ItemSlot inputItem, FluidSlot inputFluid, ItemSlot outputItem, FluidSlot outputFluid) implements RecipeLayout {
+
+    @Override
+    public List<ItemSlot> items() {
+        List<ItemSlot> items = new ArrayList<>();
+        if (inputItem != null) {
+            items.add(inputItem);
+        }
+        if (outputItem != null && outputItem.item() != null) {
+            items.add(outputItem);
+        }
+        return items;
+    }
+
+    @Override
+    public List<FluidSlot> fluids() {
+        List<FluidSlot> fluids = new ArrayList<>();
+        if (inputFluid != null) {
+            fluids.add(inputFluid);
+        }
+        if (outputFluid != null) {
+            fluids.add(outputFluid);
+        }
+        return fluids;
+    }
+}
@@ -1,12 +1,27 @@
 package io.github.tfgcn.fieldguide.render.components;
 
-import io.github.tfgcn.fieldguide.asset.ItemStackResult;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 合成配方类
  */
-public class CraftingRecipe {
-    public Object[] grid = new Object[9]; // grid[x + 3 * y]
-    public ItemStackResult output;
+public final class CraftingRecipe implements RecipeLayout {
+    public ItemSlot[] grid = new ItemSlot[9]; // grid[x + 3 * y]
+    public ItemSlot output;
     public boolean shapeless = false;
+
+    @Override
+    public List<ItemSlot> items() {
+        List<ItemSlot> items = new ArrayList<>();
+        for (ItemSlot slot : grid) {
+            if (slot != null) {
+                items.add(slot);
+            }
+        }
+        if (output != null && output.item() != null) {
+            items.add(output);
+        }
+        return items;
+    }
 }
\ No newline at end of file
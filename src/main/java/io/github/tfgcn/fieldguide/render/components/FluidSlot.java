@@ -0,0 +1,10 @@
+package io.github.tfgcn.fieldguide.render.components;
+
+/**
+ * A fluid image of a recipe page.
+ *
+ * @param fluid the fluid id or #tag
+ * @param amount in mB
+ */
+public record FluidSlot(String fluid, int amount) {
+}
@@ -0,0 +1,11 @@
+package io.github.tfgcn.fieldguide.render.components;
+
+/**
+ * An item image of a recipe page.
+ *
+ * @param item the item id, #tag or comma separated item ids, or null for the placeholder
+ * @param count shown next to the image if more than 1
+ * @param placeholder whether a placeholder may replace an image that fails to render
+ */
+public record ItemSlot(String item, int count, boolean placeholder) {
+}
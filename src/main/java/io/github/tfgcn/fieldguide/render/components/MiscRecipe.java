@@ -0,0 +1,23 @@
+package io.github.tfgcn.fieldguide.render.components;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单输入单输出的配方，如石磨、加热、织布机、铁砧和玻璃加工
+ *
+ * @param tools the tool of each glassworking operation, in order, empty for other recipes
+ */
+public record MiscRecipe(ItemSlot input, ItemSlot output, List<ItemSlot> tools) implements RecipeLayout {
+
+    @Override
+    public List<ItemSlot> items() {
+        List<ItemSlot> items = new ArrayList<>();
+        items.add(input);
+        if (output.item() != null) {
+            items.add(output);
+        }
+        items.addAll(tools);
+        return items;
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.tfgcn.fieldguide.render.components;
+
+import java.util.List;
+
+/**
+ * The slots of a recipe as a page draws them.
+ */
+public sealed interface RecipeLayout permits CraftingRecipe, MiscRecipe, BarrelRecipe {
+
+    /**
+     * @return the item images of the page, placeholders without an item left out
+     */
+    List<ItemSlot> items();
+
+    /**
+     * @return the fluid images of the page
+     */
+    default List<FluidSlot> fluids() {
+        return List.of();
+    }
+}
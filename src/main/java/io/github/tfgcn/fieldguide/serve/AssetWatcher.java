@@ -0,0 +1,114 @@
+package io.github.tfgcn.fieldguide.serve;
+
+import io.github.tfgcn.fieldguide.asset.AssetSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the assets/ and data/ trees of filesystem asset sources for changes.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public class AssetWatcher implements AutoCloseable {
+
+    private static final String[] WATCHED_ROOTS = {"assets", "data"};
+
+    private final WatchService watchService;
+    /**
+     * watched directory -> the source it belongs to
+     */
+    private final Map<WatchKey, AssetSource> sources = new HashMap<>();
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    public AssetWatcher(List<AssetSource> sources) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (AssetSource source : sources) {
+            for (String root : WATCHED_ROOTS) {
+                Path dir = source.getRootPath().resolve(root);
+                if (Files.isDirectory(dir)) {
+                    register(source, dir, null);
+                }
+            }
+            log.info("Watching {}", source.getRootPath());
+        }
+    }
+
+    /**
+     * Register a directory tree.
+     *
+     * @param created collects the files found in it, when the directory was just created
+     */
+    private void register(AssetSource source, Path dir, Set<String> created) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (Files.isDirectory(path)) {
+                    WatchKey key = path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                    sources.put(key, source);
+                    directories.put(key, path);
+                } else if (created != null) {
+                    created.add(toResourcePath(source, path));
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for changes, then keep collecting them until none comes for the quiet period,
+     * so saving several files, or one file in several writes, is a single rebuild.
+     *
+     * @param quietMillis how long no change must come
+     * @return the changed resource paths of each source
+     */
+    public Map<AssetSource, Set<String>> take(long quietMillis) throws InterruptedException {
+        Map<AssetSource, Set<String>> changes = new LinkedHashMap<>();
+        WatchKey key = watchService.take();
+        while (key != null) {
+            collect(key, changes);
+            key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+        }
+        return changes;
+    }
+
+    private void collect(WatchKey key, Map<AssetSource, Set<String>> changes) {
+        AssetSource source = sources.get(key);
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                log.warn("Too many changes in {}, some may be missed", dir);
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            Set<String> paths = changes.computeIfAbsent(source, k -> new TreeSet<>());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    register(source, path, paths);
+                } catch (IOException e) {
+                    log.warn("Failed to watch: {}, message: {}", path, e.getMessage());
+                }
+            } else if (!Files.isDirectory(path)) {
+                paths.add(toResourcePath(source, path));
+            }
+        }
+        if (!key.reset()) {
+            sources.remove(key);
+            directories.remove(key);
+        }
+    }
+
+    private static String toResourcePath(AssetSource source, Path path) {
+        return source.getRootPath().relativize(path).toString().replace("\\", "/");
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.tfgcn.fieldguide.serve;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the output directory on localhost, and reloads open pages after every rebuild.
+ * <p>
+ * Html pages get a small script that long-polls {@value #RELOAD_PATH} with the build version
+ * it was served with, the request returns as soon as another build is done.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public class PreviewServer implements AutoCloseable {
+
+    private static final String RELOAD_PATH = "/__reload";
+    private static final long POLL_TIMEOUT_MILLIS = 25_000;
+
+    private static final String RELOAD_SCRIPT = "<script>(function(){var v='%d';function poll(){"
+            + "fetch('" + RELOAD_PATH + "?since='+v).then(function(r){return r.text();}).then(function(t){"
+            + "if(t!==v){location.reload();}else{poll();}},function(){setTimeout(poll,1000);});}poll();})();</script>";
+
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+            Map.entry("html", "text/html; charset=utf-8"),
+            Map.entry("css", "text/css; charset=utf-8"),
+            Map.entry("js", "text/javascript; charset=utf-8"),
+            Map.entry("json", "application/json; charset=utf-8"),
+            Map.entry("png", "image/png"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("svg", "image/svg+xml"),
+            Map.entry("ico", "image/x-icon"),
+            Map.entry("glb", "model/gltf-binary"),
+            Map.entry("woff", "font/woff"),
+            Map.entry("woff2", "font/woff2"),
+            Map.entry("ttf", "font/ttf"));
+
+    private final Path root;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private long version;
+
+    public PreviewServer(Path root, int port) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // reload requests wait for the next build, each holds a thread
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handleFile);
+        server.createContext(RELOAD_PATH, this::handleReload);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Preview server started: http://localhost:{}/", server.getAddress().getPort());
+    }
+
+    /**
+     * A build is done, reload every open page.
+     */
+    public synchronized void reload() {
+        version++;
+        notifyAll();
+    }
+
+    private synchronized long getVersion() {
+        return version;
+    }
+
+    private synchronized long awaitVersion(long since) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + POLL_TIMEOUT_MILLIS;
+        long remaining = POLL_TIMEOUT_MILLIS;
+        while (version == since && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return version;
+    }
+
+    private void handleReload(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long since;
+            try {
+                String query = exchange.getRequestURI().getQuery();
+                since = Long.parseLong(query.substring(query.indexOf('=') + 1));
+            } catch (RuntimeException e) {
+                since = -1;
+            }
+            long current = awaitVersion(since);
+            send(exchange, 200, "text/plain; charset=utf-8", String.valueOf(current).getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleFile(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String uri = exchange.getRequestURI().getPath();
+            Path file;
+            try {
+                file = root.resolve(uri.substring(1)).normalize();
+            } catch (InvalidPathException e) {
+                send(exchange, 400, "text/plain; charset=utf-8", "Bad Request".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (!file.startsWith(root)) {
+                send(exchange, 403, "text/plain; charset=utf-8", "Forbidden".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            if (Files.isDirectory(file)) {
+                if (!uri.endsWith("/")) {
+                    // relative links of the index page need the trailing slash
+                    exchange.getResponseHeaders().set("Location", uri + "/");
+                    exchange.sendResponseHeaders(301, -1);
+                    return;
+                }
+                file = file.resolve("index.html");
+            }
+            if (!Files.isRegularFile(file)) {
+                send(exchange, 404, "text/plain; charset=utf-8", "Not Found".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            String name = file.getFileName().toString();
+            String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+            String contentType = CONTENT_TYPES.getOrDefault(extension, "application/octet-stream");
+            byte[] body = Files.readAllBytes(file);
+            if ("html".equals(extension)) {
+                body = injectReloadScript(body);
+            }
+            send(exchange, 200, contentType, body);
+        }
+    }
+
+    private byte[] injectReloadScript(byte[] body) {
+        String html = new String(body, StandardCharsets.UTF_8);
+        String script = RELOAD_SCRIPT.formatted(getVersion());
+        int index = html.lastIndexOf("</body>");
+        html = index < 0 ? html + script : html.substring(0, index) + script + html.substring(index);
+        return html.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        boolean head = "HEAD".equals(exchange.getRequestMethod());
+        exchange.sendResponseHeaders(status, head ? -1 : body.length);
+        if (!head) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.tfgcn.fieldguide.trace;
+
+import jdk.jfr.*;
+
+/**
+ * A span of the build in a flight recording, see {@link Trace}.
+ *
+ * @author yanmaoyuan
+ */
+@Name("io.github.tfgcn.fieldguide.Span")
+@Label("Field Guide Span")
+@Category("Field Guide")
+@Description("A phase of the field guide build, an entry, a page, or an image, model or file")
+@StackTrace(false)
+class SpanEvent extends Event {
+
+    @Label("Category")
+    String category;
+
+    @Label("Name")
+    String name;
+}
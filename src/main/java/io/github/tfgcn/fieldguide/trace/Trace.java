@@ -0,0 +1,194 @@
+package io.github.tfgcn.fieldguide.trace;
+
+import com.google.gson.stream.JsonWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Spans around the phases of a build: scanning mods, indexing assets, loading books, rendering entries,
+ * pages, items and multiblocks, exporting models, generating html and writing files.
+ * <p>
+ * Every span is a JFR event, recorded while a flight recording runs, e.g. with
+ * {@code -XX:StartFlightRecording}. After {@link #start()} the spans are also collected for a Chrome
+ * trace file, which chrome://tracing and Perfetto open, and for a report of the slowest of them.
+ * Without either a span costs an allocation.
+ *
+ * <pre>
+ * try (Trace.Span ignored = Trace.span("entry", entry.getId())) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+public final class Trace {
+
+    /**
+     * categories reported by {@link #finish}, the slowest first
+     */
+    private static final List<String> REPORTED = List.of("entry", "page", "item", "multiblock", "glb");
+    private static final int REPORT_SIZE = 10;
+
+    private static final Span NOOP = new Span(null, null, null, null, 0);
+
+    private static volatile Recorder recorder;
+
+    private Trace() {}
+
+    /**
+     * @param category the kind of work, e.g. "entry" or "item"
+     * @param name what is worked on, e.g. the entry id
+     */
+    public static Span span(String category, String name) {
+        SpanEvent event = new SpanEvent();
+        Recorder current = recorder;
+        if (current == null && !event.isEnabled()) {
+            return NOOP;
+        }
+        event.begin();
+        return new Span(current, event, category, name, System.nanoTime());
+    }
+
+    /**
+     * Collect the spans from now on.
+     */
+    public static void start() {
+        recorder = new Recorder(System.nanoTime());
+    }
+
+    /**
+     * Stop collecting, write the spans as a Chrome trace and log the slowest of them.
+     */
+    public static void finish(Path file) throws IOException {
+        Recorder current = recorder;
+        recorder = null;
+        if (current != null) {
+            current.write(file);
+            current.report();
+            log.info("Trace written: {}", file);
+        }
+    }
+
+    public static final class Span implements AutoCloseable {
+        private final Recorder recorder;
+        private final SpanEvent event;
+        private final String category;
+        private final String name;
+        private final long start;
+
+        private Span(Recorder recorder, SpanEvent event, String category, String name, long start) {
+            this.recorder = recorder;
+            this.event = event;
+            this.category = category;
+            this.name = name;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            if (event == null) {
+                return;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.category = category;
+                event.name = name;
+                event.commit();
+            }
+            if (recorder != null) {
+                recorder.add(category, name, start, System.nanoTime());
+            }
+        }
+    }
+
+    private record Record(String category, String name, long thread, long start, long end) {}
+
+    private static final class Recorder {
+        private final long origin;
+        private final Queue<Record> records = new ConcurrentLinkedQueue<>();
+        private final Map<Long, String> threads = new ConcurrentHashMap<>();
+
+        Recorder(long origin) {
+            this.origin = origin;
+        }
+
+        void add(String category, String name, long start, long end) {
+            Thread thread = Thread.currentThread();
+            threads.putIfAbsent(thread.threadId(), thread.getName());
+            records.add(new Record(category, name, thread.threadId(), start, end));
+        }
+
+        /**
+         * The trace event format, complete events in microseconds.
+         */
+        void write(Path file) throws IOException {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                 JsonWriter json = new JsonWriter(writer)) {
+                json.beginObject();
+                json.name("displayTimeUnit").value("ms");
+                json.name("traceEvents").beginArray();
+                for (Map.Entry<Long, String> thread : threads.entrySet()) {
+                    json.beginObject();
+                    json.name("name").value("thread_name");
+                    json.name("ph").value("M");
+                    json.name("pid").value(1);
+                    json.name("tid").value(thread.getKey());
+                    json.name("args").beginObject().name("name").value(thread.getValue()).endObject();
+                    json.endObject();
+                }
+                for (Record record : records) {
+                    json.beginObject();
+                    json.name("name").value(record.name());
+                    json.name("cat").value(record.category());
+                    json.name("ph").value("X");
+                    json.name("ts").value((record.start() - origin) / 1000.0);
+                    json.name("dur").value((record.end() - record.start()) / 1000.0);
+                    json.name("pid").value(1);
+                    json.name("tid").value(record.thread());
+                    json.endObject();
+                }
+                json.endArray();
+                json.endObject();
+            }
+        }
+
+        void report() {
+            Map<String, Map<String, long[]>> totals = new HashMap<>();
+            for (Record record : records) {
+                if (REPORTED.contains(record.category())) {
+                    long[] total = totals.computeIfAbsent(record.category(), k -> new HashMap<>())
+                            .computeIfAbsent(record.name(), k -> new long[2]);
+                    total[0] += record.end() - record.start();
+                    total[1]++;
+                }
+            }
+
+            for (String category : REPORTED) {
+                Map<String, long[]> byName = totals.get(category);
+                if (byName == null) {
+                    continue;
+                }
+                long sum = byName.values().stream().mapToLong(total -> total[0]).sum();
+                log.info("=== Slowest {} ({} of {}, {} ms in total)", category, Math.min(REPORT_SIZE, byName.size()),
+                        byName.size(), sum / 1_000_000);
+                byName.entrySet().stream()
+                        .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                        .limit(REPORT_SIZE)
+                        .forEach(e -> log.info("{} ms, {}x  {}", String.format("%8d", e.getValue()[0] / 1_000_000),
+                                e.getValue()[1], e.getKey()));
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.tfgcn.fieldguide;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Builds the field guide with one thread and with several threads rendering the entries, the output must be the same.
+ */
+@Slf4j
+public class ParallelBuildTest {
+
+    @Test
+    void testParallelEntriesSameAsSequential(@TempDir Path tempDir) throws IOException {
+        Path modpack = Paths.get("Modpack-Modern");
+        Assumptions.assumeTrue(Files.isDirectory(modpack), "Modpack not found: " + modpack.toAbsolutePath());
+
+        Path sequential = tempDir.resolve("sequential");
+        Path parallel = tempDir.resolve("parallel");
+        Assertions.assertEquals(0, new CommandLine(new Main()).execute(
+                "-i", modpack.toString(), "-o", sequential.toString(), "--no-render-cache"));
+        Assertions.assertEquals(0, new CommandLine(new Main()).execute(
+                "-i", modpack.toString(), "-o", parallel.toString(), "--no-render-cache",
+                "--parallel-entries", "8", "--parallel-languages", "2"));
+
+        Map<String, Path> expected = files(sequential);
+        Map<String, Path> actual = files(parallel);
+        Assertions.assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, Path> entry : expected.entrySet()) {
+            Assertions.assertArrayEquals(Files.readAllBytes(entry.getValue()), Files.readAllBytes(actual.get(entry.getKey())),
+                    entry.getKey());
+        }
+        log.info("Compared {} files", expected.size());
+    }
+
+    /**
+     * @return relative path -> file
+     */
+    private static Map<String, Path> files(Path dir) throws IOException {
+        Map<String, Path> files = new TreeMap<>();
+        try (Stream<Path> stream = Files.walk(dir)) {
+            stream.filter(Files::isRegularFile)
+                    .forEach(file -> files.put(dir.relativize(file).toString().replace('\\', '/'), file));
+        }
+        return files;
+    }
+}
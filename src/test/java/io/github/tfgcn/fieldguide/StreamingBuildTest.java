@@ -0,0 +1,44 @@
+package io.github.tfgcn.fieldguide;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Builds the whole field guide in a fixed heap, run by {@code gradle streamingTest} with -Xmx768m.
+ */
+@Slf4j
+@Tag("streaming")
+public class StreamingBuildTest {
+
+    private static final long MAX_HEAP = 768L * 1024 * 1024;
+    /**
+     * decoded textures and materials, well below the heap, the default of 512 MB is for the default heap
+     */
+    private static final String CACHE_BUDGET_MB = "192";
+
+    @Test
+    void testBuildInFixedHeap(@TempDir Path outputDir) {
+        Path modpack = Paths.get("Modpack-Modern");
+        Assumptions.assumeTrue(Files.isDirectory(modpack), "Modpack not found: " + modpack.toAbsolutePath());
+        Assertions.assertTrue(Runtime.getRuntime().maxMemory() <= MAX_HEAP,
+                "Run with -Xmx768m, max heap: " + Runtime.getRuntime().maxMemory() / 1024 / 1024 + "m");
+
+        int exitCode = new CommandLine(new Main()).execute(
+                "-i", modpack.toString(), "-o", outputDir.toString(), "--streaming",
+                "--cache-budget-mb", CACHE_BUDGET_MB);
+
+        Assertions.assertEquals(0, exitCode);
+        Assertions.assertTrue(Files.exists(outputDir.resolve("index.html")));
+        log.info("Max heap: {}m, used: {}m", Runtime.getRuntime().maxMemory() / 1024 / 1024,
+                (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1024 / 1024);
+    }
+}
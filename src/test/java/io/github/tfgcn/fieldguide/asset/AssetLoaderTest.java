@@ -1,5 +1,6 @@
 package io.github.tfgcn.fieldguide.asset;
 
+import io.github.tfgcn.fieldguide.data.recipe.Recipe;
 import io.github.tfgcn.fieldguide.localization.Language;
 import io.github.tfgcn.fieldguide.data.patchouli.Book;
 import lombok.extern.slf4j.Slf4j;
@@ -10,7 +11,6 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Map;
 
 import static io.github.tfgcn.fieldguide.Constants.FIELD_GUIDE;
 
@@ -41,7 +41,7 @@ public class AssetLoaderTest {
 
     @Test
     void testLoadRecipe() {
-        Map<String, Object> recipe = loader.loadRecipe("tfg:rock_knapping/stone_shovel_head");
+        Recipe recipe = loader.getRecipe("tfg:rock_knapping/stone_shovel_head");
         Assertions.assertNotNull(recipe);
     }
 }
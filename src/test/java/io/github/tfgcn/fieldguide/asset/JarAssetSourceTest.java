@@ -0,0 +1,98 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: a warm start takes the scan of a jar from {@link JarIndexCache}, and {@link JarAssetSource} answers
+ * from it until a resource is read
+ *
+ * @author yanmaoyuan
+ */
+class JarAssetSourceTest {
+
+    private static final List<String> RESOURCES = List.of(
+            "assets/tfc/models/block/rock.json",
+            "assets/tfc/textures/block/rock.png",
+            "data/tfc/recipes/quern/flux.json");
+
+    @Test
+    void testCacheRoundTrip(@TempDir Path tempDir) throws IOException {
+        Path jar = jar(tempDir.resolve("tfc.jar"));
+        Path cacheFile = tempDir.resolve("jar-index.bin");
+        JarScan scan = new JarScan(JarIndexCache.Fingerprint.of(jar), null, List.of(), RESOURCES);
+
+        JarIndexCache cache = JarIndexCache.load(cacheFile);
+        assertNull(cache.get(jar));
+        cache.put(jar, scan);
+        cache.save();
+
+        JarIndexCache loaded = JarIndexCache.load(cacheFile);
+        assertEquals(scan, loaded.get(jar));
+        assertNull(loaded.get(tempDir.resolve("other.jar")));
+    }
+
+    @Test
+    void testAnswersFromScan(@TempDir Path tempDir) throws IOException {
+        Path jar = jar(tempDir.resolve("tfc.jar"));
+        JarScan scan = new JarScan(JarIndexCache.Fingerprint.of(jar), null, List.of(), RESOURCES);
+        JarAssetSource source = new JarAssetSource(jar, scan);
+        try {
+            // not a jar anymore, only a read maps it
+            Files.writeString(jar, "broken");
+
+            assertTrue(source.exists("assets/tfc/models/block/rock.json"));
+            assertFalse(source.exists("assets/tfc/models/block/dirt.json"));
+            assertTrue(source.isDirectory("assets/tfc/textures"));
+            assertFalse(source.isDirectory("assets/tfc/sounds"));
+            assertEquals(List.of("assets/tfc/models/block/rock.json", "assets/tfc/textures/block/rock.png"),
+                    source.listAssets("assets/tfc").stream().map(Asset::getPath).toList());
+            assertEquals(scan.fingerprint().hash(), source.fingerprint("assets/tfc/models/block/rock.json"));
+
+            assertThrows(IOException.class, () -> source.getInputStream("assets/tfc/models/block/rock.json"));
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    void testReadsOnDemand(@TempDir Path tempDir) throws IOException {
+        Path jar = jar(tempDir.resolve("tfc.jar"));
+        JarAssetSource source = new JarAssetSource(jar, null);
+        try {
+            assertTrue(source.exists("assets/tfc/models/block/rock.json"));
+            try (InputStream in = source.getInputStream("data/tfc/recipes/quern/flux.json")) {
+                assertEquals("data/tfc/recipes/quern/flux.json", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            source.close();
+        }
+        assertThrows(IOException.class, () -> source.getInputStream("data/tfc/recipes/quern/flux.json"));
+    }
+
+    /**
+     * A jar with the resources, each holding its own path.
+     */
+    private static Path jar(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String resource : RESOURCES) {
+                zip.putNextEntry(new ZipEntry(resource));
+                zip.write(resource.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,184 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Compare reading every asset through {@link JarFile} and {@link MappedZipFile}.
+ * The TFG mod set is only benchmarked when Modpack-Modern is checked out.
+ * Not part of the build, run it with {@code gradle benchmark}.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+@Tag("benchmark")
+public class MappedZipFileBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    @Test
+    void testSyntheticJars(@TempDir Path dir) throws IOException {
+        Random random = new Random(42);
+        List<Path> jars = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Path jar = dir.resolve("synthetic-" + i + ".jar");
+            writeSyntheticJar(jar, 2000, random);
+            jars.add(jar);
+        }
+        benchmark("synthetic", jars);
+    }
+
+    @Test
+    void testModpackJars() throws IOException {
+        Path mods = Paths.get("Modpack-Modern", "mods");
+        Assumptions.assumeTrue(Files.isDirectory(mods), "Modpack-Modern not found");
+
+        List<Path> jars;
+        try (Stream<Path> files = Files.list(mods)) {
+            jars = files.filter(p -> p.toString().endsWith(".jar")).sorted().toList();
+        }
+        benchmark("modpack", jars);
+    }
+
+    private void benchmark(String name, List<Path> jars) throws IOException {
+        // correctness first, this also warms up both paths
+        for (Path jar : jars) {
+            try (JarFile jarFile = new JarFile(jar.toFile()); MappedZipFile zipFile = new MappedZipFile(jar)) {
+                for (String entry : assetEntries(jarFile)) {
+                    byte[] expected;
+                    try (InputStream in = jarFile.getInputStream(jarFile.getJarEntry(entry))) {
+                        expected = in.readAllBytes();
+                    }
+                    byte[] actual;
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        actual = in.readAllBytes();
+                    }
+                    Assertions.assertArrayEquals(expected, actual, jar + "!" + entry);
+                }
+            }
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long jarFileSerial = time(() -> readWithJarFile(jars, false));
+            long jarFileParallel = time(() -> readWithJarFile(jars, true));
+            long mappedSerial = time(() -> readWithMappedZip(jars, false));
+            long mappedParallel = time(() -> readWithMappedZip(jars, true));
+            log.info("[{}] {} jars, round {}: JarFile {} ms / {} ms parallel, MappedZipFile {} ms / {} ms parallel",
+                    name, jars.size(), round, jarFileSerial, jarFileParallel, mappedSerial, mappedParallel);
+        }
+    }
+
+    private long readWithJarFile(List<Path> jars, boolean parallel) throws IOException {
+        long total = 0;
+        for (Path jar : jars) {
+            try (JarFile jarFile = new JarFile(jar.toFile())) {
+                Stream<String> entries = assetEntries(jarFile).stream();
+                total += (parallel ? entries.parallel() : entries).mapToLong(entry -> {
+                    try (InputStream in = jarFile.getInputStream(jarFile.getJarEntry(entry))) {
+                        return in.readAllBytes().length;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).sum();
+            }
+        }
+        return total;
+    }
+
+    private long readWithMappedZip(List<Path> jars, boolean parallel) throws IOException {
+        long total = 0;
+        for (Path jar : jars) {
+            try (MappedZipFile zipFile = new MappedZipFile(jar)) {
+                List<String> names = new ArrayList<>();
+                zipFile.forEachEntry(entry -> {
+                    if (entry.startsWith("assets/") || entry.startsWith("data/")) {
+                        names.add(entry);
+                    }
+                });
+                Stream<String> entries = names.stream();
+                total += (parallel ? entries.parallel() : entries).mapToLong(entry -> {
+                    try {
+                        return zipFile.read(entry).remaining();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).sum();
+            }
+        }
+        return total;
+    }
+
+    private static List<String> assetEntries(JarFile jarFile) {
+        List<String> names = new ArrayList<>();
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String entryName = entry.getName();
+            if (!entry.isDirectory() && (entryName.startsWith("assets/") || entryName.startsWith("data/"))) {
+                names.add(entryName);
+            }
+        }
+        return names;
+    }
+
+    private static long time(IOCallable task) throws IOException {
+        long start = System.nanoTime();
+        long bytes = task.call();
+        Assertions.assertTrue(bytes > 0);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Mimic a mod jar: small deflated json models and stored png-like blobs.
+     */
+    private static void writeSyntheticJar(Path jar, int entries, Random random) throws IOException {
+        try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jos = new JarOutputStream(out)) {
+            for (int i = 0; i < entries; i++) {
+                if (i % 2 == 0) {
+                    String json = "{\"parent\":\"minecraft:block/cube_all\",\"textures\":{\"all\":\"synthetic:block/b" + i + "\"}}";
+                    jos.putNextEntry(new JarEntry("assets/synthetic/models/block/b" + i + ".json"));
+                    jos.write(json.repeat(1 + random.nextInt(8)).getBytes(StandardCharsets.UTF_8));
+                } else {
+                    byte[] data = new byte[256 + random.nextInt(4096)];
+                    random.nextBytes(data);
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+
+                    JarEntry entry = new JarEntry("assets/synthetic/textures/block/b" + i + ".png");
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCompressedSize(data.length);
+                    entry.setCrc(crc.getValue());
+                    jos.putNextEntry(entry);
+                    jos.write(data);
+                }
+                jos.closeEntry();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOCallable {
+        long call() throws IOException;
+    }
+}
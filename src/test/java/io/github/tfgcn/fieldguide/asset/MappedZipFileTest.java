@@ -0,0 +1,124 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: {@link MappedZipFile} reads what {@link ZipOutputStream} writes, and fails on corrupt files with a {@link ZipException}
+ *
+ * @author yanmaoyuan
+ */
+class MappedZipFileTest {
+
+    private static final byte[] CONTENT = "{\"parent\": \"minecraft:block/cube_all\"}".repeat(50).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testRead(@TempDir Path tempDir) throws IOException {
+        Path jar = tempDir.resolve("test.jar");
+        Files.write(jar, zip());
+        try (MappedZipFile zip = new MappedZipFile(jar)) {
+            assertEquals(2, zip.getEntryCount());
+            assertArrayEquals(CONTENT, bytes(zip.read("assets/tfc/stored.json")));
+            assertArrayEquals(CONTENT, bytes(zip.read("assets/tfc/deflated.json")));
+            assertEquals(CONTENT.length, zip.size("assets/tfc/deflated.json"));
+            assertNull(zip.read("assets/tfc/missing.json"));
+        }
+    }
+
+    @Test
+    void testClosed(@TempDir Path tempDir) throws IOException {
+        Path jar = tempDir.resolve("test.jar");
+        Files.write(jar, zip());
+        MappedZipFile zip = new MappedZipFile(jar);
+        zip.close();
+        assertThrows(IOException.class, () -> zip.read("assets/tfc/stored.json"));
+        assertThrows(IllegalStateException.class, () -> zip.contains("assets/tfc/stored.json"));
+    }
+
+    @Test
+    void testTruncated(@TempDir Path tempDir) throws IOException {
+        byte[] bytes = zip();
+        Path jar = tempDir.resolve("truncated.jar");
+        Files.write(jar, Arrays.copyOf(bytes, bytes.length - 10));
+        assertThrows(ZipException.class, () -> new MappedZipFile(jar));
+    }
+
+    @Test
+    void testEntryPastEnd(@TempDir Path tempDir) throws IOException {
+        byte[] bytes = zip();
+        int cen = centralDirectory(bytes);
+
+        // the compressed size of the first entry reaches past the end of the file
+        ByteBuffer csize = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        csize.putInt(cen + 20, bytes.length - 40);
+        Path jar = tempDir.resolve("csize.jar");
+        Files.write(jar, csize.array());
+        try (MappedZipFile zip = new MappedZipFile(jar)) {
+            assertThrows(ZipException.class, () -> zip.read("assets/tfc/stored.json"));
+        }
+
+        // the local header of the first entry starts right before the end of the file
+        ByteBuffer loc = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        loc.putInt(cen + 42, bytes.length - 4);
+        Path jar2 = tempDir.resolve("loc.jar");
+        Files.write(jar2, loc.array());
+        try (MappedZipFile zip = new MappedZipFile(jar2)) {
+            assertThrows(ZipException.class, () -> zip.read("assets/tfc/stored.json"));
+        }
+    }
+
+    private static byte[] zip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            ZipEntry stored = new ZipEntry("assets/tfc/stored.json");
+            CRC32 crc = new CRC32();
+            crc.update(CONTENT);
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(CONTENT.length);
+            stored.setCompressedSize(CONTENT.length);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(CONTENT);
+            out.closeEntry();
+
+            out.putNextEntry(new ZipEntry("assets/tfc/deflated.json"));
+            out.write(CONTENT);
+            out.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the offset of the first central directory header
+     */
+    private static int centralDirectory(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i + 4 <= bytes.length; i++) {
+            if (buffer.getInt(i) == 0x02014b50) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No central directory");
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
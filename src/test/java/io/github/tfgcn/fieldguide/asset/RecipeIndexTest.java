@@ -0,0 +1,86 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import io.github.tfgcn.fieldguide.data.recipe.Recipe;
+import io.github.tfgcn.fieldguide.data.recipe.misc.UnknownRecipe;
+import io.github.tfgcn.fieldguide.data.recipe.tfc.QuernRecipe;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: typed recipes of {@link RecipeIndex} by id, type and output
+ *
+ * @author yanmaoyuan
+ */
+class RecipeIndexTest {
+
+    @Test
+    void testIndex(@TempDir Path tempDir) throws IOException {
+        FsAssetSource source = new FsAssetSource(tempDir, "file:test");
+        List<Asset> assets = new ArrayList<>();
+        assets.add(recipe(tempDir, source, "data/tfc/recipes/quern/flux.json", """
+                {"type": "tfc:quern", "ingredient": {"tag": "tfc:fluxstone"}, "result": {"item": "tfc:powder/flux", "count": 2}}"""));
+        assets.add(recipe(tempDir, source, "data/tfc/recipes/quern/salt.json", """
+                {"type": "tfc:quern", "ingredient": {"item": "tfc:ore/halite"}, "result": {"item": "tfc:powder/salt"}}"""));
+        assets.add(recipe(tempDir, source, "data/create/recipes/milling/flux.json", """
+                {"type": "create:milling", "ingredients": [{"tag": "tfc:fluxstone"}], "results": [{"item": "tfc:powder/flux"}]}"""));
+        assets.add(recipe(tempDir, source, "data/tfc/recipes/broken.json", "{\"type\": "));
+
+        RecipeIndex index = RecipeIndex.build(assets);
+
+        assertEquals(3, index.size());
+        Recipe flux = index.get("tfc:quern/flux");
+        assertInstanceOf(flux, QuernRecipe.class);
+        assertEquals("tfc:quern", flux.getType());
+        assertNull(index.get("tfc:broken"));
+
+        // unknown types are kept untyped
+        Recipe milling = index.get("create:milling/flux");
+        assertInstanceOf(milling, UnknownRecipe.class);
+        assertEquals("create:milling", milling.getType());
+
+        assertEquals(List.of("tfc:quern/flux", "tfc:quern/salt"), ids(index.getByType("tfc:quern")));
+        // sorted by id
+        assertEquals(List.of("create:milling/flux", "tfc:quern/flux"), ids(index.getByOutput("tfc:powder/flux")));
+        assertEquals(List.of(), index.getByOutput("tfc:powder/coke"));
+    }
+
+    @Test
+    void testEntries(@TempDir Path tempDir) throws IOException {
+        FsAssetSource source = new FsAssetSource(tempDir, "file:test");
+        RecipeIndex.Entry entry = RecipeIndex.read(recipe(tempDir, source, "data/tfc/recipes/quern/flux.json", """
+                {"type": "tfc:quern",
+                 "ingredient": {"tag": "tfc:fluxstone"}, "result": {"item": "tfc:powder/flux", "count": 2}}"""));
+        assertEquals("tfc:quern/flux", entry.id());
+        assertEquals("tfc:quern", entry.type());
+        assertFalse(entry.json().contains("\n"));
+        assertNull(RecipeIndex.read(recipe(tempDir, source, "data/tfc/recipes/list.json", "[]")));
+
+        // entries kept in the snapshot are indexed without their files
+        RecipeIndex index = RecipeIndex.index(List.of(entry));
+        assertInstanceOf(index.get("tfc:quern/flux"), QuernRecipe.class);
+        assertEquals(List.of("tfc:quern/flux"), ids(index.getByOutput("tfc:powder/flux")));
+    }
+
+    private static void assertInstanceOf(Object value, Class<?> type) {
+        assertTrue(type.isInstance(value), value + " is not a " + type.getSimpleName());
+    }
+
+    private static List<String> ids(List<Recipe> recipes) {
+        return recipes.stream().map(Recipe::getId).toList();
+    }
+
+    private static Asset recipe(Path root, AssetSource source, String path, String json) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, json);
+        return new Asset(path, source);
+    }
+}
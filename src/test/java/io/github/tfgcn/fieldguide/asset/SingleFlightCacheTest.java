@@ -0,0 +1,143 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import io.github.tfgcn.fieldguide.exception.InternalException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: single-flight loading, circular loading and dependency tracking of {@link SingleFlightCache}
+ *
+ * @author yanmaoyuan
+ */
+class SingleFlightCacheTest {
+
+    @Test
+    void testLoadsOnce() throws Exception {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<String> first = executor.submit(() -> cache.get("key", key -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "value";
+            }));
+            loading.await();
+            Future<?>[] others = new Future<?>[7];
+            for (int i = 0; i < others.length; i++) {
+                others[i] = executor.submit(() -> cache.get("key", key -> {
+                    loads.incrementAndGet();
+                    return "other";
+                }));
+            }
+            release.countDown();
+
+            assertEquals("value", first.get(5, TimeUnit.SECONDS));
+            for (Future<?> other : others) {
+                assertEquals("value", other.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailureNotCached() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>();
+        assertThrows(IllegalStateException.class, () -> cache.get("key", key -> {
+            throw new IllegalStateException("broken");
+        }));
+        assertNull(cache.getIfPresent("key"));
+        assertEquals("value", cache.get("key", key -> "value"));
+    }
+
+    @Test
+    void testCircularLoading() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>();
+        InternalException e = assertThrows(InternalException.class,
+                () -> cache.get("a", a -> cache.get("b", b -> cache.get("a", x -> "never"))));
+        assertTrue(e.getMessage().contains("Circular loading"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testCircularLoadingAcrossThreads() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>();
+        CyclicBarrier bothLoading = new CyclicBarrier(2);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                // x needs y while y needs x, each loaded by its own thread
+                Future<String> x = executor.submit(() -> cache.get("x", key -> {
+                    await(bothLoading);
+                    return cache.get("y", other -> "y");
+                }));
+                Future<String> y = executor.submit(() -> cache.get("y", key -> {
+                    await(bothLoading);
+                    return cache.get("x", other -> "x");
+                }));
+
+                ExecutionException ex = assertThrows(ExecutionException.class, x::get);
+                ExecutionException ey = assertThrows(ExecutionException.class, y::get);
+                assertTrue(ex.getCause() instanceof InternalException);
+                assertTrue(ey.getCause() instanceof InternalException);
+            } finally {
+                executor.shutdownNow();
+            }
+        });
+    }
+
+    @Test
+    void testDependenciesRecordedOnHit() {
+        SingleFlightCache<String, String> cache = new SingleFlightCache<>();
+        DependencyTracker.setEnabled(true);
+        try {
+            Map<String, Long> first = new HashMap<>();
+            DependencyTracker.track(first, () -> cache.get("model", key -> {
+                DependencyTracker.record("assets/tfc/models/block/rock.json", 1L);
+                return "rock";
+            }));
+            assertEquals(Map.of("assets/tfc/models/block/rock.json", 1L), first);
+
+            Map<String, Long> second = new HashMap<>();
+            DependencyTracker.track(second, () -> cache.get("model", key -> fail("loaded again")));
+            assertEquals(first, second);
+
+            assertEquals(List.of("model"), cache.invalidate(Set.of("assets/tfc/models/block/rock.json")));
+            assertNull(cache.getIfPresent("model"));
+        } finally {
+            DependencyTracker.setEnabled(false);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.tfgcn.fieldguide.asset;
+
+import io.github.tfgcn.fieldguide.data.minecraft.tag.TagElement;
+import io.github.tfgcn.fieldguide.data.minecraft.tag.Tags;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: flattening of nested tags and the reverse lookup by {@link TagGraph}
+ *
+ * @author yanmaoyuan
+ */
+class TagGraphTest {
+
+    private final Map<String, List<Tags>> files = new HashMap<>();
+
+    private void tag(String tag, String... values) {
+        List<TagElement> elements = new ArrayList<>();
+        for (String value : values) {
+            TagElement element = new TagElement();
+            element.setId(value);
+            elements.add(element);
+        }
+        Tags tags = new Tags();
+        tags.setValues(elements);
+        files.computeIfAbsent(tag, k -> new ArrayList<>()).add(tags);
+    }
+
+    private TagGraph build(String... declared) {
+        return TagGraph.build("items", List.of(declared), tag -> files.getOrDefault(tag, List.of()));
+    }
+
+    @Test
+    void testNestedTags() {
+        tag("minecraft:logs", "#minecraft:oak_logs", "minecraft:birch_log", "#birch_logs");
+        tag("minecraft:oak_logs", "minecraft:oak_log", "minecraft:oak_wood");
+        tag("minecraft:birch_logs", "minecraft:birch_log", "minecraft:birch_wood");
+        TagGraph graph = build("minecraft:logs", "minecraft:oak_logs");
+
+        // depth-first order, without duplicates
+        assertEquals(List.of("minecraft:oak_log", "minecraft:oak_wood", "minecraft:birch_log", "minecraft:birch_wood"),
+                graph.getMembers("minecraft:logs"));
+        // tags only referenced are loaded too, ids without namespace are in minecraft
+        assertTrue(graph.contains("birch_logs"));
+        assertEquals(List.of("minecraft:birch_log", "minecraft:birch_wood"), graph.getMembers("birch_logs"));
+        assertEquals(3, graph.size());
+        assertEquals(7, graph.getEdgeCount());
+        assertEquals(0, graph.getCycleCount());
+    }
+
+    @Test
+    void testReverseLookup() {
+        tag("minecraft:logs", "#minecraft:oak_logs", "minecraft:birch_log");
+        tag("minecraft:oak_logs", "minecraft:oak_log");
+        tag("minecraft:logs_that_burn", "#minecraft:logs");
+        TagGraph graph = build("minecraft:logs_that_burn", "minecraft:logs", "minecraft:oak_logs");
+
+        // through nested tags, sorted
+        assertEquals(List.of("minecraft:logs", "minecraft:logs_that_burn", "minecraft:oak_logs"), graph.getTags("minecraft:oak_log"));
+        assertEquals(List.of("minecraft:logs", "minecraft:logs_that_burn"), graph.getTags("minecraft:birch_log"));
+        assertEquals(List.of(), graph.getTags("minecraft:stone"));
+    }
+
+    @Test
+    void testFilesOfSeveralSources() {
+        tag("forge:ingots", "forge:copper_ingot");
+        tag("forge:ingots", "forge:tin_ingot", "forge:copper_ingot");
+        TagGraph graph = build("forge:ingots");
+
+        assertEquals(List.of("forge:copper_ingot", "forge:tin_ingot"), graph.getMembers("forge:ingots"));
+    }
+
+    @Test
+    void testCycles() {
+        tag("tfc:a", "#tfc:b", "tfc:x");
+        tag("tfc:b", "#tfc:a", "tfc:y");
+        tag("tfc:c", "#tfc:c", "#tfc:a", "tfc:z");
+        TagGraph graph = build("tfc:a", "tfc:b", "tfc:c");
+
+        assertEquals(List.of("tfc:y", "tfc:x"), graph.getMembers("tfc:a"));
+        assertEquals(List.of("tfc:x", "tfc:y"), graph.getMembers("tfc:b"));
+        assertEquals(List.of("tfc:y", "tfc:x", "tfc:z"), graph.getMembers("tfc:c"));
+        assertEquals(3, graph.getCycleCount());
+    }
+
+    @Test
+    void testMissingTag() {
+        tag("minecraft:planks", "#minecraft:missing", "minecraft:oak_planks");
+        TagGraph graph = build("minecraft:planks");
+
+        assertEquals(List.of("minecraft:oak_planks"), graph.getMembers("minecraft:planks"));
+        assertEquals(List.of(), graph.getMembers("minecraft:missing"));
+        assertEquals(List.of(), graph.getMembers("minecraft:unknown"));
+        assertFalse(graph.contains("minecraft:unknown"));
+    }
+
+    @Test
+    void testRestore() {
+        tag("minecraft:logs", "#minecraft:oak_logs", "minecraft:birch_log");
+        tag("minecraft:oak_logs", "minecraft:oak_log");
+        TagGraph graph = build("minecraft:logs", "minecraft:oak_logs");
+
+        // as kept in the snapshot
+        TagGraph restored = TagGraph.restore("items", graph.getAllMembers(), graph.getEdgeCount(), graph.getCycleCount());
+
+        assertEquals(graph.getMembers("minecraft:logs"), restored.getMembers("minecraft:logs"));
+        assertEquals(List.of("minecraft:logs", "minecraft:oak_logs"), restored.getTags("minecraft:oak_log"));
+        assertEquals(graph.size(), restored.size());
+        assertEquals(3, restored.getEdgeCount());
+    }
+}
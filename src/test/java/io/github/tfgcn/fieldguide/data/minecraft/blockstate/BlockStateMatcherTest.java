@@ -0,0 +1,101 @@
+package io.github.tfgcn.fieldguide.data.minecraft.blockstate;
+
+import io.github.tfgcn.fieldguide.gson.JsonUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: variant and multipart selection of {@link BlockStateMatcher}
+ *
+ * @author yanmaoyuan
+ */
+class BlockStateMatcherTest {
+
+    private static List<String> models(List<Variant> variants) {
+        return variants == null ? null : variants.stream().map(Variant::getModel).toList();
+    }
+
+    private static List<String> variants(BlockStateMatcher matcher, String properties) {
+        return models(matcher.selectVariants(matcher.state(BlockState.parseBlockProperties(properties))));
+    }
+
+    private static List<String> multipart(BlockStateMatcher matcher, String properties) {
+        return models(matcher.selectMultipart(matcher.state(BlockState.parseBlockProperties(properties))));
+    }
+
+    @Test
+    void testVariants() {
+        BlockState blockState = JsonUtils.fromJson("""
+                {"variants": {
+                  "facing=north,lit=false": {"model": "furnace"},
+                  "facing=north,lit=true": {"model": "furnace_on"},
+                  "lit=true": [{"model": "lit_a"}, {"model": "lit_b"}],
+                  "facing=south": {"model": "furnace_south"}
+                }}""", BlockState.class);
+        BlockStateMatcher matcher = blockState.getMatcher();
+
+        assertEquals(List.of("furnace"), variants(matcher, "facing=north,lit=false"));
+        assertEquals(List.of("furnace_on"), variants(matcher, "lit=true,facing=north"));
+        // the first key contained in the state wins, other properties are ignored
+        assertEquals(List.of("lit_a", "lit_b"), variants(matcher, "facing=east,lit=true,powered=false"));
+        assertEquals(List.of("furnace_south"), variants(matcher, "facing=south,lit=false"));
+        assertNull(variants(matcher, "facing=east,lit=false"));
+        assertSame(matcher, blockState.getMatcher());
+    }
+
+    @Test
+    void testVariantWithoutProperties() {
+        BlockState blockState = JsonUtils.fromJson("""
+                {"variants": {"": {"model": "stone"}}}""", BlockState.class);
+
+        assertEquals(List.of("stone"), variants(blockState.getMatcher(), "anything=true"));
+        assertEquals(List.of("stone"), variants(blockState.getMatcher(), ""));
+    }
+
+    @Test
+    void testMultipart() {
+        BlockState blockState = JsonUtils.fromJson("""
+                {"multipart": [
+                  {"apply": {"model": "post"}},
+                  {"when": {"north": "true"}, "apply": {"model": "side_north"}},
+                  {"when": {"east": "true", "waterlogged": "false"}, "apply": {"model": "side_east_dry"}},
+                  {"when": {"OR": [{"north": "true"}, {"south": "true"}]}, "apply": {"model": "north_or_south"}},
+                  {"when": {"AND": [{"north": "true"}, {"age": "1|2"}]}, "apply": {"model": "north_young"}},
+                  {"when": {"shape": "!none"}, "apply": {"model": "shaped"}}
+                ]}""", BlockState.class);
+        BlockStateMatcher matcher = blockState.getMatcher();
+
+        assertEquals(List.of("post"), multipart(matcher, "north=false,shape=none"));
+        assertEquals(List.of("post", "side_north", "north_or_south"), multipart(matcher, "north=true,shape=none,age=3"));
+        assertEquals(List.of("post", "side_north", "north_or_south", "north_young"), multipart(matcher, "north=true,age=2,shape=none"));
+        assertEquals(List.of("post", "side_east_dry"), multipart(matcher, "east=true,waterlogged=false,shape=none"));
+        assertEquals(List.of("post"), multipart(matcher, "east=true,waterlogged=true,shape=none"));
+        assertEquals(List.of("post", "north_or_south", "shaped"), multipart(matcher, "south=true,shape=straight"));
+        // a value no case tests is not "none" either
+        assertEquals(List.of("post", "shaped"), multipart(matcher, "shape=outer_left"));
+    }
+
+    @Test
+    void testManyProperties() {
+        // more than 64 (property, value) pairs, the masks take several longs
+        StringBuilder json = new StringBuilder("{\"variants\": {");
+        for (int age = 0; age < 100; age++) {
+            if (age > 0) {
+                json.append(',');
+            }
+            json.append("\"age=").append(age).append("\": {\"model\": \"age_").append(age).append("\"}");
+        }
+        json.append("}}");
+        BlockStateMatcher matcher = JsonUtils.fromJson(json.toString(), BlockState.class).getMatcher();
+
+        assertEquals(2, matcher.state(Map.of("age", "99")).length);
+        for (int age = 0; age < 100; age++) {
+            assertEquals(List.of("age_" + age), variants(matcher, "age=" + age));
+        }
+        assertNull(variants(matcher, "age=100"));
+    }
+}
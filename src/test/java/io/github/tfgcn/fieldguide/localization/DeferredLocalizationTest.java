@@ -0,0 +1,103 @@
+package io.github.tfgcn.fieldguide.localization;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: markers written by {@link DeferredLocalization} and replaced by {@link DeferredLocalization#localize}
+ *
+ * @author yanmaoyuan
+ */
+class DeferredLocalizationTest {
+
+    private final DeferredLocalization deferred = new DeferredLocalization();
+    private final Translations zh = new Translations(Map.of(
+            "item.tfc.stick", "木棍",
+            "tag.name", "标签: %s",
+            "ticks", "%d 刻",
+            "outer", "%s 与 %s"));
+
+    @Test
+    void testLocalize() {
+        String html = "<p>" + deferred.translate("missing", "item.tfc.stick") + "</p>";
+        assertEquals("<p>木棍</p>", DeferredLocalization.localize(html, zh));
+        assertEquals("<p>20 刻</p>", DeferredLocalization.localize("<p>" + deferred.translateWithArgs("ticks", 20) + "</p>", zh));
+        assertEquals("no markers", DeferredLocalization.localize("no markers", zh));
+    }
+
+    @Test
+    void testNamespaces() {
+        deferred.lazyLoadNamespace("tfc");
+        String html = deferred.translate("item.tfc.stick") + deferred.translate("item.tfc.stick");
+        assertEquals("木棍木棍", DeferredLocalization.localize(html, zh));
+        // loaded once, by the first marker
+        assertEquals(List.of("tfc"), zh.namespaces);
+    }
+
+    @Test
+    void testNestedMarkers() {
+        String tag = deferred.translateWithArgs("tag.name", deferred.translate("item.tfc.stick"));
+        assertEquals("<b>标签: 木棍</b>", DeferredLocalization.localize("<b>" + tag + "</b>", zh));
+
+        String outer = deferred.translateWithArgs("outer", tag, deferred.translateWithArgs("ticks", 5));
+        assertEquals("标签: 木棍 与 5 刻!", DeferredLocalization.localize(outer + "!", zh));
+    }
+
+    @Test
+    void testUnclosedMarker() {
+        String marker = deferred.translate("item.tfc.stick");
+        assertThrows(IllegalArgumentException.class,
+                () -> DeferredLocalization.localize(marker.substring(0, marker.length() - 1), zh));
+    }
+
+    /**
+     * Translates from a map, a key without translation is skipped like a missing one.
+     */
+    private static class Translations implements LocalizationManager {
+        private final Map<String, String> translations;
+        private final List<String> namespaces = new ArrayList<>();
+
+        Translations(Map<String, String> translations) {
+            this.translations = translations;
+        }
+
+        @Override
+        public void switchLanguage(Language lang) {
+        }
+
+        @Override
+        public Language getCurrentLanguage() {
+            return Language.ZH_CN;
+        }
+
+        @Override
+        public String translate(String... keys) {
+            for (String key : keys) {
+                if (translations.containsKey(key)) {
+                    return translations.get(key);
+                }
+            }
+            return keys[keys.length - 1];
+        }
+
+        @Override
+        public String translateWithArgs(String key, Object... args) {
+            return String.format(translate(key), args);
+        }
+
+        @Override
+        public Map<String, String> getKeybindings() {
+            return Map.of();
+        }
+
+        @Override
+        public void lazyLoadNamespace(String namespace) {
+            namespaces.add(namespace);
+        }
+    }
+}
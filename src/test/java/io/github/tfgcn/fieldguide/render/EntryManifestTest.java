@@ -0,0 +1,170 @@
+package io.github.tfgcn.fieldguide.render;
+
+import io.github.tfgcn.fieldguide.data.patchouli.BookEntry;
+import io.github.tfgcn.fieldguide.localization.Language;
+import io.github.tfgcn.fieldguide.localization.LocalizationManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: the code version, the file of {@link EntryManifest} and the entries it reuses
+ *
+ * @author yanmaoyuan
+ */
+class EntryManifestTest {
+
+    private static final String ENTRY_PATH = "assets/tfc/patchouli_books/field_guide/en_us/entries/mechanics/torch.json";
+    private static final String MODEL = "assets/minecraft/models/item/torch.json";
+    private static final String ICON = "assets/generated/minecraft/torch.png";
+    private static final String MODEL_OUTPUT = "assets/generated/tfc/torch_holder.glb";
+
+    private final Map<String, Long> signatures = new HashMap<>();
+    private final Translations translations = new Translations(new HashMap<>(Map.of("item.minecraft.torch", "Torch")));
+
+    @Test
+    void testCodeVersion() {
+        String version = EntryManifest.codeVersion();
+        assertTrue(version.matches(":[0-9a-f]{16}"), version);
+        assertEquals(version, EntryManifest.codeVersion());
+    }
+
+    @Test
+    void testSaveLeavesNoTempFile(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("manifest").resolve("en_us.json");
+        EntryManifest.load(file, tempDir, null, null).save();
+        EntryManifest.load(file, tempDir, null, null).save();
+
+        try (Stream<Path> files = Files.list(file.getParent())) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void testReuse(@TempDir Path tempDir) throws IOException {
+        Path file = record(tempDir);
+
+        BookEntry entry = entry();
+        EntryManifest manifest = load(file, tempDir);
+        assertTrue(manifest.reuse(entry));
+        assertEquals("../../" + ICON, entry.getIconPath());
+        assertTrue(entry.getInnerHtml().contains(MODEL_OUTPUT));
+        assertTrue(entry.isRendered());
+        assertEquals(1, manifest.getReused());
+    }
+
+    @Test
+    void testChangedAsset(@TempDir Path tempDir) throws IOException {
+        Path file = record(tempDir);
+
+        signatures.put(MODEL, 2L);
+        assertFalse(load(file, tempDir).reuse(entry()));
+    }
+
+    @Test
+    void testChangedTranslation(@TempDir Path tempDir) throws IOException {
+        Path file = record(tempDir);
+
+        translations.translations.put("item.minecraft.torch", "Lantern");
+        assertFalse(load(file, tempDir).reuse(entry()));
+    }
+
+    @Test
+    void testDeletedOutput(@TempDir Path tempDir) throws IOException {
+        Path file = record(tempDir);
+
+        Files.delete(tempDir.resolve("output").resolve(MODEL_OUTPUT));
+        assertFalse(load(file, tempDir).reuse(entry()));
+    }
+
+    /**
+     * Render an entry showing an icon and a model, record it and save the manifest.
+     */
+    private Path record(Path tempDir) throws IOException {
+        Path outputDir = tempDir.resolve("output");
+        for (String output : List.of(ICON, MODEL_OUTPUT)) {
+            Files.createDirectories(outputDir.resolve(output).getParent());
+            Files.writeString(outputDir.resolve(output), output);
+        }
+        signatures.put(ENTRY_PATH, 1L);
+        signatures.put(MODEL, 1L);
+
+        BookEntry entry = entry();
+        entry.setIconPath("../../" + ICON);
+        entry.setIconName("Torch");
+        entry.setInnerHtml("<p>Torch</p><div data-glb-viewer=\"../../" + MODEL_OUTPUT + "\"></div>");
+
+        Path file = tempDir.resolve("manifest").resolve("en_us.json");
+        EntryManifest manifest = load(file, tempDir);
+        manifest.put(entry, Map.of(
+                MODEL, 1L,
+                "lang:item.minecraft.torch", (long) Objects.hashCode("Torch")));
+        manifest.save();
+        return file;
+    }
+
+    private EntryManifest load(Path file, Path tempDir) {
+        return EntryManifest.load(file, tempDir.resolve("output"), dependency -> signatures.getOrDefault(dependency, 0L), translations);
+    }
+
+    private static BookEntry entry() {
+        BookEntry entry = new BookEntry();
+        entry.setId("mechanics/torch");
+        entry.setAssetPath(ENTRY_PATH);
+        return entry;
+    }
+
+    /**
+     * Translates from a map, a key without translation is returned as is.
+     */
+    private static class Translations implements LocalizationManager {
+        private final Map<String, String> translations;
+
+        Translations(Map<String, String> translations) {
+            this.translations = translations;
+        }
+
+        @Override
+        public void switchLanguage(Language lang) {
+        }
+
+        @Override
+        public Language getCurrentLanguage() {
+            return Language.EN_US;
+        }
+
+        @Override
+        public String translate(String... keys) {
+            for (String key : keys) {
+                if (translations.containsKey(key)) {
+                    return translations.get(key);
+                }
+            }
+            return keys[keys.length - 1];
+        }
+
+        @Override
+        public String translateWithArgs(String key, Object... args) {
+            return String.format(translate(key), args);
+        }
+
+        @Override
+        public Map<String, String> getKeybindings() {
+            return Map.of();
+        }
+
+        @Override
+        public void lazyLoadNamespace(String namespace) {
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package io.github.tfgcn.fieldguide.render;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Compare the {@link RasterKernels} with the per-pixel {@link Color} and {@link Graphics2D} code they
+ * replace, which is kept here as the reference. Run by {@code gradle benchmark}.
+ *
+ * @author yanmaoyuan
+ */
+@Slf4j
+@Tag("benchmark")
+public class RasterKernelsBenchmark {
+
+    private static final int ROUNDS = 3;
+    private static final int IMAGES = 2000;
+
+    @Test
+    void testMultiplyTint() {
+        Color color = new Color(0x8B5A2B);
+        benchmark("multiply tint", img -> multiplyReference(img, color), img -> TextureRenderer.multiplyImageByColor(img, color));
+    }
+
+    @Test
+    void testHsvTint() {
+        Color color = new Color(0x3F76E4);
+        benchmark("hsv tint", img -> hsvReference(img, color), img -> TextureRenderer.applyColorToImage(img, color));
+    }
+
+    @Test
+    void testBrightness() {
+        benchmark("brightness", img -> brightnessReference(img, 0.6f), img -> TextureRenderer.adjustBrightness(img, 0.6f));
+    }
+
+    @Test
+    void testAlphaOver() {
+        BufferedImage overlay = randomImages(1, new Random(1)).get(0);
+        benchmark("alpha over", img -> layerReference(img, overlay), img -> RasterKernels.layer(img, overlay));
+    }
+
+    @Test
+    void testUpscale() {
+        benchmark("upscale x4", img -> resizeReference(img, 64, 64), img -> TextureRenderer.resizeImage(img, 64, 64));
+    }
+
+    private void benchmark(String name, Function<BufferedImage, BufferedImage> reference,
+                           Function<BufferedImage, BufferedImage> kernel) {
+        List<BufferedImage> images = randomImages(IMAGES, new Random(42));
+
+        // correctness first, this also warms up both paths
+        for (BufferedImage image : images) {
+            Assertions.assertArrayEquals(pixels(reference.apply(image)), pixels(kernel.apply(image)), name);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long referenceTime = time(images, reference);
+            long kernelTime = time(images, kernel);
+            log.info("[{}] {} images, round {}: reference {} ms, kernels {} ms", name, images.size(), round,
+                    referenceTime, kernelTime);
+        }
+    }
+
+    private static long time(List<BufferedImage> images, Function<BufferedImage, BufferedImage> task) {
+        long start = System.nanoTime();
+        for (BufferedImage image : images) {
+            Assertions.assertNotNull(task.apply(image));
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * 16x16 textures of random colors and alphas, every tenth 13 wide, like the odd sizes of some mods.
+     */
+    private static List<BufferedImage> randomImages(int count, Random random) {
+        List<BufferedImage> images = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int width = i % 10 == 9 ? 13 : 16;
+            BufferedImage image = new BufferedImage(width, 16, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < 16; y++) {
+                for (int x = 0; x < width; x++) {
+                    image.setRGB(x, y, random.nextInt());
+                }
+            }
+            images.add(image);
+        }
+        return images;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /// the code the kernels replace
+
+    private static BufferedImage multiplyReference(BufferedImage grayscaleImage, Color color) {
+        int width = grayscaleImage.getWidth();
+        int height = grayscaleImage.getHeight();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        float targetR = color.getRed() / 255.0f;
+        float targetG = color.getGreen() / 255.0f;
+        float targetB = color.getBlue() / 255.0f;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = grayscaleImage.getRGB(x, y);
+                int alpha = (pixel >> 24) & 0xFF;
+                float grayScale = ((pixel >> 16) & 0xFF) / 255.0f;
+
+                int r = Math.min(255, Math.max(0, (int) (grayScale * targetR * 255)));
+                int g = Math.min(255, Math.max(0, (int) (grayScale * targetG * 255)));
+                int b = Math.min(255, Math.max(0, (int) (grayScale * targetB * 255)));
+                result.setRGB(x, y, (alpha << 24) | (r << 16) | (g << 8) | b);
+            }
+        }
+        return result;
+    }
+
+    private static BufferedImage hsvReference(BufferedImage img, Color color) {
+        BufferedImage result = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        float[] hsv = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
+        for (int x = 0; x < img.getWidth(); x++) {
+            for (int y = 0; y < img.getHeight(); y++) {
+                Color pixelColor = new Color(img.getRGB(x, y), true);
+                float[] pixelHsv = Color.RGBtoHSB(pixelColor.getRed(), pixelColor.getGreen(), pixelColor.getBlue(), null);
+                float newValue = hsv[2] > 0.5f ? pixelHsv[2] : pixelHsv[2] * 0.5f;
+                int rgb = Color.HSBtoRGB(hsv[0], hsv[1], newValue);
+                Color newColor = new Color((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, pixelColor.getAlpha());
+                result.setRGB(x, y, newColor.getRGB());
+            }
+        }
+        return result;
+    }
+
+    private static BufferedImage brightnessReference(BufferedImage image, float factor) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            int r = Math.min(255, Math.max(0, (int) (((argb >> 16) & 0xFF) * factor)));
+            int g = Math.min(255, Math.max(0, (int) (((argb >> 8) & 0xFF) * factor)));
+            int b = Math.min(255, Math.max(0, (int) ((argb & 0xFF) * factor)));
+            pixels[i] = (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
+        }
+        result.setRGB(0, 0, width, height, pixels, 0, width);
+        return result;
+    }
+
+    private static BufferedImage layerReference(BufferedImage base, BufferedImage overlay) {
+        BufferedImage combined = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = combined.createGraphics();
+        g.drawImage(base, 0, 0, null);
+        g.drawImage(overlay, 0, 0, null);
+        g.dispose();
+        return combined;
+    }
+
+    private static BufferedImage resizeReference(BufferedImage original, int targetWidth, int targetHeight) {
+        BufferedImage resized = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = resized.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        g2d.drawImage(original, 0, 0, targetWidth, targetHeight, null);
+        g2d.dispose();
+        return resized;
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.tfgcn.fieldguide.render;
+
+import io.github.tfgcn.fieldguide.asset.Asset;
+import io.github.tfgcn.fieldguide.asset.FsAssetSource;
+import io.github.tfgcn.fieldguide.asset.RecipeIndex;
+import io.github.tfgcn.fieldguide.data.patchouli.BookEntry;
+import io.github.tfgcn.fieldguide.data.patchouli.BookPage;
+import io.github.tfgcn.fieldguide.data.patchouli.page.PageCrafting;
+import io.github.tfgcn.fieldguide.data.patchouli.page.PageSpotlight;
+import io.github.tfgcn.fieldguide.data.patchouli.page.PageSpotlightItem;
+import io.github.tfgcn.fieldguide.data.patchouli.page.PageText;
+import io.github.tfgcn.fieldguide.data.tfc.page.PageBarrel;
+import io.github.tfgcn.fieldguide.data.tfc.page.PageGlassworking;
+import io.github.tfgcn.fieldguide.render.components.BarrelRecipe;
+import io.github.tfgcn.fieldguide.render.components.CraftingRecipe;
+import io.github.tfgcn.fieldguide.render.components.FluidSlot;
+import io.github.tfgcn.fieldguide.render.components.ItemSlot;
+import io.github.tfgcn.fieldguide.render.components.MiscRecipe;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: the slots pages draw recipes with, and the images {@link ItemImageBatch} renders up front from the same slots
+ *
+ * @author yanmaoyuan
+ */
+class RecipeLayoutsTest {
+
+    @Test
+    void testLayouts(@TempDir Path tempDir) throws IOException {
+        RecipeIndex index = index(tempDir);
+
+        CraftingRecipe torch = RecipeLayouts.crafting(index.get("tfc:crafting/torch"));
+        assertFalse(torch.shapeless);
+        assertEquals(new ItemSlot("#minecraft:coals", 1, true), torch.grid[0]);
+        assertEquals(new ItemSlot("minecraft:stick", 1, true), torch.grid[3]);
+        assertEquals(new ItemSlot("minecraft:torch", 4, true), torch.output);
+
+        // the wrapped recipe is drawn, water is shown as its bucket
+        CraftingRecipe mortar = RecipeLayouts.crafting(index.get("tfc:crafting/mortar"));
+        assertTrue(mortar.shapeless);
+        assertEquals(List.of("minecraft:water_bucket", "tfc:sand", "tfc:mortar"), items(mortar.items()));
+
+        MiscRecipe lampGlass = RecipeLayouts.misc(index.get("tfc:glassworking/lamp_glass"));
+        assertEquals(List.of("tfc:silica_glass_batch", "tfc:lamp_glass", "tfc:blowpipe_with_glass", "tfc:gem_saw"),
+                items(lampGlass.items()));
+        assertFalse(lampGlass.tools().getFirst().placeholder());
+
+        BarrelRecipe limewater = RecipeLayouts.barrel(index.get("tfc:barrel/limewater"));
+        assertEquals(new ItemSlot("tfc:powder/flux", 2, true), limewater.inputItem());
+        assertNull(limewater.outputItem());
+        assertEquals(List.of(new FluidSlot("minecraft:water", 500), new FluidSlot("tfc:limewater", 500)), limewater.fluids());
+
+        // a recipe of the wrong kind is not drawn
+        assertThrows(RuntimeException.class, () -> RecipeLayouts.misc(index.get("tfc:barrel/limewater")));
+    }
+
+    @Test
+    void testBatchFollowsPages(@TempDir Path tempDir) throws IOException {
+        RecipeIndex index = index(tempDir);
+
+        PageSpotlight spotlight = new PageSpotlight();
+        spotlight.setItem(List.of(new PageSpotlightItem("tag", "minecraft:coals")));
+        PageCrafting crafting = new PageCrafting();
+        crafting.setRecipe("tfc:crafting/torch");
+        crafting.setRecipe2("tfc:crafting/mortar");
+        PageGlassworking glassworking = new PageGlassworking();
+        glassworking.setRecipe("tfc:glassworking/lamp_glass");
+        // only the first recipe of a misc page is drawn
+        glassworking.setRecipe2("tfc:crafting/torch");
+        PageBarrel barrel = new PageBarrel();
+        barrel.setRecipe("tfc:barrel/limewater");
+        PageCrafting missing = new PageCrafting();
+        missing.setRecipe("tfc:crafting/missing");
+
+        BookEntry entry = new BookEntry();
+        entry.setId("tfc:mechanics/fixture");
+        entry.setIcon("minecraft:torch");
+        entry.setPages(List.<BookPage>of(spotlight, crafting, glassworking, barrel, missing, new PageText()));
+
+        assertEquals(List.of("tfc:crafting/torch", "tfc:crafting/mortar"), RecipeLayouts.recipes(crafting));
+        assertEquals(List.of("tfc:glassworking/lamp_glass"), RecipeLayouts.recipes(glassworking));
+        assertEquals(List.of(), RecipeLayouts.recipes(spotlight));
+
+        ItemImageBatch batch = new ItemImageBatch();
+        batch.discover(entry, recipeId -> {
+            if (!index.contains(recipeId)) {
+                throw new IllegalArgumentException("No recipe: " + recipeId);
+            }
+            return index.get(recipeId);
+        });
+
+        // a placeholder only replaces images every page allows it for
+        assertEquals(Map.ofEntries(
+                Map.entry("minecraft:torch", false),
+                Map.entry("#minecraft:coals", false),
+                Map.entry("minecraft:stick", true),
+                Map.entry("minecraft:water_bucket", true),
+                Map.entry("tfc:sand", true),
+                Map.entry("tfc:mortar", true),
+                Map.entry("tfc:silica_glass_batch", true),
+                Map.entry("tfc:lamp_glass", true),
+                Map.entry("tfc:blowpipe_with_glass", false),
+                Map.entry("tfc:gem_saw", false),
+                Map.entry("tfc:powder/flux", true)), batch.getItems());
+        assertEquals(Map.of("minecraft:water", true, "tfc:limewater", true), batch.getFluids());
+    }
+
+    private static List<String> items(List<ItemSlot> slots) {
+        return slots.stream().map(ItemSlot::item).toList();
+    }
+
+    private static RecipeIndex index(Path root) throws IOException {
+        FsAssetSource source = new FsAssetSource(root, "file:test");
+        List<Asset> assets = new ArrayList<>();
+        assets.add(recipe(root, source, "data/tfc/recipes/crafting/torch.json", """
+                {"type": "minecraft:crafting_shaped", "pattern": ["C", "S"],
+                 "key": {"C": {"tag": "minecraft:coals"}, "S": {"item": "minecraft:stick"}},
+                 "result": {"item": "minecraft:torch", "count": 4}}"""));
+        assets.add(recipe(root, source, "data/tfc/recipes/crafting/mortar.json", """
+                {"type": "tfc:no_remainder_shapeless_crafting", "recipe": {"type": "minecraft:crafting_shapeless",
+                 "ingredients": [{"type": "tfc:fluid_item", "fluid_ingredient": {"ingredient": "minecraft:water", "amount": 100}},
+                                 {"item": "tfc:sand"}],
+                 "result": {"item": "tfc:mortar", "count": 16}}}"""));
+        assets.add(recipe(root, source, "data/tfc/recipes/glassworking/lamp_glass.json", """
+                {"type": "tfc:glassworking", "operations": ["blow", "saw"],
+                 "batch": {"item": "tfc:silica_glass_batch"}, "result": {"item": "tfc:lamp_glass"}}"""));
+        assets.add(recipe(root, source, "data/tfc/recipes/barrel/limewater.json", """
+                {"type": "tfc:barrel_sealed", "input_item": {"ingredient": {"item": "tfc:powder/flux"}, "count": 2},
+                 "input_fluid": {"ingredient": "minecraft:water", "amount": 500},
+                 "output_fluid": {"fluid": "tfc:limewater", "amount": 500}, "duration": 1000}"""));
+        return RecipeIndex.build(assets);
+    }
+
+    private static Asset recipe(Path root, FsAssetSource source, String path, String json) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, json);
+        return new Asset(path, source);
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.tfgcn.fieldguide.render;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: the shelf packer of {@link SpriteAtlas} and the css it writes for the packed icons
+ *
+ * @author yanmaoyuan
+ */
+class SpriteAtlasTest {
+
+    @Test
+    void testPack() {
+        List<int[]> boxes = List.of(
+                new int[]{10, 10}, new int[]{10, 8}, // first shelf
+                new int[]{10, 10},                   // second shelf
+                new int[]{20, 10});                  // next sheet
+        SpriteAtlas.Packing packing = SpriteAtlas.pack(boxes, 25);
+
+        assertArrayEquals(new int[]{0, 0, 0}, packing.positions()[0]);
+        assertArrayEquals(new int[]{0, 10, 0}, packing.positions()[1]);
+        assertArrayEquals(new int[]{0, 0, 10}, packing.positions()[2]);
+        assertArrayEquals(new int[]{1, 0, 0}, packing.positions()[3]);
+        assertEquals(2, packing.sheets().size());
+        assertArrayEquals(new int[]{20, 20}, packing.sheets().get(0));
+        assertArrayEquals(new int[]{20, 10}, packing.sheets().get(1));
+
+        assertTrue(SpriteAtlas.pack(List.of(), 25).sheets().isEmpty());
+    }
+
+    @Test
+    void testPackNoOverlap() {
+        Random random = new Random(42);
+        List<int[]> boxes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            boxes.add(new int[]{1 + random.nextInt(64), 1 + random.nextInt(64)});
+        }
+        boxes.sort((a, b) -> b[1] - a[1]);
+        SpriteAtlas.Packing packing = SpriteAtlas.pack(boxes, 256);
+
+        for (int i = 0; i < boxes.size(); i++) {
+            int[] a = packing.positions()[i];
+            int[] sheet = packing.sheets().get(a[0]);
+            assertTrue(a[1] + boxes.get(i)[0] <= sheet[0] && a[2] + boxes.get(i)[1] <= sheet[1], "box " + i + " outside its sheet");
+            assertTrue(sheet[0] <= 256 && sheet[1] <= 256);
+            for (int j = 0; j < i; j++) {
+                int[] b = packing.positions()[j];
+                boolean overlap = a[0] == b[0]
+                        && a[1] < b[1] + boxes.get(j)[0] && b[1] < a[1] + boxes.get(i)[0]
+                        && a[2] < b[2] + boxes.get(j)[1] && b[2] < a[2] + boxes.get(i)[1];
+                assertFalse(overlap, "box " + i + " overlaps box " + j);
+            }
+        }
+    }
+
+    @Test
+    void testCssPercent() {
+        // background-size, the sheet relative to the sprite
+        assertEquals("400", SpriteAtlas.percent(64, 16));
+        assertEquals("3333.3333", SpriteAtlas.percent(100, 3));
+        assertEquals("100", SpriteAtlas.percent(16, 16));
+
+        // background-position, 0% at the left edge and 100% at the right edge of the sheet
+        assertEquals("0", SpriteAtlas.position(0, 64, 16));
+        assertEquals("100", SpriteAtlas.position(48, 64, 16));
+        assertEquals("33.3333", SpriteAtlas.position(16, 64, 16));
+        assertEquals("0", SpriteAtlas.position(0, 16, 16));
+
+        assertEquals("12.5", SpriteAtlas.trim(12.5));
+        assertEquals("100", SpriteAtlas.trim(100.0));
+        assertEquals("0", SpriteAtlas.trim(0.0));
+    }
+
+    @Test
+    void testWrite(@TempDir Path tempDir) throws IOException {
+        SpriteAtlas atlas = new SpriteAtlas();
+        String stone = SpriteAtlas.DIR + "/stone.png";
+        String stick = SpriteAtlas.DIR + "/stick.png";
+        icon(tempDir.resolve(stone), 16, 0xFF808080);
+        icon(tempDir.resolve(stick), 32, 0xFF8B5A2B);
+        String stoneCss = atlas.sprite(stone);
+        String stickCss = atlas.sprite(stick);
+        assertNull(atlas.sprite("assets/generated/fire.gif"));
+        atlas.keep(stick);
+
+        atlas.write(tempDir, OutputWriter.direct());
+
+        Path dir = tempDir.resolve(SpriteAtlas.DIR);
+        String css = Files.readString(dir.resolve(SpriteAtlas.CSS), StandardCharsets.UTF_8);
+        assertTrue(css.contains("." + stoneCss + "{background-image:url(\"sprites_0.png\")"), css);
+        assertTrue(css.contains("." + stickCss + "{background-image:url(\"sprites_0.png\")"), css);
+
+        // the tallest first: stick at 0,0 and stone next to it, both with padding
+        BufferedImage sheet = ImageIO.read(dir.resolve("sprites_0.png").toFile());
+        assertEquals(34 + 18, sheet.getWidth());
+        assertEquals(34, sheet.getHeight());
+        assertEquals(0xFF8B5A2B, sheet.getRGB(0, 0));
+        assertEquals(0xFF808080, sheet.getRGB(34, 0));
+
+        assertFalse(Files.exists(tempDir.resolve(stone)));
+        assertTrue(Files.exists(tempDir.resolve(stick)), "kept, also shown by its path");
+    }
+
+    private static void icon(Path file, int size, int argb) throws IOException {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        Files.createDirectories(file.getParent());
+        ImageIO.write(image, "png", file.toFile());
+    }
+}
@@ -0,0 +1,153 @@
+package io.github.tfgcn.fieldguide.render;
+
+import io.github.tfgcn.fieldguide.asset.AssetLoader;
+import io.github.tfgcn.fieldguide.asset.ItemImageResult;
+import io.github.tfgcn.fieldguide.localization.LazyLocalizationManager;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * desc: the images are named by what they show, not by the order they are rendered in, and block images
+ * are the pixels {@link Graphics2D} draws
+ *
+ * @author yanmaoyuan
+ */
+class TextureRendererTest {
+
+    private static final List<String> ITEMS = List.of(
+            "minecraft:stick",
+            "minecraft:stone",
+            "#minecraft:logs",
+            "minecraft:stick,minecraft:coal");
+
+    @Test
+    void testContentId() {
+        assertEquals(TextureRenderer.contentId("item", "#minecraft:logs"), TextureRenderer.contentId("item", "#minecraft:logs"));
+        assertNotEquals(TextureRenderer.contentId("item", "#minecraft:logs"), TextureRenderer.contentId("item", "#minecraft:planks"));
+        assertNotEquals(TextureRenderer.contentId("item", "#minecraft:logs"), TextureRenderer.contentId("block", "#minecraft:logs"));
+        assertTrue(TextureRenderer.contentId("item", "#minecraft:logs").matches("item_[0-9a-f]{16}"));
+    }
+
+    @Test
+    void testRenderTwice(@TempDir Path tempDir) throws IOException {
+        Path modpack = Paths.get("Modpack-Modern");
+        Assumptions.assumeTrue(Files.isDirectory(modpack), "Modpack not found: " + modpack.toAbsolutePath());
+
+        List<String> reversed = new ArrayList<>(ITEMS);
+        Collections.reverse(reversed);
+        Map<String, byte[]> first = render(modpack, tempDir.resolve("first"), ITEMS);
+        Map<String, byte[]> second = render(modpack, tempDir.resolve("second"), reversed);
+
+        assertEquals(first.keySet(), second.keySet());
+        for (Map.Entry<String, byte[]> entry : first.entrySet()) {
+            assertArrayEquals(entry.getValue(), second.get(entry.getKey()), entry.getKey());
+        }
+    }
+
+    @Test
+    void testBlockImage() {
+        Random random = new Random(42);
+        int[] types = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_RGB};
+        int[][] sizes = {{16, 16}, {32, 32}, {8, 8}, {16, 32}};
+        for (int type : types) {
+            for (int[] size : sizes) {
+                BufferedImage left = texture(random, type, size[0], size[1]);
+                BufferedImage right = texture(random, type, size[0], size[1]);
+                BufferedImage top = texture(random, type, size[0], size[0]);
+
+                BufferedImage expected = referenceBlockImage(left, right, top);
+                BufferedImage actual = TextureRenderer.createBlockImage(left, right, top);
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    for (int x = 0; x < expected.getWidth(); x++) {
+                        if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                            fail("type " + type + ", " + size[0] + "x" + size[1] + ": pixel " + x + "," + y + " is "
+                                    + Integer.toHexString(actual.getRGB(x, y)) + ", expected " + Integer.toHexString(expected.getRGB(x, y)));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static BufferedImage texture(Random random, int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // a few fully transparent and opaque pixels, the rest translucent
+                int alpha = switch (random.nextInt(4)) {
+                    case 0 -> 0;
+                    case 1 -> 255;
+                    default -> random.nextInt(256);
+                };
+                image.setRGB(x, y, alpha << 24 | random.nextInt(1 << 24));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * The block image drawn with {@link Graphics2D}, each face an affine transform clipped to its polygon.
+     */
+    private static BufferedImage referenceBlockImage(BufferedImage left, BufferedImage right, BufferedImage top) {
+        BufferedImage result = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+        drawFace(g, TextureRenderer.adjustBrightness(left, 0.85f),
+                new Point(16, 231), new Point(150, 298), new Point(150, 135), new Point(16, 68));
+        drawFace(g, TextureRenderer.adjustBrightness(right, 0.6f),
+                new Point(150, 298), new Point(283, 231), new Point(283, 68), new Point(150, 135));
+        drawFace(g, top,
+                new Point(16, 68), new Point(150, 136), new Point(284, 68), new Point(150, 0));
+        g.dispose();
+        return result;
+    }
+
+    private static void drawFace(Graphics2D g, BufferedImage texture, Point... points) {
+        Path2D polygon = new Path2D.Double();
+        polygon.moveTo(points[0].x, points[0].y);
+        for (int i = 1; i < points.length; i++) {
+            polygon.lineTo(points[i].x, points[i].y);
+        }
+        polygon.closePath();
+
+        Shape clip = g.getClip();
+        g.setClip(polygon);
+        g.drawImage(texture, new AffineTransform(
+                (double) (points[1].x - points[0].x) / texture.getWidth(), (double) (points[1].y - points[0].y) / texture.getHeight(),
+                (double) (points[3].x - points[0].x) / texture.getWidth(), (double) (points[3].y - points[0].y) / texture.getHeight(),
+                points[0].x, points[0].y), null);
+        g.setClip(clip);
+    }
+
+    /**
+     * @return image path -> bytes of each item
+     */
+    private static Map<String, byte[]> render(Path modpack, Path outputDir, List<String> items) throws IOException {
+        AssetLoader loader = new AssetLoader(modpack, outputDir);
+        TextureRenderer renderer = new TextureRenderer(loader, new LazyLocalizationManager(loader));
+        Map<String, byte[]> images = new TreeMap<>();
+        for (String item : items) {
+            ItemImageResult result = renderer.getItemImage(item, false);
+            assertNotNull(result.getPath(), item);
+            images.put(result.getPath(), Files.readAllBytes(outputDir.resolve(result.getPath())));
+        }
+        return images;
+    }
+}